@@ -114,29 +114,4 @@ public class HenukaImitationsApplication implements WebMvcConfigurer {
             }
         };
     }
-
-    /**
-     * Configure custom async executor
-     */
-    @Bean
-    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor taskExecutor() {
-        org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor executor = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(4);
-        executor.setQueueCapacity(500);
-        executor.setThreadNamePrefix("HenukaAsync-");
-        executor.initialize();
-        return executor;
-    }
-
-    /**
-     * Configure custom scheduled task executor
-     */
-    @Bean
-    public org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler taskScheduler() {
-        org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler scheduler = new org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(2);
-        scheduler.setThreadNamePrefix("HenukaScheduler-");
-        return scheduler;
-    }
 }
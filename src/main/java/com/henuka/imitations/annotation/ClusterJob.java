@@ -0,0 +1,34 @@
+package com.henuka.imitations.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes a {@code @Scheduled} method run on one node of the cluster at a time, under a database
+ * lease renewed while it runs. Nodes whose trigger fires while another holds the lease skip the run.
+ *
+ * With {@code sharded}, every live node runs the method on its own share of the work instead,
+ * available to the method as {@code JobShard.current()}; each shard is leased separately.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClusterJob {
+
+    /** Lock name; defaults to {@code ClassName.methodName}. */
+    String name() default "";
+
+    /** How long a lease lasts if not renewed, as an ISO-8601 duration; renewed at a third of this. */
+    String lease() default "PT5M";
+
+    /**
+     * How long after it starts the run keeps the lock even once finished, so nodes whose trigger
+     * fires slightly later do not run the job again. Set it close to the job's period.
+     */
+    String minHold() default "PT30S";
+
+    boolean sharded() default false;
+}
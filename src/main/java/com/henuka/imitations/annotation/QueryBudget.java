@@ -0,0 +1,20 @@
+package com.henuka.imitations.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the maximum number of SQL statements a request handler may issue, including view
+ * rendering. Exceeding it is logged and counted; with {@code app.query-budget.enforce=true}
+ * (meant for tests) the statement that goes over fails instead, before the response is written.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryBudget {
+
+    int value();
+}
@@ -0,0 +1,20 @@
+package com.henuka.imitations.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a {@code @Scheduled} method on the scheduler of the given workload class; on a class, applies
+ * to all its scheduled methods. Unannotated scheduled methods run as {@link WorkloadClass#BACKGROUND}.
+ * {@code @Async} work is routed by its executor name instead, e.g. {@code @Async("batchExecutor")}.
+ */
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Workload {
+
+    WorkloadClass value();
+}
@@ -0,0 +1,27 @@
+package com.henuka.imitations.annotation;
+
+/**
+ * Kinds of work that get separate threads, so one kind cannot starve another. Each class has its
+ * own pool and scheduler, sized and prioritised under {@code app.workloads.<class>}.
+ */
+public enum WorkloadClass {
+
+    /** Work a user is waiting on; small queue, high priority. */
+    INTERACTIVE,
+
+    /** Short housekeeping and dispatch that should keep up but nobody waits on. */
+    BACKGROUND,
+
+    /** Long scans and bulk jobs; low priority, rejected rather than run by the caller when full. */
+    BATCH,
+
+    /** Calls that mostly wait on another system. */
+    IO_BOUND;
+
+    /**
+     * Name used in properties, bean names and metric tags, e.g. {@code io-bound}.
+     */
+    public String key() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -1,5 +1,6 @@
 package com.henuka.imitations.config;
 
+import com.henuka.imitations.annotation.WorkloadClass;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -11,47 +12,157 @@ import java.util.concurrent.Executor;
 @EnableAsync
 public class AsyncConfig {
 
+    // Overflow of the email and notification pools goes to a disk journal instead of being rejected
+    @org.springframework.beans.factory.annotation.Value("${app.async.spill.enabled:false}")
+    private boolean spillEnabled;
+
+    @org.springframework.beans.factory.annotation.Value("${app.async.spill.directory:${java.io.tmpdir}/henuka-spill}")
+    private String spillDirectory;
+
+    @org.springframework.beans.factory.annotation.Value("${app.async.spill.segment-size-mb:16}")
+    private int spillSegmentSizeMb;
+
+    // Flush every append to disk; without it a spilled task survives a process crash but not a power loss
+    @org.springframework.beans.factory.annotation.Value("${app.async.spill.force-on-append:false}")
+    private boolean spillForceOnAppend;
+
+    @org.springframework.beans.factory.annotation.Value("${app.async.spill.replay-interval-ms:100}")
+    private long spillReplayIntervalMillis;
+
     /**
-     * Configure main task executor
+     * Configure main task executor; the background workload pool, and the default for @Async
      */
-    @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(25);
-        executor.setThreadNamePrefix("AsyncTask-");
-        executor.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
-        executor.initialize();
-        return executor;
+    @Bean(name = {"taskExecutor", "backgroundExecutor"})
+    public Executor taskExecutor(ExecutionMode executionMode,
+                                 @org.springframework.beans.factory.annotation.Value("${app.execution.limits.general:10}") int limit,
+                                 io.micrometer.core.instrument.MeterRegistry meterRegistry,
+                                 AsyncMetrics asyncMetrics,
+                                 WorkloadExecutors workloads) {
+        if (executionMode.isVirtual()) {
+            return new VirtualThreadTaskExecutor(executionMode.threadFactory("Background-"), limit, meterRegistry,
+                asyncMetrics.executor("backgroundExecutor", WorkloadClass.BACKGROUND));
+        }
+        return workloads.executor(WorkloadClass.BACKGROUND);
+    }
+
+    /**
+     * Configure interactive workload executor; work a user is waiting on
+     */
+    @Bean(name = "interactiveExecutor")
+    public Executor interactiveExecutor(WorkloadExecutors workloads) {
+        return workloads.executor(WorkloadClass.INTERACTIVE);
+    }
+
+    /**
+     * Configure batch workload executor; long jobs that must not hold other classes' threads
+     */
+    @Bean(name = "batchExecutor")
+    public Executor batchExecutor(WorkloadExecutors workloads) {
+        return workloads.executor(WorkloadClass.BATCH);
+    }
+
+    /**
+     * Configure I/O-bound workload executor; calls that mostly wait on another system
+     */
+    @Bean(name = "ioBoundExecutor")
+    public Executor ioBoundExecutor(WorkloadExecutors workloads) {
+        return workloads.executor(WorkloadClass.IO_BOUND);
     }
 
     /**
      * Configure email task executor
      */
     @Bean(name = "emailExecutor")
-    public Executor emailExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(5);
-        executor.setQueueCapacity(10);
-        executor.setThreadNamePrefix("EmailTask-");
-        executor.initialize();
-        return executor;
+    public Executor emailExecutor(ExecutionMode executionMode,
+                                  @org.springframework.beans.factory.annotation.Value("${app.execution.limits.smtp:5}") int limit,
+                                  io.micrometer.core.instrument.MeterRegistry meterRegistry,
+                                  AsyncMetrics asyncMetrics,
+                                  WorkloadExecutors workloads) {
+        if (executionMode.isVirtual()) {
+            return new VirtualThreadTaskExecutor(executionMode.threadFactory("EmailTask-"), limit, meterRegistry,
+                asyncMetrics.executor("emailExecutor", WorkloadClass.BACKGROUND));
+        }
+        ThreadPoolTaskExecutor executor = workloads.pool("emailExecutor", WorkloadClass.BACKGROUND, 2, 5, 10, "EmailTask-");
+        return spillable("email", executor, meterRegistry);
+    }
+
+    /**
+     * Configure pending-order sweeper executor; one thread per sweeper worker
+     */
+    @Bean(name = "sweeperExecutor")
+    public Executor sweeperExecutor(@org.springframework.beans.factory.annotation.Value("${app.orders.sweeper.workers:4}") int workers,
+                                    WorkloadExecutors workloads) {
+        return workloads.pool("sweeperExecutor", WorkloadClass.BATCH, workers, workers, workers, "OrderSweeper-");
+    }
+
+    /**
+     * Configure payment gateway executor; runs Razorpay HTTP exchanges off the request threads
+     */
+    @Bean(name = "paymentGatewayExecutor")
+    public Executor paymentGatewayExecutor(@org.springframework.beans.factory.annotation.Value("${app.payment.gateway.threads:4}") int threads,
+                                           WorkloadExecutors workloads) {
+        // In-flight calls are already capped by the gateway bulkhead
+        return workloads.pool("paymentGatewayExecutor", WorkloadClass.IO_BOUND, threads, threads, 1000, "PaymentGateway-");
+    }
+
+    /**
+     * Configure payment reconciliation executor; one thread per parallel gateway page fetch
+     */
+    @Bean(name = "reconciliationExecutor")
+    public Executor reconciliationExecutor(@org.springframework.beans.factory.annotation.Value("${app.payment.reconciliation.concurrency:4}") int concurrency,
+                                           WorkloadExecutors workloads) {
+        return workloads.pool("reconciliationExecutor", WorkloadClass.BATCH, concurrency, concurrency, concurrency * 4,
+            "PaymentReconciliation-");
+    }
+
+    /**
+     * Configure bulk refund executor; one thread per gateway refund in flight
+     */
+    @Bean(name = "bulkRefundExecutor")
+    public Executor bulkRefundExecutor(@org.springframework.beans.factory.annotation.Value("${app.payment.bulk-refund.concurrency:4}") int concurrency,
+                                       WorkloadExecutors workloads) {
+        // A whole chunk is submitted at once
+        return workloads.pool("bulkRefundExecutor", WorkloadClass.BATCH, concurrency, concurrency, 1000, "BulkRefund-");
+    }
+
+    /**
+     * Configure page composition executor; loads the widgets of a page in parallel
+     */
+    @Bean(name = "pageCompositionExecutor")
+    public Executor pageCompositionExecutor(@org.springframework.beans.factory.annotation.Value("${app.pages.threads:16}") int threads,
+                                            @org.springframework.beans.factory.annotation.Value("${app.pages.queue-capacity:64}") int queueCapacity,
+                                            WorkloadExecutors workloads) {
+        // Rejects when full: optional widgets then fall back, required ones run on the request thread
+        return workloads.pool("pageCompositionExecutor", WorkloadClass.INTERACTIVE, threads, threads, queueCapacity,
+            "PageComposition-");
     }
 
     /**
      * Configure notification task executor
      */
     @Bean(name = "notificationExecutor")
-    public Executor notificationExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(3);
-        executor.setMaxPoolSize(6);
-        executor.setQueueCapacity(15);
-        executor.setThreadNamePrefix("NotificationTask-");
-        executor.initialize();
-        return executor;
+    public Executor notificationExecutor(ExecutionMode executionMode,
+                                         @org.springframework.beans.factory.annotation.Value("${app.execution.limits.notification:6}") int limit,
+                                         io.micrometer.core.instrument.MeterRegistry meterRegistry,
+                                         AsyncMetrics asyncMetrics,
+                                         WorkloadExecutors workloads) {
+        if (executionMode.isVirtual()) {
+            return new VirtualThreadTaskExecutor(executionMode.threadFactory("NotificationTask-"), limit, meterRegistry,
+                asyncMetrics.executor("notificationExecutor", WorkloadClass.IO_BOUND));
+        }
+        ThreadPoolTaskExecutor executor = workloads.pool("notificationExecutor", WorkloadClass.IO_BOUND, 3, 6, 15,
+            "NotificationTask-");
+        return spillable("notification", executor, meterRegistry);
+    }
+
+    private Executor spillable(String name, ThreadPoolTaskExecutor executor,
+                               io.micrometer.core.instrument.MeterRegistry meterRegistry) {
+        if (!spillEnabled) {
+            return executor;
+        }
+        SpillJournal journal = new SpillJournal(java.nio.file.Path.of(spillDirectory), name,
+            spillSegmentSizeMb * 1024 * 1024, spillForceOnAppend);
+        return new SpillingTaskExecutor(name, executor, journal, meterRegistry, spillReplayIntervalMillis);
     }
 }
 
@@ -64,21 +175,47 @@ class AsyncService {
     private final EmailService emailService;
     private final NotificationService notificationService;
     private final AsyncMetrics asyncMetrics;
+    private final Executor emailExecutor;
+    private final Executor notificationExecutor;
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AsyncService.class);
 
     public AsyncService(EmailService emailService,
                        NotificationService notificationService,
-                       AsyncMetrics asyncMetrics) {
+                       AsyncMetrics asyncMetrics,
+                       @org.springframework.beans.factory.annotation.Qualifier("emailExecutor") Executor emailExecutor,
+                       @org.springframework.beans.factory.annotation.Qualifier("notificationExecutor") Executor notificationExecutor) {
         this.emailService = emailService;
         this.notificationService = notificationService;
         this.asyncMetrics = asyncMetrics;
+        this.emailExecutor = emailExecutor;
+        this.notificationExecutor = notificationExecutor;
+
+        // Spilled sends outlive their futures; after a restart they are rebuilt from the journal
+        if (emailExecutor instanceof SpillingTaskExecutor spilling) {
+            spilling.registerHandler("email", payload -> {
+                String[] fields = SpillableTask.decode(payload);
+                sendEmail(fields[0], fields[1], fields[2]);
+            });
+        }
+        if (notificationExecutor instanceof SpillingTaskExecutor spilling) {
+            spilling.registerHandler("notification", payload -> {
+                String[] fields = SpillableTask.decode(payload);
+                sendNotification(fields[0], fields[1]);
+            });
+        }
     }
 
     /**
      * Send email asynchronously
      */
-    @org.springframework.scheduling.annotation.Async("emailExecutor")
     public java.util.concurrent.CompletableFuture<Boolean> sendEmailAsync(String to, String subject, String content) {
+        java.util.concurrent.CompletableFuture<Boolean> result = new java.util.concurrent.CompletableFuture<>();
+        emailExecutor.execute(new SpillableTask("email", SpillableTask.encode(to, subject, content),
+            () -> result.complete(sendEmail(to, subject, content))));
+        return result;
+    }
+
+    private boolean sendEmail(String to, String subject, String content) {
         try {
             long startTime = System.currentTimeMillis();
             emailService.sendTemplateEmail(to, subject, "generic", java.util.Collections.singletonMap("content", content));
@@ -87,19 +224,25 @@ class AsyncService {
             asyncMetrics.recordTaskDuration("email", duration);
             asyncMetrics.recordTaskSuccess("email");
             
-            return java.util.concurrent.CompletableFuture.completedFuture(true);
+            return true;
         } catch (Exception e) {
             log.error("Failed to send email to: {}", to, e);
             asyncMetrics.recordTaskFailure("email");
-            return java.util.concurrent.CompletableFuture.completedFuture(false);
+            return false;
         }
     }
 
     /**
      * Send notification asynchronously
      */
-    @org.springframework.scheduling.annotation.Async("notificationExecutor")
     public java.util.concurrent.CompletableFuture<Boolean> sendNotificationAsync(String userId, String message) {
+        java.util.concurrent.CompletableFuture<Boolean> result = new java.util.concurrent.CompletableFuture<>();
+        notificationExecutor.execute(new SpillableTask("notification", SpillableTask.encode(userId, message),
+            () -> result.complete(sendNotification(userId, message))));
+        return result;
+    }
+
+    private boolean sendNotification(String userId, String message) {
         try {
             long startTime = System.currentTimeMillis();
             notificationService.sendNotification(userId, message);
@@ -108,11 +251,11 @@ class AsyncService {
             asyncMetrics.recordTaskDuration("notification", duration);
             asyncMetrics.recordTaskSuccess("notification");
             
-            return java.util.concurrent.CompletableFuture.completedFuture(true);
+            return true;
         } catch (Exception e) {
             log.error("Failed to send notification to user: {}", userId, e);
             asyncMetrics.recordTaskFailure("notification");
-            return java.util.concurrent.CompletableFuture.completedFuture(false);
+            return false;
         }
     }
 
@@ -159,6 +302,7 @@ class AsyncException extends RuntimeException {
 class AsyncMetrics {
     
     private final io.micrometer.core.instrument.MeterRegistry registry;
+    private final java.util.Map<String, ExecutorInstrumentation> executors = new java.util.concurrent.ConcurrentHashMap<>();
 
     public AsyncMetrics(io.micrometer.core.instrument.MeterRegistry registry) {
         this.registry = registry;
@@ -177,9 +321,23 @@ class AsyncMetrics {
         registry.counter("async.task.failure", "type", type).increment();
     }
 
-    public void recordQueueSize(String executor, int size) {
-        registry.gauge("async.queue.size", 
-            java.util.Collections.singletonList(
-                io.micrometer.core.instrument.Tag.of("executor", executor)), size);
+    /**
+     * Saturation metrics for an executor, created on first use
+     */
+    public ExecutorInstrumentation executor(String name, WorkloadClass workload) {
+        return executors.computeIfAbsent(name, key -> new ExecutorInstrumentation(key, workload.key(), registry));
+    }
+
+    /**
+     * Instrument a thread pool and initialize it
+     */
+    public ThreadPoolTaskExecutor instrument(String name, WorkloadClass workload,
+                                             ThreadPoolTaskExecutor executor) {
+        executor(name, workload).initialize(executor);
+        return executor;
+    }
+
+    public java.util.Collection<ExecutorInstrumentation> executors() {
+        return executors.values();
     }
 }
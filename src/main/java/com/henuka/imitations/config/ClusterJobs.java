@@ -0,0 +1,209 @@
+package com.henuka.imitations.config;
+
+import com.henuka.imitations.annotation.ClusterJob;
+import com.henuka.imitations.annotation.WorkloadClass;
+import com.henuka.imitations.repository.ScheduledJobLockRepository;
+import com.henuka.imitations.service.JobShard;
+import com.henuka.imitations.service.SchedulerNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link ClusterJob} scheduled methods under database leases, so each fires once per
+ * cluster rather than once per node.
+ *
+ * Every node heartbeats into {@code scheduler_nodes}; a sharded job is split across the nodes
+ * whose heartbeat is recent, in node id order, and each node leases only its own shard. While a
+ * job runs, its lease is renewed at a third of its length; a node that dies stops renewing and
+ * another node may take the job once the lease runs out. Each run records
+ * {@code scheduled.job.run} with the job, node and outcome.
+ */
+@org.springframework.stereotype.Component
+class ClusterJobs implements DisposableBean {
+
+    private final ScheduledJobLockRepository lockRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final String nodeId;
+    private final ScheduledExecutorService renewer;
+
+    // A node without a heartbeat for this long no longer gets shards
+    @Value("${app.scheduling.node-ttl-seconds:30}")
+    private long nodeTtlSeconds;
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ClusterJobs.class);
+
+    public ClusterJobs(ScheduledJobLockRepository lockRepository, MeterRegistry meterRegistry, SchedulerNode schedulerNode,
+                       WorkloadExecutors workloads) {
+        this.lockRepository = lockRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = schedulerNode.clusterLocks();
+        this.nodeId = schedulerNode.id();
+        this.renewer = workloads.scheduledPool("jobLeaseRenewer", WorkloadClass.BACKGROUND, 1);
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            lockRepository.heartbeat(nodeId, LocalDateTime.now());
+        }
+        log.info("Scheduler node {} ({} cluster locks)", nodeId, enabled ? "with" : "without");
+    }
+
+    @Override
+    public void destroy() {
+        renewer.shutdownNow();
+        if (enabled) {
+            // Leave at once so the remaining nodes pick up this node's shards on their next run
+            lockRepository.deleteNode(nodeId);
+        }
+    }
+
+    /**
+     * Keep this node in the live set and forget nodes long gone.
+     */
+    @Scheduled(fixedDelayString = "${app.scheduling.heartbeat-ms:10000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        lockRepository.heartbeat(nodeId, now);
+        lockRepository.deleteNodesSilentSince(now.minusSeconds(nodeTtlSeconds * 10));
+    }
+
+    /**
+     * Wrap a scheduled task in its cluster lock if its method has {@link ClusterJob}.
+     */
+    Runnable decorate(Runnable task) {
+        if (!(task instanceof ScheduledMethodRunnable scheduled)) {
+            return task;
+        }
+        ClusterJob settings = AnnotatedElementUtils.findMergedAnnotation(scheduled.getMethod(), ClusterJob.class);
+        if (settings == null) {
+            return task;
+        }
+        String job = settings.name().isBlank()
+            ? AopUtils.getTargetClass(scheduled.getTarget()).getSimpleName() + "." + scheduled.getMethod().getName()
+            : settings.name();
+        Duration lease = Duration.parse(settings.lease());
+        Duration minHold = Duration.parse(settings.minHold());
+        return () -> {
+            if (!enabled) {
+                task.run();
+            } else if (settings.sharded()) {
+                runShard(job, lease, minHold, task);
+            } else {
+                runLocked(job, job, null, lease, minHold, task);
+            }
+        };
+    }
+
+    private void runShard(String job, Duration lease, Duration minHold, Runnable task) {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> nodes = lockRepository.findLiveNodes(now.minusSeconds(nodeTtlSeconds));
+        int index = nodes.indexOf(nodeId);
+        if (index < 0) {
+            // Missed heartbeats (a long pause); rejoin and take a share from the next run on
+            lockRepository.heartbeat(nodeId, now);
+            log.warn("Node {} was not in the live set; skipping this run of {}", nodeId, job);
+            return;
+        }
+        JobShard shard = new JobShard(index, nodes.size());
+        // The shard count is part of the name, so nodes that see different live sets never share a lock
+        runLocked(job, job + "#" + index + "/" + nodes.size(), shard, lease, minHold, task);
+    }
+
+    private void runLocked(String job, String lockName, JobShard shard, Duration lease, Duration minHold,
+                           Runnable task) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        if (!lockRepository.tryLock(lockName, nodeId, startedAt, startedAt.plus(lease))) {
+            log.debug("Job {} is held by another node; skipping", lockName);
+            meterRegistry.counter("scheduled.job.skipped", "job", job, "node", nodeId).increment();
+            return;
+        }
+
+        long renewEvery = Math.max(lease.toMillis() / 3, 1000);
+        LeaseRenewal renewal = new LeaseRenewal(job, lockName, lease);
+        renewal.start(renewEvery);
+        long startTime = System.nanoTime();
+        String outcome = "success";
+        JobShard.set(shard);
+        try {
+            task.run();
+        } catch (RuntimeException | Error e) {
+            outcome = "failed";
+            throw e;
+        } finally {
+            JobShard.set(null);
+            // Before the release, so a late renewal cannot push the hold out to a full lease
+            renewal.stop();
+            long elapsedNanos = System.nanoTime() - startTime;
+            LocalDateTime finishedAt = LocalDateTime.now();
+            LocalDateTime heldUntil = startedAt.plus(minHold);
+            lockRepository.release(lockName, nodeId, finishedAt, heldUntil.isAfter(finishedAt) ? heldUntil : finishedAt,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), outcome);
+            meterRegistry.timer("scheduled.job.run", "job", job, "node", nodeId, "outcome", outcome)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Renews one run's lease until stopped. Stopping waits for a renewal in progress, and none
+     * runs after it.
+     */
+    private final class LeaseRenewal implements Runnable {
+        private final String job;
+        private final String lockName;
+        private final Duration lease;
+        private ScheduledFuture<?> future;
+        private boolean stopped;
+
+        LeaseRenewal(String job, String lockName, Duration lease) {
+            this.job = job;
+            this.lockName = lockName;
+            this.lease = lease;
+        }
+
+        synchronized void start(long renewEveryMillis) {
+            future = renewer.scheduleAtFixedRate(this, renewEveryMillis, renewEveryMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!stopped) {
+                renew(job, lockName, lease);
+            }
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            future.cancel(false);
+        }
+    }
+
+    private void renew(String job, String lockName, Duration lease) {
+        try {
+            if (!lockRepository.renew(lockName, nodeId, LocalDateTime.now().plus(lease))) {
+                // The run overran its lease and another node took the job; it keeps going here regardless
+                log.warn("Lost the lease on {} while running", lockName);
+                meterRegistry.counter("scheduled.job.lease_lost", "job", job, "node", nodeId).increment();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to renew the lease on {}", lockName, e);
+        }
+    }
+}
@@ -48,6 +48,8 @@ public class DatabaseConfig {
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // Let MySQL honour Statement.setFetchSize with a server-side cursor, so export streams stay bounded
+        config.addDataSourceProperty("useCursorFetch", "true");
         
         return new HikariDataSource(config);
     }
@@ -71,6 +73,9 @@ public class DatabaseConfig {
         properties.setProperty("hibernate.format_sql", "true");
         properties.setProperty("hibernate.use_sql_comments", "true");
         properties.setProperty("hibernate.generate_statistics", "true");
+        // Lazy associations load in batches instead of one query per row
+        properties.setProperty("hibernate.default_batch_fetch_size", "32");
+        properties.put("hibernate.session_factory.statement_inspector", new QueryCounter());
         em.setJpaProperties(properties);
 
         return em;
@@ -248,3 +248,64 @@ class SearchMetrics {
         registry.counter("elasticsearch.error", "operation", operation).increment();
     }
 }
+
+/**
+ * Rebuilds the products index from the database as a batch job, partitioned by product id
+ */
+@org.springframework.stereotype.Component
+class ProductReindexJob {
+
+    private final SearchService searchService;
+    private final com.henuka.imitations.repository.ProductRepository productRepository;
+    private final com.henuka.imitations.service.BatchJobRunner batchJobRunner;
+
+    @Value("${app.search.reindex.enabled:false}")
+    private boolean enabled;
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ProductReindexJob.class);
+
+    public ProductReindexJob(SearchService searchService,
+                             com.henuka.imitations.repository.ProductRepository productRepository,
+                             com.henuka.imitations.service.BatchJobRunner batchJobRunner) {
+        this.searchService = searchService;
+        this.productRepository = productRepository;
+        this.batchJobRunner = batchJobRunner;
+    }
+
+    /**
+     * Index every product; returns the number indexed
+     */
+    public int reindex() {
+        if (!enabled) {
+            log.debug("Product reindexing is disabled");
+            return 0;
+        }
+        com.henuka.imitations.service.BatchJob<com.henuka.imitations.model.Product, ProductDocument> job =
+            new com.henuka.imitations.service.BatchJob<>(
+                "product-reindex",
+                (partition, afterKey, limit) -> productRepository.findPartitionAfter(afterKey == null ? 0 : afterKey,
+                    partition.index(), partition.count(), org.springframework.data.domain.PageRequest.of(0, limit)),
+                com.henuka.imitations.model.Product::getId,
+                ProductReindexJob::toDocument,
+                searchService::bulkIndexProducts,
+                com.henuka.imitations.service.BatchJob.Settings.DEFAULTS
+                    .withCommitInterval(200)
+                    .withPartitions(2)
+                    .withSkipLimit(50)
+            );
+        return (int) batchJobRunner.run(job).written();
+    }
+
+    private static ProductDocument toDocument(com.henuka.imitations.model.Product product) {
+        if (product.getPrice() == null) {
+            throw new IllegalArgumentException("Product " + product.getId() + " has no price");
+        }
+        ProductDocument document = new ProductDocument();
+        document.setId(String.valueOf(product.getId()));
+        document.setName(product.getName());
+        document.setDescription(product.getDescription());
+        document.setCategory(product.getCategory());
+        document.setPrice(product.getPrice().doubleValue());
+        return document;
+    }
+}
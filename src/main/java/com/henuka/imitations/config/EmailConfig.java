@@ -6,7 +6,6 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.beans.factory.annotation.Value;
 import org.thymeleaf.spring6.SpringTemplateEngine;
-import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 import java.util.Properties;
 
 @Configuration
@@ -24,11 +23,21 @@ public class EmailConfig {
     @Value("${spring.mail.password}")
     private String mailPassword;
 
+    // Off for a local SMTP stand-in that neither authenticates nor speaks TLS
+    @Value("${spring.mail.properties.mail.smtp.auth:true}")
+    private boolean smtpAuth;
+
+    @Value("${spring.mail.properties.mail.smtp.starttls.enable:true}")
+    private boolean smtpStartTls;
+
+    @Value("${app.email.smtp.timeout-ms:10000}")
+    private int smtpTimeoutMillis;
+
     /**
      * Configure mail sender
      */
     @Bean
-    public JavaMailSender javaMailSender() {
+    public JavaMailSenderImpl javaMailSender() {
         JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
         mailSender.setHost(mailHost);
         mailSender.setPort(mailPort);
@@ -37,36 +46,16 @@ public class EmailConfig {
 
         Properties props = mailSender.getJavaMailProperties();
         props.put("mail.transport.protocol", "smtp");
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.auth", String.valueOf(smtpAuth));
+        props.put("mail.smtp.starttls.enable", String.valueOf(smtpStartTls));
+        // Outbox senders hold connections open; a hung server must not stall them
+        props.put("mail.smtp.connectiontimeout", String.valueOf(smtpTimeoutMillis));
+        props.put("mail.smtp.timeout", String.valueOf(smtpTimeoutMillis));
+        props.put("mail.smtp.writetimeout", String.valueOf(smtpTimeoutMillis));
         props.put("mail.debug", "false");
 
         return mailSender;
     }
-
-    /**
-     * Configure template resolver
-     */
-    @Bean
-    public ClassLoaderTemplateResolver emailTemplateResolver() {
-        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
-        resolver.setPrefix("templates/email/");
-        resolver.setSuffix(".html");
-        resolver.setTemplateMode("HTML");
-        resolver.setCharacterEncoding("UTF-8");
-        resolver.setCacheable(false);
-        return resolver;
-    }
-
-    /**
-     * Configure template engine
-     */
-    @Bean
-    public SpringTemplateEngine emailTemplateEngine() {
-        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
-        templateEngine.setTemplateResolver(emailTemplateResolver());
-        return templateEngine;
-    }
 }
 
 /**
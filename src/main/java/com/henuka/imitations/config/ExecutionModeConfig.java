@@ -0,0 +1,225 @@
+package com.henuka.imitations.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadFactory;
+
+@Configuration
+public class ExecutionModeConfig {
+
+    /**
+     * Configure Tomcat to run each request on its own virtual thread in virtual mode
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutionMode executionMode) {
+        return protocolHandler -> {
+            if (executionMode.isVirtual()) {
+                ThreadFactory factory = executionMode.threadFactory("http-");
+                // Concurrency is bounded by Tomcat's max connections and the downstream limits, not a pool
+                protocolHandler.setExecutor(command -> factory.newThread(command).start());
+            }
+        };
+    }
+
+    /**
+     * Configure a permit limit on JDBC connections in virtual mode; waiting for a permit is bounded
+     * by the pool's connection timeout, as waiting for a connection would be
+     */
+    @Bean
+    public static BeanPostProcessor jdbcConcurrencyLimiter(
+            @Value("${app.execution.mode:platform}") String mode,
+            @Value("${app.execution.limits.jdbc:10}") int jdbcLimit,
+            @Value("${spring.datasource.hikari.connection-timeout:30000}") long connectionTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // Same condition as ExecutionMode, which is not available this early
+                if (bean instanceof DataSource dataSource && "virtual".equalsIgnoreCase(mode)
+                        && Runtime.version().feature() >= 21) {
+                    long timeoutMs = dataSource instanceof com.zaxxer.hikari.HikariDataSource hikari
+                        ? hikari.getConnectionTimeout()
+                        : connectionTimeoutMs;
+                    return new PermitLimitedDataSource(dataSource, jdbcLimit, timeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+}
+
+/**
+ * Chosen execution mode: platform thread pools, or a virtual thread per task.
+ *
+ * Virtual threads need Java 21; the project targets 17, so they are created reflectively and the
+ * mode falls back to platform threads (with a warning) on an older runtime.
+ *
+ * To find virtual threads pinned by monitors, start the JVM with
+ * {@code -Djdk.tracePinnedThreads=short}; the JDK reads it once, so it cannot be set from here.
+ */
+@org.springframework.stereotype.Component
+class ExecutionMode {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExecutionMode.class);
+
+    private final boolean virtual;
+
+    public ExecutionMode(@Value("${app.execution.mode:platform}") String mode) {
+        boolean requested = "virtual".equalsIgnoreCase(mode);
+        boolean available = requested && virtualThreadFactory("probe-") != null;
+        if (requested && !available) {
+            log.warn("Virtual threads need Java 21 or later (running {}); using platform threads",
+                Runtime.version());
+        }
+        this.virtual = available;
+        log.info("Execution mode: {}", virtual ? "virtual threads" : "platform threads");
+    }
+
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Factory for virtual threads named {@code prefix0}, {@code prefix1}, ...
+     */
+    ThreadFactory threadFactory(String prefix) {
+        ThreadFactory factory = virtualThreadFactory(prefix);
+        if (factory == null) {
+            throw new IllegalStateException("Virtual threads are not available");
+        }
+        return factory;
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory(), or null before Java 21
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
+
+/**
+ * Task executor that starts a virtual thread per task and bounds how many run at once with a
+ * semaphore for the downstream resource the tasks use. Waiting tasks park instead of queueing.
+ */
+class VirtualThreadTaskExecutor implements org.springframework.core.task.TaskExecutor {
+
+    private final ThreadFactory threadFactory;
+    private final java.util.concurrent.Semaphore permits;
+    private final java.util.concurrent.atomic.AtomicInteger waiting = new java.util.concurrent.atomic.AtomicInteger();
+    private final int limit;
+    private final ExecutorInstrumentation instrumentation;
+
+    VirtualThreadTaskExecutor(ThreadFactory threadFactory, int limit,
+                              io.micrometer.core.instrument.MeterRegistry meterRegistry,
+                              ExecutorInstrumentation instrumentation) {
+        this.threadFactory = threadFactory;
+        this.permits = new java.util.concurrent.Semaphore(limit, true);
+        this.limit = limit;
+        this.instrumentation = instrumentation;
+        io.micrometer.core.instrument.Tags tags = io.micrometer.core.instrument.Tags.of("name", instrumentation.name());
+        meterRegistry.gauge("executor.permits.waiting", tags, waiting);
+        meterRegistry.gauge("executor.permits.in_use", tags, permits, p -> limit - p.availablePermits());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        // Tasks parked on the semaphore are this executor's queue
+        instrumentation.submitted(waiting.get(), limit - permits.availablePermits());
+        long submittedAt = System.nanoTime();
+        threadFactory.newThread(() -> {
+            waiting.incrementAndGet();
+            permits.acquireUninterruptibly();
+            waiting.decrementAndGet();
+            long startedAt = System.nanoTime();
+            instrumentation.waited(startedAt - submittedAt);
+            try {
+                task.run();
+            } finally {
+                permits.release();
+                instrumentation.ran(System.nanoTime() - startedAt);
+            }
+        }).start();
+    }
+}
+
+/**
+ * DataSource that holds a permit per open connection.
+ *
+ * The JDBC driver guards its socket with monitors, so a virtual thread in a query stays pinned to
+ * its carrier. Keeping the number of open connections bounded keeps that many carriers at most
+ * pinned, and threads beyond the limit park on the semaphore instead of in the pool.
+ *
+ * A thread that already holds a connection and asks for a second (a REQUIRES_NEW transaction)
+ * can wait on threads doing the same, so the wait is bounded and ends in the same
+ * {@link java.sql.SQLTransientConnectionException} the pool throws when it runs dry.
+ */
+class PermitLimitedDataSource extends org.springframework.jdbc.datasource.DelegatingDataSource {
+
+    private final java.util.concurrent.Semaphore permits;
+    private final long timeoutMs;
+
+    PermitLimitedDataSource(DataSource target, int limit, long timeoutMs) {
+        super(target);
+        this.permits = new java.util.concurrent.Semaphore(limit, true);
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public java.sql.Connection getConnection() throws java.sql.SQLException {
+        return limited(() -> super.getConnection());
+    }
+
+    @Override
+    public java.sql.Connection getConnection(String username, String password) throws java.sql.SQLException {
+        return limited(() -> super.getConnection(username, password));
+    }
+
+    private java.sql.Connection limited(ConnectionSupplier supplier) throws java.sql.SQLException {
+        try {
+            if (!permits.tryAcquire(timeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+                throw new java.sql.SQLTransientConnectionException(
+                    "JDBC permit not available, request timed out after " + timeoutMs + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.sql.SQLTransientConnectionException("Interrupted while waiting for a JDBC permit", e);
+        }
+        java.sql.Connection connection;
+        try {
+            connection = supplier.get();
+        } catch (java.sql.SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        // Release the permit exactly once, when the connection goes back to the pool
+        java.util.concurrent.atomic.AtomicBoolean released = new java.util.concurrent.atomic.AtomicBoolean();
+        return (java.sql.Connection) java.lang.reflect.Proxy.newProxyInstance(
+            java.sql.Connection.class.getClassLoader(),
+            new Class<?>[] {java.sql.Connection.class},
+            (proxy, method, args) -> {
+                try {
+                    return method.invoke(connection, args);
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    throw e.getTargetException();
+                } finally {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+            });
+    }
+
+    private interface ConnectionSupplier {
+        java.sql.Connection get() throws java.sql.SQLException;
+    }
+}
@@ -0,0 +1,313 @@
+package com.henuka.imitations.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Saturation metrics for one executor, all tagged {@code name} and {@code workload}:
+ * <ul>
+ *   <li>{@code executor.queue.wait}: submission to start; for the scheduler, how late a task started</li>
+ *   <li>{@code executor.run}: time spent running a task</li>
+ *   <li>{@code executor.queue.depth}, {@code executor.active.threads}: sampled at each submission</li>
+ *   <li>{@code executor.rejected}: tasks the pool refused, whatever its policy then did with them</li>
+ * </ul>
+ * The timers and summaries publish Prometheus histogram buckets. Thread pools also get Micrometer's
+ * executor gauges ({@code executor.active}, {@code executor.queued}, {@code executor.pool.size},
+ * {@code executor.pool.core}, ...) under the same name.
+ */
+final class ExecutorInstrumentation {
+
+    private final String name;
+    private final Tags tags;
+    private final MeterRegistry registry;
+    private final Timer queueWait;
+    private final Timer run;
+    private final Counter rejected;
+    private final DistributionSummary queueDepth;
+    private final DistributionSummary activeThreads;
+
+    // Set once the pool exists; null for executors without one (virtual threads)
+    private volatile ThreadPoolExecutor pool;
+    private volatile boolean resizable;
+
+    // Queue wait since the adaptive controller last looked
+    private final LongAdder windowWaitNanos = new LongAdder();
+    private final LongAdder windowTasks = new LongAdder();
+
+    ExecutorInstrumentation(String name, String workload, MeterRegistry registry) {
+        this.name = name;
+        this.tags = Tags.of("workload", workload);
+        this.registry = registry;
+        Tags all = tags.and("name", name);
+        this.queueWait = Timer.builder("executor.queue.wait").tags(all)
+            .publishPercentileHistogram().register(registry);
+        this.run = Timer.builder("executor.run").tags(all)
+            .publishPercentileHistogram().register(registry);
+        this.rejected = Counter.builder("executor.rejected").tags(all).register(registry);
+        this.queueDepth = DistributionSummary.builder("executor.queue.depth").tags(all)
+            .publishPercentileHistogram().register(registry);
+        this.activeThreads = DistributionSummary.builder("executor.active.threads").tags(all)
+            .publishPercentileHistogram().register(registry);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Instrument a pool and initialize it; use in place of {@code executor.initialize()}.
+     */
+    void initialize(ThreadPoolTaskExecutor executor) {
+        // Decorated at submission, so the wrapper knows when the task was queued
+        executor.setTaskDecorator(this::decorate);
+        executor.initialize();
+        bind(executor.getThreadPoolExecutor());
+        resizable = true;
+    }
+
+    /**
+     * Scheduled pool of {@code size} threads; queue wait is how late each run started.
+     */
+    ScheduledThreadPoolExecutor scheduledPool(int size, int priority) {
+        ScheduledThreadPoolExecutor scheduler = new InstrumentedScheduledThreadPool(size, priority, this);
+        bind(scheduler);
+        return scheduler;
+    }
+
+    ThreadPoolExecutor pool() {
+        return resizable ? pool : null;
+    }
+
+    void submitted(int queued, int active) {
+        queueDepth.record(queued);
+        activeThreads.record(active);
+    }
+
+    void waited(long nanos) {
+        queueWait.record(nanos, TimeUnit.NANOSECONDS);
+        windowWaitNanos.add(nanos);
+        windowTasks.increment();
+    }
+
+    void ran(long nanos) {
+        run.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Mean queue wait in milliseconds since the last call, and how many tasks it covers.
+     */
+    QueueWait drainWindow() {
+        long tasks = windowTasks.sumThenReset();
+        long waitNanos = windowWaitNanos.sumThenReset();
+        return new QueueWait(tasks, tasks == 0 ? 0 : waitNanos / tasks / 1_000_000.0);
+    }
+
+    private Runnable decorate(Runnable task) {
+        ThreadPoolExecutor current = pool;
+        if (current != null) {
+            submitted(current.getQueue().size(), current.getActiveCount());
+        }
+        long submittedAt = System.nanoTime();
+        return () -> {
+            long startedAt = System.nanoTime();
+            waited(startedAt - submittedAt);
+            try {
+                task.run();
+            } finally {
+                ran(System.nanoTime() - startedAt);
+            }
+        };
+    }
+
+    private void bind(ThreadPoolExecutor executor) {
+        this.pool = executor;
+        RejectedExecutionHandler policy = executor.getRejectedExecutionHandler();
+        executor.setRejectedExecutionHandler((task, rejectedBy) -> {
+            rejected.increment();
+            policy.rejectedExecution(task, rejectedBy);
+        });
+        new ExecutorServiceMetrics(executor, name, tags).bindTo(registry);
+    }
+
+    record QueueWait(long tasks, double meanMillis) {
+    }
+
+    private static final class InstrumentedScheduledThreadPool extends ScheduledThreadPoolExecutor {
+
+        private final ExecutorInstrumentation instrumentation;
+        private final ThreadLocal<Long> startedAt = new ThreadLocal<>();
+
+        InstrumentedScheduledThreadPool(int size, int priority, ExecutorInstrumentation instrumentation) {
+            super(size, new NamedThreadFactory(instrumentation.name() + "-", priority));
+            this.instrumentation = instrumentation;
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            // A scheduled task's delay goes negative once it is due; that is how long it waited
+            if (task instanceof Delayed delayed) {
+                instrumentation.waited(Math.max(0, -delayed.getDelay(TimeUnit.NANOSECONDS)));
+            }
+            startedAt.set(System.nanoTime());
+        }
+
+        @Override
+        protected void afterExecute(Runnable task, Throwable failure) {
+            Long start = startedAt.get();
+            if (start != null) {
+                instrumentation.ran(System.nanoTime() - start);
+                startedAt.remove();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final String prefix;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix, int priority) {
+            this.prefix = prefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+}
+
+/**
+ * Moves each thread pool's core size within bounds from its queue wait and, optionally, the latency
+ * of the downstream its tasks call.
+ *
+ * Every interval, per pool: if the downstream is slower than its limit the pool gives up a thread,
+ * since more concurrency would only add to the pile-up there; otherwise a mean queue wait above the
+ * target adds a thread, and one well under it with idle threads removes one. One step per interval
+ * keeps the pool from swinging on a single burst. Bounds and downstream are set per executor under
+ * {@code app.async.adaptive.<executor>}, defaulting to the pool's configured core and maximum sizes.
+ */
+@org.springframework.stereotype.Component
+class AdaptivePoolController {
+
+    private final AsyncMetrics asyncMetrics;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    @Value("${app.async.adaptive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.async.adaptive.target-queue-wait-ms:50}")
+    private double targetQueueWaitMillis;
+
+    // Configured sizes, and the downstream timer's totals at the last look, per executor
+    private final Map<String, int[]> configured = new ConcurrentHashMap<>();
+    private final Map<String, double[]> downstreamSeen = new ConcurrentHashMap<>();
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AdaptivePoolController.class);
+
+    public AdaptivePoolController(AsyncMetrics asyncMetrics, MeterRegistry meterRegistry, Environment environment) {
+        this.asyncMetrics = asyncMetrics;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @Scheduled(fixedDelayString = "${app.async.adaptive.interval-ms:10000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        for (ExecutorInstrumentation executor : asyncMetrics.executors()) {
+            ThreadPoolExecutor pool = executor.pool();
+            if (pool == null) {
+                continue;
+            }
+            try {
+                adjust(executor, pool);
+            } catch (Exception e) {
+                log.error("Failed to adjust pool size of {}", executor.name(), e);
+            }
+        }
+    }
+
+    private void adjust(ExecutorInstrumentation executor, ThreadPoolExecutor pool) {
+        String name = executor.name();
+        int[] sizes = configured.computeIfAbsent(name,
+            key -> new int[] {pool.getCorePoolSize(), pool.getMaximumPoolSize()});
+        String prefix = "app.async.adaptive." + name + ".";
+        int minCore = environment.getProperty(prefix + "min-core", Integer.class, sizes[0]);
+        int maxCore = Math.max(minCore, environment.getProperty(prefix + "max-core", Integer.class, sizes[1]));
+
+        ExecutorInstrumentation.QueueWait wait = executor.drainWindow();
+        double downstreamMillis = downstreamLatency(name, environment.getProperty(prefix + "downstream-timer"));
+        double downstreamLimit = environment.getProperty(prefix + "max-downstream-latency-ms", Double.class, Double.MAX_VALUE);
+
+        int core = pool.getCorePoolSize();
+        int target = core;
+        if (downstreamMillis > downstreamLimit) {
+            target = core - 1;
+        } else if (wait.tasks() > 0 && wait.meanMillis() > targetQueueWaitMillis) {
+            target = core + 1;
+        } else if (wait.meanMillis() < targetQueueWaitMillis / 4 && pool.getActiveCount() < core / 2) {
+            target = core - 1;
+        }
+        target = Math.max(minCore, Math.min(maxCore, target));
+        if (target == core) {
+            return;
+        }
+
+        // The maximum never drops below what was configured, and grows with the core when it must
+        if (target > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(target);
+            pool.setCorePoolSize(target);
+        } else {
+            pool.setCorePoolSize(target);
+            pool.setMaximumPoolSize(Math.max(sizes[1], target));
+        }
+        meterRegistry.counter("executor.resize", "name", name, "direction", target > core ? "up" : "down").increment();
+        log.info("Executor {} core size {} -> {} (queue wait {} ms, downstream {} ms)", name, core, target,
+            String.format("%.1f", wait.meanMillis()), downstreamMillis < 0 ? "n/a" : String.format("%.1f", downstreamMillis));
+    }
+
+    // Mean of the named timer, across all its tags, since the last look; -1 if there is nothing new
+    private double downstreamLatency(String executor, String timerName) {
+        if (timerName == null) {
+            return -1;
+        }
+        Collection<Timer> timers = meterRegistry.find(timerName).timers();
+        double count = 0;
+        double totalMillis = 0;
+        for (Timer timer : timers) {
+            count += timer.count();
+            totalMillis += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        double[] previous = downstreamSeen.put(executor, new double[] {count, totalMillis});
+        if (previous == null || count <= previous[0]) {
+            return -1;
+        }
+        return (totalMillis - previous[1]) / (count - previous[0]);
+    }
+}
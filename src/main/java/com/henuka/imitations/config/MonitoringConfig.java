@@ -220,3 +220,71 @@ class CustomMetricsEndpoint {
         return metrics;
     }
 }
+
+/**
+ * Batch job progress, from their checkpoints: {@code /actuator/batchjobs} for every job and
+ * {@code /actuator/batchjobs/{name}} for one job's partitions and recently skipped items
+ */
+@org.springframework.stereotype.Component
+@org.springframework.boot.actuate.endpoint.annotation.Endpoint(id = "batchjobs")
+class BatchJobsEndpoint {
+
+    private final com.henuka.imitations.repository.BatchCheckpointRepository checkpointRepository;
+
+    public BatchJobsEndpoint(com.henuka.imitations.repository.BatchCheckpointRepository checkpointRepository) {
+        this.checkpointRepository = checkpointRepository;
+    }
+
+    @org.springframework.boot.actuate.endpoint.annotation.ReadOperation
+    public java.util.Map<String, Object> jobs() {
+        java.util.Map<String, Object> jobs = new java.util.TreeMap<>();
+        checkpointRepository.findAll().stream()
+                .collect(java.util.stream.Collectors.groupingBy(
+                    com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint::jobName))
+                .forEach((name, partitions) -> jobs.put(name, summary(partitions)));
+        return jobs;
+    }
+
+    @org.springframework.boot.actuate.endpoint.annotation.ReadOperation
+    public java.util.Map<String, Object> job(@org.springframework.boot.actuate.endpoint.annotation.Selector String name) {
+        java.util.List<com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint> partitions =
+                checkpointRepository.findByJob(name);
+        if (partitions.isEmpty()) {
+            return null;
+        }
+        java.util.Map<String, Object> job = summary(partitions);
+        job.put("partitions", partitions);
+        job.put("recentlySkipped", checkpointRepository.findSkippedKeys(name, 50));
+        return job;
+    }
+
+    // A job is running while any partition is, and otherwise as bad as its worst partition
+    private static java.util.Map<String, Object> summary(
+            java.util.List<com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint> partitions) {
+        java.util.Set<com.henuka.imitations.repository.BatchCheckpointRepository.Status> statuses = partitions.stream()
+                .map(com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint::status)
+                .collect(java.util.stream.Collectors.toSet());
+        com.henuka.imitations.repository.BatchCheckpointRepository.Status status = java.util.stream.Stream.of(
+                    com.henuka.imitations.repository.BatchCheckpointRepository.Status.RUNNING,
+                    com.henuka.imitations.repository.BatchCheckpointRepository.Status.FAILED,
+                    com.henuka.imitations.repository.BatchCheckpointRepository.Status.STOPPED)
+                .filter(statuses::contains)
+                .findFirst()
+                .orElse(com.henuka.imitations.repository.BatchCheckpointRepository.Status.COMPLETED);
+
+        java.util.Map<String, Object> summary = new java.util.LinkedHashMap<>();
+        summary.put("status", status);
+        summary.put("partitionCount", partitions.size());
+        summary.put("read", partitions.stream().mapToLong(c -> c.read()).sum());
+        summary.put("written", partitions.stream().mapToLong(c -> c.written()).sum());
+        summary.put("filtered", partitions.stream().mapToLong(c -> c.filtered()).sum());
+        summary.put("skipped", partitions.stream().mapToLong(c -> c.skipped()).sum());
+        summary.put("startedAt", partitions.stream()
+                .map(com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint::startedAt)
+                .min(java.util.Comparator.naturalOrder()).orElse(null));
+        summary.put("updatedAt", partitions.stream()
+                .map(com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint::updatedAt)
+                .max(java.util.Comparator.naturalOrder()).orElse(null));
+        return summary;
+    }
+}
@@ -0,0 +1,202 @@
+package com.henuka.imitations.config;
+
+import com.henuka.imitations.annotation.QueryBudget;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class QueryBudgetConfig implements WebMvcConfigurer {
+
+    private final QueryBudgetInterceptor queryBudgetInterceptor;
+
+    public QueryBudgetConfig(QueryBudgetInterceptor queryBudgetInterceptor) {
+        this.queryBudgetInterceptor = queryBudgetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(queryBudgetInterceptor);
+    }
+}
+
+/**
+ * Counts SQL statements prepared on the current thread. Registered with Hibernate as
+ * the session factory statement inspector in DatabaseConfig. When enforcing, the statement
+ * that takes a request over its budget fails as it is prepared, before anything is written
+ * to the response. Tests can also record the statements, to check the SQL Hibernate generates.
+ */
+class QueryCounter implements org.hibernate.resource.jdbc.spi.StatementInspector {
+
+    private static final ThreadLocal<Tally> TALLY = new ThreadLocal<>();
+
+    static void start(boolean enforce) {
+        TALLY.set(new Tally(enforce));
+    }
+
+    /**
+     * Starts counting without a budget, keeping each statement for {@link #statements()}
+     */
+    static void record() {
+        Tally tally = new Tally(false);
+        tally.statements = new java.util.ArrayList<>();
+        TALLY.set(tally);
+    }
+
+    static java.util.List<String> statements() {
+        Tally tally = TALLY.get();
+        return tally != null && tally.statements != null ? java.util.List.copyOf(tally.statements) : java.util.List.of();
+    }
+
+    static int stop() {
+        Tally tally = TALLY.get();
+        TALLY.remove();
+        return tally != null ? tally.count : 0;
+    }
+
+    /**
+     * Sets the budget of the handler serving the current request; statements already
+     * counted, by the security filters say, count against it
+     */
+    static void limit(int budget, String handler) {
+        Tally tally = TALLY.get();
+        if (tally != null) {
+            tally.budget = budget;
+            tally.handler = handler;
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Tally tally = TALLY.get();
+        if (tally != null && tally.statements != null) {
+            tally.statements.add(sql);
+        }
+        if (tally != null && ++tally.count > tally.budget && tally.enforce) {
+            throw new QueryBudgetExceededException(String.format(
+                "%s issued more than its budget of %d SQL statements, at: %s", tally.handler, tally.budget, sql));
+        }
+        return sql;
+    }
+
+    private static final class Tally {
+        final boolean enforce;
+        int count;
+        int budget = Integer.MAX_VALUE;
+        String handler;
+        java.util.List<String> statements;
+
+        Tally(boolean enforce) {
+            this.enforce = enforce;
+        }
+    }
+}
+
+/**
+ * Records the declared budget of the handler that will serve the request
+ */
+@org.springframework.stereotype.Component
+class QueryBudgetInterceptor implements org.springframework.web.servlet.HandlerInterceptor {
+
+    static final String BUDGET_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".budget";
+    static final String HANDLER_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".handler";
+
+    @Override
+    public boolean preHandle(jakarta.servlet.http.HttpServletRequest request,
+                           jakarta.servlet.http.HttpServletResponse response,
+                           Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod) {
+            QueryBudget budget = handlerMethod.getMethodAnnotation(QueryBudget.class);
+            if (budget != null) {
+                request.setAttribute(BUDGET_ATTRIBUTE, budget.value());
+                request.setAttribute(HANDLER_ATTRIBUTE, handlerMethod.getShortLogMessage());
+                QueryCounter.limit(budget.value(), handlerMethod.getShortLogMessage());
+            }
+        }
+        return true;
+    }
+}
+
+/**
+ * Counts statements across the whole request, view rendering included, and records them
+ * against the budget set by QueryBudgetInterceptor. Enforcement happens in QueryCounter,
+ * at the statement that goes over; here an overrun is only counted, and logged when not enforcing.
+ */
+@org.springframework.stereotype.Component
+class QueryBudgetFilter extends org.springframework.web.filter.OncePerRequestFilter {
+
+    private final QueryBudgetMetrics queryBudgetMetrics;
+    private final boolean enforce;
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(QueryBudgetFilter.class);
+
+    public QueryBudgetFilter(QueryBudgetMetrics queryBudgetMetrics,
+                           @Value("${app.query-budget.enforce:false}") boolean enforce) {
+        this.queryBudgetMetrics = queryBudgetMetrics;
+        this.enforce = enforce;
+    }
+
+    @Override
+    protected void doFilterInternal(jakarta.servlet.http.HttpServletRequest request,
+                                  jakarta.servlet.http.HttpServletResponse response,
+                                  jakarta.servlet.FilterChain filterChain)
+            throws jakarta.servlet.ServletException, java.io.IOException {
+        QueryCounter.start(enforce);
+        int queries;
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            queries = QueryCounter.stop();
+            record(request, queries);
+        }
+    }
+
+    private void record(jakarta.servlet.http.HttpServletRequest request, int queries) {
+        Object budget = request.getAttribute(QueryBudgetInterceptor.BUDGET_ATTRIBUTE);
+        if (budget == null) {
+            return;
+        }
+
+        String handler = (String) request.getAttribute(QueryBudgetInterceptor.HANDLER_ATTRIBUTE);
+        queryBudgetMetrics.recordQueries(handler, queries);
+
+        if (queries > (Integer) budget) {
+            queryBudgetMetrics.recordExceeded(handler);
+            if (!enforce) {
+                log.warn("{} issued {} SQL statements, budget is {}", handler, queries, budget);
+            }
+        }
+    }
+}
+
+/**
+ * Query budget exceeded exception
+ */
+class QueryBudgetExceededException extends RuntimeException {
+
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
+
+/**
+ * Query budget metrics
+ */
+@org.springframework.stereotype.Component
+class QueryBudgetMetrics {
+
+    private final io.micrometer.core.instrument.MeterRegistry registry;
+
+    public QueryBudgetMetrics(io.micrometer.core.instrument.MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordQueries(String handler, int queries) {
+        registry.summary("http.request.queries", "handler", handler).record(queries);
+    }
+
+    public void recordExceeded(String handler) {
+        registry.counter("http.request.queries.budget.exceeded", "handler", handler).increment();
+    }
+}
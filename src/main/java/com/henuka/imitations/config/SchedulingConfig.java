@@ -1,18 +1,38 @@
 package com.henuka.imitations.config;
 
+import com.henuka.imitations.annotation.ClusterJob;
+import com.henuka.imitations.annotation.Workload;
+import com.henuka.imitations.annotation.WorkloadClass;
+import com.henuka.imitations.service.BulkRefundService;
+import com.henuka.imitations.service.DailySalesReportService;
+import com.henuka.imitations.service.EmailOutboxDispatcher;
+import com.henuka.imitations.service.OrderArchiveService;
+import com.henuka.imitations.service.OrderService;
+import com.henuka.imitations.service.PaymentEventDispatcher;
+import com.henuka.imitations.service.PaymentReconciliationService;
+import com.henuka.imitations.service.PaymentWebhookService;
+import com.henuka.imitations.service.ProductService;
+import com.henuka.imitations.service.SalesRollupService;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 @Configuration
 @EnableScheduling
 @EnableAsync
 public class SchedulingConfig implements SchedulingConfigurer {
 
+    private final WorkloadExecutors workloads;
+    private final ClusterJobs clusterJobs;
+
+    public SchedulingConfig(WorkloadExecutors workloads, ClusterJobs clusterJobs) {
+        this.workloads = workloads;
+        this.clusterJobs = clusterJobs;
+    }
+
     /**
      * Configure task scheduler
      */
@@ -22,11 +42,12 @@ public class SchedulingConfig implements SchedulingConfigurer {
     }
 
     /**
-     * Create task scheduler
+     * Create task scheduler; each @Scheduled method runs on its @Workload class's threads, and
+     * a @ClusterJob method only on the node holding its lock
      */
-    @org.springframework.context.annotation.Bean(destroyMethod = "shutdown")
-    public Executor taskScheduler() {
-        return Executors.newScheduledThreadPool(10);
+    @org.springframework.context.annotation.Bean
+    public TaskScheduler taskScheduler() {
+        return workloads.scheduler(clusterJobs::decorate);
     }
 }
 
@@ -38,26 +59,52 @@ class ScheduledTasksService {
     
     private final ProductService productService;
     private final OrderService orderService;
-    private final EmailService emailService;
+    private final SalesRollupService salesRollupService;
+    private final OrderArchiveService orderArchiveService;
+    private final DailySalesReportService dailySalesReportService;
+    private final PaymentWebhookService paymentWebhookService;
+    private final PaymentReconciliationService paymentReconciliationService;
+    private final BulkRefundService bulkRefundService;
+    private final PaymentEventDispatcher paymentEventDispatcher;
+    private final EmailOutboxDispatcher emailOutboxDispatcher;
+    private final ProductReindexJob productReindexJob;
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ScheduledTasksService.class);
 
     public ScheduledTasksService(ProductService productService,
                                OrderService orderService,
-                               EmailService emailService) {
+                               SalesRollupService salesRollupService,
+                               OrderArchiveService orderArchiveService,
+                               DailySalesReportService dailySalesReportService,
+                               PaymentWebhookService paymentWebhookService,
+                               PaymentReconciliationService paymentReconciliationService,
+                               BulkRefundService bulkRefundService,
+                               PaymentEventDispatcher paymentEventDispatcher,
+                               EmailOutboxDispatcher emailOutboxDispatcher,
+                               ProductReindexJob productReindexJob) {
         this.productService = productService;
         this.orderService = orderService;
-        this.emailService = emailService;
+        this.salesRollupService = salesRollupService;
+        this.orderArchiveService = orderArchiveService;
+        this.dailySalesReportService = dailySalesReportService;
+        this.paymentWebhookService = paymentWebhookService;
+        this.paymentReconciliationService = paymentReconciliationService;
+        this.bulkRefundService = bulkRefundService;
+        this.paymentEventDispatcher = paymentEventDispatcher;
+        this.emailOutboxDispatcher = emailOutboxDispatcher;
+        this.productReindexJob = productReindexJob;
     }
 
     /**
      * Update product inventory daily
      */
     @org.springframework.scheduling.annotation.Scheduled(cron = "0 0 1 * * ?") // 1 AM daily
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT30M", minHold = "PT10M")
     public void updateProductInventory() {
         try {
             log.info("Starting daily inventory update");
-            productService.updateInventory();
-            log.info("Completed daily inventory update");
+            int updated = productService.updateInventory();
+            log.info("Completed daily inventory update of {} product(s)", updated);
         } catch (Exception e) {
             log.error("Failed to update inventory", e);
         }
@@ -67,6 +114,8 @@ class ScheduledTasksService {
      * Process pending orders every 5 minutes
      */
     @org.springframework.scheduling.annotation.Scheduled(fixedRate = 300000) // 5 minutes
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(sharded = true, minHold = "PT4M")
     public void processPendingOrders() {
         try {
             log.info("Processing pending orders");
@@ -77,30 +126,139 @@ class ScheduledTasksService {
         }
     }
 
+    /**
+     * Re-queue payment webhooks that were stored but not applied
+     */
+    @org.springframework.scheduling.annotation.Scheduled(fixedDelay = 60000) // 1 minute
+    @ClusterJob(lease = "PT2M", minHold = "PT50S")
+    public void requeuePaymentWebhooks() {
+        try {
+            paymentWebhookService.requeueStalled();
+        } catch (Exception e) {
+            log.error("Failed to re-queue payment webhooks", e);
+        }
+    }
+
+    /**
+     * Resume bulk refund jobs whose runner stopped reporting, e.g. after a node restart
+     */
+    @org.springframework.scheduling.annotation.Scheduled(fixedDelayString = "${app.payment.bulk-refund.resume-scan-ms:60000}")
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT2M", minHold = "PT50S")
+    public void resumeBulkRefunds() {
+        try {
+            int resumed = bulkRefundService.resumeStalled();
+            if (resumed > 0) {
+                log.info("Resumed {} stalled bulk refund job(s)", resumed);
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume bulk refund jobs", e);
+        }
+    }
+
+    /**
+     * Deliver payment events written by other nodes and retry failed handlers
+     */
+    @org.springframework.scheduling.annotation.Scheduled(fixedDelay = 5000) // 5 seconds
+    public void dispatchPaymentEvents() {
+        paymentEventDispatcher.requestDispatch();
+    }
+
+    /**
+     * Send queued emails, retry failed ones and refresh the queue depth
+     */
+    @org.springframework.scheduling.annotation.Scheduled(fixedDelay = 5000) // 5 seconds
+    public void dispatchEmails() {
+        try {
+            emailOutboxDispatcher.poll();
+        } catch (Exception e) {
+            log.error("Failed to poll the email outbox", e);
+        }
+    }
+
+    /**
+     * Reconcile the previous hour's gateway payments against payment orders
+     */
+    @org.springframework.scheduling.annotation.Scheduled(cron = "0 15 * * * ?") // 15 minutes past every hour
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT10M", minHold = "PT10M")
+    public void reconcilePayments() {
+        try {
+            java.time.LocalDateTime end = java.time.LocalDateTime.now().truncatedTo(java.time.temporal.ChronoUnit.HOURS);
+            paymentReconciliationService.reconcile(end.minusHours(1), end);
+        } catch (Exception e) {
+            log.error("Failed to reconcile payments", e);
+        }
+    }
+
+    /**
+     * Seal the previous hour's sales rollup so unpaid orders are counted too
+     */
+    @org.springframework.scheduling.annotation.Scheduled(cron = "0 5 * * * ?") // 5 minutes past every hour
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(minHold = "PT10M")
+    public void rollupPreviousHour() {
+        try {
+            salesRollupService.refreshHourAndDay(java.time.LocalDateTime.now().minusHours(1));
+        } catch (Exception e) {
+            log.error("Failed to roll up previous hour", e);
+        }
+    }
+
     /**
      * Send daily sales report
      */
     @org.springframework.scheduling.annotation.Scheduled(cron = "0 0 6 * * ?") // 6 AM daily
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT10M", minHold = "PT30M")
     public void sendDailySalesReport() {
         try {
             log.info("Generating daily sales report");
-            java.util.Map<String, Object> reportData = orderService.generateDailySalesReport();
-            emailService.sendTemplateEmail(
-                "reports@henukaimitations.com",
-                "Daily Sales Report",
-                "daily-sales-report",
-                reportData
-            );
+            dailySalesReportService.sendDailyReport();
             log.info("Daily sales report sent");
         } catch (Exception e) {
             log.error("Failed to send daily sales report", e);
         }
     }
 
+    /**
+     * Move finished orders to the archive nightly
+     */
+    @org.springframework.scheduling.annotation.Scheduled(cron = "0 0 3 * * ?") // 3 AM daily
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT30M", minHold = "PT30M")
+    public void archiveFinishedOrders() {
+        try {
+            log.info("Archiving finished orders");
+            int archived = orderArchiveService.archiveFinishedOrders();
+            log.info("Completed archiving {} finished orders", archived);
+        } catch (Exception e) {
+            log.error("Failed to archive finished orders", e);
+        }
+    }
+
+    /**
+     * Rebuild the product search index weekly
+     */
+    @org.springframework.scheduling.annotation.Scheduled(cron = "0 0 4 * * SUN") // 4 AM every Sunday
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(lease = "PT30M", minHold = "PT30M")
+    public void reindexProducts() {
+        try {
+            log.info("Reindexing products");
+            int indexed = productReindexJob.reindex();
+            log.info("Completed reindexing {} product(s)", indexed);
+        } catch (Exception e) {
+            log.error("Failed to reindex products", e);
+        }
+    }
+
     /**
      * Clean expired sessions weekly
      */
     @org.springframework.scheduling.annotation.Scheduled(cron = "0 0 2 * * SUN") // 2 AM every Sunday
+    @Workload(WorkloadClass.BATCH)
+    @ClusterJob(minHold = "PT30M")
     public void cleanExpiredSessions() {
         try {
             log.info("Cleaning expired sessions");
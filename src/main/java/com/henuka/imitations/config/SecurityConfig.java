@@ -1,7 +1,10 @@
 package com.henuka.imitations.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -13,10 +16,29 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 @EnableWebSecurity
 public class SecurityConfig {
 
+    /**
+     * Actuator endpoints: the metrics scraper signs in with HTTP basic as a METRICS user
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher("/actuator/**")
+            .authorizeHttpRequests(auth -> auth
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/prometheus").hasAnyRole("METRICS", "ADMIN")
+                .requestMatchers("/actuator/batchjobs/**").hasRole("ADMIN")
+                .anyRequest().authenticated()
+            )
+            .httpBasic(Customizer.withDefaults());
+
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
-            .csrf(csrf -> csrf.ignoringRequestMatchers("/h2-console/**"))
+            .csrf(csrf -> csrf.ignoringRequestMatchers("/h2-console/**", "/ws/**", "/api/payments/webhook"))
             .headers(headers -> headers.frameOptions().sameOrigin())
             .authorizeHttpRequests(auth -> auth
                 // Public pages
@@ -27,6 +49,7 @@ public class SecurityConfig {
                     "/products/**",
                     "/cart/**",
                     "/orders/track/**",
+                    "/ws/**",
                     "/api/chat/**",
                     "/video/record",
                     "/error",
@@ -38,13 +61,14 @@ public class SecurityConfig {
                 
                 // H2 Console (for development)
                 .requestMatchers("/h2-console/**").permitAll()
-                
+
                 // Admin pages
                 .requestMatchers("/admin/**").hasRole("ADMIN")
                 
                 // API endpoints
                 .requestMatchers("/api/products/**").permitAll()
                 .requestMatchers("/api/cart/**").permitAll()
+                .requestMatchers("/api/payments/webhook").permitAll()
                 .requestMatchers("/api/orders/**").authenticated()
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 
@@ -83,15 +107,29 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    /**
+     * Admin user, plus the metrics scrape user when a scrape password is configured
+     */
     @Bean
-    public org.springframework.security.core.userdetails.UserDetailsService userDetailsService() {
-        return new org.springframework.security.core.userdetails.InMemoryUserDetailsManager(
-            org.springframework.security.core.userdetails.User.builder()
-                .username("admin")
-                .password(passwordEncoder().encode("admin"))
-                .roles("ADMIN")
-                .build()
-        );
+    public org.springframework.security.core.userdetails.UserDetailsService userDetailsService(
+            @Value("${app.metrics.scrape-username:prometheus}") String scrapeUsername,
+            @Value("${app.metrics.scrape-password:}") String scrapePassword) {
+        org.springframework.security.provisioning.InMemoryUserDetailsManager users =
+            new org.springframework.security.provisioning.InMemoryUserDetailsManager(
+                org.springframework.security.core.userdetails.User.builder()
+                    .username("admin")
+                    .password(passwordEncoder().encode("admin"))
+                    .roles("ADMIN")
+                    .build()
+            );
+        if (!scrapePassword.isBlank()) {
+            users.createUser(org.springframework.security.core.userdetails.User.builder()
+                .username(scrapeUsername)
+                .password(passwordEncoder().encode(scrapePassword))
+                .roles("METRICS")
+                .build());
+        }
+        return users;
     }
 
     @Bean
@@ -0,0 +1,379 @@
+package com.henuka.imitations.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of spilled tasks in memory-mapped segment files.
+ *
+ * Each record is {@code [length][crc32c][sequence][type length][type][payload]}, where the
+ * checksum covers everything after it. A zero length marks the unwritten end of a segment and
+ * -1 a segment that was closed early because the next record did not fit. On open, segments are
+ * scanned from the consumed position and the first torn or corrupt record ends the journal.
+ *
+ * Readers move a cursor through the records; {@link #commit} separately records how far they
+ * are done in a small mapped offset file, so records read but not finished before a crash are
+ * read again. Segments wholly before the committed position are deleted, which is the
+ * journal's compaction.
+ *
+ * Without {@code forceOnAppend} writes reach the page cache only, so records and commits survive
+ * the process dying but not the machine losing power; with it, both are forced to disk.
+ */
+final class SpillJournal implements AutoCloseable {
+
+    private static final int HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final MappedByteBuffer offsetFile;
+    private final FileChannel offsetChannel;
+
+    // Next sequence to assign
+    private long nextSequence;
+    // Next record to hand to a reader
+    private Position cursor;
+    private long unread;
+
+    SpillJournal(Path directory, String name, int segmentSize, boolean forceOnAppend) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        try {
+            Files.createDirectories(directory);
+            offsetChannel = FileChannel.open(directory.resolve(name + ".offset"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            offsetFile = offsetChannel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spill journal " + name, e);
+        }
+    }
+
+    /**
+     * Append a record and return its sequence; -1 if it cannot be stored (larger than a segment).
+     */
+    long append(String type, byte[] payload) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 2 + typeBytes.length + payload.length;
+        if (HEADER + length + 4 > segmentSize) {
+            return -1;
+        }
+
+        lock.lock();
+        try {
+            Segment tail = segments.get(segments.size() - 1);
+            if (tail.writePosition + HEADER + length + 4 > segmentSize) {
+                // Close the segment with a marker so readers skip to the next one
+                tail.buffer.putInt(tail.writePosition, END_OF_SEGMENT);
+                tail.buffer.force();
+                tail = openSegment(nextSequence, true);
+                segments.add(tail);
+            }
+
+            CRC32C crc = new CRC32C();
+            int body = tail.writePosition + HEADER;
+            MappedByteBuffer buffer = tail.buffer;
+            buffer.putLong(body, nextSequence);
+            buffer.putShort(body + 8, (short) typeBytes.length);
+            buffer.put(body + 10, typeBytes);
+            buffer.put(body + 10 + typeBytes.length, payload);
+            crc.update(buffer.slice(body, length));
+            buffer.putInt(tail.writePosition + 4, (int) crc.getValue());
+            // Length last: a record is visible only once it is complete
+            buffer.putInt(tail.writePosition, length);
+            if (forceOnAppend) {
+                buffer.force(tail.writePosition, HEADER + length);
+            }
+
+            tail.writePosition += HEADER + length;
+            unread++;
+            return nextSequence++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The record at the cursor, without moving it; null when everything has been read.
+     */
+    Record peek() {
+        lock.lock();
+        try {
+            return read(cursor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the cursor past a record returned by {@link #peek}.
+     */
+    void advance(Record record) {
+        lock.lock();
+        try {
+            cursor = record.next();
+            unread--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records appended but not read yet.
+     */
+    long unread() {
+        lock.lock();
+        try {
+            return unread;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Position of the next unread record; what every finished read leads up to.
+     */
+    Position cursor() {
+        lock.lock();
+        try {
+            return cursor;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Everything before {@code position} is done; drop segments that are wholly behind it.
+     */
+    void commit(Position position) {
+        lock.lock();
+        try {
+            // Offset first: a crash between the two writes leaves the old segment, all of which is
+            // done, with an offset that recovery rounds down to a record boundary
+            offsetFile.putLong(8, position.offset());
+            offsetFile.putLong(0, position.segment());
+            if (forceOnAppend) {
+                offsetFile.force();
+            }
+            while (segments.size() > 1 && segments.get(1).base <= position.segment()) {
+                Segment done = segments.remove(0);
+                done.close();
+                Files.deleteIfExists(done.path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact spill journal " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            offsetFile.force();
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.close();
+            }
+            offsetChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Record read(Position position) {
+        for (int i = indexOf(position.segment()); i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            int offset = segment.base == position.segment() ? (int) position.offset() : 0;
+            if (offset >= segment.writePosition) {
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int length = buffer.getInt(offset);
+            int body = offset + HEADER;
+            long sequence = buffer.getLong(body);
+            int typeLength = buffer.getShort(body + 8);
+            byte[] type = new byte[typeLength];
+            buffer.get(body + 10, type);
+            byte[] payload = new byte[length - 10 - typeLength];
+            buffer.get(body + 10 + typeLength, payload);
+            return new Record(sequence, new String(type, StandardCharsets.UTF_8), payload,
+                new Position(segment.base, offset), new Position(segment.base, body + length));
+        }
+        return null;
+    }
+
+    private int indexOf(long base) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).base == base) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // Rebuild the segment list, write position and unread count from disk
+    private void recover() throws IOException {
+        long committedSegment = offsetFile.getLong(0);
+        long committedOffset = offsetFile.getLong(8);
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                .filter(path -> path.getFileName().toString().startsWith(name + "-")
+                    && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted((a, b) -> Long.compare(baseOf(a), baseOf(b)))
+                .toList();
+        }
+
+        boolean ended = false;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long base = baseOf(file);
+            boolean behind = i + 1 < files.size() && baseOf(files.get(i + 1)) <= committedSegment;
+            if (ended || behind) {
+                // Wholly before the committed position, or after a corrupt record
+                Files.deleteIfExists(file);
+                continue;
+            }
+            Segment segment = openSegment(base, false);
+            ended = scan(segment, base == committedSegment ? (int) committedOffset : 0);
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(openSegment(Math.max(committedSegment, 0), true));
+            nextSequence = segments.get(0).base;
+            cursor = new Position(segments.get(0).base, 0);
+            unread = 0;
+        } else {
+            Segment first = segments.get(0);
+            int offset = first.base == committedSegment ? boundaryAtOrBefore(first, committedOffset) : 0;
+            cursor = new Position(first.base, offset);
+        }
+    }
+
+    // Count valid records that end after start, set the write position; true if a bad record was found
+    private boolean scan(Segment segment, int start) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long sequence = segment.base;
+        CRC32C crc = new CRC32C();
+        boolean corrupt = false;
+        while (position + HEADER <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length == 0 || length == END_OF_SEGMENT) {
+                break;
+            }
+            if (length < 10 || position + HEADER + length > segmentSize) {
+                corrupt = true;
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                // Torn or corrupt write: nothing after it can be trusted
+                corrupt = true;
+                break;
+            }
+            sequence = buffer.getLong(position + HEADER) + 1;
+            if (position + HEADER + length > start) {
+                unread++;
+            }
+            position += HEADER + length;
+        }
+        segment.writePosition = position;
+        nextSequence = Math.max(nextSequence, sequence);
+        if (corrupt) {
+            clear(segment, position);
+        }
+        return corrupt;
+    }
+
+    // Zero the rest of a segment, so records that follow a bad one cannot reappear behind new appends
+    private void clear(Segment segment, int from) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = from;
+        for (; position + 8 <= segmentSize; position += 8) {
+            buffer.putLong(position, 0L);
+        }
+        for (; position < segmentSize; position++) {
+            buffer.put(position, (byte) 0);
+        }
+    }
+
+    // Start of the record holding offset, or the write position past the last record; a committed
+    // offset is always a boundary unless a crash tore the commit
+    private int boundaryAtOrBefore(Segment segment, long offset) {
+        int position = 0;
+        while (position < segment.writePosition) {
+            int next = position + HEADER + segment.buffer.getInt(position);
+            if (next > offset) {
+                break;
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    private Segment openSegment(long base, boolean create) throws IOException {
+        Path path = directory.resolve(name + "-" + String.format("%020d", base) + SEGMENT_SUFFIX);
+        FileChannel channel = create
+            ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(base, path, channel, buffer);
+    }
+
+    private long baseOf(Path path) {
+        String file = path.getFileName().toString();
+        return Long.parseLong(file.substring(name.length() + 1, file.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    record Position(long segment, long offset) {
+    }
+
+    record Record(long sequence, String type, byte[] payload, Position start, Position next) {
+    }
+
+    private static final class Segment {
+        private final long base;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        Segment(long base, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.henuka.imitations.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread pool that overflows to a {@link SpillJournal} instead of rejecting.
+ *
+ * A {@link SpillableTask} that finds the queue full, or finds earlier tasks already waiting in
+ * the journal, is appended to the journal; a replay thread feeds journalled tasks back into the
+ * pool in order as the queue drains, including those left over from before a restart. Any other
+ * task that finds the queue full runs on the caller's thread, as the main task executor does.
+ *
+ * A spilled task is run again from its type and payload, by the handler registered for its type,
+ * unless the original task object is still in memory. Journal space is released once every
+ * task up to that point has finished, so a crash replays unfinished tasks: at least once.
+ */
+class SpillingTaskExecutor implements TaskExecutor, DisposableBean {
+
+    private final String name;
+    private final ThreadPoolTaskExecutor delegate;
+    private final SpillJournal journal;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService replayer;
+
+    private final ConcurrentMap<String, Consumer<byte[]>> handlers = new ConcurrentHashMap<>();
+    // Spilled tasks still held in memory, by journal sequence
+    private final ConcurrentMap<Long, Runnable> spilledInMemory = new ConcurrentHashMap<>();
+    // Replayed tasks not yet finished, by sequence, with their journal position
+    private final TreeMap<Long, SpillJournal.Position> inFlight = new TreeMap<>();
+    // A lock rather than a monitor, so a virtual thread that spills is never pinned
+    private final ReentrantLock inFlightLock = new ReentrantLock();
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SpillingTaskExecutor.class);
+
+    SpillingTaskExecutor(String name, ThreadPoolTaskExecutor delegate, SpillJournal journal,
+                         MeterRegistry meterRegistry, long replayIntervalMillis) {
+        this.name = name;
+        this.delegate = delegate;
+        this.journal = journal;
+        this.meterRegistry = meterRegistry;
+        this.replayer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, name + "-Replay"));
+
+        meterRegistry.gauge("async.spill.backlog", Tags.of("executor", name), journal, SpillJournal::unread);
+        replayer.scheduleWithFixedDelay(this::replay, replayIntervalMillis, replayIntervalMillis, TimeUnit.MILLISECONDS);
+        if (journal.unread() > 0) {
+            log.info("Executor {} has {} spilled task(s) to replay", name, journal.unread());
+        }
+    }
+
+    /**
+     * Register how tasks of a type are rebuilt from their payload after a restart.
+     */
+    void registerHandler(String type, Consumer<byte[]> handler) {
+        handlers.put(type, handler);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task instanceof SpillableTask spillable) {
+            // Keep order: nothing may overtake tasks already in the journal
+            if (journal.unread() > 0 && spill(spillable)) {
+                return;
+            }
+            try {
+                delegate.execute(task);
+            } catch (RejectedExecutionException e) {
+                if (!spill(spillable)) {
+                    task.run();
+                }
+            }
+            return;
+        }
+
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("async.caller_runs", "executor", name).increment();
+            task.run();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        replayer.shutdown();
+        replayer.awaitTermination(5, TimeUnit.SECONDS);
+        delegate.shutdown();
+        journal.close();
+    }
+
+    private boolean spill(SpillableTask task) {
+        // Held so the replayer cannot pick the record up before the task is remembered
+        inFlightLock.lock();
+        try {
+            long sequence = journal.append(task.type(), task.payload());
+            if (sequence < 0) {
+                return false;
+            }
+            spilledInMemory.put(sequence, task);
+        } finally {
+            inFlightLock.unlock();
+        }
+        meterRegistry.counter("async.spill.appended", "executor", name).increment();
+        return true;
+    }
+
+    // Move journalled tasks into the pool while it has queue space
+    private void replay() {
+        try {
+            SpillJournal.Record record;
+            while (delegate.getThreadPoolExecutor().getQueue().remainingCapacity() > 0
+                    && (record = journal.peek()) != null) {
+                Runnable original;
+                inFlightLock.lock();
+                try {
+                    original = spilledInMemory.remove(record.sequence());
+                } finally {
+                    inFlightLock.unlock();
+                }
+                Consumer<byte[]> handler = handlers.get(record.type());
+                if (original == null && handler == null) {
+                    // Restored before its handler registered; try again next round
+                    break;
+                }
+                SpillJournal.Record replayed = record;
+                Runnable task = original != null ? original : () -> handler.accept(replayed.payload());
+
+                inFlightLock.lock();
+                try {
+                    inFlight.put(record.sequence(), record.start());
+                } finally {
+                    inFlightLock.unlock();
+                }
+                try {
+                    delegate.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            finished(replayed);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlightLock.lock();
+                    try {
+                        inFlight.remove(record.sequence());
+                        if (original != null) {
+                            spilledInMemory.put(record.sequence(), original);
+                        }
+                    } finally {
+                        inFlightLock.unlock();
+                    }
+                    break;
+                }
+                journal.advance(record);
+                meterRegistry.counter("async.spill.replayed", "executor", name).increment();
+            }
+            commit();
+        } catch (Exception e) {
+            log.error("Replay of spilled tasks for {} failed", name, e);
+        }
+    }
+
+    private void finished(SpillJournal.Record record) {
+        inFlightLock.lock();
+        try {
+            inFlight.remove(record.sequence());
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+
+    // Release journal space up to the oldest replayed task still running
+    private void commit() {
+        inFlightLock.lock();
+        try {
+            Map.Entry<Long, SpillJournal.Position> oldest = inFlight.firstEntry();
+            journal.commit(oldest != null ? oldest.getValue() : journal.cursor());
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+}
+
+/**
+ * A task that can be written to a spill journal and rebuilt from its type and payload.
+ */
+class SpillableTask implements Runnable {
+
+    private final String type;
+    private final byte[] payload;
+    private final Runnable action;
+
+    SpillableTask(String type, byte[] payload, Runnable action) {
+        this.type = type;
+        this.payload = payload;
+        this.action = action;
+    }
+
+    String type() {
+        return type;
+    }
+
+    byte[] payload() {
+        return payload;
+    }
+
+    @Override
+    public void run() {
+        action.run();
+    }
+
+    /**
+     * Length-prefixed UTF-8 strings, for simple task arguments.
+     */
+    static byte[] encode(String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i] == null ? null : fields[i].getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            size += 4 + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(size);
+        for (byte[] field : encoded) {
+            buffer.putInt(field == null ? -1 : field.length);
+            if (field != null) {
+                buffer.put(field);
+            }
+        }
+        return buffer.array();
+    }
+
+    static String[] decode(byte[] payload) {
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(payload);
+        java.util.List<String> fields = new java.util.ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            if (length < 0) {
+                fields.add(null);
+                continue;
+            }
+            byte[] field = new byte[length];
+            buffer.get(field);
+            fields.add(new String(field, java.nio.charset.StandardCharsets.UTF_8));
+        }
+        return fields.toArray(String[]::new);
+    }
+}
@@ -189,6 +189,28 @@ class LocalStorageService implements StorageService {
     }
 }
 
+/**
+ * Writes archive segments through the configured storage service
+ */
+@org.springframework.stereotype.Component
+class StorageArchiveSegmentSink implements com.henuka.imitations.service.ArchiveSegmentSink {
+
+    private final StorageService storageService;
+    private final StorageMetrics storageMetrics;
+
+    public StorageArchiveSegmentSink(StorageService storageService, StorageMetrics storageMetrics) {
+        this.storageService = storageService;
+        this.storageMetrics = storageMetrics;
+    }
+
+    @Override
+    public String store(String segmentName, byte[] content) {
+        String stored = storageService.store(content, segmentName, "application/gzip");
+        storageMetrics.recordUpload("archive", content.length);
+        return storageService.getUrl(stored);
+    }
+}
+
 /**
  * Storage exception
  */
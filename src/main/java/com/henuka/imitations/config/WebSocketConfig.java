@@ -1,6 +1,8 @@
 package com.henuka.imitations.config;
 
+import com.henuka.imitations.service.OrderTrackingService;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.*;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
@@ -41,6 +43,14 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .withSockJS();
     }
 
+    /**
+     * Reject client frames that would publish to server-owned destinations
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new ClientSendInterceptor());
+    }
+
     /**
      * Configure WebSocket transport options
      */
@@ -138,6 +148,63 @@ class WebSocketService {
     }
 }
 
+/**
+ * Order tracking publisher
+ */
+@org.springframework.stereotype.Component
+class OrderTrackingPublisher {
+
+    private final WebSocketService webSocketService;
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(OrderTrackingPublisher.class);
+
+    public OrderTrackingPublisher(WebSocketService webSocketService) {
+        this.webSocketService = webSocketService;
+    }
+
+    /**
+     * Push committed status changes to the order's tracking topic
+     */
+    @org.springframework.context.event.EventListener
+    public void onTrackingUpdate(OrderTrackingService.TrackingUpdate update) {
+        try {
+            webSocketService.sendToTopic(OrderTrackingService.topicFor(update.orderNumber()), update);
+        } catch (WebSocketException e) {
+            // Clients catch up from the status endpoint when they reconnect
+            log.warn("Failed to push tracking update for order: {}", update.orderNumber(), e);
+        }
+    }
+}
+
+/**
+ * Stops clients from publishing where the server does. Broker destinations are written only by
+ * the server, so a client SEND straight to /topic or /queue is refused, and the /app relay may not
+ * be used to reach the order tracking topics, which anyone who knows an order number can read.
+ */
+class ClientSendInterceptor implements org.springframework.messaging.support.ChannelInterceptor {
+
+    private static final String TRACKING_RELAY_PREFIX = "/app/send/" + OrderTrackingService.TOPIC_PREFIX;
+
+    @Override
+    public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message,
+                                                           org.springframework.messaging.MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (!org.springframework.messaging.simp.stomp.StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+
+        String destination = accessor.getDestination();
+        if (destination == null
+                || destination.startsWith("/topic/")
+                || destination.startsWith("/queue/")
+                || destination.startsWith("/user/")
+                || destination.startsWith(TRACKING_RELAY_PREFIX)) {
+            throw new org.springframework.messaging.MessageDeliveryException(message,
+                "Clients may not send to " + destination);
+        }
+        return message;
+    }
+}
+
 /**
  * WebSocket message handler
  */
@@ -151,6 +218,7 @@ class WebSocketMessageHandler {
         this.webSocketMetrics = webSocketMetrics;
     }
 
+    // Relays client messages to the topic of the same name; ClientSendInterceptor keeps it off the order tracking topics
     @org.springframework.messaging.handler.annotation.MessageMapping("/send/{topic}")
     @org.springframework.messaging.handler.annotation.SendTo("/topic/{topic}")
     public Object handleMessage(@org.springframework.messaging.handler.annotation.DestinationVariable String topic,
@@ -0,0 +1,233 @@
+package com.henuka.imitations.config;
+
+import com.henuka.imitations.annotation.Workload;
+import com.henuka.imitations.annotation.WorkloadClass;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Builds every thread pool in the application from its workload class.
+ *
+ * Each class has a shared pool ({@code <class>Executor}) and its own scheduler threads, configured
+ * under {@code app.workloads.<class>}: core-size, max-size, queue-capacity, priority (thread
+ * priority, 1-10), rejection ({@code caller-runs} or {@code abort}) and scheduler-threads.
+ * Pools dedicated to one downstream, single-threaded lanes and private schedulers keep their own
+ * bounds and reject when full, and take their class's thread priority. All pools are instrumented
+ * and tagged with their workload class.
+ */
+@org.springframework.stereotype.Component
+public class WorkloadExecutors {
+
+    private final AsyncMetrics asyncMetrics;
+    private final Environment environment;
+
+    @Autowired
+    WorkloadExecutors(AsyncMetrics asyncMetrics, Environment environment) {
+        this.asyncMetrics = asyncMetrics;
+        this.environment = environment;
+    }
+
+    /**
+     * Pools built outside the application context, e.g. in tests, reporting to {@code registry}.
+     */
+    public WorkloadExecutors(MeterRegistry registry, Environment environment) {
+        this(new AsyncMetrics(registry), environment);
+    }
+
+    /**
+     * The shared pool of a workload class.
+     */
+    ThreadPoolTaskExecutor executor(WorkloadClass workload) {
+        Settings settings = settings(workload);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(settings.coreSize());
+        executor.setMaxPoolSize(settings.maxSize());
+        executor.setQueueCapacity(settings.queueCapacity());
+        executor.setRejectedExecutionHandler(settings.rejection());
+        executor.setThreadPriority(settings.priority());
+        executor.setThreadNamePrefix(prefix(workload) + "-");
+        return asyncMetrics.instrument(workload.key() + "Executor", workload, executor);
+    }
+
+    /**
+     * A pool for one downstream, with its own bounds, in a workload class.
+     */
+    ThreadPoolTaskExecutor pool(String name, WorkloadClass workload, int coreSize, int maxSize, int queueCapacity,
+                                String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadPriority(settings(workload).priority());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return asyncMetrics.instrument(name, workload, executor);
+    }
+
+    /**
+     * A single thread in a workload class that runs its tasks in submission order. Work that must
+     * stay ordered per key is spread over several lanes by key; each lane reports as {@code name}.
+     */
+    public ExecutorService lane(String name, WorkloadClass workload, int queueCapacity, String threadName) {
+        // Submissions to the underlying pool still pass through the instrumenting decorator
+        return pool(name, workload, 1, 1, queueCapacity, threadName + "-").getThreadPoolExecutor();
+    }
+
+    /**
+     * A scheduled pool of {@code threads} threads of its own in a workload class.
+     */
+    ScheduledThreadPoolExecutor scheduledPool(String name, WorkloadClass workload, int threads) {
+        return asyncMetrics.executor(name, workload).scheduledPool(threads, settings(workload).priority());
+    }
+
+    /**
+     * Scheduler that runs each scheduled method on its workload class's threads, wrapped by {@code decorator}.
+     */
+    WorkloadTaskScheduler scheduler(UnaryOperator<Runnable> decorator) {
+        Map<WorkloadClass, ScheduledThreadPoolExecutor> pools = new EnumMap<>(WorkloadClass.class);
+        for (WorkloadClass workload : WorkloadClass.values()) {
+            Settings settings = settings(workload);
+            pools.put(workload, asyncMetrics.executor(workload.key() + "Scheduler", workload)
+                .scheduledPool(settings.schedulerThreads(), settings.priority()));
+        }
+        return new WorkloadTaskScheduler(pools, decorator);
+    }
+
+    Settings settings(WorkloadClass workload) {
+        Settings defaults = defaults(workload);
+        String prefix = "app.workloads." + workload.key() + ".";
+        String rejection = environment.getProperty(prefix + "rejection", defaults.rejectionName());
+        return new Settings(
+            environment.getProperty(prefix + "core-size", Integer.class, defaults.coreSize()),
+            environment.getProperty(prefix + "max-size", Integer.class, defaults.maxSize()),
+            environment.getProperty(prefix + "queue-capacity", Integer.class, defaults.queueCapacity()),
+            environment.getProperty(prefix + "priority", Integer.class, defaults.priority()),
+            rejection,
+            environment.getProperty(prefix + "scheduler-threads", Integer.class, defaults.schedulerThreads()));
+    }
+
+    // Interactive and background work is run by the caller when full; batch work never is, since
+    // the caller is often a request or a scheduler thread of another class
+    private static Settings defaults(WorkloadClass workload) {
+        return switch (workload) {
+            case INTERACTIVE -> new Settings(8, 16, 50, Thread.NORM_PRIORITY + 2, "caller-runs", 1);
+            case BACKGROUND -> new Settings(5, 10, 25, Thread.NORM_PRIORITY, "caller-runs", 4);
+            case BATCH -> new Settings(2, 4, 100, Thread.NORM_PRIORITY - 2, "abort", 4);
+            case IO_BOUND -> new Settings(8, 32, 200, Thread.NORM_PRIORITY, "caller-runs", 1);
+        };
+    }
+
+    private static String prefix(WorkloadClass workload) {
+        StringBuilder prefix = new StringBuilder();
+        for (String part : workload.key().split("-")) {
+            prefix.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+        }
+        return prefix.toString();
+    }
+
+    record Settings(int coreSize, int maxSize, int queueCapacity, int priority, String rejectionName,
+                    int schedulerThreads) {
+
+        RejectedExecutionHandler rejection() {
+            return switch (rejectionName) {
+                case "caller-runs" -> new ThreadPoolExecutor.CallerRunsPolicy();
+                case "abort" -> new ThreadPoolExecutor.AbortPolicy();
+                default -> throw new IllegalArgumentException("Unknown rejection policy: " + rejectionName);
+            };
+        }
+    }
+}
+
+/**
+ * Task scheduler that hands each task to the scheduler threads of its workload class, taken from
+ * {@link Workload} on the scheduled method or its class. A long batch job therefore only ever holds
+ * batch threads, and cannot delay dispatch or housekeeping jobs that are due meanwhile.
+ */
+class WorkloadTaskScheduler implements TaskScheduler, DisposableBean {
+
+    private final Map<WorkloadClass, ScheduledThreadPoolExecutor> pools;
+    private final Map<WorkloadClass, ConcurrentTaskScheduler> schedulers = new EnumMap<>(WorkloadClass.class);
+    private final UnaryOperator<Runnable> decorator;
+
+    WorkloadTaskScheduler(Map<WorkloadClass, ScheduledThreadPoolExecutor> pools, UnaryOperator<Runnable> decorator) {
+        this.pools = pools;
+        this.decorator = decorator;
+        pools.forEach((workload, pool) -> schedulers.put(workload, new ConcurrentTaskScheduler(pool)));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        return route(task).schedule(decorator.apply(task), trigger);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Instant startTime) {
+        return route(task).schedule(decorator.apply(task), startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Instant startTime, Duration period) {
+        return route(task).scheduleAtFixedRate(decorator.apply(task), startTime, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration period) {
+        return route(task).scheduleAtFixedRate(decorator.apply(task), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Instant startTime, Duration delay) {
+        return route(task).scheduleWithFixedDelay(decorator.apply(task), startTime, delay);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Duration delay) {
+        return route(task).scheduleWithFixedDelay(decorator.apply(task), delay);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        pools.values().forEach(ScheduledThreadPoolExecutor::shutdown);
+        for (ScheduledThreadPoolExecutor pool : pools.values()) {
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private ConcurrentTaskScheduler route(Runnable task) {
+        return schedulers.get(workloadOf(task));
+    }
+
+    static WorkloadClass workloadOf(Runnable task) {
+        if (task instanceof ScheduledMethodRunnable scheduled) {
+            Workload workload = AnnotatedElementUtils.findMergedAnnotation(scheduled.getMethod(), Workload.class);
+            if (workload == null) {
+                workload = AnnotatedElementUtils.findMergedAnnotation(
+                    AopUtils.getTargetClass(scheduled.getTarget()), Workload.class);
+            }
+            if (workload != null) {
+                return workload.value();
+            }
+        }
+        return WorkloadClass.BACKGROUND;
+    }
+}
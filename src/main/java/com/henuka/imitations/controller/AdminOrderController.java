@@ -0,0 +1,145 @@
+package com.henuka.imitations.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.model.DailySalesReport;
+import com.henuka.imitations.service.DailySalesReportService;
+import com.henuka.imitations.service.OrderExportService;
+import com.henuka.imitations.service.OrderService;
+import com.henuka.imitations.service.SalesRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/admin/orders")
+@RequiredArgsConstructor
+public class AdminOrderController {
+
+    private final OrderService orderService;
+    private final SalesRollupService salesRollupService;
+    private final OrderExportService orderExportService;
+    private final DailySalesReportService dailySalesReportService;
+    private final ObjectMapper objectMapper;
+
+    @GetMapping("/statistics")
+    public ResponseEntity<Map<String, Object>> getStatistics(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return ResponseEntity.ok(orderService.getOrderStatistics(from, to));
+    }
+
+    // Backfill hourly and daily rollups for the given days (inclusive)
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<?> rebuildRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            int days = salesRollupService.rebuild(from, to);
+            return ResponseEntity.ok(Map.of("status", "rebuilt", "days", days));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Stored daily sales report; 404 if it has not been generated
+    @GetMapping("/reports/daily/{date}")
+    public ResponseEntity<Map<String, Object>> getDailyReport(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return dailySalesReportService.findReport(date)
+            .map(report -> ResponseEntity.ok(dailySalesReportService.toSummary(report)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/reports/daily/{date}/products.csv")
+    public ResponseEntity<byte[]> getDailyReportCsv(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return dailySalesReportService.findReport(date)
+            .map(report -> ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    ContentDisposition.attachment().filename("sales-" + date + ".csv").build().toString())
+                .contentType(MediaType.parseMediaType("text/csv;charset=UTF-8"))
+                .body(dailySalesReportService.getProductCsv(report)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Recompute a day's report, e.g. after late refunds
+    @PostMapping("/reports/daily/{date}/regenerate")
+    public ResponseEntity<?> regenerateDailyReport(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            DailySalesReport report = dailySalesReportService.generate(date);
+            return ResponseEntity.ok(dailySalesReportService.toSummary(report));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Re-send a stored report without recomputing it
+    @PostMapping("/reports/daily/{date}/send")
+    public ResponseEntity<?> sendDailyReport(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) String to) {
+        try {
+            dailySalesReportService.sendReport(date, to);
+            return ResponseEntity.ok(Map.of("status", "sent", "reportDate", date));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Stream orders created in [from, to) with their lines as CSV or NDJSON, optionally gzipped
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        OrderExportService.Format exportFormat;
+        try {
+            exportFormat = OrderExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return exportError("Unsupported export format: " + format);
+        }
+        if (!from.isBefore(to)) {
+            return exportError("Export start must be before its end");
+        }
+
+        String filename = "orders-" + from.toLocalDate() + "-" + to.toLocalDate() + "." + exportFormat.extension()
+            + (gzip ? ".gz" : "");
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                orderExportService.export(from, to, exportFormat, compressed);
+                compressed.finish();
+            } else {
+                orderExportService.export(from, to, exportFormat, out);
+            }
+        };
+
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+            .contentType(gzip
+                ? MediaType.parseMediaType("application/gzip")
+                : MediaType.parseMediaType(exportFormat.contentType() + ";charset=UTF-8"))
+            .body(body);
+    }
+
+    // The export endpoint must declare a streaming body, so its errors are streamed too
+    private ResponseEntity<StreamingResponseBody> exportError(String message) {
+        return ResponseEntity.badRequest()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> objectMapper.writeValue(out, Map.of("error", message)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.henuka.imitations.controller;
+
+import com.henuka.imitations.model.BulkRefundItem;
+import com.henuka.imitations.model.BulkRefundJob;
+import com.henuka.imitations.model.PaymentReconciliationRun;
+import com.henuka.imitations.service.BulkRefundService;
+import com.henuka.imitations.service.PaymentReconciliationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/payments")
+@RequiredArgsConstructor
+public class AdminPaymentController {
+
+    private final PaymentReconciliationService paymentReconciliationService;
+    private final BulkRefundService bulkRefundService;
+
+    @PostMapping("/reconciliations")
+    public ResponseEntity<?> startReconciliation(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        try {
+            PaymentReconciliationRun run = paymentReconciliationService.startReconciliation(from, to);
+            return ResponseEntity.accepted().body(run);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/reconciliations")
+    public ResponseEntity<?> getRecentReconciliations(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(paymentReconciliationService.getRecentRuns(limit).getContent());
+    }
+
+    @GetMapping("/reconciliations/{runId}")
+    public ResponseEntity<PaymentReconciliationRun> getReconciliation(@PathVariable Long runId) {
+        return ResponseEntity.ok(paymentReconciliationService.getRun(runId));
+    }
+
+    @GetMapping("/reconciliations/{runId}/mismatches")
+    public ResponseEntity<?> getMismatches(@PathVariable Long runId,
+                                           @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(paymentReconciliationService.getMismatches(runId, limit));
+    }
+
+    @PostMapping("/refunds/bulk")
+    public ResponseEntity<?> startBulkRefund(@RequestBody BulkRefundRequest request) {
+        try {
+            BulkRefundJob job = bulkRefundService.submit(request.orderNumbers(), request.reason());
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/refunds/bulk/{jobId}")
+    public ResponseEntity<?> getBulkRefund(@PathVariable Long jobId) {
+        return ResponseEntity.ok(bulkRefundService.getProgress(jobId));
+    }
+
+    @GetMapping("/refunds/bulk/{jobId}/items")
+    public ResponseEntity<?> getBulkRefundItems(@PathVariable Long jobId,
+                                                @RequestParam(defaultValue = "FAILED") BulkRefundItem.Status status,
+                                                @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(bulkRefundService.getItems(jobId, status, limit));
+    }
+
+    @PostMapping("/refunds/bulk/{jobId}/resume")
+    public ResponseEntity<?> resumeBulkRefund(@PathVariable Long jobId) {
+        return ResponseEntity.ok(Map.of("resumed", bulkRefundService.resume(jobId)));
+    }
+
+    public record BulkRefundRequest(List<String> orderNumbers, String reason) {
+    }
+}
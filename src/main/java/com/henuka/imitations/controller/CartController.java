@@ -1,5 +1,6 @@
 package com.henuka.imitations.controller;
 
+import com.henuka.imitations.annotation.QueryBudget;
 import com.henuka.imitations.model.CartItem;
 import com.henuka.imitations.service.CartService;
 import jakarta.servlet.http.HttpSession;
@@ -30,6 +31,7 @@ public class CartController {
     }
 
     @GetMapping
+    @QueryBudget(2)
     public String viewCart(Model model, HttpSession session) {
         String cartSessionId = getOrCreateCartSessionId(session);
         CartService.CartSummary cartSummary = cartService.getCartSummary(cartSessionId);
@@ -1,8 +1,10 @@
 package com.henuka.imitations.controller;
 
+import com.henuka.imitations.annotation.QueryBudget;
 import com.henuka.imitations.model.Order;
 import com.henuka.imitations.service.CartService;
 import com.henuka.imitations.service.OrderService;
+import com.henuka.imitations.service.OrderTrackingService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -10,6 +12,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 @Controller
 @RequestMapping("/orders")
@@ -18,6 +21,7 @@ public class OrderController {
 
     private final OrderService orderService;
     private final CartService cartService;
+    private final OrderTrackingService orderTrackingService;
 
     @GetMapping("/checkout")
     public String showCheckout(Model model) {
@@ -35,13 +39,22 @@ public class OrderController {
     }
 
     @GetMapping("/track/{orderNumber}")
+    @QueryBudget(2)
     public String trackOrder(@PathVariable String orderNumber, Model model) {
-        Order order = orderService.getOrderByNumber(orderNumber);
+        Order order = orderTrackingService.getTrackedOrder(orderNumber);
         model.addAttribute("order", order);
+        model.addAttribute("trackingTopic", "/topic/" + OrderTrackingService.topicFor(orderNumber));
         return "orders/track";
     }
 
+    @GetMapping("/track/{orderNumber}/status")
+    @ResponseBody
+    public OrderTrackingService.TrackingUpdate trackOrderStatus(@PathVariable String orderNumber) {
+        return orderTrackingService.getLastKnownStatus(orderNumber);
+    }
+
     @GetMapping("/confirmation/{orderNumber}")
+    @QueryBudget(2)
     public String showConfirmation(@PathVariable String orderNumber, Model model) {
         Order order = orderService.getOrderByNumber(orderNumber);
         model.addAttribute("order", order);
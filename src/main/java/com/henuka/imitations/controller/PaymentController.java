@@ -3,6 +3,7 @@ package com.henuka.imitations.controller;
 import com.henuka.imitations.exception.PaymentException;
 import com.henuka.imitations.model.PaymentOrder;
 import com.henuka.imitations.service.PaymentService;
+import com.henuka.imitations.service.PaymentWebhookService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,6 +17,7 @@ import java.util.Map;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final PaymentWebhookService paymentWebhookService;
 
     @PostMapping("/create")
     public ResponseEntity<?> createPayment(@RequestBody Map<String, String> request) {
@@ -50,6 +52,19 @@ public class PaymentController {
         }
     }
 
+    @PostMapping("/webhook")
+    public ResponseEntity<?> receiveWebhook(@RequestBody byte[] body,
+                                            @RequestHeader(value = "X-Razorpay-Signature", required = false) String signature,
+                                            @RequestHeader(value = "X-Razorpay-Event-Id", required = false) String eventId) {
+        try {
+            PaymentWebhookService.IngestResult result = paymentWebhookService.ingest(body, signature, eventId);
+            
+            return ResponseEntity.ok(Map.of("status", result.name().toLowerCase()));
+        } catch (PaymentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PostMapping("/failure")
     public ResponseEntity<?> handlePaymentFailure(@RequestBody Map<String, String> request) {
         try {
@@ -1,5 +1,6 @@
 package com.henuka.imitations.controller;
 
+import com.henuka.imitations.annotation.QueryBudget;
 import com.henuka.imitations.model.Order;
 import com.henuka.imitations.service.OrderService;
 import lombok.RequiredArgsConstructor;
@@ -28,6 +29,7 @@ public class PaymentViewController {
     private String failureUrl;
 
     @GetMapping("/checkout/{orderNumber}")
+    @QueryBudget(2)
     public String showCheckout(@PathVariable String orderNumber, Model model) {
         Order order = orderService.getOrderByNumber(orderNumber);
         
@@ -1,9 +1,11 @@
 package com.henuka.imitations.controller;
 
 import com.henuka.imitations.model.Product;
+import com.henuka.imitations.service.PageComposer;
 import com.henuka.imitations.service.ProductService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
 
 @Controller
@@ -23,8 +26,12 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
+    private final PageComposer pageComposer;
     private static final int PAGE_SIZE = 12;
 
+    @Value("${app.pages.product.deadline-ms:300}")
+    private long productPageDeadlineMillis;
+
     @GetMapping
     public String listProducts(
             @RequestParam(required = false) String category,
@@ -69,17 +76,16 @@ public class ProductController {
 
     @GetMapping("/{id}")
     public String viewProduct(@PathVariable Long id, Model model) {
-        Product product = productService.getProductById(id);
-        
-        // Get related products
-        List<Product> relatedProducts = productService.getRelatedProducts(
-            product.getCategory(),
-            product.getId(),
-            PageRequest.of(0, 4)
-        );
-
-        model.addAttribute("product", product);
-        model.addAttribute("relatedProducts", relatedProducts);
+        // Widgets load in parallel; optional ones still loading at the deadline render empty
+        PageComposer.Composition page = pageComposer.compose("product", Duration.ofMillis(productPageDeadlineMillis));
+        PageComposer.Composition.Widget<Product> product =
+            page.required("product", () -> productService.getProductById(id));
+        PageComposer.Composition.Widget<List<Product>> relatedProducts =
+            page.optional("relatedProducts", () -> productService.getRelatedProducts(id, PageRequest.of(0, 4)), List.of());
+        page.await();
+
+        model.addAttribute("product", product.get());
+        model.addAttribute("relatedProducts", relatedProducts.get());
         
         return "products/view";
     }
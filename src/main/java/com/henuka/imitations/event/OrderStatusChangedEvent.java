@@ -0,0 +1,43 @@
+package com.henuka.imitations.event;
+
+import com.henuka.imitations.model.Order;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by {@code OrderService} whenever an order's status or payment status changes.
+ * Listeners that touch other tables should use {@code @TransactionalEventListener} so they
+ * only observe committed state.
+ */
+public record OrderStatusChangedEvent(
+    Long orderId,
+    String orderNumber,
+    LocalDateTime orderCreatedAt,
+    Order.OrderStatus previousStatus,
+    Order.OrderStatus status,
+    Order.PaymentStatus previousPaymentStatus,
+    Order.PaymentStatus paymentStatus
+) {
+
+    public static OrderStatusChangedEvent of(Order order,
+                                             Order.OrderStatus previousStatus,
+                                             Order.PaymentStatus previousPaymentStatus) {
+        return new OrderStatusChangedEvent(
+            order.getId(),
+            order.getOrderNumber(),
+            order.getCreatedAt(),
+            previousStatus,
+            order.getStatus(),
+            previousPaymentStatus,
+            order.getPaymentStatus()
+        );
+    }
+
+    public boolean paymentStatusChanged() {
+        return previousPaymentStatus != paymentStatus;
+    }
+
+    public boolean statusChanged() {
+        return previousStatus != status;
+    }
+}
@@ -0,0 +1,44 @@
+package com.henuka.imitations.event;
+
+import com.henuka.imitations.model.PaymentOrder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment state change, stored in payment_events in the same transaction as the change and
+ * delivered to each {@code PaymentEventHandler} at least once, in id order.
+ * {@code orderId} is the shop order number.
+ */
+public record PaymentEvent(
+    Long id,
+    Type type,
+    String orderId,
+    String paymentOrderId,
+    String paymentId,
+    BigDecimal amount,
+    String detail,
+    LocalDateTime createdAt
+) {
+
+    public enum Type {
+        PAYMENT_CAPTURED, PAYMENT_FAILED, PAYMENT_REFUNDED
+    }
+
+    public static PaymentEvent of(Type type, PaymentOrder paymentOrder, String detail) {
+        return new PaymentEvent(
+            null,
+            type,
+            paymentOrder.getOrderId(),
+            paymentOrder.getPaymentOrderId(),
+            paymentOrder.getPaymentId(),
+            paymentOrder.getAmount(),
+            detail,
+            LocalDateTime.now()
+        );
+    }
+
+    public PaymentEvent withId(Long id) {
+        return new PaymentEvent(id, type, orderId, paymentOrderId, paymentId, amount, detail, createdAt);
+    }
+}
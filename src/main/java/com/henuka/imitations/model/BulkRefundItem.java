@@ -0,0 +1,63 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "bulk_refund_items",
+       uniqueConstraints = @UniqueConstraint(name = "uk_bulk_refund_items_job_order", columnNames = {"job_id", "order_number"}),
+       indexes = @Index(name = "idx_bulk_refund_items_job_status", columnList = "job_id, status, id"))
+public class BulkRefundItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "order_number", nullable = false)
+    private String orderNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    private BigDecimal amount;
+
+    @Column(name = "refund_id")
+    private String refundId;
+
+    // Order cancelled and stock returned; done in bulk after the gateway refunds of a chunk
+    @Column(name = "order_refunded", nullable = false)
+    private boolean orderRefunded;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 500)
+    private String error;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        // Not started
+        PENDING,
+        // Gateway refund requested; the outcome is unknown if the job stopped here
+        IN_PROGRESS,
+        REFUNDED,
+        FAILED,
+        // Nothing to refund: no captured payment
+        SKIPPED
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,58 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "bulk_refund_jobs")
+public class BulkRefundJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String reason;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private int total;
+
+    @Column(nullable = false)
+    private int refunded;
+
+    @Column(nullable = false)
+    private int failed;
+
+    @Column(nullable = false)
+    private int skipped;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    // Touched by the node running the job; a stale heartbeat lets another node resume it
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (heartbeatAt == null) {
+            heartbeatAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "daily_sales_reports",
+       uniqueConstraints = @UniqueConstraint(name = "uk_daily_sales_reports_date", columnNames = "report_date"))
+public class DailySalesReport {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "report_date", nullable = false)
+    private LocalDate reportDate;
+
+    // Paid orders created on the report date
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    @Column(name = "units_sold", nullable = false)
+    private long unitsSold;
+
+    // Distinct products sold
+    @Column(name = "product_count", nullable = false)
+    private int productCount;
+
+    // Sum of total_amount (including shipping) of paid orders
+    @Column(nullable = false)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    // Sum of line subtotals of paid orders
+    @Column(name = "item_revenue", nullable = false)
+    private BigDecimal itemRevenue = BigDecimal.ZERO;
+
+    @Column(name = "average_order_value", nullable = false)
+    private BigDecimal averageOrderValue = BigDecimal.ZERO;
+
+    // JSON array of {category, units, revenue}, by revenue descending
+    @Column(name = "category_breakdown", columnDefinition = "TEXT")
+    private String categoryBreakdown;
+
+    // JSON array of {productId, name, category, units, revenue}, by revenue descending
+    @Column(name = "top_sellers", columnDefinition = "TEXT")
+    private String topSellers;
+
+    // Gzipped per-product CSV sent as the email attachment
+    @Lob
+    @Column(name = "product_csv")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] productCsv;
+
+    @Column(name = "generated_at", nullable = false)
+    private LocalDateTime generatedAt;
+
+    @Column(name = "generation_millis", nullable = false)
+    private long generationMillis;
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
+import org.hibernate.annotations.BatchSize;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -11,9 +12,21 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "orders")
+@NamedEntityGraph(
+    name = Order.GRAPH_ITEMS_WITH_PRODUCTS,
+    attributeNodes = @NamedAttributeNode(value = "items", subgraph = "items"),
+    subgraphs = @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode("product"))
+)
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_email_created_at", columnList = "email, created_at"),
+    @Index(name = "idx_orders_status_created_at", columnList = "order_status, created_at"),
+    @Index(name = "idx_orders_payment_status_created_at", columnList = "payment_status, created_at")
+})
 public class Order {
     
+    // Fetch plan for pages that render every line and its product (track, confirmation, checkout)
+    public static final String GRAPH_ITEMS_WITH_PRODUCTS = "Order.itemsWithProducts";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -36,8 +49,8 @@ public class Order {
     @Column(name = "shipping_address", columnDefinition = "TEXT")
     private String shippingAddress;
     
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
-    @JoinColumn(name = "order_id")
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 32)
     private List<OrderItem> items = new ArrayList<>();
     
     @NotNull
@@ -69,6 +82,11 @@ public class Order {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    // Bumped by every status transition; OrderService compares-and-sets against it
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     public enum OrderStatus {
         PENDING, CONFIRMED, SHIPPED, DELIVERED, CANCELLED
     }
@@ -96,13 +114,18 @@ public class Order {
     }
     
     public void addItem(Product product, int quantity) {
-        OrderItem orderItem = new OrderItem(product, quantity);
+        addItem(new OrderItem(product, quantity));
+    }
+    
+    public void addItem(OrderItem orderItem) {
+        orderItem.setOrder(this);
         items.add(orderItem);
         recalculateAmounts();
     }
     
     public void removeItem(OrderItem item) {
         items.remove(item);
+        item.setOrder(null);
         recalculateAmounts();
     }
     
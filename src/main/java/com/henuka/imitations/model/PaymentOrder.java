@@ -14,7 +14,8 @@ public class PaymentOrder {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(name = "order_id", nullable = false)
+    // Shop order number; one payment order per order
+    @Column(name = "order_id", nullable = false, unique = true)
     private String orderId;
     
     @Column(name = "payment_order_id", unique = true)
@@ -48,6 +49,10 @@ public class PaymentOrder {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     public enum PaymentStatus {
         PENDING, SUCCESS, FAILED, REFUNDED
     }
@@ -0,0 +1,58 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "payment_reconciliation_runs")
+public class PaymentReconciliationRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Gateway payments created in [windowStart, windowEnd) are compared
+    @Column(name = "window_start", nullable = false)
+    private LocalDateTime windowStart;
+
+    @Column(name = "window_end", nullable = false)
+    private LocalDateTime windowEnd;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.RUNNING;
+
+    @Column(name = "gateway_payments", nullable = false)
+    private long gatewayPayments;
+
+    @Column(nullable = false)
+    private long matched;
+
+    @Column(nullable = false)
+    private long corrected;
+
+    @Column(nullable = false)
+    private long mismatches;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(length = 500)
+    private String error;
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (startedAt == null) {
+            startedAt = LocalDateTime.now();
+        }
+    }
+}
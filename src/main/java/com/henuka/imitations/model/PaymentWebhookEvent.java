@@ -0,0 +1,80 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "payment_webhook_events",
+       uniqueConstraints = @UniqueConstraint(name = "uk_payment_webhook_events_event_id", columnNames = "event_id"),
+       indexes = @Index(name = "idx_payment_webhook_events_status", columnList = "status, id"))
+public class PaymentWebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Razorpay's x-razorpay-event-id; redeliveries of the same event share it
+    @Column(name = "event_id", nullable = false, length = 64)
+    private String eventId;
+
+    @Column(name = "event_type", nullable = false, length = 64)
+    private String eventType;
+
+    // Razorpay order id (PaymentOrder.paymentOrderId); events for one payment order are applied in order
+    @Column(name = "payment_order_id")
+    private String paymentOrderId;
+
+    @Column(name = "payment_id")
+    private String paymentId;
+
+    // Raw request body exactly as signed by Razorpay
+    @Column(nullable = false, columnDefinition = "TEXT")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String payload;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.RECEIVED;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(length = 500)
+    private String error;
+
+    // Failed attempts to apply so far
+    @Column(nullable = false)
+    private int attempts;
+
+    // When RECEIVED: earliest next try (null for now); when QUEUED: end of the lane's claim
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    public enum Status {
+        // Stored and acknowledged, not yet applied; waiting for a lane or a retry
+        RECEIVED,
+        // Claimed and handed to a lane; returns to RECEIVED if the claim runs out
+        QUEUED,
+        // Changed a payment order
+        APPLIED,
+        // Nothing to do: already applied, superseded or not a payment event
+        IGNORED,
+        // Could not be applied within the attempt limit; kept for inspection
+        FAILED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (receivedAt == null) {
+            receivedAt = LocalDateTime.now();
+        }
+    }
+}
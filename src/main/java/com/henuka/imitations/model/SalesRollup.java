@@ -0,0 +1,111 @@
+package com.henuka.imitations.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "sales_rollups",
+       uniqueConstraints = @UniqueConstraint(name = "uk_sales_rollups_bucket",
+                                             columnNames = {"granularity", "bucket_start"}))
+public class SalesRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Granularity granularity;
+
+    // Inclusive start of the hour or day this row covers
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    // All orders created in the bucket, regardless of status
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    // Sum of total_amount for orders whose payment status is PAID
+    @Column(nullable = false)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    @Column(name = "average_order_value", nullable = false)
+    private BigDecimal averageOrderValue = BigDecimal.ZERO;
+
+    @Column(name = "refunded_amount", nullable = false)
+    private BigDecimal refundedAmount = BigDecimal.ZERO;
+
+    @Column(name = "pending_count", nullable = false)
+    private long pendingCount;
+
+    @Column(name = "confirmed_count", nullable = false)
+    private long confirmedCount;
+
+    @Column(name = "shipped_count", nullable = false)
+    private long shippedCount;
+
+    @Column(name = "delivered_count", nullable = false)
+    private long deliveredCount;
+
+    @Column(name = "cancelled_count", nullable = false)
+    private long cancelledCount;
+
+    @Column(name = "payment_pending_count", nullable = false)
+    private long paymentPendingCount;
+
+    @Column(name = "payment_paid_count", nullable = false)
+    private long paymentPaidCount;
+
+    @Column(name = "payment_failed_count", nullable = false)
+    private long paymentFailedCount;
+
+    @Column(name = "payment_refunded_count", nullable = false)
+    private long paymentRefundedCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public enum Granularity {
+        HOURLY, DAILY
+    }
+
+    public SalesRollup() {
+    }
+
+    public SalesRollup(Granularity granularity, LocalDateTime bucketStart) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+        averageOrderValue = paymentPaidCount == 0
+            ? BigDecimal.ZERO
+            : revenue.divide(BigDecimal.valueOf(paymentPaidCount), 2, RoundingMode.HALF_UP);
+    }
+
+    public long getStatusCount(Order.OrderStatus status) {
+        return switch (status) {
+            case PENDING -> pendingCount;
+            case CONFIRMED -> confirmedCount;
+            case SHIPPED -> shippedCount;
+            case DELIVERED -> deliveredCount;
+            case CANCELLED -> cancelledCount;
+        };
+    }
+
+    public long getPaymentStatusCount(Order.PaymentStatus paymentStatus) {
+        return switch (paymentStatus) {
+            case PENDING -> paymentPendingCount;
+            case PAID -> paymentPaidCount;
+            case FAILED -> paymentFailedCount;
+            case REFUNDED -> paymentRefundedCount;
+        };
+    }
+}
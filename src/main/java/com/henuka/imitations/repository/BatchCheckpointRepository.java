@@ -0,0 +1,190 @@
+package com.henuka.imitations.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Plain JDBC access to batch job checkpoints and skipped items. A partition's checkpoint is
+ * advanced in the same transaction as the chunk it covers, so a restarted run never writes a
+ * committed chunk twice.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BatchCheckpointRepository {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public enum Status { RUNNING, COMPLETED, FAILED, STOPPED }
+
+    public record Checkpoint(String jobName, int partitionIndex, int partitionCount, Status status, Long lastKey,
+                             long read, long written, long filtered, long skipped, long chunks,
+                             LocalDateTime startedAt, LocalDateTime updatedAt, LocalDateTime finishedAt,
+                             String lastError) {
+    }
+
+    // Checkpoints of one job, by partition
+    public List<Checkpoint> findByJob(String jobName) {
+        return jdbcTemplate.query(
+            "SELECT * FROM batch_checkpoints WHERE job_name = :jobName ORDER BY partition_index",
+            new MapSqlParameterSource("jobName", jobName),
+            (rs, rowNum) -> mapCheckpoint(rs)
+        );
+    }
+
+    // Checkpoints of every job, for the actuator endpoint
+    public List<Checkpoint> findAll() {
+        return jdbcTemplate.query(
+            "SELECT * FROM batch_checkpoints ORDER BY job_name, partition_index",
+            (rs, rowNum) -> mapCheckpoint(rs)
+        );
+    }
+
+    // Begin a new run of a partition from the first item
+    public void start(String jobName, int partitionIndex, int partitionCount, LocalDateTime now) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("jobName", jobName)
+            .addValue("partition", partitionIndex)
+            .addValue("count", partitionCount)
+            .addValue("status", Status.RUNNING.name())
+            .addValue("now", Timestamp.valueOf(now));
+        int updated = jdbcTemplate.update(
+            "UPDATE batch_checkpoints SET partition_count = :count, status = :status, last_key = NULL, " +
+            "read_count = 0, written_count = 0, filtered_count = 0, skipped_count = 0, chunk_count = 0, " +
+            "started_at = :now, updated_at = :now, finished_at = NULL, last_error = NULL " +
+            "WHERE job_name = :jobName AND partition_index = :partition",
+            params
+        );
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update(
+                    "INSERT INTO batch_checkpoints (job_name, partition_index, partition_count, status, " +
+                    "started_at, updated_at) VALUES (:jobName, :partition, :count, :status, :now, :now)",
+                    params
+                );
+            } catch (DuplicateKeyException e) {
+                throw new IllegalStateException("Batch job " + jobName + " partition " + partitionIndex
+                    + " was started concurrently", e);
+            }
+        }
+        jdbcTemplate.update(
+            "DELETE FROM batch_skipped_items WHERE job_name = :jobName AND partition_index = :partition", params);
+    }
+
+    // Continue an unfinished run of a partition from its last key
+    public void resume(String jobName, int partitionIndex, LocalDateTime now) {
+        jdbcTemplate.update(
+            "UPDATE batch_checkpoints SET status = :status, updated_at = :now, finished_at = NULL, last_error = NULL " +
+            "WHERE job_name = :jobName AND partition_index = :partition",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("partition", partitionIndex)
+                .addValue("status", Status.RUNNING.name())
+                .addValue("now", Timestamp.valueOf(now))
+        );
+    }
+
+    // Move a partition's checkpoint past a committed chunk; call in the chunk's transaction
+    public void advance(String jobName, int partitionIndex, long lastKey, long read, long written, long filtered,
+                        long skipped, LocalDateTime now) {
+        jdbcTemplate.update(
+            "UPDATE batch_checkpoints SET last_key = :lastKey, read_count = read_count + :read, " +
+            "written_count = written_count + :written, filtered_count = filtered_count + :filtered, " +
+            "skipped_count = skipped_count + :skipped, chunk_count = chunk_count + 1, updated_at = :now " +
+            "WHERE job_name = :jobName AND partition_index = :partition",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("partition", partitionIndex)
+                .addValue("lastKey", lastKey)
+                .addValue("read", read)
+                .addValue("written", written)
+                .addValue("filtered", filtered)
+                .addValue("skipped", skipped)
+                .addValue("now", Timestamp.valueOf(now))
+        );
+    }
+
+    // Record how a partition's run ended
+    public void finish(String jobName, int partitionIndex, Status status, String error, LocalDateTime now) {
+        jdbcTemplate.update(
+            "UPDATE batch_checkpoints SET status = :status, updated_at = :now, finished_at = :now, last_error = :error " +
+            "WHERE job_name = :jobName AND partition_index = :partition",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("partition", partitionIndex)
+                .addValue("status", status.name())
+                .addValue("error", truncate(error))
+                .addValue("now", Timestamp.valueOf(now))
+        );
+    }
+
+    // Forget every checkpoint of a job, e.g. when its partition count changes
+    public void deleteJob(String jobName) {
+        MapSqlParameterSource params = new MapSqlParameterSource("jobName", jobName);
+        jdbcTemplate.update("DELETE FROM batch_skipped_items WHERE job_name = :jobName", params);
+        jdbcTemplate.update("DELETE FROM batch_checkpoints WHERE job_name = :jobName", params);
+    }
+
+    public void recordSkip(String jobName, int partitionIndex, long itemKey, String error, LocalDateTime now) {
+        jdbcTemplate.update(
+            "INSERT INTO batch_skipped_items (job_name, partition_index, item_key, error, skipped_at) " +
+            "VALUES (:jobName, :partition, :itemKey, :error, :now)",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("partition", partitionIndex)
+                .addValue("itemKey", itemKey)
+                .addValue("error", truncate(error))
+                .addValue("now", Timestamp.valueOf(now))
+        );
+    }
+
+    // Keys of the items the current run of a job has skipped, most recent first
+    public List<Long> findSkippedKeys(String jobName, int limit) {
+        return jdbcTemplate.queryForList(
+            "SELECT item_key FROM batch_skipped_items WHERE job_name = :jobName ORDER BY id DESC LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("limit", limit),
+            Long.class
+        );
+    }
+
+    private static Checkpoint mapCheckpoint(ResultSet rs) throws SQLException {
+        long key = rs.getLong("last_key");
+        Long lastKey = rs.wasNull() ? null : key;
+        return new Checkpoint(
+            rs.getString("job_name"),
+            rs.getInt("partition_index"),
+            rs.getInt("partition_count"),
+            Status.valueOf(rs.getString("status")),
+            lastKey,
+            rs.getLong("read_count"),
+            rs.getLong("written_count"),
+            rs.getLong("filtered_count"),
+            rs.getLong("skipped_count"),
+            rs.getLong("chunk_count"),
+            toLocalDateTime(rs.getTimestamp("started_at")),
+            toLocalDateTime(rs.getTimestamp("updated_at")),
+            toLocalDateTime(rs.getTimestamp("finished_at")),
+            rs.getString("last_error")
+        );
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.BulkRefundItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BulkRefundItemRepository extends JpaRepository<BulkRefundItem, Long> {
+
+    // Next items of a job in the given statuses, in insertion order
+    List<BulkRefundItem> findByJobIdAndStatusInOrderById(Long jobId,
+                                                         Collection<BulkRefundItem.Status> statuses,
+                                                         Pageable pageable);
+
+    // Refunded at the gateway but the order has not been cancelled yet
+    List<BulkRefundItem> findByJobIdAndStatusAndOrderRefundedFalseOrderById(Long jobId,
+                                                                            BulkRefundItem.Status status,
+                                                                            Pageable pageable);
+
+    List<BulkRefundItem> findByJobIdAndStatusOrderById(Long jobId, BulkRefundItem.Status status, Pageable pageable);
+
+    // Item counts per status for a job
+    @Query("SELECT i.status, COUNT(i) FROM BulkRefundItem i WHERE i.jobId = :jobId GROUP BY i.status")
+    List<Object[]> countByStatus(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,31 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.BulkRefundJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BulkRefundJobRepository extends JpaRepository<BulkRefundJob, Long> {
+
+    // Unfinished jobs whose runner has stopped reporting
+    @Query("SELECT j FROM BulkRefundJob j WHERE j.status <> 'COMPLETED' " +
+           "AND j.heartbeatAt < :staleBefore ORDER BY j.id")
+    List<BulkRefundJob> findStalled(@Param("staleBefore") LocalDateTime staleBefore);
+
+    // Take over a job only if its runner has stopped reporting; the claim's own heartbeat makes
+    // every other claim of the same job miss until that one goes stale in turn
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BulkRefundJob j SET j.status = 'RUNNING', j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.status <> 'COMPLETED' AND j.heartbeatAt < :staleBefore")
+    int claim(@Param("id") Long id,
+              @Param("staleBefore") LocalDateTime staleBefore,
+              @Param("now") LocalDateTime now);
+}
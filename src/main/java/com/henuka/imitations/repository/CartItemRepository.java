@@ -2,6 +2,7 @@ package com.henuka.imitations.repository;
 
 import com.henuka.imitations.model.CartItem;
 import com.henuka.imitations.model.Product;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -16,7 +17,8 @@ import java.util.Optional;
 @Repository
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     
-    // Find all items in a shopping cart by session ID
+    // Find all items in a shopping cart by session ID, with their products
+    @EntityGraph(attributePaths = "product")
     List<CartItem> findBySessionId(String sessionId);
     
     // Find a specific product in a cart
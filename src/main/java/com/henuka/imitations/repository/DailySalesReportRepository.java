@@ -0,0 +1,15 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.DailySalesReport;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface DailySalesReportRepository extends JpaRepository<DailySalesReport, Long> {
+
+    // Stored report for a day, if it has been generated
+    Optional<DailySalesReport> findByReportDate(LocalDate reportDate);
+}
@@ -0,0 +1,182 @@
+package com.henuka.imitations.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Plain JDBC access to the email outbox. Messages are claimed by compare-and-set on their
+ * status and next attempt time, so several senders (or nodes) can poll the same table.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EmailOutboxRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Queue a rendered message; joins the caller's transaction
+    public long enqueue(String recipient, String subject, String template, String htmlBody,
+                        String attachmentName, String attachmentType, byte[] attachment) {
+        return insert(null, recipient, subject, template, htmlBody, attachmentName, attachmentType, attachment);
+    }
+
+    // Queue a rendered message unless one with the same key was queued before; false if it was.
+    // A duplicate key is caught here rather than in a repository proxy, so the caller's transaction survives
+    public boolean enqueueOnce(String dedupKey, String recipient, String subject, String template, String htmlBody,
+                               String attachmentName, String attachmentType, byte[] attachment) {
+        try {
+            insert(dedupKey, recipient, subject, template, htmlBody, attachmentName, attachmentType, attachment);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private long insert(String dedupKey, String recipient, String subject, String template, String htmlBody,
+                        String attachmentName, String attachmentType, byte[] attachment) {
+        LocalDateTime now = LocalDateTime.now();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(
+            "INSERT INTO email_outbox (dedup_key, recipient, subject, template, html_body, attachment_name, " +
+            "attachment_type, attachment, status, attempts, next_attempt_at, created_at) " +
+            "VALUES (:dedupKey, :recipient, :subject, :template, :htmlBody, :attachmentName, :attachmentType, " +
+            ":attachment, 'PENDING', 0, :now, :now)",
+            new MapSqlParameterSource()
+                .addValue("dedupKey", dedupKey)
+                .addValue("recipient", recipient)
+                .addValue("subject", subject)
+                .addValue("template", template)
+                .addValue("htmlBody", htmlBody)
+                .addValue("attachmentName", attachmentName)
+                .addValue("attachmentType", attachmentType)
+                .addValue("attachment", attachment)
+                .addValue("now", Timestamp.valueOf(now)),
+            keyHolder,
+            new String[] {"id"}
+        );
+        return Objects.requireNonNull(keyHolder.getKey()).longValue();
+    }
+
+    // Messages due now: pending ones past their backoff and sending ones whose lease ran out
+    public List<OutboxMessage> findDue(LocalDateTime now, int limit) {
+        return jdbcTemplate.query(
+            "SELECT id, recipient, subject, template, html_body, attachment_name, attachment_type, attachment, " +
+            "status, attempts, next_attempt_at, created_at FROM email_outbox " +
+            "WHERE status IN ('PENDING', 'SENDING') AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at, id LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("now", Timestamp.valueOf(now))
+                .addValue("limit", limit),
+            (rs, rowNum) -> new OutboxMessage(
+                rs.getLong("id"),
+                rs.getString("recipient"),
+                rs.getString("subject"),
+                rs.getString("template"),
+                rs.getString("html_body"),
+                rs.getString("attachment_name"),
+                rs.getString("attachment_type"),
+                rs.getBytes("attachment"),
+                rs.getString("status"),
+                rs.getInt("attempts"),
+                rs.getTimestamp("next_attempt_at"),
+                rs.getTimestamp("created_at").toLocalDateTime()
+            )
+        );
+    }
+
+    // Lease the given messages to the caller; returns those it won
+    public List<OutboxMessage> claim(List<OutboxMessage> messages, LocalDateTime leaseUntil) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        Timestamp until = Timestamp.valueOf(leaseUntil);
+        SqlParameterSource[] batch = messages.stream()
+            .map(m -> new MapSqlParameterSource()
+                .addValue("id", m.id())
+                .addValue("status", m.status())
+                .addValue("seen", m.nextAttemptAt())
+                .addValue("until", until))
+            .toArray(SqlParameterSource[]::new);
+        int[] updated = jdbcTemplate.batchUpdate(
+            "UPDATE email_outbox SET status = 'SENDING', next_attempt_at = :until " +
+            "WHERE id = :id AND status = :status AND next_attempt_at = :seen",
+            batch
+        );
+
+        List<OutboxMessage> claimed = new ArrayList<>(messages.size());
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 0) {
+                claimed.add(messages.get(i));
+            }
+        }
+        return claimed;
+    }
+
+    public void markSent(List<Long> ids, LocalDateTime sentAt) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(
+            "UPDATE email_outbox SET status = 'SENT', sent_at = :sentAt, last_error = NULL, " +
+            "attachment = NULL WHERE id IN (:ids)",
+            new MapSqlParameterSource()
+                .addValue("ids", ids)
+                .addValue("sentAt", Timestamp.valueOf(sentAt))
+        );
+    }
+
+    // Back to the queue after a failed attempt; counted against the message's attempts
+    public void markRetry(long id, LocalDateTime nextAttemptAt, String error) {
+        jdbcTemplate.update(
+            "UPDATE email_outbox SET status = 'PENDING', attempts = attempts + 1, " +
+            "next_attempt_at = :nextAttemptAt, last_error = :error WHERE id = :id",
+            new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("nextAttemptAt", Timestamp.valueOf(nextAttemptAt))
+                .addValue("error", error)
+        );
+    }
+
+    public void markFailed(long id, String error) {
+        jdbcTemplate.update(
+            "UPDATE email_outbox SET status = 'FAILED', attempts = attempts + 1, last_error = :error WHERE id = :id",
+            new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("error", error)
+        );
+    }
+
+    // Messages not sent yet, including those in flight
+    public long countQueued() {
+        return jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM email_outbox WHERE status IN ('PENDING', 'SENDING')",
+            new MapSqlParameterSource(),
+            Long.class
+        );
+    }
+
+    public record OutboxMessage(long id,
+                                String recipient,
+                                String subject,
+                                String template,
+                                String htmlBody,
+                                String attachmentName,
+                                String attachmentType,
+                                byte[] attachment,
+                                String status,
+                                int attempts,
+                                Timestamp nextAttemptAt,
+                                LocalDateTime createdAt) {
+    }
+}
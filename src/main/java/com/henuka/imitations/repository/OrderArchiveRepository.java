@@ -0,0 +1,172 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.OrderItem;
+import com.henuka.imitations.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Plain JDBC access to the orders_archive / order_items_archive tables. Rows are copied with
+ * INSERT ... SELECT so archiving never loads orders into the persistence context.
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderArchiveRepository {
+
+    private static final String ORDER_COLUMNS =
+        "id, order_number, customer_name, email, phone_number, shipping_address, subtotal, " +
+        "shipping_cost, total_amount, order_status, payment_status, payment_id, created_at, updated_at";
+
+    private static final String ITEM_COLUMNS = "id, product_id, quantity, unit_price, subtotal, order_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Ids of finished orders created before the cutoff with an id above afterId, oldest first,
+    // limited to those whose id modulo partitionCount is partitionIndex
+    public List<Long> findArchivableOrderIds(Collection<Order.OrderStatus> statuses,
+                                             LocalDateTime createdBefore,
+                                             int partitionIndex,
+                                             int partitionCount,
+                                             long afterId,
+                                             int limit) {
+        return jdbcTemplate.queryForList(
+            "SELECT id FROM orders WHERE order_status IN (:statuses) AND created_at < :cutoff AND id > :afterId " +
+            "AND MOD(id, :partitionCount) = :partitionIndex ORDER BY id LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("statuses", statuses.stream().map(Enum::name).toList())
+                .addValue("cutoff", Timestamp.valueOf(createdBefore))
+                .addValue("afterId", afterId)
+                .addValue("partitionIndex", partitionIndex)
+                .addValue("partitionCount", partitionCount)
+                .addValue("limit", limit),
+            Long.class
+        );
+    }
+
+    // Raw order rows for export
+    public List<Map<String, Object>> findOrderRows(Collection<Long> orderIds) {
+        return jdbcTemplate.queryForList(
+            "SELECT " + ORDER_COLUMNS + " FROM orders WHERE id IN (:ids) ORDER BY id",
+            new MapSqlParameterSource("ids", orderIds)
+        );
+    }
+
+    // Raw item rows for export
+    public List<Map<String, Object>> findItemRows(Collection<Long> orderIds) {
+        return jdbcTemplate.queryForList(
+            "SELECT " + ITEM_COLUMNS + " FROM order_items WHERE order_id IN (:ids) ORDER BY order_id, id",
+            new MapSqlParameterSource("ids", orderIds)
+        );
+    }
+
+    // Copy orders and their items to the archive, then remove them from the hot tables
+    public int moveToArchive(Collection<Long> orderIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", orderIds)
+            .addValue("archivedAt", Timestamp.valueOf(LocalDateTime.now()));
+
+        jdbcTemplate.update(
+            "INSERT INTO orders_archive (" + ORDER_COLUMNS + ", archived_at) " +
+            "SELECT " + ORDER_COLUMNS + ", :archivedAt FROM orders WHERE id IN (:ids)", params);
+        jdbcTemplate.update(
+            "INSERT INTO order_items_archive (" + ITEM_COLUMNS + ") " +
+            "SELECT " + ITEM_COLUMNS + " FROM order_items WHERE order_id IN (:ids)", params);
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (:ids)", params);
+        return jdbcTemplate.update("DELETE FROM orders WHERE id IN (:ids)", params);
+    }
+
+    // Archived orders created in [from, to) grouped as OrderRepository.aggregateByStatusBetween groups
+    // live ones: rows of [status, paymentStatus, count, sum(totalAmount)]
+    public List<Object[]> aggregateByStatusBetween(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(
+            "SELECT order_status, payment_status, COUNT(*) AS order_count, COALESCE(SUM(total_amount), 0) AS amount " +
+            "FROM orders_archive WHERE created_at >= :from AND created_at < :to " +
+            "GROUP BY order_status, payment_status",
+            new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to)),
+            (rs, rowNum) -> new Object[] {
+                rs.getString("order_status") != null ? Order.OrderStatus.valueOf(rs.getString("order_status")) : null,
+                rs.getString("payment_status") != null ? Order.PaymentStatus.valueOf(rs.getString("payment_status")) : null,
+                rs.getLong("order_count"),
+                rs.getBigDecimal("amount")
+            }
+        );
+    }
+
+    // Rebuild a detached, read-only Order from the archive
+    public Optional<Order> findByOrderNumber(String orderNumber) {
+        List<Order> orders = jdbcTemplate.query(
+            "SELECT " + ORDER_COLUMNS + " FROM orders_archive WHERE order_number = :orderNumber",
+            new MapSqlParameterSource("orderNumber", orderNumber),
+            (rs, rowNum) -> mapOrder(rs)
+        );
+        if (orders.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Order order = orders.get(0);
+        jdbcTemplate.query(
+            "SELECT i.id, i.product_id, i.quantity, i.unit_price, i.subtotal, " +
+            "p.name AS product_name, p.image_url AS product_image_url, p.price AS product_price " +
+            "FROM order_items_archive i LEFT JOIN products p ON p.id = i.product_id " +
+            "WHERE i.order_id = :orderId ORDER BY i.id",
+            new MapSqlParameterSource("orderId", order.getId()),
+            rs -> {
+                order.getItems().add(mapItem(rs, order));
+            }
+        );
+        return Optional.of(order);
+    }
+
+    private static Order mapOrder(ResultSet rs) throws SQLException {
+        Order order = new Order();
+        order.setId(rs.getLong("id"));
+        order.setOrderNumber(rs.getString("order_number"));
+        order.setCustomerName(rs.getString("customer_name"));
+        order.setEmail(rs.getString("email"));
+        order.setPhoneNumber(rs.getString("phone_number"));
+        order.setShippingAddress(rs.getString("shipping_address"));
+        order.setSubtotal(rs.getBigDecimal("subtotal"));
+        order.setShippingCost(rs.getBigDecimal("shipping_cost"));
+        order.setTotalAmount(rs.getBigDecimal("total_amount"));
+        order.setStatus(Order.OrderStatus.valueOf(rs.getString("order_status")));
+        order.setPaymentStatus(Order.PaymentStatus.valueOf(rs.getString("payment_status")));
+        order.setPaymentId(rs.getString("payment_id"));
+        order.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
+        order.setUpdatedAt(toLocalDateTime(rs.getTimestamp("updated_at")));
+        return order;
+    }
+
+    private static OrderItem mapItem(ResultSet rs, Order order) throws SQLException {
+        Product product = new Product();
+        product.setId(rs.getLong("product_id"));
+        product.setName(rs.getString("product_name"));
+        product.setImageUrl(rs.getString("product_image_url"));
+        product.setPrice(rs.getBigDecimal("product_price"));
+
+        OrderItem item = new OrderItem();
+        item.setId(rs.getLong("id"));
+        item.setProduct(product);
+        item.setQuantity(rs.getInt("quantity"));
+        item.setUnitPrice(rs.getBigDecimal("unit_price"));
+        item.setSubtotal(rs.getBigDecimal("subtotal"));
+        item.setOrder(order);
+        return item;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
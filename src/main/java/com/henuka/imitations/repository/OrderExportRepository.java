@@ -0,0 +1,172 @@
+package com.henuka.imitations.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Forward-only JDBC cursors over orders and their lines for exports and reports. Rows are handed to the
+ * caller one at a time and never reach the persistence context, so memory use does not grow
+ * with the size of the range. Archived orders are read along with live ones, so a range reads
+ * the same before and after the archiver moves it.
+ */
+@Repository
+public class OrderExportRepository {
+
+    // Live rows UNION ALL archived rows, sorted by order id; an order is in exactly one of the two
+    private static final String EXPORT_COLUMNS =
+        "SELECT o.id, o.order_number, o.created_at, o.customer_name, o.email, o.order_status, " +
+        "o.payment_status, o.payment_id, o.subtotal, o.shipping_cost, o.total_amount, " +
+        "i.id AS item_id, i.product_id, p.name AS product_name, i.quantity, i.unit_price, " +
+        "i.subtotal AS item_subtotal ";
+
+    private static final String EXPORT_QUERY =
+        EXPORT_COLUMNS +
+        "FROM orders o " +
+        "LEFT JOIN order_items i ON i.order_id = o.id " +
+        "LEFT JOIN products p ON p.id = i.product_id " +
+        "WHERE o.created_at >= ? AND o.created_at < ? " +
+        "UNION ALL " +
+        EXPORT_COLUMNS +
+        "FROM orders_archive o " +
+        "LEFT JOIN order_items_archive i ON i.order_id = o.id " +
+        "LEFT JOIN products p ON p.id = i.product_id " +
+        "WHERE o.created_at >= ? AND o.created_at < ? " +
+        "ORDER BY id, item_id";
+
+    private static final String SALES_COLUMNS =
+        "SELECT o.id AS order_id, o.total_amount, i.product_id, p.name AS product_name, p.category, " +
+        "i.quantity, i.subtotal AS item_subtotal ";
+
+    private static final String SALES_QUERY =
+        SALES_COLUMNS +
+        "FROM orders o " +
+        "JOIN order_items i ON i.order_id = o.id " +
+        "LEFT JOIN products p ON p.id = i.product_id " +
+        "WHERE o.created_at >= ? AND o.created_at < ? AND o.payment_status = 'PAID' " +
+        "UNION ALL " +
+        SALES_COLUMNS +
+        "FROM orders_archive o " +
+        "JOIN order_items_archive i ON i.order_id = o.id " +
+        "LEFT JOIN products p ON p.id = i.product_id " +
+        "WHERE o.created_at >= ? AND o.created_at < ? AND o.payment_status = 'PAID' " +
+        "ORDER BY order_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Rows fetched per round trip; on MySQL this relies on useCursorFetch=true, set in DatabaseConfig
+    @Value("${app.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public OrderExportRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    // Stream one row per order line (or one row with null item columns for an order without lines)
+    // for orders created in [from, to), ordered by order id so lines of an order are adjacent.
+    // Must run inside a transaction for drivers that only use server-side cursors without autocommit.
+    public void streamOrderLines(LocalDateTime from, LocalDateTime to, Consumer<OrderLine> consumer) {
+        stream(EXPORT_QUERY, from, to, resultSet -> consumer.accept(mapLine(resultSet)));
+    }
+
+    // Stream the lines of paid orders created in [from, to), ordered by order id
+    public void streamPaidSalesLines(LocalDateTime from, LocalDateTime to, Consumer<SalesLine> consumer) {
+        stream(SALES_QUERY, from, to, resultSet -> consumer.accept(new SalesLine(
+            resultSet.getLong("order_id"),
+            resultSet.getBigDecimal("total_amount"),
+            resultSet.getLong("product_id"),
+            resultSet.getString("product_name"),
+            resultSet.getString("category"),
+            resultSet.getInt("quantity"),
+            resultSet.getBigDecimal("item_subtotal")
+        )));
+    }
+
+    private void stream(String sql, LocalDateTime from, LocalDateTime to, RowCallbackHandler handler) {
+        jdbcTemplate.query(
+            connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                // Once for the live tables, once for the archive
+                for (int index = 1; index <= 3; index += 2) {
+                    statement.setTimestamp(index, Timestamp.valueOf(from));
+                    statement.setTimestamp(index + 1, Timestamp.valueOf(to));
+                }
+                return statement;
+            },
+            handler
+        );
+    }
+
+    private static OrderLine mapLine(ResultSet rs) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        long itemId = rs.getLong("item_id");
+        boolean hasItem = !rs.wasNull();
+        return new OrderLine(
+            rs.getLong("id"),
+            rs.getString("order_number"),
+            createdAt != null ? createdAt.toLocalDateTime() : null,
+            rs.getString("customer_name"),
+            rs.getString("email"),
+            rs.getString("order_status"),
+            rs.getString("payment_status"),
+            rs.getString("payment_id"),
+            rs.getBigDecimal("subtotal"),
+            rs.getBigDecimal("shipping_cost"),
+            rs.getBigDecimal("total_amount"),
+            hasItem ? itemId : null,
+            hasItem ? rs.getLong("product_id") : null,
+            rs.getString("product_name"),
+            hasItem ? rs.getInt("quantity") : null,
+            rs.getBigDecimal("unit_price"),
+            rs.getBigDecimal("item_subtotal")
+        );
+    }
+
+    public record OrderLine(
+        Long orderId,
+        String orderNumber,
+        LocalDateTime createdAt,
+        String customerName,
+        String email,
+        String status,
+        String paymentStatus,
+        String paymentId,
+        BigDecimal subtotal,
+        BigDecimal shippingCost,
+        BigDecimal totalAmount,
+        Long itemId,
+        Long productId,
+        String productName,
+        Integer quantity,
+        BigDecimal unitPrice,
+        BigDecimal itemSubtotal
+    ) {
+
+        public boolean hasItem() {
+            return itemId != null;
+        }
+    }
+
+    public record SalesLine(
+        Long orderId,
+        BigDecimal orderTotal,
+        Long productId,
+        String productName,
+        String category,
+        int quantity,
+        BigDecimal subtotal
+    ) {
+    }
+}
@@ -1,28 +1,36 @@
 package com.henuka.imitations.repository;
 
 import com.henuka.imitations.model.Order;
-import java.util.Map;
 import com.henuka.imitations.model.Order.OrderStatus;
 import com.henuka.imitations.model.Order.PaymentStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.math.BigDecimal;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
     
-    // Find order by order number
+    // Find order by order number, with its items and their products in one query
+    @EntityGraph(value = Order.GRAPH_ITEMS_WITH_PRODUCTS)
     Optional<Order> findByOrderNumber(String orderNumber);
     
-    // Find orders by email
+    // Find orders by email, with items and products fetched alongside
+    @EntityGraph(value = Order.GRAPH_ITEMS_WITH_PRODUCTS)
     List<Order> findByEmailOrderByCreatedAtDesc(String email);
     
     // Find orders by status
@@ -37,35 +45,6 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // Find orders with pagination and sorting
     Page<Order> findByEmail(String email, Pageable pageable);
     
-    // Search orders with multiple criteria
-    @Query("SELECT o FROM Order o WHERE " +
-           "(:email IS NULL OR o.email = :email) AND " +
-           "(:status IS NULL OR o.status = :status) AND " +
-           "(:paymentStatus IS NULL OR o.paymentStatus = :paymentStatus) AND " +
-           "(:minAmount IS NULL OR o.totalAmount >= :minAmount) AND " +
-           "(:maxAmount IS NULL OR o.totalAmount <= :maxAmount) AND " +
-           "(:startDate IS NULL OR o.createdAt >= :startDate) AND " +
-           "(:endDate IS NULL OR o.createdAt <= :endDate)")
-    Page<Order> searchOrders(
-        @Param("email") String email,
-        @Param("status") OrderStatus status,
-        @Param("paymentStatus") PaymentStatus paymentStatus,
-        @Param("minAmount") BigDecimal minAmount,
-        @Param("maxAmount") BigDecimal maxAmount,
-        @Param("startDate") LocalDateTime startDate,
-        @Param("endDate") LocalDateTime endDate,
-        Pageable pageable
-    );
-    
-    // Get total revenue between dates
-    @Query("SELECT SUM(o.totalAmount) FROM Order o WHERE " +
-           "o.paymentStatus = 'PAID' AND " +
-           "o.createdAt BETWEEN :startDate AND :endDate")
-    BigDecimal getTotalRevenue(
-        @Param("startDate") LocalDateTime startDate,
-        @Param("endDate") LocalDateTime endDate
-    );
-    
     // Count orders by status
     Long countByStatus(OrderStatus status);
     
@@ -75,23 +54,75 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // Find recent orders
     List<Order> findTop10ByOrderByCreatedAtDesc();
     
-    // Find pending orders older than specified time
-    @Query("SELECT o FROM Order o WHERE o.status = 'PENDING' AND o.createdAt < :cutoffTime")
-    List<Order> findPendingOrdersOlderThan(@Param("cutoffTime") LocalDateTime cutoffTime);
-    
-    // Get order statistics
-    @Query("SELECT new map(" +
-           "COUNT(o) as totalOrders, " +
-           "SUM(o.totalAmount) as totalRevenue, " +
-           "AVG(o.totalAmount) as averageOrderValue) " +
-           "FROM Order o WHERE o.paymentStatus = 'PAID' AND " +
-           "o.createdAt BETWEEN :startDate AND :endDate")
-    Map<String, Object> getOrderStatistics(
-        @Param("startDate") LocalDateTime startDate,
-        @Param("endDate") LocalDateTime endDate
+    // Claim a chunk of unpaid pending orders older than the cutoff. Rows are locked with
+    // FOR UPDATE SKIP LOCKED (lock timeout -2), so concurrent sweepers claim disjoint chunks.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM Order o WHERE o.status = 'PENDING' AND o.paymentStatus <> 'PAID' " +
+           "AND o.createdAt < :cutoffTime ORDER BY o.createdAt")
+    List<Order> claimPendingOrdersOlderThan(@Param("cutoffTime") LocalDateTime cutoffTime, Pageable pageable);
+
+    // As claimPendingOrdersOlderThan, limited to orders whose id modulo shardCount is shardIndex
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM Order o WHERE o.status = 'PENDING' AND o.paymentStatus <> 'PAID' " +
+           "AND o.createdAt < :cutoffTime AND MOD(o.id, :shardCount) = :shardIndex ORDER BY o.createdAt")
+    List<Order> claimPendingOrdersOlderThanInShard(@Param("cutoffTime") LocalDateTime cutoffTime,
+                                                   @Param("shardIndex") long shardIndex,
+                                                   @Param("shardCount") long shardCount,
+                                                   Pageable pageable);
+    
+    // Current status and version of an order, for compare-and-set transitions
+    @Query("SELECT new com.henuka.imitations.repository.OrderState(" +
+           "o.id, o.orderNumber, o.createdAt, o.status, o.paymentStatus, o.version) " +
+           "FROM Order o WHERE o.id = :id")
+    Optional<OrderState> findStateById(@Param("id") Long id);
+    
+    // Lock an order row; a locking read sees the latest committed state even in an older transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id = :id")
+    Optional<Order> findByIdForUpdate(@Param("id") Long id);
+    
+    @Query("SELECT new com.henuka.imitations.repository.OrderState(" +
+           "o.id, o.orderNumber, o.createdAt, o.status, o.paymentStatus, o.version) " +
+           "FROM Order o WHERE o.orderNumber = :orderNumber")
+    Optional<OrderState> findStateByOrderNumber(@Param("orderNumber") String orderNumber);
+    
+    // Move an order to a new state only if nobody has changed it since it was read; returns 0 on conflict
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :status, o.paymentStatus = :paymentStatus, " +
+           "o.version = o.version + 1, o.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE o.id = :id AND o.version = :version")
+    int compareAndSetState(
+        @Param("id") Long id,
+        @Param("version") Long version,
+        @Param("status") OrderStatus status,
+        @Param("paymentStatus") PaymentStatus paymentStatus
+    );
+    
+    // Cancel claimed orders in one statement; the status check makes a repeated claim a no-op
+    @Modifying
+    @Query("UPDATE Order o SET o.status = 'CANCELLED', o.version = o.version + 1, " +
+           "o.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE o.id IN :orderIds AND o.status = 'PENDING'")
+    int cancelPendingOrders(@Param("orderIds") Collection<Long> orderIds);
+    
+    // Total quantity per product across the given orders, ordered by product to keep lock order stable
+    @Query("SELECT i.product.id, SUM(i.quantity) FROM OrderItem i WHERE i.order.id IN :orderIds " +
+           "GROUP BY i.product.id ORDER BY i.product.id")
+    List<Object[]> sumQuantitiesByProduct(@Param("orderIds") Collection<Long> orderIds);
+    
+    // Count orders and sum totals per status/payment status for orders created in [from, to)
+    @Query("SELECT o.status, o.paymentStatus, COUNT(o), COALESCE(SUM(o.totalAmount), 0) " +
+           "FROM Order o WHERE o.createdAt >= :from AND o.createdAt < :to " +
+           "GROUP BY o.status, o.paymentStatus")
+    List<Object[]> aggregateByStatusBetween(
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to
     );
     
     // Find orders containing specific product
-    @Query("SELECT DISTINCT o FROM Order o JOIN o.items i WHERE i.product.id = :productId")
+    @Query("SELECT DISTINCT o FROM Order o JOIN FETCH o.items i JOIN FETCH i.product " +
+           "WHERE o.id IN (SELECT oi.order.id FROM OrderItem oi WHERE oi.product.id = :productId)")
     List<Order> findOrdersContainingProduct(@Param("productId") Long productId);
 }
@@ -0,0 +1,61 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.Order.OrderStatus;
+import com.henuka.imitations.model.Order.PaymentStatus;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria-based order filters. Only the filters actually supplied end up in the WHERE clause,
+ * so the database can pick the matching composite index (see V3__add_order_search_indexes.sql)
+ * instead of planning around "(:p IS NULL OR ...)" branches.
+ */
+public final class OrderSpecifications {
+
+    private OrderSpecifications() {
+    }
+
+    public static Specification<Order> search(
+            String email,
+            OrderStatus status,
+            PaymentStatus paymentStatus,
+            BigDecimal minAmount,
+            BigDecimal maxAmount,
+            LocalDateTime startDate,
+            LocalDateTime endDate) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>(7);
+
+            // Equality columns first: they lead the composite indexes
+            if (email != null && !email.isBlank()) {
+                predicates.add(cb.equal(root.get("email"), email));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (paymentStatus != null) {
+                predicates.add(cb.equal(root.get("paymentStatus"), paymentStatus));
+            }
+            if (startDate != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), startDate));
+            }
+            if (endDate != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("createdAt"), endDate));
+            }
+            if (minAmount != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("totalAmount"), minAmount));
+            }
+            if (maxAmount != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("totalAmount"), maxAmount));
+            }
+
+            return predicates.isEmpty() ? cb.conjunction() : cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.Order;
+
+import java.time.LocalDateTime;
+
+/**
+ * Status columns of an order as last committed, read without going through the persistence context.
+ */
+public record OrderState(
+    Long id,
+    String orderNumber,
+    LocalDateTime createdAt,
+    Order.OrderStatus status,
+    Order.PaymentStatus paymentStatus,
+    Long version
+) {
+}
@@ -0,0 +1,170 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.event.PaymentEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Plain JDBC access to the payment event log, its per-handler checkpoints, gaps and dead letters.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PaymentEventRepository {
+
+    private static final String EVENT_COLUMNS =
+        "e.id, e.event_type, e.order_id, e.payment_order_id, e.payment_id, e.amount, e.detail, e.created_at";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Append an event; joins the caller's transaction
+    public PaymentEvent append(PaymentEvent event) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(
+            "INSERT INTO payment_events (event_type, order_id, payment_order_id, payment_id, amount, detail, created_at) " +
+            "VALUES (:type, :orderId, :paymentOrderId, :paymentId, :amount, :detail, :createdAt)",
+            new MapSqlParameterSource()
+                .addValue("type", event.type().name())
+                .addValue("orderId", event.orderId())
+                .addValue("paymentOrderId", event.paymentOrderId())
+                .addValue("paymentId", event.paymentId())
+                .addValue("amount", event.amount())
+                .addValue("detail", event.detail())
+                .addValue("createdAt", Timestamp.valueOf(event.createdAt())),
+            keyHolder,
+            new String[] {"id"}
+        );
+        return event.withId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+    }
+
+    // Events after a checkpoint, in id order
+    public List<PaymentEvent> findAfter(long lastEventId, int limit) {
+        return jdbcTemplate.query(
+            "SELECT " + EVENT_COLUMNS + " FROM payment_events e WHERE e.id > :lastEventId ORDER BY e.id LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("lastEventId", lastEventId)
+                .addValue("limit", limit),
+            (rs, rowNum) -> mapEvent(rs)
+        );
+    }
+
+    // Record ids from..to (inclusive) as skipped by a handler while missing
+    public void insertGaps(String handler, long fromEventId, long toEventId) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<MapSqlParameterSource> rows = new ArrayList<>();
+        for (long eventId = fromEventId; eventId <= toEventId; eventId++) {
+            rows.add(new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("eventId", eventId)
+                .addValue("now", now));
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO payment_event_gaps (handler, event_id, skipped_at) " +
+            "SELECT :handler, :eventId, :now FROM (SELECT 1 AS one) seed " +
+            "WHERE NOT EXISTS (SELECT 1 FROM payment_event_gaps WHERE handler = :handler AND event_id = :eventId)",
+            rows.toArray(MapSqlParameterSource[]::new)
+        );
+    }
+
+    // Events a handler skipped as missing that have since committed, in id order
+    public List<PaymentEvent> findLateEvents(String handler, int limit) {
+        return jdbcTemplate.query(
+            "SELECT " + EVENT_COLUMNS + " FROM payment_event_gaps g JOIN payment_events e ON e.id = g.event_id " +
+            "WHERE g.handler = :handler ORDER BY e.id LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("limit", limit),
+            (rs, rowNum) -> mapEvent(rs)
+        );
+    }
+
+    public void deleteGap(String handler, long eventId) {
+        jdbcTemplate.update(
+            "DELETE FROM payment_event_gaps WHERE handler = :handler AND event_id = :eventId",
+            new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("eventId", eventId)
+        );
+    }
+
+    // Forget gaps skipped before the cutoff: their inserts are taken to have rolled back
+    public int deleteGapsSkippedBefore(String handler, LocalDateTime before) {
+        return jdbcTemplate.update(
+            "DELETE FROM payment_event_gaps WHERE handler = :handler AND skipped_at < :before",
+            new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("before", Timestamp.valueOf(before))
+        );
+    }
+
+    // Create a handler's checkpoint at zero if it has none yet
+    public void ensureCheckpoint(String handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("handler", handler)
+            .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+        jdbcTemplate.update(
+            "INSERT INTO payment_event_checkpoints (handler, last_event_id, updated_at) " +
+            "SELECT :handler, 0, :now FROM (SELECT 1 AS one) seed " +
+            "WHERE NOT EXISTS (SELECT 1 FROM payment_event_checkpoints WHERE handler = :handler)",
+            params
+        );
+    }
+
+    public long findCheckpoint(String handler) {
+        return jdbcTemplate.queryForObject(
+            "SELECT last_event_id FROM payment_event_checkpoints WHERE handler = :handler",
+            new MapSqlParameterSource("handler", handler),
+            Long.class
+        );
+    }
+
+    // Move a checkpoint forward only if it still holds the value the caller read
+    public boolean advanceCheckpoint(String handler, long expected, long lastEventId) {
+        return jdbcTemplate.update(
+            "UPDATE payment_event_checkpoints SET last_event_id = :lastEventId, updated_at = :now " +
+            "WHERE handler = :handler AND last_event_id = :expected",
+            new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("expected", expected)
+                .addValue("lastEventId", lastEventId)
+                .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+        ) == 1;
+    }
+
+    public void insertDeadLetter(String handler, long eventId, int attempts, String error) {
+        jdbcTemplate.update(
+            "INSERT INTO payment_event_dead_letters (handler, event_id, attempts, error, created_at) " +
+            "VALUES (:handler, :eventId, :attempts, :error, :now)",
+            new MapSqlParameterSource()
+                .addValue("handler", handler)
+                .addValue("eventId", eventId)
+                .addValue("attempts", attempts)
+                .addValue("error", error)
+                .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+        );
+    }
+
+    private static PaymentEvent mapEvent(ResultSet rs) throws SQLException {
+        return new PaymentEvent(
+            rs.getLong("id"),
+            PaymentEvent.Type.valueOf(rs.getString("event_type")),
+            rs.getString("order_id"),
+            rs.getString("payment_order_id"),
+            rs.getString("payment_id"),
+            rs.getBigDecimal("amount"),
+            rs.getString("detail"),
+            rs.getTimestamp("created_at").toLocalDateTime()
+        );
+    }
+}
@@ -3,6 +3,8 @@ package com.henuka.imitations.repository;
 import com.henuka.imitations.model.PaymentOrder;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -10,4 +12,5 @@ public interface PaymentOrderRepository extends JpaRepository<PaymentOrder, Long
     Optional<PaymentOrder> findByOrderId(String orderId);
     Optional<PaymentOrder> findByPaymentOrderId(String paymentOrderId);
     Optional<PaymentOrder> findByPaymentId(String paymentId);
+    List<PaymentOrder> findByPaymentOrderIdIn(Collection<String> paymentOrderIds);
 }
@@ -0,0 +1,14 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.PaymentReconciliationRun;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PaymentReconciliationRunRepository extends JpaRepository<PaymentReconciliationRun, Long> {
+
+    // Most recent runs first
+    Page<PaymentReconciliationRun> findAllByOrderByIdDesc(Pageable pageable);
+}
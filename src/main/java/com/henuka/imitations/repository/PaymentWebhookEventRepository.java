@@ -0,0 +1,59 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.PaymentWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PaymentWebhookEventRepository extends JpaRepository<PaymentWebhookEvent, Long> {
+
+    String DUE = "(e.status = 'RECEIVED' AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now)) " +
+                 "OR (e.status = 'QUEUED' AND e.nextAttemptAt < :now)";
+
+    // Authoritative duplicate check behind the in-memory filter
+    boolean existsByEventId(String eventId);
+
+    // Event ids received since a cutoff, to warm the in-memory filter after a restart
+    @Query("SELECT e.eventId FROM PaymentWebhookEvent e WHERE e.receivedAt >= :since")
+    List<String> findEventIdsReceivedSince(@Param("since") LocalDateTime since);
+
+    // Oldest events due for a lane: waiting and past their retry time, or queued on a claim that ran out
+    @Query("SELECT e FROM PaymentWebhookEvent e WHERE " + DUE + " ORDER BY e.id")
+    List<PaymentWebhookEvent> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Claim a due event for a lane until the given time; returns 0 if another node claimed it first
+    @Transactional
+    @Modifying
+    @Query("UPDATE PaymentWebhookEvent e SET e.status = 'QUEUED', e.nextAttemptAt = :until " +
+           "WHERE e.id = :id AND (" + DUE + ")")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    // Give up a claim, leaving the event due again at the given time (null for now)
+    @Transactional
+    @Modifying
+    @Query("UPDATE PaymentWebhookEvent e SET e.status = 'RECEIVED', e.nextAttemptAt = :nextAttemptAt, " +
+           "e.attempts = :attempts, e.error = :error WHERE e.id = :id")
+    int release(@Param("id") Long id,
+                @Param("attempts") int attempts,
+                @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                @Param("error") String error);
+
+    // Record the outcome of applying an event; only the processing columns change
+    @Transactional
+    @Modifying
+    @Query("UPDATE PaymentWebhookEvent e SET e.status = :status, e.processedAt = :processedAt, e.error = :error, " +
+           "e.attempts = :attempts, e.nextAttemptAt = NULL WHERE e.id = :id")
+    int markProcessed(@Param("id") Long id,
+                      @Param("status") PaymentWebhookEvent.Status status,
+                      @Param("processedAt") LocalDateTime processedAt,
+                      @Param("attempts") int attempts,
+                      @Param("error") String error);
+}
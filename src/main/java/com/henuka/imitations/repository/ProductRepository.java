@@ -51,6 +51,11 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // Find related products (same category, excluding the current product)
     @Query("SELECT p FROM Product p WHERE p.category = :category AND p.id != :productId")
     List<Product> findRelatedProducts(@Param("category") String category, @Param("productId") Long productId, Pageable pageable);
+
+    // Find related products by product id alone, so they can load alongside the product itself
+    @Query("SELECT p FROM Product p WHERE p.category = " +
+           "(SELECT q.category FROM Product q WHERE q.id = :productId) AND p.id != :productId")
+    List<Product> findRelatedToProduct(@Param("productId") Long productId, Pageable pageable);
     
     // Count products by category
     Long countByCategory(String category);
@@ -61,4 +66,12 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // Find products that need restocking (low stock)
     @Query("SELECT p FROM Product p WHERE p.stockQuantity <= :threshold")
     List<Product> findProductsNeedingRestock(@Param("threshold") Integer threshold);
+
+    // Next page of a batch job partition: products after the given id whose id modulo partitionCount is partitionIndex
+    @Query("SELECT p FROM Product p WHERE p.id > :afterId AND MOD(p.id, :partitionCount) = :partitionIndex " +
+           "ORDER BY p.id")
+    List<Product> findPartitionAfter(@Param("afterId") long afterId,
+                                     @Param("partitionIndex") long partitionIndex,
+                                     @Param("partitionCount") long partitionCount,
+                                     Pageable pageable);
 }
@@ -0,0 +1,90 @@
+package com.henuka.imitations.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Plain JDBC access to payment_reconciliation_mismatches. A run can report thousands of rows,
+ * so they are written with one batched INSERT per chunk rather than entity by entity.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReconciliationMismatchRepository {
+
+    private static final String INSERT =
+        "INSERT INTO payment_reconciliation_mismatches (run_id, kind, payment_id, payment_order_id, order_id, " +
+        "gateway_status, local_status, gateway_amount, local_amount, corrected, detail, created_at) " +
+        "VALUES (:runId, :kind, :paymentId, :paymentOrderId, :orderId, :gatewayStatus, :localStatus, " +
+        ":gatewayAmount, :localAmount, :corrected, :detail, :createdAt)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Append a chunk of mismatches for a run
+    public void insertAll(Long runId, List<Mismatch> mismatches) {
+        if (mismatches.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        SqlParameterSource[] batch = mismatches.stream()
+            .map(m -> new MapSqlParameterSource()
+                .addValue("runId", runId)
+                .addValue("kind", m.kind())
+                .addValue("paymentId", m.paymentId())
+                .addValue("paymentOrderId", m.paymentOrderId())
+                .addValue("orderId", m.orderId())
+                .addValue("gatewayStatus", m.gatewayStatus())
+                .addValue("localStatus", m.localStatus())
+                .addValue("gatewayAmount", m.gatewayAmount())
+                .addValue("localAmount", m.localAmount())
+                .addValue("corrected", m.corrected())
+                .addValue("detail", m.detail())
+                .addValue("createdAt", now))
+            .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(INSERT, batch);
+    }
+
+    // Mismatches of a run in the order they were found
+    public List<Mismatch> findByRunId(Long runId, int limit) {
+        return jdbcTemplate.query(
+            "SELECT kind, payment_id, payment_order_id, order_id, gateway_status, local_status, " +
+            "gateway_amount, local_amount, corrected, detail FROM payment_reconciliation_mismatches " +
+            "WHERE run_id = :runId ORDER BY id LIMIT :limit",
+            new MapSqlParameterSource()
+                .addValue("runId", runId)
+                .addValue("limit", limit),
+            (rs, rowNum) -> new Mismatch(
+                rs.getString("kind"),
+                rs.getString("payment_id"),
+                rs.getString("payment_order_id"),
+                rs.getString("order_id"),
+                rs.getString("gateway_status"),
+                rs.getString("local_status"),
+                rs.getObject("gateway_amount", Long.class),
+                rs.getObject("local_amount", Long.class),
+                rs.getBoolean("corrected"),
+                rs.getString("detail")
+            )
+        );
+    }
+
+    public record Mismatch(
+        String kind,
+        String paymentId,
+        String paymentOrderId,
+        String orderId,
+        String gatewayStatus,
+        String localStatus,
+        Long gatewayAmount,
+        Long localAmount,
+        boolean corrected,
+        String detail
+    ) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.model.SalesRollup;
+import com.henuka.imitations.model.SalesRollup.Granularity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, Long> {
+
+    // Find and lock a single hourly or daily bucket; a locking read sees rows committed after the transaction began
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM SalesRollup r WHERE r.granularity = :granularity AND r.bucketStart = :bucketStart")
+    Optional<SalesRollup> findForUpdate(
+        @Param("granularity") Granularity granularity,
+        @Param("bucketStart") LocalDateTime bucketStart
+    );
+
+    // Find buckets whose start lies in [from, to)
+    @Query("SELECT r FROM SalesRollup r WHERE r.granularity = :granularity AND " +
+           "r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<SalesRollup> findBuckets(
+        @Param("granularity") Granularity granularity,
+        @Param("from") LocalDateTime from,
+        @Param("to") LocalDateTime to
+    );
+}
@@ -0,0 +1,118 @@
+package com.henuka.imitations.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Plain JDBC access to scheduled job locks and scheduler node heartbeats. A lock is a lease:
+ * taken by compare-and-set on its expiry, so whichever node updates the row first holds it, and
+ * a node that dies mid-run loses it once the lease runs out.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ScheduledJobLockRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Take the lock if it is free or expired; true if this node now holds it
+    public boolean tryLock(String jobName, String node, LocalDateTime now, LocalDateTime until) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("jobName", jobName)
+            .addValue("node", node)
+            .addValue("now", Timestamp.valueOf(now))
+            .addValue("until", Timestamp.valueOf(until));
+        int updated = jdbcTemplate.update(
+            "UPDATE scheduled_job_locks SET locked_by = :node, locked_until = :until, last_started_at = :now " +
+            "WHERE job_name = :jobName AND locked_until <= :now",
+            params
+        );
+        if (updated == 1) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update(
+                "INSERT INTO scheduled_job_locks (job_name, locked_by, locked_until, last_started_at) " +
+                "VALUES (:jobName, :node, :until, :now)",
+                params
+            );
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Held by another node, or taken by one just now
+            return false;
+        }
+    }
+
+    // Extend a held lock; false if this node no longer holds it
+    public boolean renew(String jobName, String node, LocalDateTime until) {
+        return jdbcTemplate.update(
+            "UPDATE scheduled_job_locks SET locked_until = :until WHERE job_name = :jobName AND locked_by = :node",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("node", node)
+                .addValue("until", Timestamp.valueOf(until))
+        ) == 1;
+    }
+
+    // Record the run and hold the lock until heldUntil, so nodes whose trigger fires a little later skip it.
+    // The holder is cleared, so a renewal still in flight matches no row and cannot extend the hold.
+    public void release(String jobName, String node, LocalDateTime finishedAt, LocalDateTime heldUntil,
+                        long durationMillis, String outcome) {
+        jdbcTemplate.update(
+            "UPDATE scheduled_job_locks SET locked_by = NULL, locked_until = :heldUntil, last_finished_at = :finishedAt, " +
+            "last_duration_ms = :duration, last_node = :node, last_outcome = :outcome " +
+            "WHERE job_name = :jobName AND locked_by = :node",
+            new MapSqlParameterSource()
+                .addValue("jobName", jobName)
+                .addValue("node", node)
+                .addValue("finishedAt", Timestamp.valueOf(finishedAt))
+                .addValue("heldUntil", Timestamp.valueOf(heldUntil))
+                .addValue("duration", durationMillis)
+                .addValue("outcome", outcome)
+        );
+    }
+
+    // Record that a node is alive
+    public void heartbeat(String node, LocalDateTime now) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("node", node)
+            .addValue("now", Timestamp.valueOf(now));
+        int updated = jdbcTemplate.update(
+            "UPDATE scheduler_nodes SET heartbeat_at = :now WHERE node_id = :node", params);
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update(
+                    "INSERT INTO scheduler_nodes (node_id, started_at, heartbeat_at) VALUES (:node, :now, :now)", params);
+            } catch (DuplicateKeyException e) {
+                jdbcTemplate.update("UPDATE scheduler_nodes SET heartbeat_at = :now WHERE node_id = :node", params);
+            }
+        }
+    }
+
+    // Nodes with a heartbeat since the given time, in a stable order every node agrees on
+    public List<String> findLiveNodes(LocalDateTime since) {
+        return jdbcTemplate.queryForList(
+            "SELECT node_id FROM scheduler_nodes WHERE heartbeat_at >= :since ORDER BY node_id",
+            new MapSqlParameterSource("since", Timestamp.valueOf(since)),
+            String.class
+        );
+    }
+
+    public int deleteNodesSilentSince(LocalDateTime before) {
+        return jdbcTemplate.update(
+            "DELETE FROM scheduler_nodes WHERE heartbeat_at < :before",
+            new MapSqlParameterSource("before", Timestamp.valueOf(before))
+        );
+    }
+
+    public void deleteNode(String node) {
+        jdbcTemplate.update("DELETE FROM scheduler_nodes WHERE node_id = :node",
+            new MapSqlParameterSource("node", node));
+    }
+}
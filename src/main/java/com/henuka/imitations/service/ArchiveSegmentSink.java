@@ -0,0 +1,13 @@
+package com.henuka.imitations.service;
+
+/**
+ * Destination for exported archive segments (gzip-compressed NDJSON).
+ * Implemented on top of the configured StorageService.
+ */
+public interface ArchiveSegmentSink {
+
+    /**
+     * Store a segment and return its location
+     */
+    String store(String segmentName, byte[] content);
+}
@@ -0,0 +1,101 @@
+package com.henuka.imitations.service;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * A chunk-oriented job for {@link BatchJobRunner}: items are read in ascending key order a chunk at
+ * a time, processed one by one, and each chunk is written in one transaction together with the
+ * checkpoint that records its last key.
+ *
+ * A job can be split into partitions, each taking the items whose key modulo the partition count
+ * is its index; the reader is handed its partition and must honour it. Writers should be
+ * idempotent: a chunk that fails is retried, or written again item by item to find the item at
+ * fault, and items outside the database (a search index) may be written again after a crash.
+ */
+public record BatchJob<I, O>(String name,
+                             ItemReader<I> reader,
+                             ToLongFunction<I> key,
+                             ItemProcessor<I, O> processor,
+                             ItemWriter<O> writer,
+                             Settings settings) {
+
+    /**
+     * A job whose items are written as read.
+     */
+    public static <T> BatchJob<T, T> of(String name, ItemReader<T> reader, ToLongFunction<T> key,
+                                        ItemWriter<T> writer, Settings settings) {
+        return new BatchJob<>(name, reader, key, item -> item, writer, settings);
+    }
+
+    @FunctionalInterface
+    public interface ItemReader<T> {
+
+        /**
+         * Up to {@code limit} items of the partition with a key above {@code afterKey} (null
+         * from the start), in key order; an empty list once there are none left.
+         */
+        List<T> read(JobShard partition, Long afterKey, int limit);
+    }
+
+    @FunctionalInterface
+    public interface ItemProcessor<I, O> {
+
+        /**
+         * The item to write, or null to leave it out. An exception skips the item, within the skip limit.
+         */
+        O process(I item) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface ItemWriter<T> {
+
+        /**
+         * Write a chunk; runs inside the chunk's transaction.
+         */
+        void write(List<T> items) throws Exception;
+    }
+
+    /**
+     * How a job runs; each can be overridden under {@code app.batch.jobs.<name>}.
+     *
+     * @param commitInterval     items per chunk, and so per transaction
+     * @param partitions         partitions run in parallel on the batch executor
+     * @param retryLimit         attempts after the first for a read or chunk that fails transiently
+     * @param retryBackoffMillis wait before the first retry, doubled for each after it
+     * @param skipLimit          items a partition may skip in one run before it fails
+     * @param pauseMillis        pause after each chunk, to leave the database to the storefront
+     * @param maxChunks          chunks per partition per run (0 for no limit); the next run resumes
+     */
+    public record Settings(int commitInterval, int partitions, int retryLimit, long retryBackoffMillis,
+                           int skipLimit, long pauseMillis, int maxChunks) {
+
+        public static final Settings DEFAULTS = new Settings(100, 1, 3, 200, 0, 0, 0);
+
+        public Settings {
+            if (commitInterval < 1 || partitions < 1) {
+                throw new IllegalArgumentException("Commit interval and partitions must be at least 1");
+            }
+        }
+
+        public Settings withCommitInterval(int commitInterval) {
+            return new Settings(commitInterval, partitions, retryLimit, retryBackoffMillis, skipLimit, pauseMillis, maxChunks);
+        }
+
+        public Settings withPartitions(int partitions) {
+            return new Settings(commitInterval, partitions, retryLimit, retryBackoffMillis, skipLimit, pauseMillis, maxChunks);
+        }
+
+        public Settings withSkipLimit(int skipLimit) {
+            return new Settings(commitInterval, partitions, retryLimit, retryBackoffMillis, skipLimit, pauseMillis, maxChunks);
+        }
+
+        public Settings withPause(long pauseMillis) {
+            return new Settings(commitInterval, partitions, retryLimit, retryBackoffMillis, skipLimit, pauseMillis, maxChunks);
+        }
+
+        public Settings withMaxChunks(int maxChunks) {
+            return new Settings(commitInterval, partitions, retryLimit, retryBackoffMillis, skipLimit, pauseMillis, maxChunks);
+        }
+    }
+}
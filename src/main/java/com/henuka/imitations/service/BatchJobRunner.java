@@ -0,0 +1,381 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.repository.BatchCheckpointRepository;
+import com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint;
+import com.henuka.imitations.repository.BatchCheckpointRepository.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs {@link BatchJob}s chunk by chunk, with a checkpoint per partition.
+ *
+ * Each chunk is written in its own transaction, and the partition's checkpoint moves past the
+ * chunk in that same transaction; a run that stops part way, through a failure, a restart or its
+ * chunk limit, resumes after the last committed chunk the next time the job runs. A partition
+ * whose last run completed starts again from the first item.
+ *
+ * Reads, processing and chunk writes that fail with a transient database error (a deadlock, a
+ * lock timeout) are retried with backoff. Any other failure of an item in processing skips it;
+ * a chunk that fails to write is written again item by item so only the items at fault are
+ * skipped, each item committing with the checkpoint moved up to it. Skipped items are recorded
+ * with their key, and a partition that skips more than its limit fails. Partitions run in
+ * parallel on the batch executor, the first on the caller's thread.
+ *
+ * Progress is published as {@code batch.items} (job, type), {@code batch.chunk} (job, outcome)
+ * and {@code batch.job} (job, status), and the checkpoints on the {@code batchjobs} endpoint.
+ */
+@Service
+public class BatchJobRunner {
+
+    private final BatchCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor batchExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    private static final Logger log = LoggerFactory.getLogger(BatchJobRunner.class);
+
+    public BatchJobRunner(BatchCheckpointRepository checkpointRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Qualifier("batchExecutor") Executor batchExecutor,
+                          MeterRegistry meterRegistry,
+                          Environment environment) {
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchExecutor = batchExecutor;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    /**
+     * What one run of a job did; counts cover this run only, not the part a resumed run did before.
+     */
+    public record Result(String job, Status status, long read, long written, long filtered, long skipped,
+                         Duration elapsed) {
+    }
+
+    /**
+     * Run a job to completion, to its chunk limit, or until it fails; the status tells which.
+     */
+    public <I, O> Result run(BatchJob<I, O> job) {
+        BatchJob.Settings settings = settings(job);
+        long startTime = System.nanoTime();
+
+        Map<Integer, Checkpoint> checkpoints = new HashMap<>();
+        for (Checkpoint checkpoint : checkpointRepository.findByJob(job.name())) {
+            checkpoints.put(checkpoint.partitionIndex(), checkpoint);
+        }
+        boolean repartitioned = checkpoints.values().stream()
+            .anyMatch(checkpoint -> checkpoint.partitionCount() != settings.partitions());
+        if (repartitioned) {
+            // Keys were split differently, so no checkpoint says what is done any more
+            log.info("Batch job {} is now split into {} partition(s); starting over", job.name(), settings.partitions());
+            checkpointRepository.deleteJob(job.name());
+            checkpoints.clear();
+        }
+
+        List<Supplier<Counts>> partitions = new ArrayList<>(settings.partitions());
+        for (int index = 0; index < settings.partitions(); index++) {
+            JobShard partition = new JobShard(index, settings.partitions());
+            Checkpoint checkpoint = checkpoints.get(index);
+            partitions.add(() -> runPartition(job, settings, partition, checkpoint));
+        }
+
+        List<CompletableFuture<Counts>> started = new ArrayList<>();
+        List<Supplier<Counts>> inline = new ArrayList<>();
+        for (Supplier<Counts> partition : partitions.subList(1, partitions.size())) {
+            try {
+                started.add(CompletableFuture.supplyAsync(partition, batchExecutor));
+            } catch (RejectedExecutionException e) {
+                inline.add(partition);
+            }
+        }
+        Counts total = partitions.get(0).get();
+        for (Supplier<Counts> partition : inline) {
+            total.add(partition.get());
+        }
+        for (CompletableFuture<Counts> partition : started) {
+            total.add(partition.join());
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+        meterRegistry.timer("batch.job", "job", job.name(), "status", total.status.name()).record(elapsed);
+        log.info("Batch job {} {}: read {}, wrote {}, filtered {}, skipped {} in {} ms", job.name(),
+            total.status.name().toLowerCase(), total.read, total.written, total.filtered, total.skipped, elapsed.toMillis());
+        return new Result(job.name(), total.status, total.read, total.written, total.filtered, total.skipped, elapsed);
+    }
+
+    private BatchJob.Settings settings(BatchJob<?, ?> job) {
+        BatchJob.Settings defaults = job.settings();
+        String prefix = "app.batch.jobs." + job.name() + ".";
+        return new BatchJob.Settings(
+            environment.getProperty(prefix + "commit-interval", Integer.class, defaults.commitInterval()),
+            environment.getProperty(prefix + "partitions", Integer.class, defaults.partitions()),
+            environment.getProperty(prefix + "retry-limit", Integer.class, defaults.retryLimit()),
+            environment.getProperty(prefix + "retry-backoff-ms", Long.class, defaults.retryBackoffMillis()),
+            environment.getProperty(prefix + "skip-limit", Integer.class, defaults.skipLimit()),
+            environment.getProperty(prefix + "pause-ms", Long.class, defaults.pauseMillis()),
+            environment.getProperty(prefix + "max-chunks", Integer.class, defaults.maxChunks()));
+    }
+
+    private <I, O> Counts runPartition(BatchJob<I, O> job, BatchJob.Settings settings, JobShard partition,
+                                       Checkpoint checkpoint) {
+        String name = job.name();
+        Long afterKey = null;
+        long skippedBefore = 0;
+        if (checkpoint == null || checkpoint.status() == Status.COMPLETED) {
+            checkpointRepository.start(name, partition.index(), partition.count(), LocalDateTime.now());
+        } else {
+            afterKey = checkpoint.lastKey();
+            skippedBefore = checkpoint.skipped();
+            checkpointRepository.resume(name, partition.index(), LocalDateTime.now());
+            log.info("Resuming batch job {} partition {}/{} after key {} ({} item(s) read before)",
+                name, partition.index(), partition.count(), afterKey, checkpoint.read());
+        }
+
+        Counts counts = new Counts();
+        String error = null;
+        try {
+            int chunks = 0;
+            while (true) {
+                if (settings.maxChunks() > 0 && chunks >= settings.maxChunks()) {
+                    counts.status = Status.STOPPED;
+                    break;
+                }
+                Long from = afterKey;
+                List<I> items = withRetry(name, "read", settings,
+                    () -> job.reader().read(partition, from, settings.commitInterval()));
+                if (items.isEmpty()) {
+                    break;
+                }
+                afterKey = runChunk(job, settings, partition, items, skippedBefore + counts.skipped, counts);
+                chunks++;
+                if (items.size() < settings.commitInterval()) {
+                    break;
+                }
+                if (!pause(settings.pauseMillis())) {
+                    counts.status = Status.STOPPED;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            counts.status = Status.STOPPED;
+        } catch (Exception e) {
+            log.error("Batch job {} partition {}/{} failed after key {}", name, partition.index(), partition.count(),
+                afterKey, e);
+            counts.status = Status.FAILED;
+            error = e.toString();
+        }
+        checkpointRepository.finish(name, partition.index(), counts.status, error, LocalDateTime.now());
+        return counts;
+    }
+
+    // Process and write one chunk, and move the checkpoint past it; returns the new checkpoint key
+    private <I, O> long runChunk(BatchJob<I, O> job, BatchJob.Settings settings, JobShard partition, List<I> items,
+                                 long skippedBefore, Counts counts) throws Exception {
+        String name = job.name();
+        long startTime = System.nanoTime();
+        long lastKey = job.key().applyAsLong(items.get(items.size() - 1));
+
+        List<Long> itemKeys = new ArrayList<>(items.size());
+        List<Long> filteredKeys = new ArrayList<>();
+        List<Long> keys = new ArrayList<>(items.size());
+        List<O> outputs = new ArrayList<>(items.size());
+        List<Skip> skips = new ArrayList<>();
+        int filtered = 0;
+        for (I item : items) {
+            long key = job.key().applyAsLong(item);
+            itemKeys.add(key);
+            try {
+                O output = withRetry(name, "process", settings, () -> job.processor().process(item));
+                if (output == null) {
+                    filtered++;
+                    filteredKeys.add(key);
+                } else {
+                    keys.add(key);
+                    outputs.add(output);
+                }
+            } catch (TransientDataAccessException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                skip(name, settings, skips, skippedBefore, key, e);
+            }
+        }
+
+        String outcome = "ok";
+        int written = outputs.size();
+        try {
+            int processedFiltered = filtered;
+            withRetry(name, "write", settings, () -> commit(job, partition, outputs, skips, lastKey,
+                items.size(), outputs.size(), processedFiltered));
+        } catch (TransientDataAccessException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (settings.skipLimit() == 0) {
+                throw e;
+            }
+            // Write the items one at a time to find those at fault. Each write commits with the
+            // checkpoint moved up to its item, so a run that stops part way through resumes after
+            // the last item written rather than writing it again.
+            log.warn("Batch job {} chunk ending at key {} failed to write; retrying item by item", name, lastKey, e);
+            outcome = "scanned";
+            written = 0;
+            List<Skip> unrecorded = new ArrayList<>(skips);
+            Long advancedTo = null;
+            for (int i = 0; i < outputs.size(); i++) {
+                long key = keys.get(i);
+                Long after = advancedTo;
+                List<O> single = List.of(outputs.get(i));
+                List<Skip> before = unrecorded.stream().filter(skip -> skip.key() < key).toList();
+                try {
+                    withRetry(name, "write", settings, () -> commit(job, partition, single, before, key,
+                        count(itemKeys, after, key), 1, count(filteredKeys, after, key)));
+                    unrecorded.removeAll(before);
+                    advancedTo = key;
+                    written++;
+                } catch (TransientDataAccessException | InterruptedException itemFailure) {
+                    throw itemFailure;
+                } catch (Exception itemFailure) {
+                    skip(name, settings, skips, skippedBefore, key, itemFailure);
+                    unrecorded.add(skips.get(skips.size() - 1));
+                }
+            }
+            Long after = advancedTo;
+            withRetry(name, "write", settings, () -> commit(job, partition, List.of(), unrecorded, lastKey,
+                count(itemKeys, after, lastKey), 0, count(filteredKeys, after, lastKey)));
+        }
+
+        counts.read += items.size();
+        counts.written += written;
+        counts.filtered += filtered;
+        counts.skipped += skips.size();
+        meterRegistry.counter("batch.items", "job", name, "type", "read").increment(items.size());
+        meterRegistry.counter("batch.items", "job", name, "type", "written").increment(written);
+        meterRegistry.counter("batch.items", "job", name, "type", "filtered").increment(filtered);
+        meterRegistry.counter("batch.items", "job", name, "type", "skipped").increment(skips.size());
+        meterRegistry.timer("batch.chunk", "job", name, "outcome", outcome)
+            .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return lastKey;
+    }
+
+    // Write a chunk, record its skips and advance the checkpoint, all in one transaction
+    private <I, O> Void commit(BatchJob<I, O> job, JobShard partition, List<O> outputs, List<Skip> skips,
+                               long lastKey, int read, int written, int filtered) {
+        return transactionTemplate.execute(status -> {
+            if (!outputs.isEmpty()) {
+                write(job, outputs);
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (Skip skip : skips) {
+                checkpointRepository.recordSkip(job.name(), partition.index(), skip.key(), skip.error(), now);
+            }
+            checkpointRepository.advance(job.name(), partition.index(), lastKey, read, written, filtered,
+                skips.size(), now);
+            return null;
+        });
+    }
+
+    // Keys in (after, upTo]; after is null for no lower bound
+    private static int count(List<Long> keys, Long after, long upTo) {
+        int count = 0;
+        for (long key : keys) {
+            if ((after == null || key > after) && key <= upTo) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static <O> void write(BatchJob<?, O> job, List<O> outputs) {
+        try {
+            job.writer().write(outputs);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Batch job " + job.name() + " failed to write", e);
+        }
+    }
+
+    private void skip(String job, BatchJob.Settings settings, List<Skip> skips, long skippedBefore, long key,
+                      Exception failure) {
+        if (skippedBefore + skips.size() >= settings.skipLimit()) {
+            throw new IllegalStateException("Batch job " + job + " exceeded its skip limit of "
+                + settings.skipLimit() + " at key " + key, failure);
+        }
+        log.warn("Batch job {} skipped item {}: {}", job, key, failure.toString());
+        skips.add(new Skip(key, failure.toString()));
+    }
+
+    private <T> T withRetry(String job, String step, BatchJob.Settings settings, Callable<T> action) throws Exception {
+        long backoff = settings.retryBackoffMillis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return action.call();
+            } catch (TransientDataAccessException e) {
+                if (attempt >= settings.retryLimit()) {
+                    throw e;
+                }
+                meterRegistry.counter("batch.retries", "job", job, "step", step).increment();
+                log.warn("Batch job {} {} failed transiently (attempt {}); retrying in {} ms",
+                    job, step, attempt + 1, backoff);
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private boolean pause(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private record Skip(long key, String error) {
+    }
+
+    // Totals of one or more partitions; the status is the worst of theirs
+    private static final class Counts {
+        private Status status = Status.COMPLETED;
+        private long read;
+        private long written;
+        private long filtered;
+        private long skipped;
+
+        void add(Counts other) {
+            read += other.read;
+            written += other.written;
+            filtered += other.filtered;
+            skipped += other.skipped;
+            if (other.status == Status.FAILED || (other.status == Status.STOPPED && status == Status.COMPLETED)) {
+                status = other.status;
+            }
+        }
+    }
+}
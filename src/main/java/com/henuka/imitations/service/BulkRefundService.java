@@ -0,0 +1,326 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.BulkRefundItem;
+import com.henuka.imitations.model.BulkRefundJob;
+import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.repository.BulkRefundItemRepository;
+import com.henuka.imitations.repository.BulkRefundJobRepository;
+import com.henuka.imitations.service.RazorpayGatewayClient.GatewayRefund;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refunds a set of orders, e.g. after a defective batch is withdrawn.
+ *
+ * Items are worked in chunks. Within a chunk, gateway refunds run in parallel on the bulk refund
+ * executor, throttled by a token bucket; the chunk's orders are then cancelled in one transaction
+ * with their stock returned by one update per product. Customer emails follow from the payment
+ * event log, so they are queued with the refund rather than sent by the job.
+ *
+ * Every step is recorded on the item before moving on, so a job stopped by a crash resumes from
+ * where it was: an item left IN_PROGRESS is checked against the gateway's refunds before it is
+ * retried, and refunded items whose order was not cancelled yet are finished first.
+ */
+@Service
+public class BulkRefundService {
+
+    private static final Set<BulkRefundItem.Status> OPEN =
+        Set.of(BulkRefundItem.Status.PENDING, BulkRefundItem.Status.IN_PROGRESS);
+
+    private final BulkRefundJobRepository jobRepository;
+    private final BulkRefundItemRepository itemRepository;
+    private final PaymentService paymentService;
+    private final OrderService orderService;
+    private final RazorpayGatewayClient gatewayClient;
+    private final MeterRegistry meterRegistry;
+    private final Executor bulkRefundExecutor;
+    private final Executor batchExecutor;
+
+    @Value("${app.payment.bulk-refund.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${app.payment.bulk-refund.refunds-per-second:10}")
+    private int refundsPerSecond;
+
+    @Value("${app.payment.bulk-refund.stale-after-minutes:5}")
+    private long staleAfterMinutes;
+
+    private static final Logger log = LoggerFactory.getLogger(BulkRefundService.class);
+
+    public BulkRefundService(BulkRefundJobRepository jobRepository,
+                             BulkRefundItemRepository itemRepository,
+                             PaymentService paymentService,
+                             OrderService orderService,
+                             RazorpayGatewayClient gatewayClient,
+                             MeterRegistry meterRegistry,
+                             @Qualifier("bulkRefundExecutor") Executor bulkRefundExecutor,
+                             @Qualifier("batchExecutor") Executor batchExecutor) {
+        this.jobRepository = jobRepository;
+        this.itemRepository = itemRepository;
+        this.paymentService = paymentService;
+        this.orderService = orderService;
+        this.gatewayClient = gatewayClient;
+        this.meterRegistry = meterRegistry;
+        this.bulkRefundExecutor = bulkRefundExecutor;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Record a job for the given orders and start it in the background.
+     */
+    public BulkRefundJob submit(List<String> orderNumbers, String reason) {
+        if (orderNumbers == null || orderNumbers.isEmpty()) {
+            throw new IllegalArgumentException("No orders to refund");
+        }
+        Set<String> unique = new LinkedHashSet<>(orderNumbers);
+
+        BulkRefundJob job = new BulkRefundJob();
+        job.setReason(reason);
+        job.setTotal(unique.size());
+        job.setStatus(BulkRefundJob.Status.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        BulkRefundJob saved = jobRepository.save(job);
+
+        List<BulkRefundItem> items = new ArrayList<>(unique.size());
+        for (String orderNumber : unique) {
+            BulkRefundItem item = new BulkRefundItem();
+            item.setJobId(saved.getId());
+            item.setOrderNumber(orderNumber);
+            items.add(item);
+        }
+        itemRepository.saveAll(items);
+
+        CompletableFuture.runAsync(() -> run(saved.getId()), batchExecutor);
+        return saved;
+    }
+
+    /**
+     * Resume jobs whose runner stopped, e.g. because the node restarted. Called on a schedule,
+     * since a job only counts as stopped once its heartbeat has been stale for a while.
+     */
+    public int resumeStalled() {
+        LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(staleAfterMinutes);
+        int resumed = 0;
+        for (BulkRefundJob job : jobRepository.findStalled(staleBefore)) {
+            if (resume(job, staleBefore)) {
+                resumed++;
+            }
+        }
+        return resumed;
+    }
+
+    /**
+     * Resume one job if no node has reported progress on it for the stale period.
+     */
+    public boolean resume(Long jobId) {
+        return resume(getJob(jobId), LocalDateTime.now().minusMinutes(staleAfterMinutes));
+    }
+
+    public BulkRefundJob getJob(Long jobId) {
+        return jobRepository.findById(jobId)
+            .orElseThrow(() -> new EntityNotFoundException("Bulk refund job not found: " + jobId));
+    }
+
+    /**
+     * Job totals plus item counts per status and throughput so far.
+     */
+    public Map<String, Object> getProgress(Long jobId) {
+        BulkRefundJob job = getJob(jobId);
+        Map<BulkRefundItem.Status, Long> counts = new EnumMap<>(BulkRefundItem.Status.class);
+        for (Object[] row : itemRepository.countByStatus(jobId)) {
+            counts.put((BulkRefundItem.Status) row[0], (Long) row[1]);
+        }
+
+        LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+        long seconds = job.getStartedAt() != null ? Math.max(Duration.between(job.getStartedAt(), end).toSeconds(), 1) : 1;
+        return Map.of(
+            "job", job,
+            "items", counts,
+            "refundsPerSecond", BigDecimal.valueOf(job.getRefunded()).divide(BigDecimal.valueOf(seconds), 2, RoundingMode.HALF_UP)
+        );
+    }
+
+    public List<BulkRefundItem> getItems(Long jobId, BulkRefundItem.Status status, int limit) {
+        return itemRepository.findByJobIdAndStatusOrderById(jobId, status, PageRequest.of(0, limit));
+    }
+
+    private boolean resume(BulkRefundJob job, LocalDateTime staleBefore) {
+        if (job.getStatus() == BulkRefundJob.Status.COMPLETED
+                || jobRepository.claim(job.getId(), staleBefore, LocalDateTime.now()) != 1) {
+            return false;
+        }
+        log.info("Resuming bulk refund job {}", job.getId());
+        CompletableFuture.runAsync(() -> run(job.getId()), batchExecutor);
+        return true;
+    }
+
+    private void run(Long jobId) {
+        long startTime = System.currentTimeMillis();
+        Bucket rateLimit = Bucket.builder()
+            .addLimit(Bandwidth.classic(refundsPerSecond, Refill.greedy(refundsPerSecond, Duration.ofSeconds(1))))
+            .build();
+
+        try {
+            // Refunds that went through before a crash but whose orders were not cancelled yet
+            List<BulkRefundItem> unfinished;
+            while (!(unfinished = itemRepository.findByJobIdAndStatusAndOrderRefundedFalseOrderById(
+                    jobId, BulkRefundItem.Status.REFUNDED, PageRequest.of(0, chunkSize))).isEmpty()) {
+                finishOrders(unfinished);
+            }
+
+            List<BulkRefundItem> chunk;
+            while (!(chunk = itemRepository.findByJobIdAndStatusInOrderById(jobId, OPEN, PageRequest.of(0, chunkSize))).isEmpty()) {
+                List<CompletableFuture<BulkRefundItem>> refunds = new ArrayList<>(chunk.size());
+                for (BulkRefundItem item : chunk) {
+                    refunds.add(CompletableFuture.supplyAsync(() -> refund(item, rateLimit), bulkRefundExecutor));
+                }
+
+                List<BulkRefundItem> refunded = new ArrayList<>(chunk.size());
+                for (CompletableFuture<BulkRefundItem> future : refunds) {
+                    BulkRefundItem item = future.join();
+                    if (item.getStatus() == BulkRefundItem.Status.REFUNDED) {
+                        refunded.add(item);
+                    }
+                }
+                finishOrders(refunded);
+                updateJob(jobId, false);
+            }
+
+            BulkRefundJob job = updateJob(jobId, true);
+            long duration = System.currentTimeMillis() - startTime;
+            meterRegistry.timer("payment.bulk_refund.duration").record(Duration.ofMillis(duration));
+            log.info("Bulk refund job {} finished: {} refunded, {} failed, {} skipped of {} in {}ms",
+                jobId, job.getRefunded(), job.getFailed(), job.getSkipped(), job.getTotal(), duration);
+        } catch (Exception e) {
+            // Left RUNNING; its heartbeat goes stale and the job is resumed later
+            log.error("Bulk refund job {} stopped", jobId, e);
+        }
+    }
+
+    /**
+     * Issue (or recover) the gateway refund for one item and record the outcome on it.
+     */
+    private BulkRefundItem refund(BulkRefundItem item, Bucket rateLimit) {
+        long startTime = System.nanoTime();
+        String outcome;
+        try {
+            PaymentOrder paymentOrder = paymentService.getPaymentOrder(item.getOrderNumber());
+            item.setAmount(paymentOrder.getAmount());
+
+            if (paymentOrder.getStatus() == PaymentOrder.PaymentStatus.REFUNDED) {
+                item.setRefundId(paymentOrder.getRefundId());
+                item.setStatus(BulkRefundItem.Status.REFUNDED);
+                outcome = "already_refunded";
+            } else if (paymentOrder.getStatus() != PaymentOrder.PaymentStatus.SUCCESS) {
+                item.setStatus(BulkRefundItem.Status.SKIPPED);
+                item.setError("Payment is " + paymentOrder.getStatus());
+                outcome = "skipped";
+            } else {
+                String refundId = item.getStatus() == BulkRefundItem.Status.IN_PROGRESS
+                    ? existingRefund(paymentOrder.getPaymentId())
+                    : null;
+                if (refundId == null) {
+                    item.setStatus(BulkRefundItem.Status.IN_PROGRESS);
+                    item.setAttempts(item.getAttempts() + 1);
+                    itemRepository.save(item);
+
+                    rateLimit.asBlocking().consume(1);
+                    GatewayRefund refund = gatewayClient.refund(paymentOrder.getPaymentId(),
+                        toPaise(paymentOrder.getAmount()), Map.of("reason", "bulk refund " + item.getJobId()));
+                    refundId = refund.id();
+                }
+
+                item.setRefundId(refundId);
+                paymentService.completeRefund(item.getOrderNumber(), refundId);
+                item.setStatus(BulkRefundItem.Status.REFUNDED);
+                item.setError(null);
+                outcome = "refunded";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            item.setStatus(BulkRefundItem.Status.FAILED);
+            item.setError("Interrupted");
+            outcome = "failed";
+        } catch (Exception e) {
+            item.setStatus(BulkRefundItem.Status.FAILED);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            item.setError(message.length() > 500 ? message.substring(0, 500) : message);
+            outcome = "failed";
+            log.warn("Bulk refund of order {} failed: {}", item.getOrderNumber(), message);
+        }
+
+        meterRegistry.timer("payment.bulk_refund.item", "outcome", outcome)
+            .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return itemRepository.save(item);
+    }
+
+    // Refund a previous attempt already created, if the job stopped before recording it
+    private String existingRefund(String paymentId) {
+        List<GatewayRefund> refunds = gatewayClient.listRefunds(paymentId);
+        return refunds.stream()
+            .filter(refund -> !"failed".equals(refund.status()))
+            .map(GatewayRefund::id)
+            .findFirst()
+            .orElse(null);
+    }
+
+    private void finishOrders(List<BulkRefundItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Set<String> done = new LinkedHashSet<>(orderService.refundOrders(
+            items.stream().map(BulkRefundItem::getOrderNumber).toList()));
+        for (BulkRefundItem item : items) {
+            item.setOrderRefunded(true);
+            if (!done.contains(item.getOrderNumber())) {
+                // Money is back with the customer but the order could not be moved; leave a note
+                item.setError("Refunded at the gateway, order not cancelled");
+            }
+        }
+        itemRepository.saveAll(items);
+    }
+
+    private BulkRefundJob updateJob(Long jobId, boolean finished) {
+        BulkRefundJob job = getJob(jobId);
+        Map<BulkRefundItem.Status, Long> counts = new EnumMap<>(BulkRefundItem.Status.class);
+        for (Object[] row : itemRepository.countByStatus(jobId)) {
+            counts.put((BulkRefundItem.Status) row[0], (Long) row[1]);
+        }
+        job.setRefunded(counts.getOrDefault(BulkRefundItem.Status.REFUNDED, 0L).intValue());
+        job.setFailed(counts.getOrDefault(BulkRefundItem.Status.FAILED, 0L).intValue());
+        job.setSkipped(counts.getOrDefault(BulkRefundItem.Status.SKIPPED, 0L).intValue());
+        job.setHeartbeatAt(LocalDateTime.now());
+        if (finished) {
+            job.setStatus(BulkRefundJob.Status.COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        return jobRepository.save(job);
+    }
+
+    private static long toPaise(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
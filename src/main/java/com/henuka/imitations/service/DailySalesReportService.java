@@ -0,0 +1,311 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.model.DailySalesReport;
+import com.henuka.imitations.repository.DailySalesReportRepository;
+import com.henuka.imitations.repository.OrderExportRepository;
+import com.henuka.imitations.repository.OrderExportRepository.SalesLine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds the daily sales report in one streaming pass over the day's paid order lines and
+ * stores the result, so the email, dashboards and re-sends all read the same precomputed row.
+ *
+ * Memory is bounded by the number of distinct products sold that day, not by the number of
+ * orders; top sellers are picked with a min-heap of size N.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class DailySalesReportService {
+
+    private static final String CSV_HEADER = "product_id,product_name,category,units,revenue";
+    private static final String UNCATEGORIZED = "Uncategorized";
+
+    private final OrderExportRepository orderExportRepository;
+    private final DailySalesReportRepository dailySalesReportRepository;
+    private final EmailService emailService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.reports.daily.top-sellers:10}")
+    private int topSellerCount;
+
+    @Value("${app.reports.daily.recipient:reports@henukaimitations.com}")
+    private String recipient;
+
+    private static final Logger log = LoggerFactory.getLogger(DailySalesReportService.class);
+
+    /**
+     * Aggregate the given day and store (or replace) its report.
+     */
+    public DailySalesReport generate(LocalDate day) {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime from = day.atStartOfDay();
+
+        Accumulator accumulator = new Accumulator();
+        orderExportRepository.streamPaidSalesLines(from, from.plusDays(1), accumulator::add);
+
+        DailySalesReport report = dailySalesReportRepository.findByReportDate(day)
+            .orElseGet(DailySalesReport::new);
+        report.setReportDate(day);
+        report.setOrderCount(accumulator.orderCount);
+        report.setUnitsSold(accumulator.unitsSold);
+        report.setProductCount(accumulator.products.size());
+        report.setRevenue(accumulator.revenue);
+        report.setItemRevenue(accumulator.itemRevenue);
+        report.setAverageOrderValue(accumulator.orderCount == 0
+            ? BigDecimal.ZERO
+            : accumulator.revenue.divide(BigDecimal.valueOf(accumulator.orderCount), 2, RoundingMode.HALF_UP));
+        report.setCategoryBreakdown(toJson(accumulator.categories()));
+        report.setTopSellers(toJson(accumulator.topSellers(topSellerCount)));
+        report.setProductCsv(accumulator.productCsv());
+        report.setGeneratedAt(LocalDateTime.now());
+
+        long duration = System.currentTimeMillis() - startTime;
+        report.setGenerationMillis(duration);
+        DailySalesReport saved = dailySalesReportRepository.save(report);
+
+        meterRegistry.timer("reports.daily.generation").record(Duration.ofMillis(duration));
+        log.info("Generated daily sales report for {}: {} order(s), {} product(s) in {}ms",
+            day, accumulator.orderCount, accumulator.products.size(), duration);
+        return saved;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<DailySalesReport> findReport(LocalDate day) {
+        return dailySalesReportRepository.findByReportDate(day);
+    }
+
+    public DailySalesReport getOrGenerate(LocalDate day) {
+        return dailySalesReportRepository.findByReportDate(day).orElseGet(() -> generate(day));
+    }
+
+    /**
+     * Generate yesterday's report and email it.
+     */
+    public void sendDailyReport() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        DailySalesReport report = generate(yesterday);
+        send(report, recipient);
+    }
+
+    /**
+     * Email a day's stored report, generating it first only if it does not exist yet.
+     */
+    public void sendReport(LocalDate day, String to) {
+        send(getOrGenerate(day), to != null ? to : recipient);
+    }
+
+    /**
+     * Report fields plus the decoded breakdowns, for templates and the admin API.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> toSummary(DailySalesReport report) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("reportDate", report.getReportDate());
+        summary.put("orderCount", report.getOrderCount());
+        summary.put("unitsSold", report.getUnitsSold());
+        summary.put("productCount", report.getProductCount());
+        summary.put("revenue", report.getRevenue());
+        summary.put("itemRevenue", report.getItemRevenue());
+        summary.put("averageOrderValue", report.getAverageOrderValue());
+        summary.put("categories", fromJson(report.getCategoryBreakdown()));
+        summary.put("topSellers", fromJson(report.getTopSellers()));
+        summary.put("generatedAt", report.getGeneratedAt());
+        return summary;
+    }
+
+    /**
+     * The per-product CSV, decompressed.
+     */
+    public byte[] getProductCsv(DailySalesReport report) {
+        if (report.getProductCsv() == null) {
+            return CSV_HEADER.concat("\n").getBytes(StandardCharsets.UTF_8);
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(report.getProductCsv()))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void send(DailySalesReport report, String to) {
+        emailService.sendDailySalesReport(
+            to,
+            report.getReportDate(),
+            toSummary(report),
+            "sales-" + report.getReportDate() + ".csv",
+            getProductCsv(report)
+        );
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize report section", e);
+        }
+    }
+
+    // Decoded as maps so templates can read entries by key
+    private List<Map<String, Object>> fromJson(String json) {
+        if (json == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read report section", e);
+        }
+    }
+
+    public record ProductSales(Long productId, String name, String category, long units, BigDecimal revenue) {
+    }
+
+    public record CategorySales(String category, long units, BigDecimal revenue) {
+    }
+
+    /**
+     * Running totals for one pass; lines arrive grouped by order.
+     */
+    private static final class Accumulator {
+        private final Map<Long, ProductTotals> products = new TreeMap<>();
+        private final Map<String, ProductTotals> categoryTotals = new HashMap<>();
+        private long orderCount;
+        private long unitsSold;
+        private BigDecimal revenue = BigDecimal.ZERO;
+        private BigDecimal itemRevenue = BigDecimal.ZERO;
+        private Long lastOrderId;
+
+        void add(SalesLine line) {
+            if (!line.orderId().equals(lastOrderId)) {
+                lastOrderId = line.orderId();
+                orderCount++;
+                revenue = revenue.add(nonNull(line.orderTotal()));
+            }
+
+            BigDecimal subtotal = nonNull(line.subtotal());
+            unitsSold += line.quantity();
+            itemRevenue = itemRevenue.add(subtotal);
+
+            String category = line.category() != null ? line.category() : UNCATEGORIZED;
+            products.computeIfAbsent(line.productId(), id -> new ProductTotals(line.productName(), category))
+                .add(line.quantity(), subtotal);
+            categoryTotals.computeIfAbsent(category, c -> new ProductTotals(null, c))
+                .add(line.quantity(), subtotal);
+        }
+
+        List<CategorySales> categories() {
+            return categoryTotals.values().stream()
+                .sorted(Comparator.comparing((ProductTotals t) -> t.revenue).reversed())
+                .map(t -> new CategorySales(t.category, t.units, t.revenue))
+                .toList();
+        }
+
+        List<ProductSales> topSellers(int limit) {
+            if (limit <= 0) {
+                return List.of();
+            }
+            // Min-heap on revenue: the root is the weakest of the current top N
+            PriorityQueue<ProductSales> heap = new PriorityQueue<>(limit + 1,
+                Comparator.comparing(ProductSales::revenue).thenComparing(ProductSales::units));
+            products.forEach((productId, totals) -> {
+                heap.offer(new ProductSales(productId, totals.name, totals.category, totals.units, totals.revenue));
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            });
+
+            List<ProductSales> top = new ArrayList<>(heap);
+            top.sort(heap.comparator().reversed());
+            return top;
+        }
+
+        byte[] productCsv() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+                for (Map.Entry<Long, ProductTotals> entry : products.entrySet()) {
+                    ProductTotals totals = entry.getValue();
+                    writer.write(entry.getKey().toString());
+                    writer.write(',');
+                    writer.write(csv(totals.name));
+                    writer.write(',');
+                    writer.write(csv(totals.category));
+                    writer.write(',');
+                    writer.write(Long.toString(totals.units));
+                    writer.write(',');
+                    writer.write(totals.revenue.toPlainString());
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static String csv(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        private static BigDecimal nonNull(BigDecimal value) {
+            return value != null ? value : BigDecimal.ZERO;
+        }
+    }
+
+    private static final class ProductTotals {
+        private final String name;
+        private final String category;
+        private long units;
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        ProductTotals(String name, String category) {
+            this.name = name;
+            this.category = category;
+        }
+
+        void add(int quantity, BigDecimal amount) {
+            units += quantity;
+            revenue = revenue.add(amount);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.annotation.WorkloadClass;
+import com.henuka.imitations.config.WorkloadExecutors;
+import com.henuka.imitations.repository.EmailOutboxRepository;
+import com.henuka.imitations.repository.EmailOutboxRepository.OutboxMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the email outbox over SMTP.
+ *
+ * A fixed set of sender threads each lease a batch of due messages and send them over one SMTP
+ * connection, which the sender keeps open between batches until it has been idle too long or
+ * has carried its maximum number of messages. A message that fails is put back with exponential
+ * backoff and marked FAILED after its last attempt; one the server rejects outright with a 5xx
+ * reply (bad address) fails at once, while a 4xx deferral such as greylisting is retried. A sender that dies mid-batch leaves its messages leased, and they are sent again
+ * once the lease runs out, so delivery is at least once.
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final JavaMailSenderImpl mailSender;
+    private final MeterRegistry meterRegistry;
+    private final WorkloadExecutors workloads;
+
+    @Value("${app.email.outbox.senders:2}")
+    private int senders;
+
+    @Value("${app.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.email.outbox.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${app.email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.email.outbox.retry-backoff-ms:30000}")
+    private long retryBackoffMillis;
+
+    @Value("${app.email.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMillis;
+
+    // Many servers close a session after a fixed number of messages or a short idle period
+    @Value("${app.email.outbox.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Value("${app.email.outbox.connection-idle-seconds:60}")
+    private long connectionIdleSeconds;
+
+    private final List<Sender> pool = new ArrayList<>();
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 JavaMailSenderImpl mailSender,
+                                 MeterRegistry meterRegistry,
+                                 WorkloadExecutors workloads) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.mailSender = mailSender;
+        this.meterRegistry = meterRegistry;
+        this.workloads = workloads;
+    }
+
+    @PostConstruct
+    void start() {
+        for (int i = 0; i < senders; i++) {
+            pool.add(new Sender(i + 1));
+        }
+        meterRegistry.gauge("email.queue.depth", queueDepth);
+        log.info("Email outbox dispatcher started with {} sender(s)", senders);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        for (Sender sender : pool) {
+            sender.executor.shutdown();
+        }
+        for (Sender sender : pool) {
+            sender.executor.awaitTermination(10, TimeUnit.SECONDS);
+            sender.disconnect();
+        }
+    }
+
+    /**
+     * Wake every sender; runs already scheduled absorb the request.
+     */
+    public void requestDispatch() {
+        pool.forEach(Sender::request);
+    }
+
+    /**
+     * Periodic pass: refresh the queue depth gauge, close idle connections and send what is due.
+     */
+    public void poll() {
+        queueDepth.set(emailOutboxRepository.countQueued());
+        pool.forEach(Sender::closeIfIdle);
+        requestDispatch();
+    }
+
+    private final class Sender {
+        private final String name;
+        private final ExecutorService executor;
+        private final AtomicBoolean requested = new AtomicBoolean();
+
+        // Only touched on this sender's thread
+        private Transport transport;
+        private int messagesOnConnection;
+        private long lastUsedAt;
+
+        Sender(int index) {
+            this.name = "EmailSender-" + index;
+            // Requests coalesce, so the queue holds at most one run besides the idle checks
+            this.executor = workloads.lane("emailSenderLane-" + index, WorkloadClass.IO_BOUND, Integer.MAX_VALUE, name);
+        }
+
+        void request() {
+            if (requested.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    requested.set(false);
+                    try {
+                        drain();
+                    } catch (Exception e) {
+                        log.error("Email sender {} stopped on an unexpected error", name, e);
+                    }
+                });
+            }
+        }
+
+        void closeIfIdle() {
+            executor.execute(() -> {
+                if (transport != null && System.currentTimeMillis() - lastUsedAt > connectionIdleSeconds * 1000) {
+                    disconnect();
+                }
+            });
+        }
+
+        private void drain() {
+            boolean more = true;
+            while (more) {
+                LocalDateTime now = LocalDateTime.now();
+                List<OutboxMessage> due = emailOutboxRepository.findDue(now, batchSize);
+                more = due.size() == batchSize;
+                List<OutboxMessage> batch = emailOutboxRepository.claim(due, now.plusSeconds(leaseSeconds));
+                if (!batch.isEmpty()) {
+                    send(batch);
+                } else if (more) {
+                    // Every row went to another sender; leave the rest to it
+                    return;
+                }
+            }
+        }
+
+        private void send(List<OutboxMessage> batch) {
+            meterRegistry.summary("email.batch.size").record(batch.size());
+            List<Long> sent = new ArrayList<>(batch.size());
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    OutboxMessage message = batch.get(i);
+                    long startTime = System.nanoTime();
+                    Transport connection;
+                    try {
+                        connection = connection();
+                    } catch (MessagingException e) {
+                        // Server unreachable: nothing in the rest of the batch can go out either
+                        log.warn("Email sender {} could not connect: {}", name, e.getMessage());
+                        List<OutboxMessage> remaining = batch.subList(i, batch.size());
+                        remaining.forEach(m -> retry(m, e));
+                        return;
+                    }
+
+                    try {
+                        MimeMessage mime = toMimeMessage(message);
+                        connection.sendMessage(mime, mime.getAllRecipients());
+                        messagesOnConnection++;
+                        lastUsedAt = System.currentTimeMillis();
+                        sent.add(message.id());
+                        record("sent", startTime);
+                        meterRegistry.timer("email.queue.latency")
+                            .record(Duration.between(message.createdAt(), LocalDateTime.now()));
+                    } catch (SendFailedException e) {
+                        if (isPermanent(e)) {
+                            // Rejected recipient or message; resending will not help
+                            log.warn("Email {} to {} rejected: {}", message.id(), message.recipient(), e.getMessage());
+                            emailOutboxRepository.markFailed(message.id(), truncate(e.getMessage()));
+                            record("rejected", startTime);
+                        } else {
+                            // Deferred with a 4xx (greylisting, a full mailbox or spool); the connection is fine
+                            retry(message, e);
+                            record("retry", startTime);
+                        }
+                    } catch (MessagingException e) {
+                        // The connection is suspect after any other failure
+                        disconnect();
+                        retry(message, e);
+                        record("retry", startTime);
+                    }
+                }
+            } finally {
+                emailOutboxRepository.markSent(sent, LocalDateTime.now());
+            }
+        }
+
+        private void retry(OutboxMessage message, Exception e) {
+            int attempts = message.attempts() + 1;
+            if (attempts >= maxAttempts) {
+                log.error("Email {} to {} failed after {} attempt(s)", message.id(), message.recipient(), attempts, e);
+                emailOutboxRepository.markFailed(message.id(), truncate(e.getMessage()));
+                meterRegistry.counter("email.failed", "template", message.template()).increment();
+                return;
+            }
+            long backoff = Math.min(retryBackoffMillis << Math.min(attempts - 1, 20), maxBackoffMillis);
+            emailOutboxRepository.markRetry(message.id(),
+                LocalDateTime.now().plus(Duration.ofMillis(backoff)), truncate(e.getMessage()));
+        }
+
+        // A 5xx reply, or a refused recipient with none left to retry; 4xx replies are temporary.
+        // MAIL and DATA failures carry their reply code; a refused RCPT lists the address as
+        // invalid on 5xx and as valid but unsent on 4xx.
+        private boolean isPermanent(SendFailedException e) {
+            if (e instanceof SMTPSendFailedException smtp) {
+                return smtp.getReturnCode() >= 500;
+            }
+            Address[] unsent = e.getValidUnsentAddresses();
+            return unsent == null || unsent.length == 0;
+        }
+
+        // The open connection, replaced when it has dropped or carried its share of messages
+        private Transport connection() throws MessagingException {
+            if (transport != null && (messagesOnConnection >= maxMessagesPerConnection || !transport.isConnected())) {
+                disconnect();
+            }
+            if (transport == null) {
+                Transport fresh = mailSender.getSession().getTransport();
+                fresh.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+                transport = fresh;
+                messagesOnConnection = 0;
+                meterRegistry.counter("email.connections").increment();
+            }
+            return transport;
+        }
+
+        private void disconnect() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Error closing SMTP connection for {}", name, e);
+            }
+            transport = null;
+        }
+
+        private MimeMessage toMimeMessage(OutboxMessage message) throws MessagingException {
+            MimeMessage mime = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(mime, true, "UTF-8");
+            helper.setTo(message.recipient());
+            helper.setSubject(message.subject());
+            helper.setText(message.htmlBody(), true);
+            if (message.attachment() != null) {
+                helper.addAttachment(message.attachmentName(), new ByteArrayResource(message.attachment()),
+                    message.attachmentType());
+            }
+            mime.saveChanges();
+            return mime;
+        }
+
+        private void record(String outcome, long startTime) {
+            meterRegistry.timer("email.send", "outcome", outcome)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+
+        private String truncate(String value) {
+            return value != null && value.length() > 500 ? value.substring(0, 500) : value;
+        }
+    }
+}
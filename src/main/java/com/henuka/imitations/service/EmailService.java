@@ -2,28 +2,36 @@ package com.henuka.imitations.service;
 
 import com.henuka.imitations.model.Order;
 import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.repository.EmailOutboxRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
+/**
+ * Renders customer and staff emails and queues them in the email outbox; sending is left to
+ * {@link EmailOutboxDispatcher}. A message is durable once the caller's transaction commits.
+ * Emails sent in response to an event take a dedup key, so a repeated delivery queues nothing.
+ */
 @Service
 @RequiredArgsConstructor
 public class EmailService {
     
-    private final JavaMailSender mailSender;
-    private final TemplateEngine templateEngine;
+    private final EmailTemplateRenderer emailTemplateRenderer;
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailOutboxDispatcher emailOutboxDispatcher;
     
-    @Async
-    public void sendPaymentConfirmationEmail(Order order, PaymentOrder paymentOrder) {
+    // Orders do not record a language yet, so every email uses this one
+    @Value("${app.email.default-locale:en}")
+    private String defaultLocale;
+    
+    public void sendPaymentConfirmationEmail(Order order, PaymentOrder paymentOrder, String dedupKey) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("order", order);
         variables.put("payment", paymentOrder);
@@ -31,13 +39,13 @@ public class EmailService {
         sendEmail(
             order.getEmail(),
             "Payment Confirmation - Order #" + order.getOrderNumber(),
-            "emails/payment-confirmation",
-            variables
+            "payment-confirmation",
+            variables,
+            dedupKey
         );
     }
     
-    @Async
-    public void sendPaymentFailureEmail(Order order, PaymentOrder paymentOrder) {
+    public void sendPaymentFailureEmail(Order order, PaymentOrder paymentOrder, String dedupKey) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("order", order);
         variables.put("payment", paymentOrder);
@@ -45,13 +53,13 @@ public class EmailService {
         sendEmail(
             order.getEmail(),
             "Payment Failed - Order #" + order.getOrderNumber(),
-            "emails/payment-failed",
-            variables
+            "payment-failed",
+            variables,
+            dedupKey
         );
     }
     
-    @Async
-    public void sendRefundConfirmationEmail(Order order, PaymentOrder paymentOrder) {
+    public void sendRefundConfirmationEmail(Order order, PaymentOrder paymentOrder, String dedupKey) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("order", order);
         variables.put("payment", paymentOrder);
@@ -59,28 +67,55 @@ public class EmailService {
         sendEmail(
             order.getEmail(),
             "Refund Processed - Order #" + order.getOrderNumber(),
-            "emails/refund-confirmation",
-            variables
+            "refund-confirmation",
+            variables,
+            dedupKey
+        );
+    }
+    
+    public void sendDailySalesReport(String to,
+                                     LocalDate reportDate,
+                                     Map<String, Object> variables,
+                                     String attachmentName,
+                                     byte[] attachment) {
+        sendEmail(
+            to,
+            "Daily Sales Report - " + reportDate,
+            "daily-sales-report",
+            variables,
+            null,
+            attachmentName,
+            attachment
         );
     }
     
-    private void sendEmail(String to, String subject, String template, Map<String, Object> variables) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            Context context = new Context();
-            variables.forEach(context::setVariable);
-            
-            String htmlContent = templateEngine.process(template, context);
-            
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-            
-            mailSender.send(message);
-        } catch (MessagingException e) {
-            throw new RuntimeException("Failed to send email", e);
+    private void sendEmail(String to, String subject, String template, Map<String, Object> variables, String dedupKey) {
+        sendEmail(to, subject, template, variables, dedupKey, null, null);
+    }
+    
+    // With a dedup key, nothing is queued if a message with that key already was
+    private void sendEmail(String to, String subject, String template, Map<String, Object> variables,
+                           String dedupKey, String attachmentName, byte[] attachment) {
+        String htmlContent = emailTemplateRenderer.render(template, Locale.forLanguageTag(defaultLocale), variables);
+        String attachmentType = attachment != null ? "text/csv" : null;
+        
+        if (dedupKey == null) {
+            emailOutboxRepository.enqueue(to, subject, template, htmlContent, attachmentName, attachmentType, attachment);
+        } else if (!emailOutboxRepository.enqueueOnce(dedupKey, to, subject, template, htmlContent,
+                attachmentName, attachmentType, attachment)) {
+            return;
+        }
+        
+        // Wake a sender once the message is visible; the periodic poll covers anything missed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    emailOutboxDispatcher.requestDispatch();
+                }
+            });
+        } else {
+            emailOutboxDispatcher.requestDispatch();
         }
     }
 }
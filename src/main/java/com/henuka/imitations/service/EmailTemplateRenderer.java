@@ -0,0 +1,119 @@
+package com.henuka.imitations.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the email templates under {@code templates/emails}.
+ *
+ * The shared layout (styles, header, footer) does not depend on the message, so it is rendered
+ * once per template and locale, at startup for the configured locales, and kept as the text
+ * before and after its content slot. Each message then renders only the template's
+ * {@code content} fragment and is spliced into that shell. Parsed templates are cached for the
+ * life of the application and SpEL expressions are compiled after first use.
+ */
+@Service
+public class EmailTemplateRenderer {
+
+    private static final String PREFIX = "emails/";
+    private static final String LAYOUT = PREFIX + "layout";
+    private static final String CONTENT_MARKER = "<!--@email-content-->";
+    private static final Set<String> CONTENT = Set.of("content");
+
+    private final SpringTemplateEngine templateEngine;
+    private final MessageSource messageSource;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.email.templates:payment-confirmation,payment-failed,refund-confirmation,daily-sales-report}")
+    private List<String> templates;
+
+    @Value("${app.email.locales:en}")
+    private List<String> locales;
+
+    private final ConcurrentMap<String, Shell> shells = new ConcurrentHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(EmailTemplateRenderer.class);
+
+    public EmailTemplateRenderer(MessageSource messageSource, MeterRegistry meterRegistry) {
+        this.messageSource = messageSource;
+        this.meterRegistry = meterRegistry;
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(true);
+
+        // Private to emails, so it neither replaces nor follows the settings of the web view engine
+        this.templateEngine = new SpringTemplateEngine();
+        this.templateEngine.setTemplateResolver(resolver);
+        this.templateEngine.setTemplateEngineMessageSource(messageSource);
+        this.templateEngine.setEnableSpringELCompiler(true);
+    }
+
+    @PostConstruct
+    void preload() {
+        for (String language : locales) {
+            Locale locale = Locale.forLanguageTag(language.trim());
+            for (String template : templates) {
+                shell(template.trim(), locale);
+            }
+        }
+        log.info("Email layouts prepared for {} template(s) in locale(s) {}", templates.size(), locales);
+    }
+
+    /**
+     * Render one message. {@code template} is the file name under {@code templates/emails}.
+     */
+    public String render(String template, Locale locale, Map<String, Object> variables) {
+        long startTime = System.nanoTime();
+        Shell shell = shell(template, locale);
+
+        Context context = new Context(locale);
+        context.setVariables(variables);
+        String content = templateEngine.process(PREFIX + template, CONTENT, context);
+
+        StringBuilder html = new StringBuilder(shell.prefix().length() + content.length() + shell.suffix().length());
+        html.append(shell.prefix()).append(content).append(shell.suffix());
+
+        meterRegistry.timer("email.render", "template", template)
+            .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return html.toString();
+    }
+
+    private Shell shell(String template, Locale locale) {
+        return shells.computeIfAbsent(template + "|" + locale.toLanguageTag(), key -> {
+            Context context = new Context(locale);
+            context.setVariable("title", messageSource.getMessage("email.title." + template, null, template, locale));
+            String html = templateEngine.process(LAYOUT, context);
+
+            int slot = html.indexOf(CONTENT_MARKER);
+            if (slot < 0) {
+                throw new IllegalStateException("Email layout has no content slot");
+            }
+            return new Shell(html.substring(0, slot), html.substring(slot + CONTENT_MARKER.length()));
+        });
+    }
+
+    // Layout text before and after the content slot
+    private record Shell(String prefix, String suffix) {
+    }
+}
@@ -0,0 +1,16 @@
+package com.henuka.imitations.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Sellable stock as held by the warehouse system, which the nightly inventory sync copies onto
+ * products. Implemented on top of whichever warehouse integration is configured.
+ */
+public interface InventoryFeed {
+
+    /**
+     * Stock for each of the given products the warehouse knows; unknown products are left out
+     */
+    Map<Long, Integer> stockLevels(Collection<Long> productIds);
+}
@@ -0,0 +1,25 @@
+package com.henuka.imitations.service;
+
+/**
+ * The share of a sharded cluster job this node is running, or of a batch job a partition is
+ * running: work items whose hash modulo {@code count} equals {@code index}.
+ */
+public record JobShard(int index, int count) {
+
+    private static final ThreadLocal<JobShard> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The shard of the sharded job running on this thread, or null outside one.
+     */
+    public static JobShard current() {
+        return CURRENT.get();
+    }
+
+    public static void set(JobShard shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.repository.OrderArchiveRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves delivered and cancelled orders out of the hot orders/order_items tables.
+ *
+ * Archiving is a batch job: each batch runs in its own transaction and is followed by a pause, so
+ * archiving never holds long locks or saturates the database while the storefront is serving
+ * traffic. A run that stops at its batch limit, or fails, continues from its checkpoint next time.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderArchiveService {
+
+    private static final Set<Order.OrderStatus> TERMINAL_STATUSES =
+        EnumSet.of(Order.OrderStatus.DELIVERED, Order.OrderStatus.CANCELLED);
+
+    private final OrderArchiveRepository orderArchiveRepository;
+    private final BatchJobRunner batchJobRunner;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<ArchiveSegmentSink> segmentSink;
+
+    @Value("${app.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.archive.min-age-days:90}")
+    private int minAgeDays;
+
+    @Value("${app.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.archive.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.archive.pause-between-batches-ms:200}")
+    private long pauseBetweenBatchesMs;
+
+    @Value("${app.archive.export.enabled:false}")
+    private boolean exportEnabled;
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveService.class);
+
+    /**
+     * Archive finished orders older than the configured age. Returns the number of orders moved.
+     */
+    public int archiveFinishedOrders() {
+        if (!enabled) {
+            log.debug("Order archival is disabled");
+            return 0;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(minAgeDays);
+        // One partition by default: batches delete from the same tables, so parallel ones mostly contend
+        BatchJob<Long, Long> job = BatchJob.of(
+            "order-archive",
+            (partition, afterKey, limit) -> orderArchiveRepository.findArchivableOrderIds(TERMINAL_STATUSES,
+                cutoff, partition.index(), partition.count(), afterKey == null ? 0 : afterKey, limit),
+            Long::longValue,
+            this::archiveBatch,
+            BatchJob.Settings.DEFAULTS
+                .withCommitInterval(batchSize)
+                .withPause(pauseBetweenBatchesMs)
+                .withMaxChunks(maxBatchesPerRun)
+        );
+        int archived = (int) batchJobRunner.run(job).written();
+
+        log.info("Archived {} finished order(s) created before {}", archived, cutoff);
+        return archived;
+    }
+
+    /**
+     * Look up an order that has already been moved to the archive. The result is detached
+     * and must not be saved.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Order> findArchivedOrder(String orderNumber) {
+        return orderArchiveRepository.findByOrderNumber(orderNumber);
+    }
+
+    private void archiveBatch(List<Long> orderIds) {
+        if (exportEnabled) {
+            // Export before deleting; a failed upload rolls the whole batch back
+            exportSegment(orderIds);
+        }
+
+        orderArchiveRepository.moveToArchive(orderIds);
+    }
+
+    private void exportSegment(List<Long> orderIds) {
+        ArchiveSegmentSink sink = segmentSink.getIfAvailable();
+        if (sink == null) {
+            throw new IllegalStateException("Archive export is enabled but no segment sink is configured");
+        }
+
+        Map<Object, List<Map<String, Object>>> itemsByOrder = orderArchiveRepository.findItemRows(orderIds).stream()
+            .collect(Collectors.groupingBy(row -> row.get("order_id"), LinkedHashMap::new, Collectors.toList()));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            for (Map<String, Object> row : orderArchiveRepository.findOrderRows(orderIds)) {
+                Map<String, Object> line = new LinkedHashMap<>(row);
+                line.put("items", itemsByOrder.getOrDefault(row.get("id"), new ArrayList<>()));
+                out.write(objectMapper.writeValueAsBytes(line));
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write archive segment", e);
+        }
+
+        String segmentName = String.format("order-archive-%s-%d-%d.ndjson.gz",
+            LocalDate.now(), orderIds.get(0), orderIds.get(orderIds.size() - 1));
+        String location = sink.store(segmentName, buffer.toByteArray());
+        log.info("Exported {} archived order(s) to {}", orderIds.size(), location);
+    }
+}
@@ -0,0 +1,310 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.repository.OrderExportRepository;
+import com.henuka.imitations.repository.OrderExportRepository.OrderLine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Writes orders and their lines for a date range as CSV or NDJSON straight from a JDBC cursor.
+ *
+ * Only the row being written is held in memory: CSV emits one record per order line, and
+ * NDJSON opens an order object when its first row arrives and closes it when the next order
+ * starts, streaming the lines in between.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER =
+        "order_number,created_at,customer_name,email,order_status,payment_status,payment_id," +
+        "subtotal,shipping_cost,total_amount,product_id,product_name,quantity,unit_price,line_subtotal";
+
+    private final OrderExportRepository orderExportRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private static final Logger log = LoggerFactory.getLogger(OrderExportService.class);
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Export orders created in [from, to) to the given stream. The stream is flushed, not closed.
+     */
+    public ExportResult export(LocalDateTime from, LocalDateTime to, Format format, OutputStream out) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Export start must be before its end");
+        }
+
+        long startTime = System.currentTimeMillis();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        ExportWriter writer = format == Format.CSV ? new CsvWriter(counted) : new NdjsonWriter(counted);
+
+        TransactionTemplate readOnly = new TransactionTemplate(Objects.requireNonNull(transactionTemplate.getTransactionManager()));
+        readOnly.setReadOnly(true);
+        readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        try {
+            writer.start();
+            readOnly.executeWithoutResult(status -> orderExportRepository.streamOrderLines(from, to, line -> {
+                try {
+                    writer.write(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+        ExportResult result = new ExportResult(writer.orders(), writer.lines(), counted.count(), duration);
+
+        meterRegistry.counter("orders.export.rows", "format", format.name()).increment(result.lines());
+        meterRegistry.timer("orders.export.duration", "format", format.name()).record(Duration.ofMillis(duration));
+        log.info("Exported {} order(s) / {} line(s) as {} for [{}, {}) in {}ms: {} rows/s, {} bytes (uncompressed)",
+            result.orders(), result.lines(), format, from, to, duration, result.rowsPerSecond(), result.bytes());
+        return result;
+    }
+
+    public record ExportResult(long orders, long lines, long bytes, long durationMillis) {
+
+        public long rowsPerSecond() {
+            return lines * 1000 / Math.max(durationMillis, 1);
+        }
+    }
+
+    private abstract static class ExportWriter {
+        private Long currentOrderId;
+        private long orders;
+        private long lines;
+
+        abstract void start() throws IOException;
+
+        abstract void finish() throws IOException;
+
+        abstract void startOrder(OrderLine line) throws IOException;
+
+        abstract void endOrder() throws IOException;
+
+        abstract void writeLine(OrderLine line) throws IOException;
+
+        void write(OrderLine line) throws IOException {
+            if (!line.orderId().equals(currentOrderId)) {
+                if (currentOrderId != null) {
+                    endOrder();
+                }
+                currentOrderId = line.orderId();
+                orders++;
+                startOrder(line);
+            }
+            writeLine(line);
+            lines++;
+        }
+
+        boolean inOrder() {
+            return currentOrderId != null;
+        }
+
+        long orders() {
+            return orders;
+        }
+
+        long lines() {
+            return lines;
+        }
+    }
+
+    private static final class CsvWriter extends ExportWriter {
+        private final Writer out;
+
+        CsvWriter(OutputStream stream) {
+            this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        @Override
+        void start() throws IOException {
+            out.write(CSV_HEADER);
+            out.write('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        void startOrder(OrderLine line) {
+        }
+
+        @Override
+        void endOrder() {
+        }
+
+        @Override
+        void writeLine(OrderLine line) throws IOException {
+            field(line.orderNumber()).write(',');
+            field(line.createdAt()).write(',');
+            field(line.customerName()).write(',');
+            field(line.email()).write(',');
+            field(line.status()).write(',');
+            field(line.paymentStatus()).write(',');
+            field(line.paymentId()).write(',');
+            field(line.subtotal()).write(',');
+            field(line.shippingCost()).write(',');
+            field(line.totalAmount()).write(',');
+            field(line.productId()).write(',');
+            field(line.productName()).write(',');
+            field(line.quantity()).write(',');
+            field(line.unitPrice()).write(',');
+            field(line.itemSubtotal()).write('\n');
+        }
+
+        private Writer field(Object value) throws IOException {
+            if (value == null) {
+                return out;
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                out.write(text);
+            } else {
+                out.write('"');
+                out.write(text.replace("\"", "\"\""));
+                out.write('"');
+            }
+            return out;
+        }
+    }
+
+    private final class NdjsonWriter extends ExportWriter {
+        private final JsonGenerator json;
+
+        NdjsonWriter(OutputStream stream) {
+            try {
+                this.json = objectMapper.getFactory().createGenerator(stream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // Generator writes to the caller's stream but must not close it
+            this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Records are newline-terminated in endOrder, so no separator between root values
+            this.json.setRootValueSeparator(null);
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (inOrder()) {
+                endOrder();
+            }
+            json.flush();
+        }
+
+        @Override
+        void startOrder(OrderLine line) throws IOException {
+            json.writeStartObject();
+            json.writeStringField("orderNumber", line.orderNumber());
+            json.writeStringField("createdAt", line.createdAt() != null ? line.createdAt().toString() : null);
+            json.writeStringField("customerName", line.customerName());
+            json.writeStringField("email", line.email());
+            json.writeStringField("status", line.status());
+            json.writeStringField("paymentStatus", line.paymentStatus());
+            json.writeStringField("paymentId", line.paymentId());
+            json.writeNumberField("subtotal", line.subtotal());
+            json.writeNumberField("shippingCost", line.shippingCost());
+            json.writeNumberField("totalAmount", line.totalAmount());
+            json.writeArrayFieldStart("items");
+        }
+
+        @Override
+        void endOrder() throws IOException {
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        void writeLine(OrderLine line) throws IOException {
+            if (!line.hasItem()) {
+                return;
+            }
+            json.writeStartObject();
+            json.writeNumberField("productId", line.productId());
+            json.writeStringField("productName", line.productName());
+            json.writeNumberField("quantity", line.quantity());
+            json.writeNumberField("unitPrice", line.unitPrice());
+            json.writeNumberField("subtotal", line.itemSubtotal());
+            json.writeEndObject();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
@@ -1,20 +1,37 @@
 package com.henuka.imitations.service;
 
+import com.henuka.imitations.event.OrderStatusChangedEvent;
 import com.henuka.imitations.model.CartItem;
 import com.henuka.imitations.model.Order;
 import com.henuka.imitations.model.OrderItem;
 import com.henuka.imitations.model.Product;
 import com.henuka.imitations.repository.OrderRepository;
+import com.henuka.imitations.repository.OrderSpecifications;
+import com.henuka.imitations.repository.OrderState;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
@@ -24,10 +41,20 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final CartService cartService;
     private final ProductService productService;
+    private final SalesRollupService salesRollupService;
+    private final OrderArchiveService orderArchiveService;
+    private final PendingOrderSweeper pendingOrderSweeper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
     
     private static final BigDecimal FREE_SHIPPING_THRESHOLD = new BigDecimal("500");
     private static final BigDecimal SHIPPING_COST = new BigDecimal("50");
 
+    @Value("${app.orders.transition.max-attempts:5}")
+    private int maxTransitionAttempts;
+
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+
     public Order createOrder(String sessionId, OrderRequest orderRequest) {
         // Validate cart before creating order
         cartService.validateCart(sessionId);
@@ -78,74 +105,81 @@ public class OrderService {
             .orElseThrow(() -> new EntityNotFoundException("Order not found with id: " + id));
     }
 
+    /**
+     * Find an order for display, falling through to the archive so old tracking links keep working.
+     * Archived orders are detached; use {@link #getActiveOrderByNumber} for anything that modifies the order.
+     */
     @Transactional(readOnly = true)
     public Order getOrderByNumber(String orderNumber) {
+        return orderRepository.findByOrderNumber(orderNumber)
+            .or(() -> orderArchiveService.findArchivedOrder(orderNumber))
+            .orElseThrow(() -> new EntityNotFoundException("Order not found with number: " + orderNumber));
+    }
+
+    @Transactional(readOnly = true)
+    public Order getActiveOrderByNumber(String orderNumber) {
         return orderRepository.findByOrderNumber(orderNumber)
             .orElseThrow(() -> new EntityNotFoundException("Order not found with number: " + orderNumber));
     }
 
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Order updateOrderStatus(Long orderId, Order.OrderStatus newStatus) {
-        Order order = getOrderById(orderId);
-        
-        // Validate status transition
-        validateStatusTransition(order.getStatus(), newStatus);
-        
-        order.setStatus(newStatus);
-        return orderRepository.save(order);
+        return transition(orderId, OrderStateMachine.forStatus(newStatus));
     }
 
-    public Order confirmOrder(String orderId) {
-        Order order = getOrderByNumber(orderId);
-        order.setStatus(Order.OrderStatus.CONFIRMED);
-        order.setPaymentStatus(Order.PaymentStatus.PAID);
-        return orderRepository.save(order);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Order confirmOrder(String orderNumber) {
+        return transition(getOrderIdByNumber(orderNumber), OrderStateMachine.Action.PAYMENT_CAPTURED);
     }
 
-    public Order failOrder(String orderId) {
-        Order order = getOrderByNumber(orderId);
-        order.setStatus(Order.OrderStatus.PENDING);
-        order.setPaymentStatus(Order.PaymentStatus.FAILED);
-        return orderRepository.save(order);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Order failOrder(String orderNumber) {
+        return transition(getOrderIdByNumber(orderNumber), OrderStateMachine.Action.PAYMENT_FAILED);
     }
 
-    public Order refundOrder(String orderId) {
-        Order order = getOrderByNumber(orderId);
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        order.setPaymentStatus(Order.PaymentStatus.REFUNDED);
-        
-        // Restore product stock
-        order.getItems().forEach(item -> 
-            productService.increaseStock(item.getProduct().getId(), item.getQuantity())
-        );
-        
-        return orderRepository.save(order);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Order refundOrder(String orderNumber) {
+        return transition(getOrderIdByNumber(orderNumber), OrderStateMachine.Action.REFUND);
     }
 
-    public Order updatePaymentStatus(Long orderId, Order.PaymentStatus newStatus) {
-        Order order = getOrderById(orderId);
-        order.setPaymentStatus(newStatus);
-        
-        if (newStatus == Order.PaymentStatus.PAID) {
-            order.setStatus(Order.OrderStatus.CONFIRMED);
+    /**
+     * Refund many orders in one transaction, returning their stock with one update per product
+     * instead of one per order. Each order is locked before it is moved, so this can run inside
+     * the caller's transaction. Orders that cannot be refunded are left untouched and logged.
+     * Returns the order numbers that are refunded afterwards, including ones that already were.
+     */
+    public List<String> refundOrders(Collection<String> orderNumbers) {
+        List<String> refunded = new ArrayList<>(orderNumbers.size());
+        List<Long> restockOrderIds = new ArrayList<>(orderNumbers.size());
+        for (String orderNumber : orderNumbers) {
+            try {
+                transitionLocked(getOrderIdByNumber(orderNumber), OrderStateMachine.Action.REFUND, restockOrderIds);
+                refunded.add(orderNumber);
+            } catch (IllegalStateException | EntityNotFoundException | OptimisticLockingFailureException e) {
+                log.warn("Could not refund order {}: {}", orderNumber, e.getMessage());
+            }
         }
-        
-        return orderRepository.save(order);
+        restoreStock(restockOrderIds);
+        return refunded;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Order updatePaymentStatus(Long orderId, Order.PaymentStatus newStatus) {
+        return transition(orderId, OrderStateMachine.forPaymentStatus(newStatus));
     }
 
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Order cancelOrder(Long orderId) {
-        Order order = getOrderById(orderId);
-        
-        if (!order.canBeCancelled()) {
-            throw new IllegalStateException("Order cannot be cancelled in its current state");
-        }
-        
-        // Restore product stock
-        order.getItems().forEach(item -> 
-            productService.increaseStock(item.getProduct().getId(), item.getQuantity())
-        );
-        
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        return orderRepository.save(order);
+        return transition(orderId, OrderStateMachine.Action.CANCEL);
+    }
+
+    /**
+     * Cancel unpaid orders past the payment timeout and return their stock.
+     * Each sweeper chunk commits on its own, so no transaction is held here.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public PendingOrderSweeper.SweepResult processPendingOrders() {
+        return pendingOrderSweeper.sweep();
     }
 
     @Transactional(readOnly = true)
@@ -155,35 +189,129 @@ public class OrderService {
 
     @Transactional(readOnly = true)
     public Page<Order> searchOrders(OrderSearchCriteria criteria, Pageable pageable) {
-        return orderRepository.searchOrders(
+        return orderRepository.findAll(OrderSpecifications.search(
             criteria.email(),
             criteria.status(),
             criteria.paymentStatus(),
             criteria.minAmount(),
             criteria.maxAmount(),
             criteria.startDate(),
-            criteria.endDate(),
-            pageable
-        );
+            criteria.endDate()
+        ), pageable);
     }
 
+    /**
+     * Statistics for orders created in [startDate, endDate), answered from sales rollups.
+     */
     @Transactional(readOnly = true)
     public Map<String, Object> getOrderStatistics(LocalDateTime startDate, LocalDateTime endDate) {
-        return orderRepository.getOrderStatistics(startDate, endDate);
+        return salesRollupService.getOrderStatistics(startDate, endDate);
     }
 
-    private void validateStatusTransition(Order.OrderStatus currentStatus, Order.OrderStatus newStatus) {
-        // Implement order status transition rules
-        if (currentStatus == Order.OrderStatus.CANCELLED) {
-            throw new IllegalStateException("Cannot change status of cancelled order");
+    private Long getOrderIdByNumber(String orderNumber) {
+        return orderRepository.findStateByOrderNumber(orderNumber)
+            .map(OrderState::id)
+            .orElseThrow(() -> new EntityNotFoundException("Order not found with number: " + orderNumber));
+    }
+
+    /**
+     * Apply a transition with compare-and-set on the order's version, retrying a bounded number
+     * of times when another writer got there first. Each attempt runs in its own short transaction,
+     * so a retry reads the state committed since the last one and the backoff between attempts
+     * holds no transaction or connection. A move that a concurrent change made illegal fails
+     * instead of overwriting it; repeating a transition the order has already made is a no-op.
+     */
+    private Order transition(Long orderId, OrderStateMachine.Action action) {
+        OrderStateMachine.Rule rule = OrderStateMachine.rule(action);
+        TransactionTemplate attemptTemplate = new TransactionTemplate(Objects.requireNonNull(transactionTemplate.getTransactionManager()));
+        attemptTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        for (int attempt = 1; ; attempt++) {
+            Order order = attemptTemplate.execute(status -> {
+                OrderState state = orderRepository.findStateById(orderId)
+                    .orElseThrow(() -> new EntityNotFoundException("Order not found with id: " + orderId));
+                return apply(action, rule, state, null) ? getOrderById(orderId) : null;
+            });
+            if (order != null) {
+                return order;
+            }
+
+            if (attempt >= maxTransitionAttempts) {
+                throw new OptimisticLockingFailureException(String.format(
+                    "Order %d was modified concurrently; gave up after %d attempts", orderId, attempt));
+            }
+            log.debug("Version conflict on order {} during {}, retrying (attempt {})", orderId, action, attempt);
+            backOff(attempt);
         }
-        
-        if (currentStatus == Order.OrderStatus.DELIVERED && 
-            newStatus != Order.OrderStatus.DELIVERED) {
-            throw new IllegalStateException("Cannot change status of delivered order");
+    }
+
+    // Within the caller's transaction: the row is locked first, so the compare-and-set cannot lose.
+    // Stock to return is left to the caller by collecting the order id in deferredRestocks.
+    private void transitionLocked(Long orderId, OrderStateMachine.Action action, List<Long> deferredRestocks) {
+        Order order = orderRepository.findByIdForUpdate(orderId)
+            .orElseThrow(() -> new EntityNotFoundException("Order not found with id: " + orderId));
+        OrderState state = new OrderState(order.getId(), order.getOrderNumber(), order.getCreatedAt(),
+            order.getStatus(), order.getPaymentStatus(), order.getVersion());
+        if (!apply(action, OrderStateMachine.rule(action), state, deferredRestocks)) {
+            throw new OptimisticLockingFailureException("Order " + state.orderNumber() + " changed while locked");
+        }
+    }
+
+    // Move the order from the state read, running the rule's side effects; false when the
+    // compare-and-set found the version changed since
+    private boolean apply(OrderStateMachine.Action action, OrderStateMachine.Rule rule, OrderState state,
+                          List<Long> deferredRestocks) {
+        if (rule.isSatisfiedBy(state.status(), state.paymentStatus())) {
+            return true;
+        }
+        if (!rule.allows(state.status(), state.paymentStatus())) {
+            throw new IllegalStateException(String.format("Cannot %s order %s in state %s/%s",
+                action, state.orderNumber(), state.status(), state.paymentStatus()));
+        }
+
+        Order.OrderStatus status = rule.targetStatus(state.status());
+        Order.PaymentStatus paymentStatus = rule.targetPaymentStatus(state.paymentStatus());
+
+        if (orderRepository.compareAndSetState(state.id(), state.version(), status, paymentStatus) != 1) {
+            return false;
+        }
+        if (rule.sideEffects().contains(OrderStateMachine.SideEffect.RESTORE_STOCK)) {
+            if (deferredRestocks != null) {
+                deferredRestocks.add(state.id());
+            } else {
+                restoreStock(List.of(state.id()));
+            }
+        }
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(
+            state.id(),
+            state.orderNumber(),
+            state.createdAt(),
+            state.status(),
+            status,
+            state.paymentStatus(),
+            paymentStatus
+        ));
+        return true;
+    }
+
+    private void restoreStock(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> quantitiesByProduct = new TreeMap<>();
+        for (Object[] row : orderRepository.sumQuantitiesByProduct(orderIds)) {
+            quantitiesByProduct.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+        productService.increaseStockBatch(quantitiesByProduct);
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockingFailureException("Interrupted while retrying order transition", e);
         }
-        
-        // Add more status transition validations as needed
     }
 
     // Data classes for request/response
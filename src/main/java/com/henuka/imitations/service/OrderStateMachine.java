@@ -0,0 +1,135 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.Order.OrderStatus;
+import com.henuka.imitations.model.Order.PaymentStatus;
+import com.henuka.imitations.model.PaymentOrder;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transition table for orders and payment orders.
+ *
+ * Every change to an order's status goes through one of the {@link Action}s below; each names
+ * the states it may start from, the state it leads to and the side effects the caller must run
+ * once the change has been written.
+ */
+final class OrderStateMachine {
+
+    enum Action {
+        CONFIRM, SHIP, DELIVER, CANCEL, PAYMENT_CAPTURED, PAYMENT_FAILED, REFUND
+    }
+
+    enum SideEffect {
+        RESTORE_STOCK
+    }
+
+    /**
+     * A move from any of {@code fromStatuses}/{@code fromPaymentStatuses} to the target states.
+     * A null target leaves that part of the state unchanged.
+     */
+    record Rule(Set<OrderStatus> fromStatuses,
+                Set<PaymentStatus> fromPaymentStatuses,
+                OrderStatus status,
+                PaymentStatus paymentStatus,
+                Set<SideEffect> sideEffects) {
+
+        boolean allows(OrderStatus currentStatus, PaymentStatus currentPaymentStatus) {
+            return fromStatuses.contains(currentStatus) && fromPaymentStatuses.contains(currentPaymentStatus);
+        }
+
+        // True when the order is already where this action would take it, i.e. a repeated call
+        boolean isSatisfiedBy(OrderStatus currentStatus, PaymentStatus currentPaymentStatus) {
+            return targetStatus(currentStatus) == currentStatus
+                && targetPaymentStatus(currentPaymentStatus) == currentPaymentStatus;
+        }
+
+        OrderStatus targetStatus(OrderStatus currentStatus) {
+            return status != null ? status : currentStatus;
+        }
+
+        PaymentStatus targetPaymentStatus(PaymentStatus currentPaymentStatus) {
+            return paymentStatus != null ? paymentStatus : currentPaymentStatus;
+        }
+    }
+
+    private static final Set<PaymentStatus> ANY_PAYMENT = EnumSet.allOf(PaymentStatus.class);
+
+    private static final Map<Action, Rule> RULES = new EnumMap<>(Action.class);
+
+    private static final Map<PaymentOrder.PaymentStatus, Set<PaymentOrder.PaymentStatus>> PAYMENT_ORDER_MOVES =
+        new EnumMap<>(PaymentOrder.PaymentStatus.class);
+
+    static {
+        RULES.put(Action.CONFIRM, new Rule(
+            EnumSet.of(OrderStatus.PENDING), ANY_PAYMENT,
+            OrderStatus.CONFIRMED, null, EnumSet.noneOf(SideEffect.class)));
+        RULES.put(Action.SHIP, new Rule(
+            EnumSet.of(OrderStatus.CONFIRMED), ANY_PAYMENT,
+            OrderStatus.SHIPPED, null, EnumSet.noneOf(SideEffect.class)));
+        RULES.put(Action.DELIVER, new Rule(
+            EnumSet.of(OrderStatus.SHIPPED), ANY_PAYMENT,
+            OrderStatus.DELIVERED, null, EnumSet.noneOf(SideEffect.class)));
+        // A paid order is cancelled by refunding it, so the money goes back along with the stock
+        RULES.put(Action.CANCEL, new Rule(
+            EnumSet.of(OrderStatus.PENDING, OrderStatus.CONFIRMED), EnumSet.of(PaymentStatus.PENDING, PaymentStatus.FAILED),
+            OrderStatus.CANCELLED, null, EnumSet.of(SideEffect.RESTORE_STOCK)));
+        RULES.put(Action.PAYMENT_CAPTURED, new Rule(
+            EnumSet.of(OrderStatus.PENDING), EnumSet.of(PaymentStatus.PENDING, PaymentStatus.FAILED),
+            OrderStatus.CONFIRMED, PaymentStatus.PAID, EnumSet.noneOf(SideEffect.class)));
+        RULES.put(Action.PAYMENT_FAILED, new Rule(
+            EnumSet.of(OrderStatus.PENDING), EnumSet.of(PaymentStatus.PENDING),
+            OrderStatus.PENDING, PaymentStatus.FAILED, EnumSet.noneOf(SideEffect.class)));
+        RULES.put(Action.REFUND, new Rule(
+            EnumSet.of(OrderStatus.CONFIRMED, OrderStatus.SHIPPED, OrderStatus.DELIVERED),
+            EnumSet.of(PaymentStatus.PAID),
+            OrderStatus.CANCELLED, PaymentStatus.REFUNDED, EnumSet.of(SideEffect.RESTORE_STOCK)));
+
+        PAYMENT_ORDER_MOVES.put(PaymentOrder.PaymentStatus.PENDING,
+            EnumSet.of(PaymentOrder.PaymentStatus.SUCCESS, PaymentOrder.PaymentStatus.FAILED));
+        PAYMENT_ORDER_MOVES.put(PaymentOrder.PaymentStatus.FAILED,
+            EnumSet.of(PaymentOrder.PaymentStatus.SUCCESS, PaymentOrder.PaymentStatus.FAILED));
+        PAYMENT_ORDER_MOVES.put(PaymentOrder.PaymentStatus.SUCCESS,
+            EnumSet.of(PaymentOrder.PaymentStatus.REFUNDED));
+        PAYMENT_ORDER_MOVES.put(PaymentOrder.PaymentStatus.REFUNDED,
+            EnumSet.noneOf(PaymentOrder.PaymentStatus.class));
+    }
+
+    private OrderStateMachine() {
+    }
+
+    static Rule rule(Action action) {
+        return RULES.get(action);
+    }
+
+    /**
+     * Action that moves an order to the given status when an admin sets it directly.
+     */
+    static Action forStatus(OrderStatus status) {
+        return switch (status) {
+            case CONFIRMED -> Action.CONFIRM;
+            case SHIPPED -> Action.SHIP;
+            case DELIVERED -> Action.DELIVER;
+            case CANCELLED -> Action.CANCEL;
+            case PENDING -> throw new IllegalStateException("Orders cannot be moved back to PENDING");
+        };
+    }
+
+    /**
+     * Action that moves an order to the given payment status.
+     */
+    static Action forPaymentStatus(PaymentStatus paymentStatus) {
+        return switch (paymentStatus) {
+            case PAID -> Action.PAYMENT_CAPTURED;
+            case FAILED -> Action.PAYMENT_FAILED;
+            case REFUNDED -> Action.REFUND;
+            case PENDING -> throw new IllegalStateException("Payments cannot be moved back to PENDING");
+        };
+    }
+
+    static boolean canMove(PaymentOrder.PaymentStatus from, PaymentOrder.PaymentStatus to) {
+        return PAYMENT_ORDER_MOVES.get(from).contains(to);
+    }
+}
@@ -0,0 +1,141 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.event.OrderStatusChangedEvent;
+import com.henuka.imitations.model.Order;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the order tracking page and its live status feed.
+ *
+ * Tracked orders are kept in a small in-process LRU cache and reloaded only after a status
+ * change has been committed, so repeated refreshes of the tracking page do not hit the
+ * database. The last known status of each order is cached alongside and pushed to
+ * {@code /topic/orders/{orderNumber}} by the WebSocket configuration.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderTrackingService {
+
+    private final OrderService orderService;
+
+    @Value("${app.orders.tracking.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${app.orders.tracking.cache-ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    private Map<String, CachedOrder> orders;
+    private Map<String, TrackingUpdate> statuses;
+
+    @PostConstruct
+    void initCaches() {
+        orders = lruMap(cacheSize);
+        statuses = lruMap(cacheSize);
+    }
+
+    /**
+     * Prefix of the per-order tracking topics; only the server publishes below it.
+     */
+    public static final String TOPIC_PREFIX = "orders/";
+
+    /**
+     * STOMP topic (below /topic) carrying status updates for one order.
+     */
+    public static String topicFor(String orderNumber) {
+        return TOPIC_PREFIX + orderNumber;
+    }
+
+    /**
+     * Order for the tracking page, read from the database at most once per status change.
+     */
+    public Order getTrackedOrder(String orderNumber) {
+        CachedOrder cached = orders.get(orderNumber);
+        TrackingUpdate lastUpdate = statuses.get(orderNumber);
+
+        if (cached != null && !cached.isStale(lastUpdate, Duration.ofMinutes(cacheTtlMinutes))) {
+            return cached.order();
+        }
+
+        // Taken before the read so a change committed while loading marks the entry stale
+        Instant loadedAt = Instant.now();
+        Order order = orderService.getOrderByNumber(orderNumber);
+        orders.put(orderNumber, new CachedOrder(order, loadedAt));
+        statuses.putIfAbsent(orderNumber, TrackingUpdate.of(order, loadedAt));
+        return order;
+    }
+
+    /**
+     * Last known status of an order; used by clients to catch up after (re)subscribing.
+     */
+    public TrackingUpdate getLastKnownStatus(String orderNumber) {
+        TrackingUpdate update = statuses.get(orderNumber);
+        if (update != null) {
+            return update;
+        }
+        return TrackingUpdate.of(getTrackedOrder(orderNumber), Instant.now());
+    }
+
+    /**
+     * Record a committed status change and drop the cached page copy. The returned update is
+     * republished as an application event, which the WebSocket configuration pushes to clients
+     * once the cache already reflects it.
+     */
+    @TransactionalEventListener
+    public TrackingUpdate onOrderStatusChanged(OrderStatusChangedEvent event) {
+        TrackingUpdate update = TrackingUpdate.of(event, Instant.now());
+        statuses.put(event.orderNumber(), update);
+        orders.remove(event.orderNumber());
+        return update;
+    }
+
+    private static <V> Map<String, V> lruMap(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private record CachedOrder(Order order, Instant loadedAt) {
+
+        boolean isStale(TrackingUpdate lastUpdate, Duration ttl) {
+            if (lastUpdate != null && lastUpdate.changedAt().isAfter(loadedAt)) {
+                return true;
+            }
+            // Changes made on other nodes are not seen here; the TTL bounds how long that lasts
+            return loadedAt.plus(ttl).isBefore(Instant.now());
+        }
+    }
+
+    public record TrackingUpdate(
+        String orderNumber,
+        Order.OrderStatus status,
+        Order.PaymentStatus paymentStatus,
+        boolean cancellable,
+        Instant changedAt
+    ) {
+
+        static TrackingUpdate of(Order order, Instant changedAt) {
+            return new TrackingUpdate(order.getOrderNumber(), order.getStatus(), order.getPaymentStatus(),
+                order.canBeCancelled(), changedAt);
+        }
+
+        static TrackingUpdate of(OrderStatusChangedEvent event, Instant changedAt) {
+            boolean cancellable = event.status() == Order.OrderStatus.PENDING
+                || event.status() == Order.OrderStatus.CONFIRMED;
+            return new TrackingUpdate(event.orderNumber(), event.status(), event.paymentStatus(),
+                cancellable, changedAt);
+        }
+    }
+}
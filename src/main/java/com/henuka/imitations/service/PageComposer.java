@@ -0,0 +1,192 @@
+package com.henuka.imitations.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Loads the independent pieces of a page in parallel.
+ *
+ * A page registers each of its widgets as required or optional; each starts on the page
+ * composition executor as soon as it is registered. {@link Composition#await} then waits for every
+ * required widget, and for optional widgets only until the page's deadline: one that is still
+ * running, has failed, or could not be started because the executor is full gives its fallback
+ * instead. Required widgets that cannot be started run on the caller's thread, and their failures
+ * propagate unchanged, so the page responds as it would have loading them in sequence.
+ *
+ * Every widget records {@code page.widget} with its page, name and outcome, so a slow dependency
+ * shows up by name in the page's latency.
+ */
+@Service
+public class PageComposer {
+
+    private final Executor pageCompositionExecutor;
+    private final MeterRegistry meterRegistry;
+
+    private static final Logger log = LoggerFactory.getLogger(PageComposer.class);
+
+    public PageComposer(@Qualifier("pageCompositionExecutor") Executor pageCompositionExecutor,
+                        MeterRegistry meterRegistry) {
+        this.pageCompositionExecutor = pageCompositionExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Start composing a page; optional widgets get until {@code deadline} after this call.
+     */
+    public Composition compose(String page, Duration deadline) {
+        return new Composition(page, deadline);
+    }
+
+    public final class Composition {
+        private final String page;
+        private final long startTime = System.nanoTime();
+        private final long deadlineNanos;
+        private final List<Widget<?>> widgets = new ArrayList<>();
+
+        private Composition(String page, Duration deadline) {
+            this.page = page;
+            this.deadlineNanos = startTime + deadline.toNanos();
+        }
+
+        /**
+         * A widget the page cannot render without.
+         */
+        public <T> Widget<T> required(String name, Supplier<T> loader) {
+            return start(new Widget<>(name, true, null), loader);
+        }
+
+        /**
+         * A widget the page can render with {@code fallback} in its place.
+         */
+        public <T> Widget<T> optional(String name, Supplier<T> loader, T fallback) {
+            return start(new Widget<>(name, false, fallback), loader);
+        }
+
+        /**
+         * Wait for the required widgets and, until the deadline, the optional ones.
+         */
+        public void await() {
+            try {
+                for (Widget<?> widget : widgets) {
+                    if (widget.required) {
+                        widget.awaitRequired();
+                    }
+                }
+                for (Widget<?> widget : widgets) {
+                    if (!widget.required) {
+                        widget.awaitOptional(deadlineNanos - System.nanoTime());
+                    }
+                }
+            } finally {
+                meterRegistry.timer("page.compose", "page", page)
+                    .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private <T> Widget<T> start(Widget<T> widget, Supplier<T> loader) {
+            widgets.add(widget);
+            try {
+                widget.future = CompletableFuture.supplyAsync(loader, pageCompositionExecutor);
+            } catch (RejectedExecutionException e) {
+                if (widget.required) {
+                    widget.future = runHere(loader);
+                } else {
+                    widget.future = CompletableFuture.failedFuture(e);
+                }
+            }
+            return widget;
+        }
+
+        private <T> CompletableFuture<T> runHere(Supplier<T> loader) {
+            try {
+                return CompletableFuture.completedFuture(loader.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private void record(String widget, String outcome) {
+            meterRegistry.timer("page.widget", "page", page, "widget", widget, "outcome", outcome)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+
+        public final class Widget<T> {
+            private final String name;
+            private final boolean required;
+            private final T fallback;
+            private CompletableFuture<T> future;
+            private T value;
+
+            private Widget(String name, boolean required, T fallback) {
+                this.name = name;
+                this.required = required;
+                this.fallback = fallback;
+            }
+
+            /**
+             * The loaded value, or the fallback; only after {@link Composition#await}.
+             */
+            public T get() {
+                return value;
+            }
+
+            private void awaitRequired() {
+                try {
+                    value = future.join();
+                    record(name, "ok");
+                } catch (CompletionException e) {
+                    record(name, "failed");
+                    if (e.getCause() instanceof RuntimeException cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+            }
+
+            private void awaitOptional(long remainingNanos) {
+                try {
+                    // Past the deadline this still picks up a widget that has already finished
+                    value = future.get(Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+                    record(name, "ok");
+                } catch (TimeoutException e) {
+                    value = fallback(null);
+                } catch (ExecutionException e) {
+                    value = fallback(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    value = fallback(e);
+                }
+            }
+
+            // The load keeps running in the background; its result is discarded
+            private T fallback(Throwable failure) {
+                future.cancel(false);
+                if (failure instanceof RejectedExecutionException) {
+                    record(name, "rejected");
+                } else if (failure != null) {
+                    log.warn("Widget {} of page {} failed; using fallback", name, page, failure);
+                    record(name, "failed");
+                } else {
+                    log.debug("Widget {} of page {} missed the deadline; using fallback", name, page);
+                    record(name, "timeout");
+                }
+                return fallback;
+            }
+        }
+    }
+}
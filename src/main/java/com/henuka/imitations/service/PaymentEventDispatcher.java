@@ -0,0 +1,302 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.annotation.WorkloadClass;
+import com.henuka.imitations.config.WorkloadExecutors;
+import com.henuka.imitations.event.PaymentEvent;
+import com.henuka.imitations.repository.PaymentEventRepository;
+import com.henuka.imitations.repository.ScheduledJobLockRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers the payment event log to every {@link PaymentEventHandler}.
+ *
+ * Each handler runs on its own thread from its own checkpoint, so a slow or failing handler
+ * (email, say) never holds up another (order status). A run is triggered right after a payment
+ * transaction commits and by a periodic poll, which also drives retries. Every node runs the
+ * lanes, but a run first leases its handler in the scheduled job lock table, so each handler
+ * drains on one node at a time.
+ *
+ * Ids are assigned at insert but become visible at commit, so a lower id can appear after a
+ * higher one. A handler therefore stops at a gap in the ids until it has seen the gap for the
+ * settle time, then moves past it and records the missing ids in payment_event_gaps. Each run
+ * first delivers any of those that have committed since, so an event whose transaction stayed
+ * open longer than the settle time arrives late rather than never. Gaps still empty after the
+ * retention are taken to be rolled-back inserts.
+ */
+@Service
+public class PaymentEventDispatcher {
+
+    private final List<PaymentEventHandler> handlers;
+    private final PaymentEventRepository paymentEventRepository;
+    private final ScheduledJobLockRepository lockRepository;
+    private final SchedulerNode schedulerNode;
+    private final MeterRegistry meterRegistry;
+    private final WorkloadExecutors workloads;
+
+    @Value("${app.payment.events.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.payment.events.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.payment.events.retry-backoff-ms:1000}")
+    private long retryBackoffMillis;
+
+    @Value("${app.payment.events.settle-ms:5000}")
+    private long settleMillis;
+
+    @Value("${app.payment.events.gap-retention-hours:24}")
+    private long gapRetentionHours;
+
+    // Lease on a handler's lane, renewed after every batch
+    @Value("${app.payment.events.lease-seconds:60}")
+    private long leaseSeconds;
+
+    private final List<HandlerLane> lanes = new ArrayList<>();
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentEventDispatcher.class);
+
+    public PaymentEventDispatcher(List<PaymentEventHandler> handlers,
+                                  PaymentEventRepository paymentEventRepository,
+                                  ScheduledJobLockRepository lockRepository,
+                                  SchedulerNode schedulerNode,
+                                  MeterRegistry meterRegistry,
+                                  WorkloadExecutors workloads) {
+        this.handlers = handlers;
+        this.paymentEventRepository = paymentEventRepository;
+        this.lockRepository = lockRepository;
+        this.schedulerNode = schedulerNode;
+        this.meterRegistry = meterRegistry;
+        this.workloads = workloads;
+    }
+
+    @PostConstruct
+    void start() {
+        for (PaymentEventHandler handler : handlers) {
+            paymentEventRepository.ensureCheckpoint(handler.name());
+            lanes.add(new HandlerLane(handler));
+        }
+        log.info("Payment event dispatcher started for handlers {}",
+            handlers.stream().map(PaymentEventHandler::name).toList());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        for (HandlerLane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (HandlerLane lane : lanes) {
+            lane.executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Wake every handler; runs already scheduled absorb the request.
+     */
+    public void requestDispatch() {
+        lanes.forEach(HandlerLane::request);
+    }
+
+    @TransactionalEventListener
+    public void onPaymentEvent(PaymentEvent event) {
+        requestDispatch();
+    }
+
+    private final class HandlerLane {
+        private final PaymentEventHandler handler;
+        private final String lockName;
+        private final ExecutorService executor;
+        private final AtomicBoolean requested = new AtomicBoolean();
+
+        // Retry state for the event at the head of this handler's log
+        private long failingEventId;
+        private int attempts;
+        private long nextAttemptAt;
+
+        // The checkpoint at which the handler last found the next id missing, and since when
+        private long gapAfter = -1;
+        private long gapSeenAt;
+
+        HandlerLane(PaymentEventHandler handler) {
+            this.handler = handler;
+            this.lockName = "payment-events:" + handler.name();
+            // Requests coalesce, so at most one run waits behind the current one
+            this.executor = workloads.lane("paymentEventLane-" + handler.name(), WorkloadClass.BACKGROUND,
+                Integer.MAX_VALUE, "PaymentEvents-" + handler.name());
+        }
+
+        void request() {
+            if (requested.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    requested.set(false);
+                    try {
+                        runLeased();
+                    } catch (Exception e) {
+                        log.error("Payment event handler {} stopped on an unexpected error", handler.name(), e);
+                    }
+                });
+            }
+        }
+
+        // Drain under the lane's lease; another node holding it is draining this handler already
+        private void runLeased() {
+            if (!schedulerNode.clusterLocks()) {
+                drain();
+                return;
+            }
+            LocalDateTime startedAt = LocalDateTime.now();
+            if (!lockRepository.tryLock(lockName, schedulerNode.id(), startedAt, startedAt.plusSeconds(leaseSeconds))) {
+                log.debug("Payment event handler {} is draining on another node", handler.name());
+                return;
+            }
+            long startTime = System.nanoTime();
+            String outcome = "success";
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                outcome = "failed";
+                throw e;
+            } finally {
+                LocalDateTime finishedAt = LocalDateTime.now();
+                lockRepository.release(lockName, schedulerNode.id(), finishedAt, finishedAt,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), outcome);
+            }
+        }
+
+        // Extend the lease before the next batch; false if it ran out and another node took the lane
+        private boolean holdsLease() {
+            if (!schedulerNode.clusterLocks()
+                    || lockRepository.renew(lockName, schedulerNode.id(), LocalDateTime.now().plusSeconds(leaseSeconds))) {
+                return true;
+            }
+            log.warn("Lost the lease on payment event handler {}; stopping here", handler.name());
+            return false;
+        }
+
+        private void drain() {
+            if (!deliverLate()) {
+                return;
+            }
+
+            boolean more = true;
+            while (more && holdsLease()) {
+                long checkpoint = paymentEventRepository.findCheckpoint(handler.name());
+                List<PaymentEvent> events = paymentEventRepository.findAfter(checkpoint, batchSize);
+
+                long done = checkpoint;
+                more = events.size() == batchSize;
+                for (PaymentEvent event : events) {
+                    if (event.id() != done + 1) {
+                        if (!gapSettled(done)) {
+                            // An earlier id may still commit; pick up from here next time
+                            more = false;
+                            break;
+                        }
+                        paymentEventRepository.insertGaps(handler.name(), done + 1, event.id() - 1);
+                    }
+                    if (!deliver(event)) {
+                        more = false;
+                        break;
+                    }
+                    done = event.id();
+                }
+
+                if (done != checkpoint && !paymentEventRepository.advanceCheckpoint(handler.name(), checkpoint, done)) {
+                    // Another node moved the checkpoint; let it carry on
+                    log.debug("Checkpoint for {} moved concurrently, yielding", handler.name());
+                    return;
+                }
+            }
+        }
+
+        // True when the handler is finished with the event, either handled or dead-lettered
+        private boolean deliver(PaymentEvent event) {
+            if (event.id() == failingEventId && System.currentTimeMillis() < nextAttemptAt) {
+                return false;
+            }
+
+            long startTime = System.nanoTime();
+            try {
+                handler.handle(event);
+                record(event, "success", startTime);
+                failingEventId = 0;
+                attempts = 0;
+                return true;
+            } catch (Exception e) {
+                if (event.id() != failingEventId) {
+                    failingEventId = event.id();
+                    attempts = 0;
+                }
+                attempts++;
+
+                if (attempts >= maxAttempts) {
+                    log.error("Payment event {} dead-lettered for {} after {} attempt(s)", event.id(), handler.name(), attempts, e);
+                    paymentEventRepository.insertDeadLetter(handler.name(), event.id(), attempts, truncate(e.getMessage()));
+                    record(event, "dead_letter", startTime);
+                    failingEventId = 0;
+                    attempts = 0;
+                    return true;
+                }
+
+                long backoff = retryBackoffMillis << Math.min(attempts - 1, 10);
+                nextAttemptAt = System.currentTimeMillis() + backoff;
+                log.warn("Payment event {} failed in {} (attempt {}), retrying in {}ms: {}",
+                    event.id(), handler.name(), attempts, backoff, e.getMessage());
+                record(event, "retry", startTime);
+                return false;
+            }
+        }
+
+        // Deliver skipped events that have committed since; false while one of them is being retried
+        private boolean deliverLate() {
+            paymentEventRepository.deleteGapsSkippedBefore(handler.name(),
+                LocalDateTime.now().minus(Duration.ofHours(gapRetentionHours)));
+            for (PaymentEvent event : paymentEventRepository.findLateEvents(handler.name(), batchSize)) {
+                if (!deliver(event)) {
+                    return false;
+                }
+                paymentEventRepository.deleteGap(handler.name(), event.id());
+                log.info("Payment event {} committed after {} moved past it; delivered late", event.id(), handler.name());
+            }
+            return true;
+        }
+
+        // True once the ids after the checkpoint have been missing for the settle time
+        private boolean gapSettled(long checkpoint) {
+            long now = System.currentTimeMillis();
+            if (gapAfter != checkpoint) {
+                gapAfter = checkpoint;
+                gapSeenAt = now;
+                return false;
+            }
+            return now - gapSeenAt >= settleMillis;
+        }
+
+        private void record(PaymentEvent event, String outcome, long startTime) {
+            meterRegistry.timer("payment.events.dispatch",
+                "handler", handler.name(),
+                "type", event.type().name(),
+                "outcome", outcome)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+
+        private String truncate(String value) {
+            return value != null && value.length() > 500 ? value.substring(0, 500) : value;
+        }
+    }
+}
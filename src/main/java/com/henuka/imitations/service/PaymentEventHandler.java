@@ -0,0 +1,135 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.event.PaymentEvent;
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.PaymentOrder;
+
+/**
+ * Consumer of the payment event log. Each handler has its own checkpoint and sees every event
+ * at least once, in id order; a handler that throws is retried with backoff before the event
+ * is dead-lettered for it alone. Handlers must therefore tolerate repeats.
+ */
+public interface PaymentEventHandler {
+
+    /**
+     * Stable name; keys the handler's checkpoint, so renaming it replays the log.
+     */
+    String name();
+
+    void handle(PaymentEvent event);
+}
+
+/**
+ * Moves the shop order to match its payment
+ */
+@org.springframework.stereotype.Component
+class OrderStatusPaymentEventHandler implements PaymentEventHandler {
+
+    private final OrderService orderService;
+
+    public OrderStatusPaymentEventHandler(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    @Override
+    public String name() {
+        return "order-status";
+    }
+
+    @Override
+    public void handle(PaymentEvent event) {
+        // Each transition returns early when the order is already in its target state
+        switch (event.type()) {
+            case PAYMENT_CAPTURED -> orderService.confirmOrder(event.orderId());
+            case PAYMENT_FAILED -> orderService.failOrder(event.orderId());
+            case PAYMENT_REFUNDED -> orderService.refundOrder(event.orderId());
+        }
+    }
+}
+
+/**
+ * Sends the customer's payment emails, at most once per event even when the event is delivered again
+ */
+@org.springframework.stereotype.Component
+class EmailPaymentEventHandler implements PaymentEventHandler {
+
+    private final OrderService orderService;
+    private final com.henuka.imitations.repository.PaymentOrderRepository paymentOrderRepository;
+    private final EmailService emailService;
+
+    public EmailPaymentEventHandler(OrderService orderService,
+                                    com.henuka.imitations.repository.PaymentOrderRepository paymentOrderRepository,
+                                    EmailService emailService) {
+        this.orderService = orderService;
+        this.paymentOrderRepository = paymentOrderRepository;
+        this.emailService = emailService;
+    }
+
+    @Override
+    public String name() {
+        return "payment-email";
+    }
+
+    @Override
+    public void handle(PaymentEvent event) {
+        Order order = orderService.getOrderByNumber(event.orderId());
+        PaymentOrder paymentOrder = paymentOrderRepository.findByOrderId(event.orderId())
+            .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Payment order not found: " + event.orderId()));
+
+        // Keyed on the event and this handler, so a redelivered event finds its email already queued
+        String dedupKey = name() + ":" + event.id();
+        switch (event.type()) {
+            case PAYMENT_CAPTURED -> emailService.sendPaymentConfirmationEmail(order, paymentOrder, dedupKey);
+            case PAYMENT_FAILED -> emailService.sendPaymentFailureEmail(order, paymentOrder, dedupKey);
+            case PAYMENT_REFUNDED -> emailService.sendRefundConfirmationEmail(order, paymentOrder, dedupKey);
+        }
+    }
+}
+
+/**
+ * Writes an audit line per payment event
+ */
+@org.springframework.stereotype.Component
+class AuditPaymentEventHandler implements PaymentEventHandler {
+
+    private static final org.slf4j.Logger audit = org.slf4j.LoggerFactory.getLogger("payment.audit");
+
+    @Override
+    public String name() {
+        return "payment-audit";
+    }
+
+    @Override
+    public void handle(PaymentEvent event) {
+        audit.info("event={} type={} order={} paymentOrder={} payment={} amount={} detail={} at={}",
+            event.id(), event.type(), event.orderId(), event.paymentOrderId(), event.paymentId(),
+            event.amount(), event.detail(), event.createdAt());
+    }
+}
+
+/**
+ * Counts payment events and amounts
+ */
+@org.springframework.stereotype.Component
+class MetricsPaymentEventHandler implements PaymentEventHandler {
+
+    private final io.micrometer.core.instrument.MeterRegistry registry;
+
+    public MetricsPaymentEventHandler(io.micrometer.core.instrument.MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public String name() {
+        return "payment-metrics";
+    }
+
+    @Override
+    public void handle(PaymentEvent event) {
+        registry.counter("payment.events", "type", event.type().name()).increment();
+        if (event.amount() != null) {
+            registry.summary("payment.events.amount", "type", event.type().name())
+                .record(event.amount().doubleValue());
+        }
+    }
+}
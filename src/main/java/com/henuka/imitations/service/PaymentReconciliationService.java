@@ -0,0 +1,358 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.model.PaymentReconciliationRun;
+import com.henuka.imitations.repository.PaymentOrderRepository;
+import com.henuka.imitations.repository.PaymentReconciliationRunRepository;
+import com.henuka.imitations.repository.ReconciliationMismatchRepository;
+import com.henuka.imitations.repository.ReconciliationMismatchRepository.Mismatch;
+import com.henuka.imitations.service.RazorpayGatewayClient.GatewayPayment;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Compares the payments Razorpay holds for a time window with payment_orders and fixes what it can.
+ *
+ * Gateway pages are fetched in waves of {@code concurrency} parallel requests; each wave is joined
+ * against payment_orders with one IN query per chunk, and corrections for the wave are applied in
+ * batches, one transaction per batch. Only one wave is held in memory, so a window of any size
+ * runs in bounded heap. Every disagreement is written to payment_reconciliation_mismatches.
+ */
+@Service
+public class PaymentReconciliationService {
+
+    // Razorpay's maximum page size for GET /payments
+    private static final int PAGE_SIZE = 100;
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+    private static final int MAX_DETAIL_LENGTH = 500;
+
+    private final RazorpayGatewayClient gatewayClient;
+    private final PaymentOrderRepository paymentOrderRepository;
+    private final PaymentReconciliationRunRepository runRepository;
+    private final ReconciliationMismatchRepository mismatchRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Executor reconciliationExecutor;
+    private final Executor batchExecutor;
+
+    @Value("${app.payment.reconciliation.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.payment.reconciliation.correction-batch-size:50}")
+    private int correctionBatchSize;
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentReconciliationService.class);
+
+    public PaymentReconciliationService(RazorpayGatewayClient gatewayClient,
+                                        PaymentOrderRepository paymentOrderRepository,
+                                        PaymentReconciliationRunRepository runRepository,
+                                        ReconciliationMismatchRepository mismatchRepository,
+                                        PaymentService paymentService,
+                                        TransactionTemplate transactionTemplate,
+                                        MeterRegistry meterRegistry,
+                                        @Qualifier("reconciliationExecutor") Executor reconciliationExecutor,
+                                        @Qualifier("batchExecutor") Executor batchExecutor) {
+        this.gatewayClient = gatewayClient;
+        this.paymentOrderRepository = paymentOrderRepository;
+        this.runRepository = runRepository;
+        this.mismatchRepository = mismatchRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.reconciliationExecutor = reconciliationExecutor;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Reconcile gateway payments created in [from, to) and wait for the result.
+     */
+    public PaymentReconciliationRun reconcile(LocalDateTime from, LocalDateTime to) {
+        return execute(createRun(from, to));
+    }
+
+    /**
+     * Start reconciling [from, to) in the background; the returned run is updated as it finishes.
+     */
+    public PaymentReconciliationRun startReconciliation(LocalDateTime from, LocalDateTime to) {
+        PaymentReconciliationRun run = createRun(from, to);
+        CompletableFuture.runAsync(() -> execute(run), batchExecutor);
+        return run;
+    }
+
+    public PaymentReconciliationRun getRun(Long runId) {
+        return runRepository.findById(runId)
+            .orElseThrow(() -> new EntityNotFoundException("Reconciliation run not found: " + runId));
+    }
+
+    public Page<PaymentReconciliationRun> getRecentRuns(int limit) {
+        return runRepository.findAllByOrderByIdDesc(PageRequest.of(0, limit));
+    }
+
+    public List<Mismatch> getMismatches(Long runId, int limit) {
+        return mismatchRepository.findByRunId(runId, limit);
+    }
+
+    private PaymentReconciliationRun createRun(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Reconciliation window start must be before its end");
+        }
+        PaymentReconciliationRun run = new PaymentReconciliationRun();
+        run.setWindowStart(from);
+        run.setWindowEnd(to);
+        return runRepository.save(run);
+    }
+
+    private PaymentReconciliationRun execute(PaymentReconciliationRun run) {
+        long startTime = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        RunTotals totals = new RunTotals();
+
+        try {
+            int nextSkip = 0;
+            boolean exhausted = false;
+            while (!exhausted) {
+                List<CompletableFuture<List<GatewayPayment>>> pages = new ArrayList<>(concurrency);
+                for (int i = 0; i < concurrency; i++) {
+                    int skip = nextSkip + i * PAGE_SIZE;
+                    pages.add(CompletableFuture.supplyAsync(() -> gatewayClient.listPayments(
+                        run.getWindowStart().atZone(zone).toInstant(),
+                        run.getWindowEnd().atZone(zone).toInstant(),
+                        skip, PAGE_SIZE), reconciliationExecutor));
+                }
+                nextSkip += concurrency * PAGE_SIZE;
+
+                List<GatewayPayment> wave = new ArrayList<>(concurrency * PAGE_SIZE);
+                for (CompletableFuture<List<GatewayPayment>> page : pages) {
+                    List<GatewayPayment> payments = page.join();
+                    wave.addAll(payments);
+                    exhausted |= payments.size() < PAGE_SIZE;
+                }
+                reconcileWave(run.getId(), wave, totals);
+            }
+
+            run.setStatus(PaymentReconciliationRun.Status.COMPLETED);
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Payment reconciliation run {} failed", run.getId(), cause);
+            run.setStatus(PaymentReconciliationRun.Status.FAILED);
+            run.setError(truncate(cause.getMessage()));
+        }
+
+        run.setGatewayPayments(totals.payments);
+        run.setMatched(totals.matched);
+        run.setCorrected(totals.corrected);
+        run.setMismatches(totals.mismatches);
+        run.setFinishedAt(LocalDateTime.now());
+        PaymentReconciliationRun saved = runRepository.save(run);
+
+        long duration = System.currentTimeMillis() - startTime;
+        meterRegistry.timer("payment.reconciliation.duration").record(Duration.ofMillis(duration));
+        meterRegistry.counter("payment.reconciliation.payments").increment(totals.payments);
+        meterRegistry.counter("payment.reconciliation.corrections").increment(totals.corrected);
+        log.info("Payment reconciliation run {} for [{}, {}): {} payment(s), {} matched, {} corrected, {} mismatch(es) in {}ms",
+            saved.getId(), saved.getWindowStart(), saved.getWindowEnd(),
+            totals.payments, totals.matched, totals.corrected, totals.mismatches, duration);
+        return saved;
+    }
+
+    private void reconcileWave(Long runId, List<GatewayPayment> wave, RunTotals totals) {
+        if (wave.isEmpty()) {
+            return;
+        }
+        totals.payments += wave.size();
+        Map<String, PaymentOrder> local = lookup(wave);
+
+        List<Mismatch> reported = new ArrayList<>();
+        List<Correction> corrections = new ArrayList<>();
+        for (GatewayPayment payment : wave) {
+            PaymentOrder paymentOrder = payment.orderId() != null ? local.get(payment.orderId()) : null;
+            Verdict verdict = compare(payment, paymentOrder);
+            if (verdict == null) {
+                totals.matched++;
+            } else if (verdict.correctable()) {
+                corrections.add(new Correction(payment, paymentOrder, verdict.kind()));
+            } else {
+                reported.add(mismatch(verdict.kind(), payment, paymentOrder, false, verdict.detail()));
+            }
+        }
+
+        for (int i = 0; i < corrections.size(); i += correctionBatchSize) {
+            List<Correction> batch = corrections.subList(i, Math.min(i + correctionBatchSize, corrections.size()));
+            reported.addAll(applyCorrections(batch, totals));
+        }
+
+        totals.mismatches += reported.size();
+        mismatchRepository.insertAll(runId, reported);
+    }
+
+    // Payment orders for the wave's Razorpay order ids, one query per chunk
+    private Map<String, PaymentOrder> lookup(List<GatewayPayment> wave) {
+        Set<String> paymentOrderIds = new LinkedHashSet<>();
+        for (GatewayPayment payment : wave) {
+            if (payment.orderId() != null) {
+                paymentOrderIds.add(payment.orderId());
+            }
+        }
+
+        Map<String, PaymentOrder> byPaymentOrderId = new HashMap<>(paymentOrderIds.size() * 2);
+        List<String> ids = new ArrayList<>(paymentOrderIds);
+        for (int i = 0; i < ids.size(); i += LOOKUP_CHUNK_SIZE) {
+            for (PaymentOrder paymentOrder : paymentOrderRepository.findByPaymentOrderIdIn(
+                    ids.subList(i, Math.min(i + LOOKUP_CHUNK_SIZE, ids.size())))) {
+                byPaymentOrderId.put(paymentOrder.getPaymentOrderId(), paymentOrder);
+            }
+        }
+        return byPaymentOrderId;
+    }
+
+    /**
+     * Null when the gateway and payment_orders agree (or the payment is not settled yet).
+     */
+    private Verdict compare(GatewayPayment payment, PaymentOrder paymentOrder) {
+        boolean settled = "captured".equals(payment.status()) || "refunded".equals(payment.status());
+        if (paymentOrder == null) {
+            return settled ? Verdict.report("UNKNOWN_ORDER", "No payment order for " + payment.orderId()) : null;
+        }
+        if (settled && payment.amount() != toPaise(paymentOrder.getAmount())) {
+            return Verdict.report("AMOUNT_MISMATCH", "Gateway captured a different amount than the payment order");
+        }
+
+        PaymentOrder.PaymentStatus local = paymentOrder.getStatus();
+        boolean samePayment = payment.id().equals(paymentOrder.getPaymentId());
+        return switch (payment.status()) {
+            case "captured" -> switch (local) {
+                case PENDING, FAILED -> Verdict.correct("MISSING_CAPTURE");
+                case SUCCESS -> samePayment ? null
+                    : Verdict.report("DUPLICATE_CAPTURE", "Order already paid by " + paymentOrder.getPaymentId());
+                case REFUNDED -> samePayment
+                    ? Verdict.report("STATUS_MISMATCH", "Refunded locally but still captured at the gateway")
+                    : null;
+            };
+            case "refunded" -> switch (local) {
+                case PENDING, FAILED -> Verdict.correct("MISSING_REFUND");
+                case SUCCESS -> samePayment ? Verdict.correct("MISSING_REFUND")
+                    : Verdict.report("DUPLICATE_CAPTURE", "Refunded payment differs from " + paymentOrder.getPaymentId());
+                case REFUNDED -> null;
+            };
+            case "failed" -> switch (local) {
+                case PENDING -> Verdict.correct("MISSING_FAILURE");
+                case SUCCESS, REFUNDED -> samePayment
+                    ? Verdict.report("STATUS_MISMATCH", "Paid locally but failed at the gateway")
+                    : null;
+                case FAILED -> null;
+            };
+            default -> null;
+        };
+    }
+
+    /**
+     * Apply a batch in one transaction; if it fails, retry its corrections one by one so a single
+     * bad order does not block the rest. A version conflict inside the batch also lands here, and
+     * the one-by-one pass, outside any transaction, retries it. Returns the mismatch rows for the batch.
+     */
+    private List<Mismatch> applyCorrections(List<Correction> batch, RunTotals totals) {
+        List<Mismatch> rows = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(this::applyCorrection));
+            for (Correction correction : batch) {
+                rows.add(mismatch(correction.kind(), correction.payment(), correction.paymentOrder(), true, null));
+            }
+            totals.corrected += batch.size();
+            return rows;
+        } catch (RuntimeException e) {
+            log.debug("Correction batch failed, applying {} correction(s) individually", batch.size(), e);
+        }
+
+        for (Correction correction : batch) {
+            try {
+                applyCorrection(correction);
+                rows.add(mismatch(correction.kind(), correction.payment(), correction.paymentOrder(), true, null));
+                totals.corrected++;
+            } catch (RuntimeException e) {
+                rows.add(mismatch(correction.kind(), correction.payment(), correction.paymentOrder(), false,
+                    "Correction failed: " + e.getMessage()));
+            }
+        }
+        return rows;
+    }
+
+    private void applyCorrection(Correction correction) {
+        GatewayPayment payment = correction.payment();
+        switch (correction.kind()) {
+            case "MISSING_CAPTURE" -> paymentService.recordCapture(payment.orderId(), payment.id());
+            case "MISSING_REFUND" -> paymentService.recordRefund(payment.orderId(), payment.id(), null);
+            case "MISSING_FAILURE" ->
+                paymentService.recordFailure(payment.orderId(), payment.errorCode(), payment.errorDescription());
+            default -> throw new IllegalStateException("No correction for " + correction.kind());
+        }
+    }
+
+    private static Mismatch mismatch(String kind, GatewayPayment payment, PaymentOrder paymentOrder,
+                                     boolean corrected, String detail) {
+        return new Mismatch(
+            kind,
+            payment.id(),
+            payment.orderId(),
+            paymentOrder != null ? paymentOrder.getOrderId() : null,
+            payment.status(),
+            paymentOrder != null ? paymentOrder.getStatus().name() : null,
+            payment.amount(),
+            paymentOrder != null ? toPaise(paymentOrder.getAmount()) : null,
+            corrected,
+            truncate(detail)
+        );
+    }
+
+    private static long toPaise(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > MAX_DETAIL_LENGTH ? value.substring(0, MAX_DETAIL_LENGTH) : value;
+    }
+
+    private record Verdict(String kind, boolean correctable, String detail) {
+
+        static Verdict correct(String kind) {
+            return new Verdict(kind, true, null);
+        }
+
+        static Verdict report(String kind, String detail) {
+            return new Verdict(kind, false, detail);
+        }
+    }
+
+    private record Correction(GatewayPayment payment, PaymentOrder paymentOrder, String kind) {
+    }
+
+    private static final class RunTotals {
+        private long payments;
+        private long matched;
+        private long corrected;
+        private long mismatches;
+    }
+}
@@ -1,25 +1,48 @@
 package com.henuka.imitations.service;
 
 import com.henuka.imitations.exception.PaymentException;
-import com.henuka.imitations.model.Order;
+import com.henuka.imitations.event.PaymentEvent;
 import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.repository.PaymentEventRepository;
 import com.henuka.imitations.repository.PaymentOrderRepository;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
-    private final com.razorpay.RazorpayClient razorpayClient;
+    private final RazorpayGatewayClient gatewayClient;
+    private final PaymentSignatureVerifier signatureVerifier;
     private final PaymentOrderRepository paymentOrderRepository;
-    private final OrderService orderService;
-    private final EmailService emailService;
+    private final PaymentEventRepository paymentEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Value("${app.payment.currency:INR}")
     private String currency;
@@ -33,74 +56,218 @@ public class PaymentService {
     @Value("${app.payment.cancel-url}")
     private String cancelUrl;
 
-    @Value("${app.payment.razorpay.key-secret}")
-    private String razorpayKeySecret;
+    @Value("${app.orders.transition.max-attempts:5}")
+    private int maxUpdateAttempts;
+
+    @Value("${app.payment.create.cache-size:10000}")
+    private int createCacheSize;
+
+    @Value("${app.payment.create.cache-ttl-seconds:300}")
+    private long createCacheTtlSeconds;
+
+    // How long a call waits for another node's creation of the same payment order
+    @Value("${app.payment.create.wait-ms:10000}")
+    private long createWaitMs;
+
+    // A reservation still without a gateway order after this long was left by a node that died
+    @Value("${app.payment.create.reservation-timeout-seconds:60}")
+    private long reservationTimeoutSeconds;
+
+    private static final long CREATE_POLL_MS = 100;
+
+    // Creations in progress on this node, by order number
+    private final ConcurrentMap<String, CompletableFuture<PaymentOrder>> inFlightCreates = new ConcurrentHashMap<>();
+
+    // Recently created payment orders, by order number
+    private Map<String, CachedPaymentOrder> recentlyCreated;
     
     private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
 
+    @PostConstruct
+    void initCaches() {
+        recentlyCreated = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPaymentOrder> eldest) {
+                return size() > createCacheSize;
+            }
+        });
+    }
+
+    /**
+     * Payment order for a checkout, created at most once per order. Concurrent calls for the same
+     * order join the call already in flight, and later calls are answered from a short-lived cache
+     * or the stored row. Between nodes, the one whose row wins the unique order_id constraint calls
+     * the gateway; the others wait for its gateway order id.
+     */
     public PaymentOrder createPaymentOrder(String orderId, BigDecimal amount) {
+        CachedPaymentOrder cached = recentlyCreated.get(orderId);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return reusable(cached.paymentOrder(), amount);
+        }
+
+        CompletableFuture<PaymentOrder> call = new CompletableFuture<>();
+        CompletableFuture<PaymentOrder> inFlight = inFlightCreates.putIfAbsent(orderId, call);
+        if (inFlight != null) {
+            log.debug("Joining in-flight payment order creation for {}", orderId);
+            return reusable(await(inFlight), amount);
+        }
+
         try {
-            // Create Razorpay order
-            org.json.JSONObject orderRequest = new org.json.JSONObject();
-            orderRequest.put("amount", amount.multiply(new BigDecimal("100")).intValue()); // Convert to paise
-            orderRequest.put("currency", currency);
-            orderRequest.put("receipt", orderId);
-            orderRequest.put("payment_capture", 1);
-            orderRequest.put("notes", new org.json.JSONObject()
-                .put("order_id", orderId)
-                .put("success_url", successUrl)
-                .put("failure_url", failureUrl)
-                .put("cancel_url", cancelUrl));
-
-            com.razorpay.Order razorpayOrder = razorpayClient.orders.create(orderRequest);
-            
-            // Create and save payment order
-            PaymentOrder paymentOrder = new PaymentOrder();
-            paymentOrder.setOrderId(orderId);
-            paymentOrder.setPaymentOrderId(razorpayOrder.get("id"));
-            paymentOrder.setAmount(amount);
-            paymentOrder.setCurrency(currency);
-            paymentOrder.setStatus(PaymentOrder.PaymentStatus.PENDING);
-            
-            return paymentOrderRepository.save(paymentOrder);
+            PaymentOrder paymentOrder = findOrCreatePaymentOrder(orderId, amount);
+            recentlyCreated.put(orderId,
+                new CachedPaymentOrder(paymentOrder, Instant.now().plusSeconds(createCacheTtlSeconds)));
+            call.complete(paymentOrder);
+            return reusable(paymentOrder, amount);
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCreates.remove(orderId, call);
+        }
+    }
+
+    // Reserve the order's row first and call the gateway only if the reservation wins; other nodes
+    // wait for the winner to store its gateway order id
+    private PaymentOrder findOrCreatePaymentOrder(String orderId, BigDecimal amount) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(createWaitMs);
+        while (true) {
+            Optional<PaymentOrder> existing = paymentOrderRepository.findByOrderId(orderId);
+            if (existing.isPresent() && existing.get().getPaymentOrderId() != null) {
+                return existing.get();
+            }
+
+            PaymentOrder reservation = existing.isPresent()
+                ? takeOverIfAbandoned(existing.get())
+                : reserve(orderId, amount);
+            if (reservation != null) {
+                PaymentOrder created = createGatewayOrder(reservation);
+                if (created != null) {
+                    return created;
+                }
+            } else if (System.nanoTime() - deadline > 0) {
+                throw new PaymentException("Payment order for " + orderId + " is still being created; try again");
+            } else {
+                pause(CREATE_POLL_MS);
+            }
+        }
+    }
+
+    // A PENDING row without a gateway order id, or null if another node reserved the order first
+    private PaymentOrder reserve(String orderId, BigDecimal amount) {
+        PaymentOrder reservation = new PaymentOrder();
+        reservation.setOrderId(orderId);
+        reservation.setAmount(amount);
+        reservation.setCurrency(currency);
+        reservation.setStatus(PaymentOrder.PaymentStatus.PENDING);
+        try {
+            return paymentOrderRepository.save(reservation);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Payment order for {} is being created by another node", orderId);
+            return null;
+        }
+    }
+
+    // The node holding a reservation this old died before storing its gateway order; take it over
+    private PaymentOrder takeOverIfAbandoned(PaymentOrder reservation) {
+        LocalDateTime abandonedBefore = LocalDateTime.now().minusSeconds(reservationTimeoutSeconds);
+        if (reservation.getUpdatedAt() == null || reservation.getUpdatedAt().isAfter(abandonedBefore)) {
+            return null;
+        }
+        reservation.setUpdatedAt(LocalDateTime.now());
+        try {
+            // The version check lets one node take it over
+            PaymentOrder taken = paymentOrderRepository.save(reservation);
+            log.warn("Took over the abandoned payment order reservation for {}", reservation.getOrderId());
+            return taken;
+        } catch (OptimisticLockingFailureException e) {
+            return null;
+        }
+    }
+
+    // The reservation with its gateway order id, or null if another node took it over meanwhile
+    private PaymentOrder createGatewayOrder(PaymentOrder reservation) {
+        String orderId = reservation.getOrderId();
+        RazorpayGatewayClient.GatewayOrder razorpayOrder;
+        try {
+            Map<String, String> notes = new LinkedHashMap<>();
+            notes.put("order_id", orderId);
+            notes.put("success_url", successUrl);
+            notes.put("failure_url", failureUrl);
+            notes.put("cancel_url", cancelUrl);
+
+            razorpayOrder = gatewayClient.createOrder(orderId, toPaise(reservation.getAmount()), currency, notes); // Amount in paise
         } catch (Exception e) {
             log.error("Error creating payment order", e);
+            // Free the order for the next attempt
+            try {
+                paymentOrderRepository.delete(reservation);
+            } catch (OptimisticLockingFailureException taken) {
+                log.debug("Reservation for {} was taken over before it could be released", orderId);
+            }
             throw new PaymentException("Failed to create payment order", e);
         }
+
+        reservation.setPaymentOrderId(razorpayOrder.id());
+        try {
+            return paymentOrderRepository.save(reservation);
+        } catch (OptimisticLockingFailureException e) {
+            // Taken over after it looked abandoned; the other node's gateway order wins and ours expires unused
+            log.info("Payment order reservation for {} was taken over, using the stored one", orderId);
+            return null;
+        }
     }
 
-    public boolean verifyPaymentSignature(String orderId, String paymentId, String signature) {
+    private static void pause(long millis) {
         try {
-            org.json.JSONObject attributes = new org.json.JSONObject();
-            attributes.put("razorpay_order_id", orderId);
-            attributes.put("razorpay_payment_id", paymentId);
-            attributes.put("razorpay_signature", signature);
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentException("Interrupted waiting for the payment order", e);
+        }
+    }
 
-            return com.razorpay.Utils.verifyPaymentSignature(attributes, razorpayKeySecret);
-        } catch (Exception e) {
-            log.error("Error verifying payment signature", e);
-            return false;
+    // An existing payment order answers a repeated request only if it is still payable for the same amount
+    private static PaymentOrder reusable(PaymentOrder paymentOrder, BigDecimal amount) {
+        if (paymentOrder.getAmount().compareTo(amount) != 0) {
+            throw new PaymentException("Amount does not match the existing payment order for " + paymentOrder.getOrderId());
+        }
+        if (paymentOrder.getStatus() == PaymentOrder.PaymentStatus.SUCCESS
+                || paymentOrder.getStatus() == PaymentOrder.PaymentStatus.REFUNDED) {
+            throw new PaymentException("Order " + paymentOrder.getOrderId() + " has already been paid");
+        }
+        return paymentOrder;
+    }
+
+    private static PaymentOrder await(CompletableFuture<PaymentOrder> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new PaymentException("Failed to create payment order", e.getCause());
         }
     }
 
+    public boolean verifyPaymentSignature(String orderId, String paymentId, String signature) {
+        return signatureVerifier.verifyPayment(orderId, paymentId, signature);
+    }
+
     public void processPaymentSuccess(String orderId, String paymentId, String signature) {
         try {
             if (!verifyPaymentSignature(orderId, paymentId, signature)) {
                 throw new PaymentException("Invalid payment signature");
             }
 
-            PaymentOrder paymentOrder = paymentOrderRepository.findByOrderId(orderId)
-                .orElseThrow(() -> new EntityNotFoundException("Payment order not found: " + orderId));
-            
-            paymentOrder.setStatus(PaymentOrder.PaymentStatus.SUCCESS);
-            paymentOrder.setPaymentId(paymentId);
-            paymentOrderRepository.save(paymentOrder);
-
-            // Update order status
-            Order order = orderService.confirmOrder(orderId);
+            PaymentOrder current = findPaymentOrder(orderId);
+            if (current.getStatus() == PaymentOrder.PaymentStatus.SUCCESS && paymentId.equals(current.getPaymentId())) {
+                log.info("Payment {} for order {} already recorded", paymentId, orderId);
+                return;
+            }
 
-            // Send confirmation email
-            emailService.sendPaymentConfirmationEmail(order, paymentOrder);
+            // Order confirmation and email follow from the PAYMENT_CAPTURED event
+            updatePaymentOrder(orderId, PaymentOrder.PaymentStatus.SUCCESS,
+                order -> order.setPaymentId(paymentId));
         } catch (Exception e) {
             log.error("Error processing payment success", e);
             throw new PaymentException("Failed to process payment success", e);
@@ -109,19 +276,10 @@ public class PaymentService {
 
     public void processPaymentFailure(String orderId, String errorCode, String errorDescription) {
         try {
-            PaymentOrder paymentOrder = paymentOrderRepository.findByOrderId(orderId)
-                .orElseThrow(() -> new EntityNotFoundException("Payment order not found: " + orderId));
-            
-            paymentOrder.setStatus(PaymentOrder.PaymentStatus.FAILED);
-            paymentOrder.setErrorCode(errorCode);
-            paymentOrder.setErrorDescription(errorDescription);
-            paymentOrderRepository.save(paymentOrder);
-
-            // Update order status
-            Order order = orderService.failOrder(orderId);
-
-            // Send failure notification
-            emailService.sendPaymentFailureEmail(order, paymentOrder);
+            updatePaymentOrder(orderId, PaymentOrder.PaymentStatus.FAILED, order -> {
+                order.setErrorCode(errorCode);
+                order.setErrorDescription(errorDescription);
+            });
         } catch (Exception e) {
             log.error("Error processing payment failure", e);
             throw new PaymentException("Failed to process payment failure", e);
@@ -130,33 +288,169 @@ public class PaymentService {
 
     public void processRefund(String orderId, BigDecimal amount, String reason) {
         try {
-            PaymentOrder paymentOrder = paymentOrderRepository.findByOrderId(orderId)
-                .orElseThrow(() -> new EntityNotFoundException("Payment order not found: " + orderId));
+            PaymentOrder paymentOrder = findPaymentOrder(orderId);
             
             if (paymentOrder.getStatus() != PaymentOrder.PaymentStatus.SUCCESS) {
                 throw new PaymentException("Cannot refund non-successful payment");
             }
 
-            org.json.JSONObject refundRequest = new org.json.JSONObject();
-            refundRequest.put("amount", amount.multiply(new BigDecimal("100")).intValue());
-            refundRequest.put("speed", "normal");
-            refundRequest.put("notes", new org.json.JSONObject().put("reason", reason));
-
-            com.razorpay.Refund refund = razorpayClient.payments
-                    .refund(paymentOrder.getPaymentId(), refundRequest);
+            RazorpayGatewayClient.GatewayRefund refund = gatewayClient.refund(
+                paymentOrder.getPaymentId(), toPaise(amount), reason != null ? Map.of("reason", reason) : Map.of());
 
-            paymentOrder.setStatus(PaymentOrder.PaymentStatus.REFUNDED);
-            paymentOrder.setRefundId(refund.get("id"));
-            paymentOrderRepository.save(paymentOrder);
-
-            // Update order status
-            Order order = orderService.refundOrder(orderId);
-
-            // Send refund notification
-            emailService.sendRefundConfirmationEmail(order, paymentOrder);
+            String refundId = refund.id();
+            updatePaymentOrder(orderId, PaymentOrder.PaymentStatus.REFUNDED,
+                order -> order.setRefundId(refundId));
         } catch (Exception e) {
             log.error("Error processing refund", e);
             throw new PaymentException("Failed to process refund", e);
         }
     }
+
+    /**
+     * Record a refund this application issued at the gateway. Returns false if the payment order
+     * was already refunded, e.g. when a resumed bulk refund repeats the call.
+     */
+    public boolean completeRefund(String orderId, String refundId) {
+        if (findPaymentOrder(orderId).getStatus() == PaymentOrder.PaymentStatus.REFUNDED) {
+            return false;
+        }
+        updatePaymentOrder(orderId, PaymentOrder.PaymentStatus.REFUNDED, order -> order.setRefundId(refundId));
+        return true;
+    }
+
+    /**
+     * Payment order for a shop order number.
+     */
+    public PaymentOrder getPaymentOrder(String orderId) {
+        return findPaymentOrder(orderId);
+    }
+
+    /**
+     * Record a capture reported by the gateway. Returns false when the payment order already
+     * holds this capture, so redelivered events are no-ops.
+     */
+    public boolean recordCapture(String paymentOrderId, String paymentId) {
+        PaymentOrder current = findByPaymentOrderId(paymentOrderId);
+        if (current.getStatus() == PaymentOrder.PaymentStatus.REFUNDED
+                || (current.getStatus() == PaymentOrder.PaymentStatus.SUCCESS && paymentId.equals(current.getPaymentId()))) {
+            return false;
+        }
+
+        updatePaymentOrder(current.getOrderId(), PaymentOrder.PaymentStatus.SUCCESS,
+            order -> order.setPaymentId(paymentId));
+        return true;
+    }
+
+    /**
+     * Record a failed attempt reported by the gateway. A failure that arrives after the payment
+     * order was captured or refunded is stale and ignored.
+     */
+    public boolean recordFailure(String paymentOrderId, String errorCode, String errorDescription) {
+        PaymentOrder current = findByPaymentOrderId(paymentOrderId);
+        if (!OrderStateMachine.canMove(current.getStatus(), PaymentOrder.PaymentStatus.FAILED)
+                || (current.getStatus() == PaymentOrder.PaymentStatus.FAILED
+                    && Objects.equals(errorCode, current.getErrorCode())
+                    && Objects.equals(errorDescription, current.getErrorDescription()))) {
+            return false;
+        }
+
+        updatePaymentOrder(current.getOrderId(), PaymentOrder.PaymentStatus.FAILED, order -> {
+            order.setErrorCode(errorCode);
+            order.setErrorDescription(errorDescription);
+        });
+        return true;
+    }
+
+    /**
+     * Record a refund reported by the gateway, including refunds started outside this application.
+     * A refund that overtakes its capture event applies the capture first.
+     */
+    public boolean recordRefund(String paymentOrderId, String paymentId, String refundId) {
+        PaymentOrder current = findByPaymentOrderId(paymentOrderId);
+        if (current.getStatus() == PaymentOrder.PaymentStatus.REFUNDED) {
+            return false;
+        }
+        if (current.getStatus() != PaymentOrder.PaymentStatus.SUCCESS) {
+            recordCapture(paymentOrderId, paymentId);
+        }
+
+        updatePaymentOrder(current.getOrderId(), PaymentOrder.PaymentStatus.REFUNDED,
+            order -> order.setRefundId(refundId));
+        return true;
+    }
+
+    private PaymentOrder findByPaymentOrderId(String paymentOrderId) {
+        return paymentOrderRepository.findByPaymentOrderId(paymentOrderId)
+            .orElseThrow(() -> new EntityNotFoundException("Payment order not found: " + paymentOrderId));
+    }
+
+    private static long toPaise(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private PaymentOrder findPaymentOrder(String orderId) {
+        return paymentOrderRepository.findByOrderId(orderId)
+            .orElseThrow(() -> new EntityNotFoundException("Payment order not found: " + orderId));
+    }
+
+    /**
+     * Move a payment order to a new status and append the matching payment event in the same
+     * transaction. The save is checked against the entity's version, so a concurrent update makes
+     * it fail; the change is then re-applied to a fresh copy, a bounded number of times, provided
+     * the move is still allowed.
+     * <p>
+     * Inside a caller's transaction there is a single attempt: the failed flush has already marked
+     * that transaction rollback-only and its persistence context still holds the stale copy, so
+     * the conflict goes to the caller, which retries the whole unit of work.
+     */
+    private PaymentOrder updatePaymentOrder(String orderId,
+                                            PaymentOrder.PaymentStatus status,
+                                            Consumer<PaymentOrder> changes) {
+        int maxAttempts = TransactionSynchronizationManager.isActualTransactionActive() ? 1 : maxUpdateAttempts;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                PaymentOrder saved = transactionTemplate.execute(tx -> {
+                    PaymentOrder paymentOrder = findPaymentOrder(orderId);
+                    if (!OrderStateMachine.canMove(paymentOrder.getStatus(), status)) {
+                        throw new PaymentException("Cannot move payment order for " + orderId +
+                            " from " + paymentOrder.getStatus() + " to " + status);
+                    }
+
+                    changes.accept(paymentOrder);
+                    paymentOrder.setStatus(status);
+                    PaymentOrder updated = paymentOrderRepository.saveAndFlush(paymentOrder);
+
+                    PaymentEvent event = paymentEventRepository.append(eventFor(updated));
+                    // Wakes the dispatcher once this transaction commits
+                    eventPublisher.publishEvent(event);
+                    return updated;
+                });
+                recentlyCreated.remove(orderId);
+                return saved;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("Version conflict on payment order for {}, retrying (attempt {})", orderId, attempt);
+            }
+        }
+    }
+
+    private static PaymentEvent eventFor(PaymentOrder paymentOrder) {
+        return switch (paymentOrder.getStatus()) {
+            case SUCCESS -> PaymentEvent.of(PaymentEvent.Type.PAYMENT_CAPTURED, paymentOrder, null);
+            case FAILED -> {
+                String detail = paymentOrder.getErrorCode() != null
+                    ? paymentOrder.getErrorCode() + ": " + paymentOrder.getErrorDescription()
+                    : paymentOrder.getErrorDescription();
+                yield PaymentEvent.of(PaymentEvent.Type.PAYMENT_FAILED, paymentOrder,
+                    detail != null && detail.length() > 500 ? detail.substring(0, 500) : detail);
+            }
+            case REFUNDED -> PaymentEvent.of(PaymentEvent.Type.PAYMENT_REFUNDED, paymentOrder, paymentOrder.getRefundId());
+            case PENDING -> throw new IllegalStateException("Payment orders are never moved back to PENDING");
+        };
+    }
+
+    private record CachedPaymentOrder(PaymentOrder paymentOrder, Instant expiresAt) {
+    }
 }
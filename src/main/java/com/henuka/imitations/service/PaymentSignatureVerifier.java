@@ -0,0 +1,172 @@
+package com.henuka.imitations.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HMAC-SHA256 checks for Razorpay checkout and webhook signatures.
+ *
+ * Each thread keeps initialised {@link Mac}s for the active secrets plus scratch buffers: the
+ * message is fed to the Mac directly, the hex signature is decoded into a reused buffer and
+ * compared in constant time. The only allocation left is the digest array the JDK's Mac
+ * produces internally on each finish. A second, optional secret per
+ * purpose is accepted alongside the current one so secrets can be rotated without a cut-over.
+ */
+@Service
+public class PaymentSignatureVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int DIGEST_LENGTH = 32;
+
+    private final KeyRing paymentKeys;
+    private final KeyRing webhookKeys;
+
+    public PaymentSignatureVerifier(@Value("${app.payment.razorpay.key-secret}") String keySecret,
+                                    @Value("${app.payment.razorpay.previous-key-secret:}") String previousKeySecret,
+                                    @Value("${app.payment.razorpay.webhook-secret}") String webhookSecret,
+                                    @Value("${app.payment.razorpay.previous-webhook-secret:}") String previousWebhookSecret) {
+        this.paymentKeys = new KeyRing(keySecret, previousKeySecret);
+        this.webhookKeys = new KeyRing(webhookSecret, previousWebhookSecret);
+    }
+
+    /**
+     * Checkout signature: HMAC of {@code orderId + "|" + paymentId} with the API key secret.
+     */
+    public boolean verifyPayment(String orderId, String paymentId, String signature) {
+        if (orderId == null || paymentId == null || signature == null) {
+            return false;
+        }
+        Scratch scratch = paymentKeys.scratch.get();
+        if (!scratch.decodeSignature(signature)) {
+            return false;
+        }
+        for (Mac mac : scratch.macs) {
+            scratch.update(mac, orderId);
+            mac.update((byte) '|');
+            scratch.update(mac, paymentId);
+            if (scratch.matches(mac)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Webhook signature: HMAC of the raw request body with the webhook secret.
+     */
+    public boolean verifyWebhook(byte[] body, String signature) {
+        if (body == null || signature == null) {
+            return false;
+        }
+        Scratch scratch = webhookKeys.scratch.get();
+        if (!scratch.decodeSignature(signature)) {
+            return false;
+        }
+        for (Mac mac : scratch.macs) {
+            mac.update(body);
+            if (scratch.matches(mac)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Current and previous secret for one purpose, with a per-thread set of Macs for them.
+     */
+    private static final class KeyRing {
+        private final List<SecretKeySpec> keys = new ArrayList<>(2);
+        private final ThreadLocal<Scratch> scratch;
+
+        KeyRing(String current, String previous) {
+            keys.add(new SecretKeySpec(current.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            if (previous != null && !previous.isBlank() && !previous.equals(current)) {
+                keys.add(new SecretKeySpec(previous.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            }
+            this.scratch = ThreadLocal.withInitial(() -> new Scratch(keys));
+        }
+    }
+
+    private static final class Scratch {
+        private final Mac[] macs;
+        private final byte[] expected = new byte[DIGEST_LENGTH];
+        private final byte[] actual = new byte[DIGEST_LENGTH];
+        private final byte[] text = new byte[256];
+
+        Scratch(List<SecretKeySpec> keys) {
+            macs = new Mac[keys.size()];
+            try {
+                for (int i = 0; i < macs.length; i++) {
+                    macs[i] = Mac.getInstance(ALGORITHM);
+                    macs[i].init(keys.get(i));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 unavailable", e);
+            }
+        }
+
+        // Decode a lowercase hex signature into expected; false if malformed. Uppercase is refused,
+        // as com.razorpay.Utils compares the hex strings exactly
+        boolean decodeSignature(String signature) {
+            if (signature.length() != DIGEST_LENGTH * 2) {
+                return false;
+            }
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                int high = lowerHexDigit(signature.charAt(2 * i));
+                int low = lowerHexDigit(signature.charAt(2 * i + 1));
+                if (high < 0 || low < 0) {
+                    return false;
+                }
+                expected[i] = (byte) ((high << 4) | low);
+            }
+            return true;
+        }
+
+        private static int lowerHexDigit(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+        }
+
+        // Feed a string as UTF-8; Razorpay ids are ASCII, so this normally skips the encoder
+        void update(Mac mac, String value) {
+            int length = value.length();
+            if (length > text.length) {
+                mac.update(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c > 0x7F) {
+                    mac.update(value.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                text[i] = (byte) c;
+            }
+            mac.update(text, 0, length);
+        }
+
+        // Finish the Mac (which also resets it) and compare without an early exit
+        boolean matches(Mac mac) {
+            try {
+                mac.doFinal(actual, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            int difference = 0;
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                difference |= expected[i] ^ actual[i];
+            }
+            return difference == 0;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.annotation.WorkloadClass;
+import com.henuka.imitations.config.WorkloadExecutors;
+import com.henuka.imitations.exception.PaymentException;
+import com.henuka.imitations.model.PaymentWebhookEvent;
+import com.henuka.imitations.repository.PaymentWebhookEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests Razorpay webhooks and applies them to payment orders.
+ *
+ * A delivery is verified, stored once per gateway event id and acknowledged; nothing else happens
+ * on the request thread. Duplicates are screened by an in-memory Bloom filter (a miss skips the
+ * lookup, a hit is confirmed against the table) with the unique constraint as the final word.
+ *
+ * Stored events are applied by a fixed set of single-threaded lanes. Events for one payment order
+ * always land on the same lane, so they are applied in arrival order without locking; the apply
+ * methods on {@link PaymentService} treat repeated and superseded events as no-ops. An event is
+ * claimed (QUEUED, with a lease) before it is handed to a lane, so it is never queued twice.
+ * One that fails is retried with backoff up to an attempt limit, and one left unapplied by a
+ * full lane or a restart is picked up again by {@link #requeueStalled()} once due.
+ */
+@Service
+public class PaymentWebhookService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final PaymentWebhookEventRepository webhookEventRepository;
+    private final PaymentService paymentService;
+    private final PaymentSignatureVerifier signatureVerifier;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final WorkloadExecutors workloads;
+
+    @Value("${app.payment.webhook.workers:8}")
+    private int workers;
+
+    @Value("${app.payment.webhook.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.payment.webhook.expected-events:1000000}")
+    private long expectedEvents;
+
+    // Events received within this window seed the duplicate filter on startup
+    @Value("${app.payment.webhook.dedup-warmup-hours:48}")
+    private long dedupWarmupHours;
+
+    // How long a lane may hold an event before another pass may claim it again
+    @Value("${app.payment.webhook.lease-seconds:600}")
+    private long leaseSeconds;
+
+    @Value("${app.payment.webhook.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.payment.webhook.retry-backoff-ms:30000}")
+    private long retryBackoffMs;
+
+    @Value("${app.payment.webhook.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Value("${app.payment.webhook.requeue-batch-size:500}")
+    private int requeueBatchSize;
+
+    private BloomFilter seenEventIds;
+    private ExecutorService[] lanes;
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentWebhookService.class);
+
+    public PaymentWebhookService(PaymentWebhookEventRepository webhookEventRepository,
+                                 PaymentService paymentService,
+                                 PaymentSignatureVerifier signatureVerifier,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 WorkloadExecutors workloads) {
+        this.webhookEventRepository = webhookEventRepository;
+        this.paymentService = paymentService;
+        this.signatureVerifier = signatureVerifier;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.workloads = workloads;
+    }
+
+    @PostConstruct
+    void start() {
+        seenEventIds = new BloomFilter(expectedEvents, 0.01);
+        List<String> recent = webhookEventRepository.findEventIdsReceivedSince(
+            LocalDateTime.now().minusHours(dedupWarmupHours));
+        recent.forEach(seenEventIds::put);
+
+        lanes = new ExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = workloads.lane("paymentWebhookLane-" + (i + 1), WorkloadClass.BACKGROUND, queueCapacity,
+                "PaymentWebhook-" + (i + 1));
+        }
+        log.info("Payment webhook ingest started with {} lane(s), {} recent event id(s) loaded", workers, recent.size());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Verify and store one delivery. Returns once the event is durable; it is applied later.
+     */
+    public IngestResult ingest(byte[] body, String signature, String eventIdHeader) {
+        long startTime = System.nanoTime();
+        if (!signatureVerifier.verifyWebhook(body, signature)) {
+            meterRegistry.counter("payment.webhook.received", "result", "invalid_signature").increment();
+            throw new PaymentException("Invalid webhook signature");
+        }
+
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(body);
+        } catch (IOException e) {
+            meterRegistry.counter("payment.webhook.received", "result", "malformed").increment();
+            throw new PaymentException("Malformed webhook payload", e);
+        }
+
+        String eventId = eventIdHeader != null && !eventIdHeader.isBlank() ? eventIdHeader : digest(body);
+        if (seenEventIds.mightContain(eventId) && webhookEventRepository.existsByEventId(eventId)) {
+            return duplicate(startTime);
+        }
+
+        JsonNode payment = json.path("payload").path("payment").path("entity");
+        PaymentWebhookEvent event = new PaymentWebhookEvent();
+        event.setEventId(eventId);
+        event.setEventType(json.path("event").asText("unknown"));
+        event.setPaymentOrderId(textOrNull(payment.path("order_id")));
+        event.setPaymentId(textOrNull(payment.path("id")));
+        event.setPayload(new String(body, StandardCharsets.UTF_8));
+        // Claimed by this node from the start, so a requeue pass leaves it to the lane
+        event.setStatus(PaymentWebhookEvent.Status.QUEUED);
+        event.setNextAttemptAt(LocalDateTime.now().plusSeconds(leaseSeconds));
+
+        try {
+            event = webhookEventRepository.saveAndFlush(event);
+        } catch (DataIntegrityViolationException e) {
+            seenEventIds.put(eventId);
+            return duplicate(startTime);
+        }
+        seenEventIds.put(eventId);
+
+        enqueue(event, json);
+        meterRegistry.counter("payment.webhook.received", "result", "accepted").increment();
+        meterRegistry.timer("payment.webhook.ingest").record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return IngestResult.ACCEPTED;
+    }
+
+    /**
+     * Re-submit events that are due: never applied, due for a retry, or held by a lane whose
+     * claim ran out. Each is claimed first, so one still waiting on a lane is not queued twice.
+     */
+    public int requeueStalled() {
+        LocalDateTime now = LocalDateTime.now();
+        List<PaymentWebhookEvent> due = webhookEventRepository.findDue(now, PageRequest.of(0, requeueBatchSize));
+        int requeued = 0;
+        for (PaymentWebhookEvent event : due) {
+            if (webhookEventRepository.claim(event.getId(), now, now.plusSeconds(leaseSeconds)) == 1) {
+                enqueue(event, null);
+                requeued++;
+            }
+        }
+        if (requeued > 0) {
+            log.info("Re-queued {} unapplied payment webhook event(s)", requeued);
+        }
+        return requeued;
+    }
+
+    private void enqueue(PaymentWebhookEvent event, JsonNode json) {
+        String key = event.getPaymentOrderId() != null ? event.getPaymentOrderId()
+            : event.getPaymentId() != null ? event.getPaymentId()
+            : event.getEventId();
+        ExecutorService lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        try {
+            lane.execute(() -> apply(event, json));
+        } catch (RejectedExecutionException e) {
+            // Back to RECEIVED; the next requeue pass picks it up in order
+            webhookEventRepository.release(event.getId(), event.getAttempts(), null, event.getError());
+            meterRegistry.counter("payment.webhook.deferred").increment();
+            log.debug("Webhook lane full, deferring event {}", event.getEventId());
+        }
+    }
+
+    private void apply(PaymentWebhookEvent event, JsonNode parsed) {
+        PaymentWebhookEvent.Status outcome;
+        String error = null;
+        int attempts = event.getAttempts();
+        try {
+            JsonNode json = parsed != null ? parsed : objectMapper.readTree(event.getPayload());
+            outcome = dispatch(event, json.path("payload")) ? PaymentWebhookEvent.Status.APPLIED
+                : PaymentWebhookEvent.Status.IGNORED;
+        } catch (EntityNotFoundException e) {
+            outcome = PaymentWebhookEvent.Status.IGNORED;
+            error = e.getMessage();
+        } catch (IOException e) {
+            // The stored payload will not parse any better next time
+            outcome = PaymentWebhookEvent.Status.FAILED;
+            error = e.getMessage();
+            log.warn("Unreadable payment webhook {} ({})", event.getEventId(), event.getEventType(), e);
+        } catch (Exception e) {
+            // Lock conflicts and database hiccups pass; retry until the attempt limit
+            attempts++;
+            error = truncate(e.getMessage());
+            if (attempts < maxAttempts) {
+                LocalDateTime retryAt = LocalDateTime.now().plusNanos(backoffMillis(attempts) * 1_000_000);
+                webhookEventRepository.release(event.getId(), attempts, retryAt, error);
+                meterRegistry.counter("payment.webhook.retried", "type", event.getEventType()).increment();
+                log.warn("Failed to apply payment webhook {} ({}), attempt {} of {}; retrying at {}",
+                    event.getEventId(), event.getEventType(), attempts, maxAttempts, retryAt, e);
+                return;
+            }
+            outcome = PaymentWebhookEvent.Status.FAILED;
+            log.error("Giving up on payment webhook {} ({}) after {} attempts",
+                event.getEventId(), event.getEventType(), attempts, e);
+        }
+
+        webhookEventRepository.markProcessed(event.getId(), outcome, LocalDateTime.now(), attempts, truncate(error));
+        meterRegistry.counter("payment.webhook.applied",
+            "type", event.getEventType(),
+            "outcome", outcome.name()).increment();
+    }
+
+    // Wait before the given retry, doubling from the base up to the cap
+    private long backoffMillis(int attempts) {
+        long backoff = retryBackoffMs << Math.min(attempts - 1, 20);
+        return Math.min(backoff, maxBackoffMs);
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private boolean dispatch(PaymentWebhookEvent event, JsonNode payload) {
+        String paymentOrderId = event.getPaymentOrderId();
+        if (paymentOrderId == null) {
+            return false;
+        }
+
+        JsonNode payment = payload.path("payment").path("entity");
+        return switch (event.getEventType()) {
+            case "payment.captured", "order.paid" ->
+                paymentService.recordCapture(paymentOrderId, event.getPaymentId());
+            case "payment.failed" ->
+                paymentService.recordFailure(paymentOrderId,
+                    textOrNull(payment.path("error_code")),
+                    textOrNull(payment.path("error_description")));
+            case "refund.processed" ->
+                paymentService.recordRefund(paymentOrderId, event.getPaymentId(),
+                    textOrNull(payload.path("refund").path("entity").path("id")));
+            default -> false;
+        };
+    }
+
+    private IngestResult duplicate(long startTime) {
+        meterRegistry.counter("payment.webhook.received", "result", "duplicate").increment();
+        meterRegistry.timer("payment.webhook.ingest").record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return IngestResult.DUPLICATE;
+    }
+
+    // Fallback identity for deliveries without an event id header
+    private static String digest(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isMissingNode() || node.isNull() ? null : node.asText();
+    }
+
+    public enum IngestResult {
+        ACCEPTED, DUPLICATE
+    }
+}
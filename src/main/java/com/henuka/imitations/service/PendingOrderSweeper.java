@@ -0,0 +1,171 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.event.OrderStatusChangedEvent;
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.repository.OrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Cancels unpaid PENDING orders that have passed the payment timeout and returns their stock.
+ *
+ * Workers claim chunks with SELECT ... FOR UPDATE SKIP LOCKED inside a short transaction; the
+ * row locks act as leases, so any number of worker threads on any number of nodes can sweep at
+ * once without processing the same order twice. Locks are released when the chunk commits.
+ * Run as a sharded cluster job, a sweep only claims orders in this node's {@link JobShard}, so
+ * nodes do not contend for the same rows.
+ */
+@Service
+public class PendingOrderSweeper {
+
+    private final OrderRepository orderRepository;
+    private final ProductService productService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final Executor sweeperExecutor;
+
+    @Value("${app.orders.pending-timeout-minutes:30}")
+    private long pendingTimeoutMinutes;
+
+    @Value("${app.orders.sweeper.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${app.orders.sweeper.workers:4}")
+    private int workers;
+
+    @Value("${app.orders.sweeper.max-chunks-per-worker:50}")
+    private int maxChunksPerWorker;
+
+    private static final Logger log = LoggerFactory.getLogger(PendingOrderSweeper.class);
+
+    public PendingOrderSweeper(OrderRepository orderRepository,
+                               ProductService productService,
+                               TransactionTemplate transactionTemplate,
+                               ApplicationEventPublisher eventPublisher,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("sweeperExecutor") Executor sweeperExecutor) {
+        this.orderRepository = orderRepository;
+        this.productService = productService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.sweeperExecutor = sweeperExecutor;
+    }
+
+    /**
+     * Run one sweep across all workers and wait for it to finish.
+     */
+    public SweepResult sweep() {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(pendingTimeoutMinutes);
+        // Read here: the shard is bound to the scheduler thread, not the worker threads
+        JobShard shard = JobShard.current();
+
+        List<CompletableFuture<SweepResult>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> runWorker(cutoff, shard), sweeperExecutor));
+        }
+
+        SweepResult result = futures.stream()
+            .map(CompletableFuture::join)
+            .reduce(SweepResult.EMPTY, SweepResult::merge);
+
+        long duration = System.currentTimeMillis() - startTime;
+        recordRun(result, cutoff, duration);
+        log.info("Swept {} expired pending order(s), released {} unit(s) of stock in {}ms",
+            result.ordersSwept(), result.stockReleased(), duration);
+        return result;
+    }
+
+    private SweepResult runWorker(LocalDateTime cutoff, JobShard shard) {
+        SweepResult total = SweepResult.EMPTY;
+        for (int chunk = 0; chunk < maxChunksPerWorker; chunk++) {
+            SweepResult result = transactionTemplate.execute(status -> sweepChunk(cutoff, shard));
+            if (result == null || result.ordersSwept() == 0) {
+                break;
+            }
+            total = total.merge(result);
+        }
+        return total;
+    }
+
+    private SweepResult sweepChunk(LocalDateTime cutoff, JobShard shard) {
+        List<Order> claimed = shard == null
+            ? orderRepository.claimPendingOrdersOlderThan(cutoff, PageRequest.of(0, chunkSize))
+            : orderRepository.claimPendingOrdersOlderThanInShard(cutoff, shard.index(), shard.count(),
+                PageRequest.of(0, chunkSize));
+        if (claimed.isEmpty()) {
+            return SweepResult.EMPTY;
+        }
+
+        List<Long> orderIds = claimed.stream().map(Order::getId).toList();
+
+        // Sorted by product id so concurrent chunks take product row locks in the same order
+        Map<Long, Integer> quantitiesByProduct = new TreeMap<>();
+        for (Object[] row : orderRepository.sumQuantitiesByProduct(orderIds)) {
+            quantitiesByProduct.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+
+        int cancelled = orderRepository.cancelPendingOrders(orderIds);
+        int released = productService.increaseStockBatch(quantitiesByProduct);
+
+        LocalDateTime oldest = null;
+        for (Order order : claimed) {
+            eventPublisher.publishEvent(new OrderStatusChangedEvent(
+                order.getId(),
+                order.getOrderNumber(),
+                order.getCreatedAt(),
+                order.getStatus(),
+                Order.OrderStatus.CANCELLED,
+                order.getPaymentStatus(),
+                order.getPaymentStatus()
+            ));
+            if (oldest == null || order.getCreatedAt().isBefore(oldest)) {
+                oldest = order.getCreatedAt();
+            }
+        }
+
+        return new SweepResult(cancelled, released, oldest);
+    }
+
+    private void recordRun(SweepResult result, LocalDateTime cutoff, long duration) {
+        meterRegistry.counter("orders.sweeper.swept").increment(result.ordersSwept());
+        meterRegistry.counter("orders.sweeper.stock.released").increment(result.stockReleased());
+        meterRegistry.timer("orders.sweeper.run").record(Duration.ofMillis(duration));
+        if (result.oldestCreatedAt() != null) {
+            // How long past its deadline the oldest swept order was
+            meterRegistry.timer("orders.sweeper.lag")
+                .record(Duration.between(result.oldestCreatedAt(), cutoff));
+        }
+    }
+
+    public record SweepResult(int ordersSwept, int stockReleased, LocalDateTime oldestCreatedAt) {
+
+        static final SweepResult EMPTY = new SweepResult(0, 0, null);
+
+        SweepResult merge(SweepResult other) {
+            LocalDateTime oldest = oldestCreatedAt;
+            if (oldest == null || (other.oldestCreatedAt != null && other.oldestCreatedAt.isBefore(oldest))) {
+                oldest = other.oldestCreatedAt;
+            }
+            return new SweepResult(ordersSwept + other.ordersSwept, stockReleased + other.stockReleased, oldest);
+        }
+    }
+}
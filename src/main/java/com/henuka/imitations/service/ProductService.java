@@ -4,13 +4,20 @@ import com.henuka.imitations.model.Product;
 import com.henuka.imitations.repository.ProductRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -19,6 +26,11 @@ import java.util.Optional;
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final BatchJobRunner batchJobRunner;
+    private final ObjectProvider<InventoryFeed> inventoryFeed;
+
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
 
     public Product createProduct(Product product) {
         validateProduct(product);
@@ -94,6 +106,11 @@ public class ProductService {
         return productRepository.findRelatedProducts(category, productId, pageable);
     }
 
+    @Transactional(readOnly = true)
+    public List<Product> getRelatedProducts(Long productId, Pageable pageable) {
+        return productRepository.findRelatedToProduct(productId, pageable);
+    }
+
     @Transactional(readOnly = true)
     public List<Product> getProductsNeedingRestock(int threshold) {
         return productRepository.findProductsNeedingRestock(threshold);
@@ -140,4 +157,84 @@ public class ProductService {
         product.setStockQuantity(product.getStockQuantity() + quantity);
         productRepository.save(product);
     }
+
+    /**
+     * Return stock for many products in one JDBC batch. Callers should pass products in a
+     * stable order (e.g. a sorted map) so concurrent batches lock rows in the same order.
+     * Bypasses the persistence context, so loaded Product entities are not refreshed.
+     */
+    @Transactional
+    public int increaseStockBatch(Map<Long, Integer> quantitiesByProduct) {
+        if (quantitiesByProduct.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> args = quantitiesByProduct.entrySet().stream()
+            .map(entry -> new Object[] { entry.getValue(), entry.getKey() })
+            .toList();
+        jdbcTemplate.batchUpdate(
+            "UPDATE products SET stock_quantity = stock_quantity + ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?",
+            args
+        );
+        return quantitiesByProduct.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Copy warehouse stock levels onto products as a batch job, a chunk per transaction, so the
+     * sync can resume where it stopped. A product whose stock changed after its chunk was read is
+     * left for the next run rather than overwritten. Returns the number of products updated.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int updateInventory() {
+        InventoryFeed feed = inventoryFeed.getIfAvailable();
+        if (feed == null) {
+            log.debug("No inventory feed is configured; skipping inventory sync");
+            return 0;
+        }
+        BatchJob<StockLevel, StockLevel> job = new BatchJob<>(
+            "inventory-sync",
+            (partition, afterKey, limit) -> readStockLevels(feed, partition, afterKey, limit),
+            StockLevel::productId,
+            ProductService::checkStockLevel,
+            this::writeStockLevels,
+            BatchJob.Settings.DEFAULTS.withCommitInterval(500).withPartitions(4).withSkipLimit(100)
+        );
+        return (int) batchJobRunner.run(job).written();
+    }
+
+    private List<StockLevel> readStockLevels(InventoryFeed feed, JobShard partition, Long afterKey, int limit) {
+        List<Product> products = productRepository.findPartitionAfter(afterKey == null ? 0 : afterKey,
+            partition.index(), partition.count(), PageRequest.of(0, limit));
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Integer> levels = feed.stockLevels(products.stream().map(Product::getId).toList());
+        return products.stream()
+            .map(product -> new StockLevel(product.getId(), product.getStockQuantity(), levels.get(product.getId())))
+            .toList();
+    }
+
+    // Only products the warehouse knows and whose stock differs are written
+    private static StockLevel checkStockLevel(StockLevel level) {
+        if (level.warehouse() == null || level.warehouse().equals(level.current())) {
+            return null;
+        }
+        if (level.warehouse() < 0) {
+            throw new IllegalArgumentException("Warehouse reports negative stock for product " + level.productId());
+        }
+        return level;
+    }
+
+    private void writeStockLevels(List<StockLevel> levels) {
+        List<Object[]> args = levels.stream()
+            .map(level -> new Object[] { level.warehouse(), level.productId(), level.current() == null ? -1 : level.current() })
+            .toList();
+        jdbcTemplate.batchUpdate(
+            "UPDATE products SET stock_quantity = ?, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id = ? AND COALESCE(stock_quantity, -1) = ?",
+            args
+        );
+    }
+
+    private record StockLevel(long productId, Integer current, Integer warehouse) {
+    }
 }
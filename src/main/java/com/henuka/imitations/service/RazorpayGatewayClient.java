@@ -0,0 +1,286 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.exception.PaymentException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * HTTP client for the Razorpay REST API, isolated from request threads.
+ *
+ * Calls go through the JDK HttpClient on a dedicated executor with connect and request timeouts.
+ * A bulkhead caps in-flight calls (and so open connections) and rejects immediately when full,
+ * and a circuit breaker fails fast while Razorpay is erroring or timing out. Callers wait at most
+ * the request timeout; a timed-out exchange is cancelled so it does not hold its permit.
+ */
+@Service
+public class RazorpayGatewayClient {
+
+    static final String GATEWAY_NAME = "razorpay";
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final HttpClient httpClient;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final String baseUrl;
+    private final String authorization;
+    private final Duration requestTimeout;
+
+    private static final Logger log = LoggerFactory.getLogger(RazorpayGatewayClient.class);
+
+    public RazorpayGatewayClient(ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 CircuitBreakerRegistry circuitBreakerRegistry,
+                                 BulkheadRegistry bulkheadRegistry,
+                                 @Qualifier("paymentGatewayExecutor") Executor paymentGatewayExecutor,
+                                 @Value("${app.payment.razorpay.base-url:https://api.razorpay.com/v1}") String baseUrl,
+                                 @Value("${app.payment.razorpay.key-id}") String keyId,
+                                 @Value("${app.payment.razorpay.key-secret}") String keySecret,
+                                 @Value("${app.payment.gateway.connect-timeout-ms:2000}") long connectTimeoutMs,
+                                 @Value("${app.payment.gateway.request-timeout-ms:5000}") long requestTimeoutMs,
+                                 @Value("${app.payment.gateway.max-concurrent-calls:20}") int maxConcurrentCalls) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.authorization = "Basic " + Base64.getEncoder()
+            .encodeToString((keyId + ":" + keySecret).getBytes(StandardCharsets.UTF_8));
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+
+        this.httpClient = HttpClient.newBuilder()
+            .executor(paymentGatewayExecutor)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .build();
+
+        // Registry defaults, plus: calls slower than half the timeout count against the breaker
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(GATEWAY_NAME,
+            CircuitBreakerConfig.from(circuitBreakerRegistry.getDefaultConfig())
+                .slowCallDurationThreshold(requestTimeout.dividedBy(2))
+                .slowCallRateThreshold(50)
+                .build());
+
+        // No waiting for a permit: a full bulkhead means Razorpay is already saturated
+        this.bulkhead = bulkheadRegistry.bulkhead(GATEWAY_NAME,
+            BulkheadConfig.from(bulkheadRegistry.getDefaultConfig())
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+    }
+
+    /**
+     * Create a Razorpay order; amounts are in the smallest currency unit.
+     */
+    public GatewayOrder createOrder(String receipt, long amount, String currency, Map<String, String> notes) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("amount", amount);
+        body.put("currency", currency);
+        body.put("receipt", receipt);
+        body.put("payment_capture", 1);
+        body.put("notes", notes);
+
+        JsonNode response = post("orders.create", "/orders", body);
+        return new GatewayOrder(response.path("id").asText(), response.path("status").asText(null));
+    }
+
+    /**
+     * Refund a captured payment; amounts are in the smallest currency unit.
+     *
+     * A timeout or transport failure does not mean no refund was made: the POST may have reached
+     * Razorpay and succeeded after we stopped waiting. Before trying again, callers must look for
+     * it with {@link #listRefunds}, as the bulk refund job and reconciliation do.
+     */
+    public GatewayRefund refund(String paymentId, long amount, Map<String, String> notes) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("amount", amount);
+        body.put("speed", "normal");
+        body.put("notes", notes);
+
+        JsonNode response = post("payments.refund", "/payments/" + paymentId + "/refund", body);
+        return new GatewayRefund(response.path("id").asText(), response.path("status").asText(null));
+    }
+
+    /**
+     * Refunds already issued against a payment, newest first.
+     */
+    public List<GatewayRefund> listRefunds(String paymentId) {
+        JsonNode response = execute("payments.refunds", newRequest("/payments/" + paymentId + "/refunds").GET().build());
+
+        List<GatewayRefund> refunds = new ArrayList<>(response.path("items").size());
+        for (JsonNode item : response.path("items")) {
+            refunds.add(new GatewayRefund(item.path("id").asText(), item.path("status").asText(null)));
+        }
+        return refunds;
+    }
+
+    /**
+     * One page of payments created in [from, to), newest first as Razorpay returns them;
+     * {@code count} is at most 100.
+     */
+    public List<GatewayPayment> listPayments(Instant from, Instant to, int skip, int count) {
+        String query = "?from=" + from.getEpochSecond() + "&to=" + (to.getEpochSecond() - 1) +
+            "&skip=" + skip + "&count=" + count;
+        JsonNode response = execute("payments.list", newRequest("/payments" + query).GET().build());
+
+        List<GatewayPayment> payments = new ArrayList<>(response.path("items").size());
+        for (JsonNode item : response.path("items")) {
+            payments.add(new GatewayPayment(
+                item.path("id").asText(),
+                item.path("order_id").asText(null),
+                item.path("status").asText(),
+                item.path("amount").asLong(),
+                item.path("currency").asText(null),
+                item.path("error_code").asText(null),
+                item.path("error_description").asText(null),
+                Instant.ofEpochSecond(item.path("created_at").asLong())
+            ));
+        }
+        return payments;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    private JsonNode post(String operation, String path, Object body) {
+        HttpRequest request;
+        try {
+            request = newRequest(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        } catch (IOException e) {
+            throw new PaymentException("Failed to encode " + operation + " request", e);
+        }
+        return execute(operation, request);
+    }
+
+    private HttpRequest.Builder newRequest(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(requestTimeout)
+            .header("Authorization", authorization);
+    }
+
+    private JsonNode execute(String operation, HttpRequest request) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            recordOutcome(operation, "circuit_open", 0);
+            throw new PaymentException("Payment gateway unavailable (circuit open) for " + operation);
+        }
+        if (!bulkhead.tryAcquirePermission()) {
+            circuitBreaker.releasePermission();
+            recordOutcome(operation, "bulkhead_full", 0);
+            throw new PaymentException("Payment gateway busy, rejected " + operation);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<byte[]>> future =
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        // The permit is returned when the exchange really ends, not when the caller gives up
+        future.whenComplete((response, error) -> bulkhead.onComplete());
+
+        HttpResponse<byte[]> response;
+        try {
+            response = future.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return fail(operation, start, "timeout",
+                new PaymentException("Payment gateway timed out after " + requestTimeout.toMillis() + "ms on " + operation, e));
+        } catch (ExecutionException e) {
+            return fail(operation, start, "error",
+                new PaymentException("Payment gateway call failed on " + operation, e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return fail(operation, start, "interrupted",
+                new PaymentException("Interrupted while calling payment gateway on " + operation, e));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        int status = response.statusCode();
+        if (status >= 500) {
+            return fail(operation, start, "server_error",
+                new PaymentException("Payment gateway returned " + status + " on " + operation));
+        }
+
+        // 4xx is a problem with our request, not with the gateway's health
+        circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+        recordOutcome(operation, status >= 400 ? "rejected" : "success", elapsed);
+
+        JsonNode json = parse(operation, response.body());
+        if (status >= 400) {
+            String description = json.path("error").path("description").asText("HTTP " + status);
+            throw new PaymentException("Payment gateway rejected " + operation + ": " + description);
+        }
+        return json;
+    }
+
+    private JsonNode fail(String operation, long start, String outcome, PaymentException error) {
+        long elapsed = System.nanoTime() - start;
+        circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, error);
+        recordOutcome(operation, outcome, elapsed);
+        log.warn("Razorpay {} failed ({}) after {}ms", operation, outcome, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        throw error;
+    }
+
+    private JsonNode parse(String operation, byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new PaymentException("Unreadable payment gateway response on " + operation, e);
+        }
+    }
+
+    private void recordOutcome(String operation, String outcome, long elapsedNanos) {
+        meterRegistry.timer("payment.gateway.call",
+            "gateway", GATEWAY_NAME,
+            "operation", operation,
+            "outcome", outcome)
+            .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public record GatewayOrder(String id, String status) {
+    }
+
+    public record GatewayRefund(String id, String status) {
+    }
+
+    // Amount is in the smallest currency unit; orderId is the Razorpay order id
+    public record GatewayPayment(String id,
+                                 String orderId,
+                                 String status,
+                                 long amount,
+                                 String currency,
+                                 String errorCode,
+                                 String errorDescription,
+                                 Instant createdAt) {
+    }
+}
@@ -0,0 +1,294 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.event.OrderStatusChangedEvent;
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.SalesRollup;
+import com.henuka.imitations.model.SalesRollup.Granularity;
+import com.henuka.imitations.repository.OrderArchiveRepository;
+import com.henuka.imitations.repository.OrderRepository;
+import com.henuka.imitations.repository.SalesRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains hourly and daily order rollups and answers range statistics from them.
+ *
+ * A bucket is always recomputed from the raw rows it covers rather than adjusted by deltas,
+ * so refreshing the same bucket twice gives the same row. Concurrent refreshes of one bucket are
+ * serialized on its row: a missing row is inserted empty (the loser of the unique key race keeps
+ * going) and then locked before it is written. Daily buckets are derived from their 24 hourly buckets.
+ * Raw rows are read from both the orders table and the archive, so rebuilding or refreshing an
+ * hour whose orders have been archived gives the same totals as before they were moved.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class SalesRollupService {
+
+    private final SalesRollupRepository salesRollupRepository;
+    private final OrderRepository orderRepository;
+    private final OrderArchiveRepository orderArchiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+    /**
+     * Refresh the affected buckets once a payment moves to PAID or REFUNDED.
+     */
+    @TransactionalEventListener
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (!event.paymentStatusChanged() || event.orderCreatedAt() == null) {
+            return;
+        }
+        if (event.paymentStatus() != Order.PaymentStatus.PAID
+                && event.paymentStatus() != Order.PaymentStatus.REFUNDED) {
+            return;
+        }
+        refreshHourAndDay(event.orderCreatedAt());
+    }
+
+    /**
+     * Recompute the hourly bucket containing the given time and the daily bucket above it.
+     */
+    public void refreshHourAndDay(LocalDateTime time) {
+        LocalDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+        refreshHour(hour);
+        refreshDay(hour.toLocalDate());
+    }
+
+    /**
+     * Rebuild every hourly and daily bucket for the given days (inclusive), one day per transaction.
+     */
+    @Transactional(propagation = Propagation.NEVER)
+    public int rebuild(LocalDate fromDate, LocalDate toDate) {
+        if (toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("Rebuild end date must not be before start date");
+        }
+
+        int days = 0;
+        for (LocalDate day = fromDate; !day.isAfter(toDate); day = day.plusDays(1)) {
+            LocalDate current = day;
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime start = current.atStartOfDay();
+                for (int h = 0; h < 24; h++) {
+                    refreshHour(start.plusHours(h));
+                }
+                refreshDay(current);
+            });
+            days++;
+        }
+
+        log.info("Rebuilt sales rollups for {} day(s) from {} to {}", days, fromDate, toDate);
+        return days;
+    }
+
+    /**
+     * Order statistics for orders created in [startDate, endDate).
+     *
+     * Whole days come from daily rollups, whole hours from hourly rollups, and only the
+     * partial hours at either edge of the range are aggregated from the order rows.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getOrderStatistics(LocalDateTime startDate, LocalDateTime endDate) {
+        RollupTotals totals = new RollupTotals();
+        if (!startDate.isBefore(endDate)) {
+            return totals.toStatistics();
+        }
+
+        LocalDateTime firstHour = ceil(startDate, ChronoUnit.HOURS);
+        LocalDateTime lastHour = endDate.truncatedTo(ChronoUnit.HOURS);
+
+        if (!firstHour.isBefore(lastHour)) {
+            addRaw(totals, startDate, endDate);
+            return totals.toStatistics();
+        }
+
+        if (startDate.isBefore(firstHour)) {
+            addRaw(totals, startDate, firstHour);
+        }
+
+        LocalDateTime firstDay = ceil(firstHour, ChronoUnit.DAYS);
+        LocalDateTime lastDay = lastHour.truncatedTo(ChronoUnit.DAYS);
+
+        if (firstDay.isBefore(lastDay)) {
+            totals.addRollups(salesRollupRepository.findBuckets(Granularity.HOURLY, firstHour, firstDay));
+            totals.addRollups(salesRollupRepository.findBuckets(Granularity.DAILY, firstDay, lastDay));
+            totals.addRollups(salesRollupRepository.findBuckets(Granularity.HOURLY, lastDay, lastHour));
+        } else {
+            totals.addRollups(salesRollupRepository.findBuckets(Granularity.HOURLY, firstHour, lastHour));
+        }
+
+        if (lastHour.isBefore(endDate)) {
+            addRaw(totals, lastHour, endDate);
+        }
+
+        return totals.toStatistics();
+    }
+
+    private void refreshHour(LocalDateTime hour) {
+        RollupTotals totals = new RollupTotals();
+        addRaw(totals, hour, hour.plusHours(1));
+        save(Granularity.HOURLY, hour, totals);
+    }
+
+    private void refreshDay(LocalDate day) {
+        LocalDateTime start = day.atStartOfDay();
+        RollupTotals totals = new RollupTotals();
+        totals.addRollups(salesRollupRepository.findBuckets(Granularity.HOURLY, start, start.plusDays(1)));
+        save(Granularity.DAILY, start, totals);
+    }
+
+    // Orders in [from, to), live and archived; an order is in exactly one of the two tables
+    private void addRaw(RollupTotals totals, LocalDateTime from, LocalDateTime to) {
+        totals.addRaw(orderRepository.aggregateByStatusBetween(from, to));
+        totals.addRaw(orderArchiveRepository.aggregateByStatusBetween(from, to));
+    }
+
+    private void save(Granularity granularity, LocalDateTime bucketStart, RollupTotals totals) {
+        SalesRollup rollup = salesRollupRepository.findForUpdate(granularity, bucketStart).orElse(null);
+        if (rollup == null) {
+            if (totals.orderCount == 0) {
+                // Empty buckets are implied by absence; no need to materialize them
+                return;
+            }
+            insertEmptyBucket(granularity, bucketStart);
+            rollup = salesRollupRepository.findForUpdate(granularity, bucketStart)
+                .orElseThrow(() -> new IllegalStateException("Rollup bucket vanished: " + granularity + " " + bucketStart));
+        }
+
+        totals.applyTo(rollup);
+        salesRollupRepository.save(rollup);
+    }
+
+    // Plain JDBC rather than a repository call, so a duplicate key does not mark the transaction rollback-only
+    private void insertEmptyBucket(Granularity granularity, LocalDateTime bucketStart) {
+        try {
+            jdbcTemplate.update(
+                "INSERT INTO sales_rollups (granularity, bucket_start, updated_at) VALUES (?, ?, CURRENT_TIMESTAMP)",
+                granularity.name(), Timestamp.valueOf(bucketStart));
+        } catch (DuplicateKeyException e) {
+            // A concurrent refresh inserted it first; its values are overwritten below once it commits
+            log.debug("Rollup bucket {} {} was inserted concurrently", granularity, bucketStart);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? truncated : truncated.plus(1, unit);
+    }
+
+    /**
+     * Mutable accumulator shared by raw aggregates and stored rollups.
+     */
+    private static final class RollupTotals {
+        private long orderCount;
+        private BigDecimal revenue = BigDecimal.ZERO;
+        private BigDecimal refundedAmount = BigDecimal.ZERO;
+        private final Map<Order.OrderStatus, Long> statusCounts = new EnumMap<>(Order.OrderStatus.class);
+        private final Map<Order.PaymentStatus, Long> paymentStatusCounts = new EnumMap<>(Order.PaymentStatus.class);
+
+        // Rows are [status, paymentStatus, count, sum(totalAmount)]
+        void addRaw(List<Object[]> rows) {
+            for (Object[] row : rows) {
+                Order.OrderStatus status = (Order.OrderStatus) row[0];
+                Order.PaymentStatus paymentStatus = (Order.PaymentStatus) row[1];
+                long count = ((Number) row[2]).longValue();
+                BigDecimal amount = toBigDecimal(row[3]);
+
+                orderCount += count;
+                if (status != null) {
+                    statusCounts.merge(status, count, Long::sum);
+                }
+                if (paymentStatus != null) {
+                    paymentStatusCounts.merge(paymentStatus, count, Long::sum);
+                }
+                if (paymentStatus == Order.PaymentStatus.PAID) {
+                    revenue = revenue.add(amount);
+                } else if (paymentStatus == Order.PaymentStatus.REFUNDED) {
+                    refundedAmount = refundedAmount.add(amount);
+                }
+            }
+        }
+
+        void addRollups(List<SalesRollup> rollups) {
+            for (SalesRollup rollup : rollups) {
+                orderCount += rollup.getOrderCount();
+                revenue = revenue.add(rollup.getRevenue());
+                refundedAmount = refundedAmount.add(rollup.getRefundedAmount());
+                for (Order.OrderStatus status : Order.OrderStatus.values()) {
+                    statusCounts.merge(status, rollup.getStatusCount(status), Long::sum);
+                }
+                for (Order.PaymentStatus paymentStatus : Order.PaymentStatus.values()) {
+                    paymentStatusCounts.merge(paymentStatus, rollup.getPaymentStatusCount(paymentStatus), Long::sum);
+                }
+            }
+        }
+
+        void applyTo(SalesRollup rollup) {
+            rollup.setOrderCount(orderCount);
+            rollup.setRevenue(revenue);
+            rollup.setRefundedAmount(refundedAmount);
+            rollup.setPendingCount(status(Order.OrderStatus.PENDING));
+            rollup.setConfirmedCount(status(Order.OrderStatus.CONFIRMED));
+            rollup.setShippedCount(status(Order.OrderStatus.SHIPPED));
+            rollup.setDeliveredCount(status(Order.OrderStatus.DELIVERED));
+            rollup.setCancelledCount(status(Order.OrderStatus.CANCELLED));
+            rollup.setPaymentPendingCount(payment(Order.PaymentStatus.PENDING));
+            rollup.setPaymentPaidCount(payment(Order.PaymentStatus.PAID));
+            rollup.setPaymentFailedCount(payment(Order.PaymentStatus.FAILED));
+            rollup.setPaymentRefundedCount(payment(Order.PaymentStatus.REFUNDED));
+        }
+
+        // Keeps the keys returned by the original OrderRepository.getOrderStatistics query
+        Map<String, Object> toStatistics() {
+            long paidOrders = payment(Order.PaymentStatus.PAID);
+            Map<String, Object> statistics = new HashMap<>();
+            statistics.put("totalOrders", paidOrders);
+            statistics.put("totalRevenue", revenue);
+            statistics.put("averageOrderValue", paidOrders == 0
+                ? BigDecimal.ZERO
+                : revenue.divide(BigDecimal.valueOf(paidOrders), 2, RoundingMode.HALF_UP));
+            statistics.put("allOrders", orderCount);
+            statistics.put("refundedAmount", refundedAmount);
+            statistics.put("statusCounts", new EnumMap<>(statusCounts));
+            statistics.put("paymentStatusCounts", new EnumMap<>(paymentStatusCounts));
+            return statistics;
+        }
+
+        private long status(Order.OrderStatus status) {
+            return statusCounts.getOrDefault(status, 0L);
+        }
+
+        private long payment(Order.PaymentStatus paymentStatus) {
+            return paymentStatusCounts.getOrDefault(paymentStatus, 0L);
+        }
+
+        private static BigDecimal toBigDecimal(Object value) {
+            if (value instanceof BigDecimal decimal) {
+                return decimal;
+            }
+            return value == null ? BigDecimal.ZERO : new BigDecimal(value.toString());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.henuka.imitations.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Identity of this node in the scheduled job lock table, and whether cluster locks are in use.
+ * Configured with {@code app.scheduling.node-id}, or host name and process id by default.
+ */
+@Component
+public class SchedulerNode {
+
+    private final String id;
+    private final boolean clusterLocks;
+
+    public SchedulerNode(@Value("${app.scheduling.node-id:}") String configuredId,
+                         @Value("${app.scheduling.cluster-locks.enabled:true}") boolean clusterLocks) {
+        this.id = configuredId.isBlank() ? defaultId() : configuredId;
+        this.clusterLocks = clusterLocks;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * False when the node runs alone and cluster-wide work needs no lease.
+     */
+    public boolean clusterLocks() {
+        return clusterLocks;
+    }
+
+    private static String defaultId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + ":" + ProcessHandle.current().pid();
+    }
+}
@@ -0,0 +1,28 @@
+-- Payment state changes, appended in the same transaction as the change and never updated
+CREATE TABLE IF NOT EXISTS payment_events (
+    id                BIGINT AUTO_INCREMENT PRIMARY KEY,
+    event_type        VARCHAR(40)    NOT NULL,
+    order_id          VARCHAR(255)   NOT NULL,
+    payment_order_id  VARCHAR(255),
+    payment_id        VARCHAR(255),
+    amount            DECIMAL(19, 2),
+    detail            VARCHAR(500),
+    created_at        TIMESTAMP      NOT NULL
+);
+
+-- Highest payment_events id each handler has finished with
+CREATE TABLE IF NOT EXISTS payment_event_checkpoints (
+    handler        VARCHAR(64)  PRIMARY KEY,
+    last_event_id  BIGINT       NOT NULL DEFAULT 0,
+    updated_at     TIMESTAMP    NOT NULL
+);
+
+-- Events a handler gave up on after exhausting its retries
+CREATE TABLE IF NOT EXISTS payment_event_dead_letters (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    handler     VARCHAR(64)   NOT NULL,
+    event_id    BIGINT        NOT NULL,
+    attempts    INTEGER       NOT NULL,
+    error       VARCHAR(500),
+    created_at  TIMESTAMP     NOT NULL
+);
@@ -0,0 +1,30 @@
+-- Mass refund jobs and their per-order progress, so an interrupted job resumes where it stopped
+CREATE TABLE IF NOT EXISTS bulk_refund_jobs (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    reason        VARCHAR(255),
+    status        VARCHAR(20)  NOT NULL,
+    total         INTEGER      NOT NULL DEFAULT 0,
+    refunded      INTEGER      NOT NULL DEFAULT 0,
+    failed        INTEGER      NOT NULL DEFAULT 0,
+    skipped       INTEGER      NOT NULL DEFAULT 0,
+    created_at    TIMESTAMP    NOT NULL,
+    started_at    TIMESTAMP,
+    heartbeat_at  TIMESTAMP    NOT NULL,
+    finished_at   TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS bulk_refund_items (
+    id              BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_id          BIGINT          NOT NULL,
+    order_number    VARCHAR(255)    NOT NULL,
+    status          VARCHAR(20)     NOT NULL,
+    amount          DECIMAL(19, 2),
+    refund_id       VARCHAR(255),
+    order_refunded  BOOLEAN         NOT NULL DEFAULT FALSE,
+    attempts        INTEGER         NOT NULL DEFAULT 0,
+    error           VARCHAR(500),
+    updated_at      TIMESTAMP,
+    CONSTRAINT uk_bulk_refund_items_job_order UNIQUE (job_id, order_number)
+);
+
+CREATE INDEX IF NOT EXISTS idx_bulk_refund_items_job_status ON bulk_refund_items (job_id, status, id);
@@ -0,0 +1,20 @@
+-- Outgoing emails, rendered at enqueue time and sent by the email dispatcher
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id               BIGINT AUTO_INCREMENT PRIMARY KEY,
+    recipient        VARCHAR(255)   NOT NULL,
+    subject          VARCHAR(500)   NOT NULL,
+    template         VARCHAR(100)   NOT NULL,
+    html_body        TEXT           NOT NULL,
+    attachment_name  VARCHAR(255),
+    attachment_type  VARCHAR(100),
+    attachment       BLOB,
+    status           VARCHAR(20)    NOT NULL,
+    attempts         INTEGER        NOT NULL DEFAULT 0,
+    -- When PENDING: earliest next send; when SENDING: end of the sender's lease
+    next_attempt_at  TIMESTAMP      NOT NULL,
+    last_error       VARCHAR(500),
+    created_at       TIMESTAMP      NOT NULL,
+    sent_at          TIMESTAMP
+);
+
+CREATE INDEX idx_email_outbox_due ON email_outbox (status, next_attempt_at);
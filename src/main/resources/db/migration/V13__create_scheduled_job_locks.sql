@@ -0,0 +1,18 @@
+-- One row per cluster-wide scheduled job (or job shard); the holder renews locked_until while it runs
+CREATE TABLE IF NOT EXISTS scheduled_job_locks (
+    job_name          VARCHAR(150)  PRIMARY KEY,
+    locked_by         VARCHAR(255),
+    locked_until      TIMESTAMP     NOT NULL,
+    last_started_at   TIMESTAMP,
+    last_finished_at  TIMESTAMP,
+    last_duration_ms  BIGINT,
+    last_node         VARCHAR(255),
+    last_outcome      VARCHAR(20)
+);
+
+-- Nodes running scheduled jobs; a node is live while its heartbeat is recent
+CREATE TABLE IF NOT EXISTS scheduler_nodes (
+    node_id       VARCHAR(255)  PRIMARY KEY,
+    started_at    TIMESTAMP     NOT NULL,
+    heartbeat_at  TIMESTAMP     NOT NULL
+);
@@ -0,0 +1,31 @@
+-- One row per batch job partition: how far its current run got, and what it has done so far.
+-- last_key is the key of the last item committed; a run that did not complete resumes after it.
+CREATE TABLE IF NOT EXISTS batch_checkpoints (
+    job_name         VARCHAR(100)  NOT NULL,
+    partition_index  INTEGER       NOT NULL,
+    partition_count  INTEGER       NOT NULL,
+    status           VARCHAR(20)   NOT NULL,
+    last_key         BIGINT,
+    read_count       BIGINT        NOT NULL DEFAULT 0,
+    written_count    BIGINT        NOT NULL DEFAULT 0,
+    filtered_count   BIGINT        NOT NULL DEFAULT 0,
+    skipped_count    BIGINT        NOT NULL DEFAULT 0,
+    chunk_count      BIGINT        NOT NULL DEFAULT 0,
+    started_at       TIMESTAMP     NOT NULL,
+    updated_at       TIMESTAMP     NOT NULL,
+    finished_at      TIMESTAMP,
+    last_error       VARCHAR(1000),
+    PRIMARY KEY (job_name, partition_index)
+);
+
+-- Items skipped by the current run of each partition, with the reason
+CREATE TABLE IF NOT EXISTS batch_skipped_items (
+    id               BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_name         VARCHAR(100)  NOT NULL,
+    partition_index  INTEGER       NOT NULL,
+    item_key         BIGINT        NOT NULL,
+    error            VARCHAR(1000),
+    skipped_at       TIMESTAMP     NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_batch_skipped_items_job ON batch_skipped_items (job_name, partition_index);
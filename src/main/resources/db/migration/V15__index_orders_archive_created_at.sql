@@ -0,0 +1,2 @@
+-- Rollup rebuilds aggregate archived orders by creation hour alongside the hot table
+CREATE INDEX IF NOT EXISTS idx_orders_archive_created_at ON orders_archive (created_at);
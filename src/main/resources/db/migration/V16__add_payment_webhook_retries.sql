@@ -0,0 +1,4 @@
+-- Retries and lane claims for payment webhooks. When RECEIVED, next_attempt_at is the earliest
+-- next try (null for straight away); when QUEUED, it is the end of the claiming lane's lease.
+ALTER TABLE payment_webhook_events ADD COLUMN IF NOT EXISTS attempts INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE payment_webhook_events ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMP;
@@ -0,0 +1,8 @@
+-- Event ids a handler moved past while they were missing. A transaction that appended one may
+-- still commit; the handler then delivers it late. Rows older than the retention are dropped.
+CREATE TABLE IF NOT EXISTS payment_event_gaps (
+    handler     VARCHAR(64)  NOT NULL,
+    event_id    BIGINT       NOT NULL,
+    skipped_at  TIMESTAMP    NOT NULL,
+    PRIMARY KEY (handler, event_id)
+);
@@ -0,0 +1,5 @@
+-- Optional idempotency key for queued emails, e.g. the payment event and handler that queued it;
+-- a repeated delivery of the same event then finds its email already queued
+ALTER TABLE email_outbox ADD COLUMN IF NOT EXISTS dedup_key VARCHAR(100);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_email_outbox_dedup_key ON email_outbox (dedup_key);
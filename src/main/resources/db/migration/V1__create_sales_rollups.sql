@@ -0,0 +1,21 @@
+-- Hourly and daily pre-aggregated order statistics, keyed by granularity + bucket start
+CREATE TABLE IF NOT EXISTS sales_rollups (
+    id                     BIGINT AUTO_INCREMENT PRIMARY KEY,
+    granularity            VARCHAR(10)    NOT NULL,
+    bucket_start           TIMESTAMP      NOT NULL,
+    order_count            BIGINT         NOT NULL DEFAULT 0,
+    revenue                DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    average_order_value    DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    refunded_amount        DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    pending_count          BIGINT         NOT NULL DEFAULT 0,
+    confirmed_count        BIGINT         NOT NULL DEFAULT 0,
+    shipped_count          BIGINT         NOT NULL DEFAULT 0,
+    delivered_count        BIGINT         NOT NULL DEFAULT 0,
+    cancelled_count        BIGINT         NOT NULL DEFAULT 0,
+    payment_pending_count  BIGINT         NOT NULL DEFAULT 0,
+    payment_paid_count     BIGINT         NOT NULL DEFAULT 0,
+    payment_failed_count   BIGINT         NOT NULL DEFAULT 0,
+    payment_refunded_count BIGINT         NOT NULL DEFAULT 0,
+    updated_at             TIMESTAMP,
+    CONSTRAINT uk_sales_rollups_bucket UNIQUE (granularity, bucket_start)
+);
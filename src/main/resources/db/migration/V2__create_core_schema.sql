@@ -0,0 +1,67 @@
+-- Core tables as mapped by the JPA entities, so a fresh database can be built by Flyway alone.
+-- IF NOT EXISTS keeps this a no-op on databases Hibernate has already created.
+CREATE TABLE IF NOT EXISTS products (
+    id             BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name           VARCHAR(255),
+    description    TEXT,
+    price          DECIMAL(19, 2),
+    image_url      VARCHAR(255),
+    stock_quantity INTEGER,
+    category       VARCHAR(255),
+    is_featured    BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at     TIMESTAMP,
+    updated_at     TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS orders (
+    id               BIGINT AUTO_INCREMENT PRIMARY KEY,
+    order_number     VARCHAR(255) UNIQUE,
+    customer_name    VARCHAR(255),
+    email            VARCHAR(255),
+    phone_number     VARCHAR(255),
+    shipping_address TEXT,
+    subtotal         DECIMAL(19, 2),
+    shipping_cost    DECIMAL(19, 2),
+    total_amount     DECIMAL(19, 2),
+    order_status     VARCHAR(20),
+    payment_status   VARCHAR(20),
+    payment_id       VARCHAR(255),
+    created_at       TIMESTAMP,
+    updated_at       TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS order_items (
+    id         BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    quantity   INTEGER,
+    unit_price DECIMAL(19, 2),
+    subtotal   DECIMAL(19, 2),
+    order_id   BIGINT,
+    CONSTRAINT fk_order_items_product FOREIGN KEY (product_id) REFERENCES products (id),
+    CONSTRAINT fk_order_items_order FOREIGN KEY (order_id) REFERENCES orders (id)
+);
+
+CREATE TABLE IF NOT EXISTS cart_items (
+    id         BIGINT AUTO_INCREMENT PRIMARY KEY,
+    product_id BIGINT       NOT NULL,
+    quantity   INTEGER,
+    session_id VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP,
+    CONSTRAINT fk_cart_items_product FOREIGN KEY (product_id) REFERENCES products (id)
+);
+
+CREATE TABLE IF NOT EXISTS payment_orders (
+    id                BIGINT AUTO_INCREMENT PRIMARY KEY,
+    order_id          VARCHAR(255)   NOT NULL,
+    payment_order_id  VARCHAR(255) UNIQUE,
+    payment_id        VARCHAR(255),
+    refund_id         VARCHAR(255),
+    amount            DECIMAL(19, 2) NOT NULL,
+    currency          VARCHAR(255)   NOT NULL,
+    status            VARCHAR(20)    NOT NULL,
+    error_code        VARCHAR(255),
+    error_description VARCHAR(255),
+    created_at        TIMESTAMP,
+    updated_at        TIMESTAMP
+);
@@ -0,0 +1,5 @@
+-- Composite indexes for the common admin search shapes: an equality filter plus a created_at range.
+-- Mirrored in the @Table(indexes) mapping on Order.
+CREATE INDEX IF NOT EXISTS idx_orders_email_created_at ON orders (email, created_at);
+CREATE INDEX IF NOT EXISTS idx_orders_status_created_at ON orders (order_status, created_at);
+CREATE INDEX IF NOT EXISTS idx_orders_payment_status_created_at ON orders (payment_status, created_at);
@@ -0,0 +1,32 @@
+-- Cold storage for orders in terminal states. Rows are moved here by OrderArchiveService
+-- and keep their original ids so archived items still point at their order.
+CREATE TABLE IF NOT EXISTS orders_archive (
+    id               BIGINT PRIMARY KEY,
+    order_number     VARCHAR(255),
+    customer_name    VARCHAR(255),
+    email            VARCHAR(255),
+    phone_number     VARCHAR(255),
+    shipping_address TEXT,
+    subtotal         DECIMAL(19, 2),
+    shipping_cost    DECIMAL(19, 2),
+    total_amount     DECIMAL(19, 2),
+    order_status     VARCHAR(20),
+    payment_status   VARCHAR(20),
+    payment_id       VARCHAR(255),
+    created_at       TIMESTAMP,
+    updated_at       TIMESTAMP,
+    archived_at      TIMESTAMP NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_orders_archive_order_number ON orders_archive (order_number);
+
+CREATE TABLE IF NOT EXISTS order_items_archive (
+    id          BIGINT PRIMARY KEY,
+    product_id  BIGINT NOT NULL,
+    quantity    INTEGER,
+    unit_price  DECIMAL(19, 2),
+    subtotal    DECIMAL(19, 2),
+    order_id    BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_order_items_archive_order_id ON order_items_archive (order_id);
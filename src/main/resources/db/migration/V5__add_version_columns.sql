@@ -0,0 +1,3 @@
+-- Optimistic locking for order and payment order status transitions.
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE payment_orders ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
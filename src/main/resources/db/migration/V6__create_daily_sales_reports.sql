@@ -0,0 +1,17 @@
+-- One precomputed sales report per day, rendered and re-sent without touching orders again
+CREATE TABLE IF NOT EXISTS daily_sales_reports (
+    id                  BIGINT AUTO_INCREMENT PRIMARY KEY,
+    report_date         DATE           NOT NULL,
+    order_count         BIGINT         NOT NULL DEFAULT 0,
+    units_sold          BIGINT         NOT NULL DEFAULT 0,
+    product_count       INTEGER        NOT NULL DEFAULT 0,
+    revenue             DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    item_revenue        DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    average_order_value DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    category_breakdown  TEXT,
+    top_sellers         TEXT,
+    product_csv         BLOB,
+    generated_at        TIMESTAMP      NOT NULL,
+    generation_millis   BIGINT         NOT NULL DEFAULT 0,
+    CONSTRAINT uk_daily_sales_reports_date UNIQUE (report_date)
+);
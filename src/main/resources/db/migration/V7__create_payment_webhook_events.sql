@@ -0,0 +1,16 @@
+-- Raw Razorpay webhook deliveries, one row per gateway event id; the payload is never rewritten
+CREATE TABLE IF NOT EXISTS payment_webhook_events (
+    id                BIGINT AUTO_INCREMENT PRIMARY KEY,
+    event_id          VARCHAR(64)  NOT NULL,
+    event_type        VARCHAR(64)  NOT NULL,
+    payment_order_id  VARCHAR(255),
+    payment_id        VARCHAR(255),
+    payload           TEXT         NOT NULL,
+    received_at       TIMESTAMP    NOT NULL,
+    status            VARCHAR(20)  NOT NULL,
+    processed_at      TIMESTAMP,
+    error             VARCHAR(500),
+    CONSTRAINT uk_payment_webhook_events_event_id UNIQUE (event_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_payment_webhook_events_status ON payment_webhook_events (status, id);
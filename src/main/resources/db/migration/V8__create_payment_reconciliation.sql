@@ -0,0 +1,33 @@
+-- One row per reconciliation pass over a window of gateway payments
+CREATE TABLE IF NOT EXISTS payment_reconciliation_runs (
+    id                BIGINT AUTO_INCREMENT PRIMARY KEY,
+    window_start      TIMESTAMP    NOT NULL,
+    window_end        TIMESTAMP    NOT NULL,
+    status            VARCHAR(20)  NOT NULL,
+    gateway_payments  BIGINT       NOT NULL DEFAULT 0,
+    matched           BIGINT       NOT NULL DEFAULT 0,
+    corrected         BIGINT       NOT NULL DEFAULT 0,
+    mismatches        BIGINT       NOT NULL DEFAULT 0,
+    started_at        TIMESTAMP    NOT NULL,
+    finished_at       TIMESTAMP,
+    error             VARCHAR(500)
+);
+
+-- Every disagreement found by a run, whether or not it was corrected
+CREATE TABLE IF NOT EXISTS payment_reconciliation_mismatches (
+    id                BIGINT AUTO_INCREMENT PRIMARY KEY,
+    run_id            BIGINT        NOT NULL,
+    kind              VARCHAR(40)   NOT NULL,
+    payment_id        VARCHAR(255)  NOT NULL,
+    payment_order_id  VARCHAR(255),
+    order_id          VARCHAR(255),
+    gateway_status    VARCHAR(20),
+    local_status      VARCHAR(20),
+    gateway_amount    BIGINT,
+    local_amount      BIGINT,
+    corrected         BOOLEAN       NOT NULL DEFAULT FALSE,
+    detail            VARCHAR(500),
+    created_at        TIMESTAMP     NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_payment_reconciliation_mismatches_run ON payment_reconciliation_mismatches (run_id, id);
@@ -0,0 +1,2 @@
+-- At most one payment order per shop order; backs single-flight creation in PaymentService
+CREATE UNIQUE INDEX IF NOT EXISTS uk_payment_orders_order_id ON payment_orders (order_id);
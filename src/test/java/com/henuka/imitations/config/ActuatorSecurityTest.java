@@ -0,0 +1,65 @@
+package com.henuka.imitations.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Only the scrape user and admins read {@code /actuator/prometheus}; health stays public.
+ */
+@SpringBootTest(properties = "app.metrics.scrape-password=scrape-secret")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class ActuatorSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void anonymousScrapeIsRejected() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void scrapeUserReadsMetrics() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "scrape-secret")))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    void wrongScrapePasswordIsRejected() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic("prometheus", "wrong")))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    @WithMockUser(roles = "METRICS")
+    void scrapeUserCannotReachOtherEndpoints() throws Exception {
+        mockMvc.perform(get("/actuator/batchjobs"))
+            .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser
+    void customersCannotScrape() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+            .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void healthIsPublic() throws Exception {
+        // Up or down depends on the mail and Redis servers the test has no access to
+        mockMvc.perform(get("/actuator/health"))
+            .andExpect(result -> assertThat(result.getResponse().getStatus()).isNotIn(401, 403));
+    }
+}
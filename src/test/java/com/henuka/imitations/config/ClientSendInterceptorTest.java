@@ -0,0 +1,49 @@
+package com.henuka.imitations.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClientSendInterceptorTest {
+
+    private final ClientSendInterceptor interceptor = new ClientSendInterceptor();
+
+    @Test
+    void rejectsSendToTrackingTopic() {
+        assertThatThrownBy(() -> interceptor.preSend(frame(StompCommand.SEND, "/topic/orders/ORD-1"), null))
+            .isInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void rejectsRelayToTrackingTopic() {
+        assertThatThrownBy(() -> interceptor.preSend(frame(StompCommand.SEND, "/app/send/orders/ORD-1"), null))
+            .isInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void allowsRelayToOtherTopics() {
+        Message<byte[]> message = frame(StompCommand.SEND, "/app/send/lobby");
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+
+    @Test
+    void allowsSubscribingToTrackingTopic() {
+        Message<byte[]> message = frame(StompCommand.SUBSCRIBE, "/topic/orders/ORD-1");
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        if (command == StompCommand.SUBSCRIBE) {
+            accessor.setSubscriptionId("sub-0");
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,117 @@
+package com.henuka.imitations.config;
+
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.repository.OrderRepository;
+import com.henuka.imitations.repository.OrderSpecifications;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The admin search shapes built by {@link OrderSpecifications} must be answered from the composite
+ * indexes of V3__add_order_search_indexes.sql rather than a scan of the orders table. Each shape's
+ * SQL is the statement Hibernate prepares for it, recorded by {@link QueryCounter}, explained with
+ * the values it was run with.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class OrderSearchIndexTest {
+
+    private static final String[] EMAILS = {"a@example.com", "b@example.com", "c@example.com", "d@example.com"};
+    private static final LocalDateTime FROM = LocalDateTime.of(2024, 1, 10, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2024, 1, 20, 0, 0);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @BeforeAll
+    void seedOrders() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        String prefix = "ORD-IDX-" + System.nanoTime() + "-";
+        Order.OrderStatus[] statuses = Order.OrderStatus.values();
+        Order.PaymentStatus[] paymentStatuses = Order.PaymentStatus.values();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            rows.add(new Object[] {
+                prefix + i,
+                EMAILS[i % EMAILS.length],
+                statuses[i % statuses.length].name(),
+                paymentStatuses[i % paymentStatuses.length].name(),
+                Timestamp.valueOf(start.plusHours(i))
+            });
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO orders (order_number, email, order_status, payment_status, total_amount, created_at) " +
+            "VALUES (?, ?, ?, ?, 100.00, ?)", rows);
+        // Fresh statistics, so the planner costs the indexes against real row counts
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterEach
+    void stopRecording() {
+        QueryCounter.stop();
+    }
+
+    @Test
+    void emailAndDateRangeUseEmailIndex() {
+        assertThat(plan(OrderSpecifications.search("a@example.com", null, null, null, null, FROM, TO),
+                "a@example.com", Timestamp.valueOf(FROM), Timestamp.valueOf(TO)))
+            .containsIgnoringCase("idx_orders_email_created_at");
+    }
+
+    @Test
+    void statusAndDateRangeUseStatusIndex() {
+        assertThat(plan(OrderSpecifications.search(null, Order.OrderStatus.SHIPPED, null, null, null, FROM, TO),
+                Order.OrderStatus.SHIPPED.name(), Timestamp.valueOf(FROM), Timestamp.valueOf(TO)))
+            .containsIgnoringCase("idx_orders_status_created_at");
+    }
+
+    @Test
+    void paymentStatusAndDateRangeUsePaymentStatusIndex() {
+        assertThat(plan(OrderSpecifications.search(null, null, Order.PaymentStatus.PAID, null, null, FROM, null),
+                Order.PaymentStatus.PAID.name(), Timestamp.valueOf(FROM)))
+            .containsIgnoringCase("idx_orders_payment_status_created_at");
+    }
+
+    @Test
+    void specificationOnlyFiltersOnSuppliedValues() {
+        QueryCounter.record();
+        List<Order> orders = orderRepository.findAll(OrderSpecifications.search(
+            "a@example.com", null, null, null, null,
+            LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 2, 0, 0)));
+
+        // Hours 0, 4, 8, ..., 24 of the first day belong to a@example.com
+        assertThat(orders).hasSize(7).allMatch(order -> "a@example.com".equals(order.getEmail()));
+        String where = searchStatement().toLowerCase().split(" where ", 2)[1];
+        assertThat(where).contains("email", "created_at").doesNotContain("order_status", "payment_status",
+            "total_amount", "is null");
+    }
+
+    // Run the search, then explain the statement Hibernate prepared for it with the given values bound
+    private String plan(Specification<Order> search, Object... values) {
+        QueryCounter.record();
+        orderRepository.findAll(search);
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + searchStatement(), String.class, values));
+    }
+
+    private String searchStatement() {
+        List<String> statements = QueryCounter.statements();
+        assertThat(statements).hasSize(1);
+        return statements.get(0);
+    }
+}
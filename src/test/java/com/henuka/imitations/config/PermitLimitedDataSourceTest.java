@@ -0,0 +1,42 @@
+package com.henuka.imitations.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PermitLimitedDataSourceTest {
+
+    private final PermitLimitedDataSource dataSource =
+        new PermitLimitedDataSource(new DriverManagerDataSource("jdbc:h2:mem:permits"), 1, 200);
+
+    @Test
+    void secondConnectionTimesOutInsteadOfWaitingForever() throws Exception {
+        try (Connection held = dataSource.getConnection()) {
+            long start = System.nanoTime();
+            // A nested REQUIRES_NEW transaction on the same thread
+            assertThatThrownBy(dataSource::getConnection)
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessageContaining("200ms");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            assertThat(held.isClosed()).isFalse();
+        }
+    }
+
+    @Test
+    void closingAConnectionReturnsItsPermitOnce() throws Exception {
+        Connection first = dataSource.getConnection();
+        first.close();
+        first.close();
+
+        try (Connection second = dataSource.getConnection()) {
+            assertThat(second.isValid(1)).isTrue();
+            assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.henuka.imitations.config;
+
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.Product;
+import com.henuka.imitations.repository.OrderRepository;
+import com.henuka.imitations.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Every {@code @QueryBudget} page renders an order with several items, each of a different
+ * product, within its budget while budgets are enforced; a fan-out per item or product fails here.
+ */
+@SpringBootTest(properties = "app.query-budget.enforce=true")
+@AutoConfigureMockMvc
+class QueryBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private Order order;
+
+    @BeforeEach
+    void seedOrder() {
+        order = new Order();
+        order.setCustomerName("Test Customer");
+        order.setEmail("customer@example.com");
+        order.setPhoneNumber("9999999999");
+        order.setShippingAddress("1 Test Street");
+        for (int i = 0; i < 5; i++) {
+            Product product = new Product();
+            product.setName("Budget Product " + i);
+            product.setPrice(new BigDecimal("100.00"));
+            product.setStockQuantity(10);
+            product.setCategory("Necklaces");
+            order.addItem(productRepository.save(product), 1);
+        }
+        order = orderRepository.save(order);
+    }
+
+    @AfterEach
+    void clearCounter() {
+        QueryCounter.stop();
+    }
+
+    @Test
+    void trackingPageStaysWithinBudget() throws Exception {
+        mockMvc.perform(get("/orders/track/{orderNumber}", order.getOrderNumber()))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser
+    void confirmationPageStaysWithinBudget() throws Exception {
+        mockMvc.perform(get("/orders/confirmation/{orderNumber}", order.getOrderNumber()))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    void enforcingFailsTheStatementThatGoesOverBudget() {
+        QueryCounter counter = new QueryCounter();
+        QueryCounter.start(true);
+        QueryCounter.limit(2, "OrderController#trackOrder");
+
+        counter.inspect("select 1");
+        counter.inspect("select 2");
+
+        assertThatThrownBy(() -> counter.inspect("select 3"))
+            .isInstanceOf(QueryBudgetExceededException.class)
+            .hasMessageContaining("OrderController#trackOrder")
+            .hasMessageContaining("select 3");
+        assertThat(QueryCounter.stop()).isEqualTo(3);
+    }
+
+    @Test
+    void withoutEnforcingStatementsAreOnlyCounted() {
+        QueryCounter counter = new QueryCounter();
+        QueryCounter.start(false);
+        QueryCounter.limit(1, "OrderController#trackOrder");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(counter.inspect("select " + i)).isEqualTo("select " + i);
+        }
+        assertThat(QueryCounter.stop()).isEqualTo(5);
+    }
+
+    @Test
+    void statementsOutsideARequestAreNotCounted() {
+        QueryCounter counter = new QueryCounter();
+        QueryCounter.limit(0, "OrderController#trackOrder");
+
+        assertThat(counter.inspect("select 1")).isEqualTo("select 1");
+        assertThat(QueryCounter.stop()).isZero();
+    }
+}
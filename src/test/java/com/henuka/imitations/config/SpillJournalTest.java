@@ -0,0 +1,273 @@
+package com.henuka.imitations.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Appends, replay and recovery of {@link SpillJournal}, including segments torn or corrupted
+ * mid-record. A journal left open and replaced by a new one stands in for a process crash.
+ */
+class SpillJournalTest {
+
+    private static final String NAME = "tasks";
+    private static final int SEGMENT_SIZE = 512;
+    private static final int HEADER = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsInOrderAcrossSegments() {
+        try (SpillJournal journal = open()) {
+            for (int i = 0; i < 40; i++) {
+                assertThat(journal.append("task", payload(i))).isEqualTo(i);
+            }
+            assertThat(segmentFiles()).hasSizeGreaterThan(1);
+            assertThat(journal.unread()).isEqualTo(40);
+
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(0, 40));
+            assertThat(journal.unread()).isZero();
+            assertThat(journal.peek()).isNull();
+        }
+    }
+
+    @Test
+    void rejectsRecordsLargerThanASegment() {
+        try (SpillJournal journal = open()) {
+            assertThat(journal.append("task", new byte[SEGMENT_SIZE])).isEqualTo(-1);
+            assertThat(journal.append("task", payload(0))).isZero();
+        }
+    }
+
+    @Test
+    void replaysRecordsReadButNotCommittedAfterACrash() {
+        SpillJournal crashed = open();
+        for (int i = 0; i < 30; i++) {
+            crashed.append("task", payload(i));
+        }
+        drain(crashed, 10);
+        crashed.commit(crashed.cursor());
+        // Read but not finished when the process died
+        drain(crashed, 5);
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(20);
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(10, 30));
+            assertThat(journal.append("task", payload(30))).isEqualTo(30);
+        }
+    }
+
+    @Test
+    void commitDeletesSegmentsBehindIt() {
+        try (SpillJournal journal = open()) {
+            for (int i = 0; i < 40; i++) {
+                journal.append("task", payload(i));
+            }
+            int before = segmentFiles().size();
+
+            drain(journal, 35);
+            journal.commit(journal.cursor());
+
+            assertThat(segmentFiles()).hasSizeLessThan(before);
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(35, 40));
+        }
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(5);
+            assertThat(journal.peek().sequence()).isEqualTo(35);
+        }
+    }
+
+    @Test
+    void recordTruncatedMidWriteEndsTheJournal() throws IOException {
+        List<SpillJournal.Record> records = new ArrayList<>();
+        try (SpillJournal journal = open()) {
+            for (int i = 0; i < 5; i++) {
+                journal.append("task", payload(i));
+            }
+            records.addAll(read(journal));
+        }
+        assertThat(segmentFiles()).hasSize(1);
+
+        // The write of record 3 stopped partway through its payload
+        SpillJournal.Record torn = records.get(3);
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            channel.truncate(torn.start().offset() + HEADER + 12);
+        }
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(3);
+            assertThat(sequences(read(journal))).containsExactly(0L, 1L, 2L);
+            // Sequences carry on from the last good record
+            assertThat(journal.append("task", payload(3))).isEqualTo(3);
+        }
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(4);
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(0, 4));
+        }
+    }
+
+    @Test
+    void corruptRecordDropsEverythingAfterIt() throws IOException {
+        List<SpillJournal.Record> records = new ArrayList<>();
+        try (SpillJournal journal = open()) {
+            for (int i = 0; i < 40; i++) {
+                journal.append("task", payload(i));
+            }
+            records.addAll(read(journal));
+        }
+        assertThat(segmentFiles()).hasSizeGreaterThan(1);
+
+        // Flip a payload byte of record 2, in the first segment
+        SpillJournal.Record corrupt = records.get(2);
+        flipByte(segmentFiles().get(0), (int) corrupt.start().offset() + HEADER + 12);
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(2);
+            assertThat(segmentFiles()).hasSize(1);
+            assertThat(journal.append("task", payload(2))).isEqualTo(2);
+        }
+
+        // The old records after the corrupt one must not come back behind the new append
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(3);
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(0, 3));
+        }
+    }
+
+    @Test
+    void committedOffsetInsideARecordRereadsThatRecord() throws IOException {
+        List<SpillJournal.Record> records = new ArrayList<>();
+        try (SpillJournal journal = open()) {
+            for (int i = 0; i < 5; i++) {
+                journal.append("task", payload(i));
+            }
+            records.addAll(read(journal));
+        }
+
+        // A torn commit: the first segment with an offset partway into record 2
+        SpillJournal.Record straddled = records.get(2);
+        writeOffsetFile(straddled.start().segment(), straddled.start().offset() + 3);
+
+        try (SpillJournal journal = open()) {
+            assertThat(journal.unread()).isEqualTo(3);
+            assertThat(drain(journal, Integer.MAX_VALUE)).containsExactlyElementsOf(range(2, 5));
+        }
+    }
+
+    @Test
+    void appendsAndRecoversAManySegmentJournalQuickly() {
+        int count = 200_000;
+        int segmentSize = 1 << 20;
+
+        long start = System.nanoTime();
+        try (SpillJournal journal = new SpillJournal(directory, NAME, segmentSize, false)) {
+            for (int i = 0; i < count; i++) {
+                journal.append("task", payload(i));
+            }
+        }
+        Duration appending = Duration.ofNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<Integer> replayed;
+        try (SpillJournal journal = new SpillJournal(directory, NAME, segmentSize, false)) {
+            assertThat(journal.unread()).isEqualTo(count);
+            replayed = drain(journal, Integer.MAX_VALUE);
+        }
+        Duration recovering = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(replayed).containsExactlyElementsOf(range(0, count));
+        // Generous bounds: tens of thousands of records a second even on a slow build machine
+        assertThat(appending).isLessThan(Duration.ofSeconds(10));
+        assertThat(recovering).isLessThan(Duration.ofSeconds(10));
+    }
+
+    private SpillJournal open() {
+        return new SpillJournal(directory, NAME, SEGMENT_SIZE, false);
+    }
+
+    // Read, check and advance past up to limit records; returns the indexes from their payloads
+    private static List<Integer> drain(SpillJournal journal, int limit) {
+        List<Integer> indexes = new ArrayList<>();
+        SpillJournal.Record record;
+        while (indexes.size() < limit && (record = journal.peek()) != null) {
+            int index = index(record);
+            assertThat(record.type()).isEqualTo("task");
+            assertThat(record.sequence()).isEqualTo(index);
+            indexes.add(index);
+            journal.advance(record);
+        }
+        return indexes;
+    }
+
+    private static List<SpillJournal.Record> read(SpillJournal journal) {
+        List<SpillJournal.Record> records = new ArrayList<>();
+        SpillJournal.Record record;
+        while ((record = journal.peek()) != null) {
+            records.add(record);
+            journal.advance(record);
+        }
+        return records;
+    }
+
+    private static List<Long> sequences(List<SpillJournal.Record> records) {
+        return records.stream().map(SpillJournal.Record::sequence).toList();
+    }
+
+    private static byte[] payload(int index) {
+        return ("payload-" + index + "-" + "x".repeat(index % 7)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int index(SpillJournal.Record record) {
+        String payload = new String(record.payload(), StandardCharsets.UTF_8);
+        return Integer.parseInt(payload.substring("payload-".length(), payload.indexOf('-', "payload-".length())));
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void flipByte(Path file, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0xFF)).rewind();
+            channel.write(one, position);
+        }
+    }
+
+    private void writeOffsetFile(long segment, long offset) throws IOException {
+        ByteBuffer offsets = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN).putLong(segment).putLong(offset).flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(NAME + ".offset"), StandardOpenOption.WRITE)) {
+            channel.write(offsets, 0);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.henuka.imitations.repository;
+
+import com.henuka.imitations.repository.OrderExportRepository.OrderLine;
+import com.henuka.imitations.repository.OrderExportRepository.SalesLine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Exports and sales lines over a day whose orders are split between the live tables and the
+ * archive, as they are once the archiver has moved the finished ones.
+ */
+class OrderExportRepositoryTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 3, 14, 0, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private OrderExportRepository repository;
+
+    @BeforeEach
+    void seedOrders() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V2__create_core_schema.sql")
+            .addScript("db/migration/V4__create_order_archive.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        repository = new OrderExportRepository(database);
+
+        jdbcTemplate.update("INSERT INTO products (id, name, category, price) VALUES (1, 'Pearl Necklace', 'Necklaces', 500.00)");
+        jdbcTemplate.update("INSERT INTO products (id, name, category, price) VALUES (2, 'Ruby Earrings', 'Earrings', 250.00)");
+
+        // Archived: delivered and paid, earlier the same day; ids interleave with the live orders
+        archivedOrder(2, "ORD-2", DAY.plusHours(1), "PAID", 750.00);
+        archivedItem(20, 2, 1, 1, 500.00);
+        archivedItem(21, 2, 2, 1, 250.00);
+        archivedOrder(4, "ORD-4", DAY.plusHours(3), "REFUNDED", 500.00);
+        archivedItem(40, 4, 1, 1, 500.00);
+        // Archived the day before, outside the range
+        archivedOrder(1, "ORD-1", DAY.minusHours(2), "PAID", 500.00);
+        archivedItem(10, 1, 1, 1, 500.00);
+
+        liveOrder(3, "ORD-3", DAY.plusHours(2), "PAID", 1000.00);
+        liveItem(30, 3, 1, 2, 1000.00);
+        liveOrder(5, "ORD-5", DAY.plusHours(4), "PENDING", 250.00);
+    }
+
+    @AfterEach
+    void shutDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void exportsLiveAndArchivedOrdersInOrderIdOrder() {
+        List<OrderLine> lines = new ArrayList<>();
+        repository.streamOrderLines(DAY, DAY.plusDays(1), lines::add);
+
+        assertThat(lines)
+            .extracting(OrderLine::orderNumber, OrderLine::itemId)
+            .containsExactly(
+                tuple("ORD-2", 20L),
+                tuple("ORD-2", 21L),
+                tuple("ORD-3", 30L),
+                tuple("ORD-4", 40L),
+                tuple("ORD-5", null));
+        assertThat(lines.get(0).productName()).isEqualTo("Pearl Necklace");
+    }
+
+    @Test
+    void salesLinesIncludeArchivedPaidOrders() {
+        List<SalesLine> lines = new ArrayList<>();
+        repository.streamPaidSalesLines(DAY, DAY.plusDays(1), lines::add);
+
+        assertThat(lines)
+            .extracting(SalesLine::orderId, SalesLine::productId, SalesLine::quantity)
+            .containsExactly(
+                tuple(2L, 1L, 1),
+                tuple(2L, 2L, 1),
+                tuple(3L, 1L, 2));
+        assertThat(lines).extracting(SalesLine::category).contains("Earrings");
+    }
+
+    private void liveOrder(long id, String orderNumber, LocalDateTime createdAt, String paymentStatus, double total) {
+        jdbcTemplate.update(
+            "INSERT INTO orders (id, order_number, customer_name, order_status, payment_status, total_amount, created_at) " +
+            "VALUES (?, ?, 'Asha Perera', 'CONFIRMED', ?, ?, ?)",
+            id, orderNumber, paymentStatus, total, Timestamp.valueOf(createdAt));
+    }
+
+    private void liveItem(long id, long orderId, long productId, int quantity, double subtotal) {
+        jdbcTemplate.update(
+            "INSERT INTO order_items (id, order_id, product_id, quantity, subtotal) VALUES (?, ?, ?, ?, ?)",
+            id, orderId, productId, quantity, subtotal);
+    }
+
+    private void archivedOrder(long id, String orderNumber, LocalDateTime createdAt, String paymentStatus, double total) {
+        jdbcTemplate.update(
+            "INSERT INTO orders_archive (id, order_number, customer_name, order_status, payment_status, total_amount, " +
+            "created_at, archived_at) VALUES (?, ?, 'Nimal Silva', 'DELIVERED', ?, ?, ?, ?)",
+            id, orderNumber, paymentStatus, total, Timestamp.valueOf(createdAt), Timestamp.valueOf(DAY.plusDays(90)));
+    }
+
+    private void archivedItem(long id, long orderId, long productId, int quantity, double subtotal) {
+        jdbcTemplate.update(
+            "INSERT INTO order_items_archive (id, order_id, product_id, quantity, subtotal) VALUES (?, ?, ?, ?, ?)",
+            id, orderId, productId, quantity, subtotal);
+    }
+}
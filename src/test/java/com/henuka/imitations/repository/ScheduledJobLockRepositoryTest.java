@@ -0,0 +1,73 @@
+package com.henuka.imitations.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Job leases: a renewal that lands after its run was released must not extend the hold.
+ */
+class ScheduledJobLockRepositoryTest {
+
+    private static final String JOB = "ScheduledTasksService.cleanup";
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 14, 10, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private ScheduledJobLockRepository repository;
+
+    @BeforeEach
+    void createSchema() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V13__create_scheduled_job_locks.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        repository = new ScheduledJobLockRepository(new NamedParameterJdbcTemplate(database));
+    }
+
+    @AfterEach
+    void shutDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void holderRenewsUntilItReleases() {
+        assertThat(repository.tryLock(JOB, "node-a", NOW, NOW.plusMinutes(5))).isTrue();
+        assertThat(repository.tryLock(JOB, "node-b", NOW.plusMinutes(1), NOW.plusMinutes(6))).isFalse();
+
+        assertThat(repository.renew(JOB, "node-a", NOW.plusMinutes(7))).isTrue();
+        assertThat(lockedUntil()).isEqualTo(NOW.plusMinutes(7));
+        assertThat(repository.renew(JOB, "node-b", NOW.plusMinutes(8))).isFalse();
+    }
+
+    @Test
+    void renewalAfterReleaseLeavesTheMinimumHold() {
+        repository.tryLock(JOB, "node-a", NOW, NOW.plusMinutes(5));
+        repository.release(JOB, "node-a", NOW.plusSeconds(10), NOW.plusSeconds(50), 10_000, "success");
+
+        // The renewer fired just as the run finished
+        assertThat(repository.renew(JOB, "node-a", NOW.plusSeconds(10).plusMinutes(5))).isFalse();
+
+        assertThat(lockedUntil()).isEqualTo(NOW.plusSeconds(50));
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT last_node FROM scheduled_job_locks WHERE job_name = ?", String.class, JOB)).isEqualTo("node-a");
+        assertThat(repository.tryLock(JOB, "node-b", NOW.plusSeconds(50), NOW.plusMinutes(6))).isTrue();
+    }
+
+    private LocalDateTime lockedUntil() {
+        return jdbcTemplate.queryForObject(
+            "SELECT locked_until FROM scheduled_job_locks WHERE job_name = ?", Timestamp.class, JOB).toLocalDateTime();
+    }
+}
@@ -0,0 +1,248 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.repository.BatchCheckpointRepository;
+import com.henuka.imitations.repository.BatchCheckpointRepository.Checkpoint;
+import com.henuka.imitations.repository.BatchCheckpointRepository.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs jobs over the keys 1..25 into a table whose primary key rejects a second write of an item,
+ * as the order archive's unique order number does, against in-memory checkpoints.
+ */
+class BatchJobRunnerTest {
+
+    private static final String JOB = "copy";
+    private static final List<Long> SOURCE = LongStream.rangeClosed(1, 25).boxed().toList();
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private BatchCheckpointRepository checkpoints;
+    private MockEnvironment environment;
+    private BatchJobRunner runner;
+    private final ExecutorService batchExecutor = Executors.newFixedThreadPool(4);
+
+    @BeforeEach
+    void start() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V14__create_batch_checkpoints.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE copied (id BIGINT PRIMARY KEY)");
+        checkpoints = new BatchCheckpointRepository(new NamedParameterJdbcTemplate(database));
+        environment = new MockEnvironment();
+        runner = new BatchJobRunner(checkpoints, new TransactionTemplate(new DataSourceTransactionManager(database)),
+            batchExecutor, new SimpleMeterRegistry(), environment);
+    }
+
+    @AfterEach
+    void stop() {
+        batchExecutor.shutdownNow();
+        database.shutdown();
+    }
+
+    @Test
+    void resumesAfterTheLastCommittedChunk() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10).withMaxChunks(2);
+
+        BatchJobRunner.Result first = runner.run(job(settings, key -> false));
+        assertThat(first.status()).isEqualTo(Status.STOPPED);
+        assertThat(first.written()).isEqualTo(20);
+        assertThat(checkpoint(0).lastKey()).isEqualTo(20L);
+
+        BatchJobRunner.Result second = runner.run(job(settings, key -> false));
+        assertThat(second.status()).isEqualTo(Status.COMPLETED);
+        assertThat(second.read()).isEqualTo(5);
+        assertThat(copied()).containsExactlyElementsOf(SOURCE);
+        assertThat(checkpoint(0).read()).isEqualTo(25);
+    }
+
+    @Test
+    void resumesAfterAFailedRead() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10);
+        AtomicInteger reads = new AtomicInteger();
+        BatchJob.ItemReader<Long> failingThirdRead = (partition, afterKey, limit) -> {
+            if (reads.incrementAndGet() == 3) {
+                throw new IllegalStateException("Connection reset");
+            }
+            return read(partition, afterKey, limit);
+        };
+
+        BatchJobRunner.Result failed = runner.run(new BatchJob<>(JOB, failingThirdRead, Long::longValue,
+            item -> item, this::insert, settings));
+        assertThat(failed.status()).isEqualTo(Status.FAILED);
+        assertThat(checkpoint(0).lastKey()).isEqualTo(20L);
+        assertThat(checkpoint(0).lastError()).contains("Connection reset");
+
+        assertThat(runner.run(job(settings, key -> false)).status()).isEqualTo(Status.COMPLETED);
+        assertThat(copied()).containsExactlyElementsOf(SOURCE);
+    }
+
+    @Test
+    void skipsFailingItemsWithinTheSkipLimit() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10).withSkipLimit(2);
+        BatchJob<Long, Long> job = new BatchJob<>(JOB, this::read, Long::longValue, item -> {
+            if (item == 3 || item == 17) {
+                throw new IllegalArgumentException("Bad item " + item);
+            }
+            return item;
+        }, this::insert, settings);
+
+        BatchJobRunner.Result result = runner.run(job);
+
+        assertThat(result.status()).isEqualTo(Status.COMPLETED);
+        assertThat(result.skipped()).isEqualTo(2);
+        assertThat(result.written()).isEqualTo(23);
+        assertThat(checkpoints.findSkippedKeys(JOB, 10)).containsExactlyInAnyOrder(3L, 17L);
+        assertThat(copied()).doesNotContain(3L, 17L).hasSize(23);
+    }
+
+    @Test
+    void failsOncePastTheSkipLimitAndKeepsTheLastGoodChunk() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10).withSkipLimit(1);
+        BatchJob<Long, Long> job = new BatchJob<>(JOB, this::read, Long::longValue, item -> {
+            if (item == 3 || item == 17) {
+                throw new IllegalArgumentException("Bad item " + item);
+            }
+            return item;
+        }, this::insert, settings);
+
+        BatchJobRunner.Result result = runner.run(job);
+
+        assertThat(result.status()).isEqualTo(Status.FAILED);
+        assertThat(checkpoint(0).lastKey()).isEqualTo(10L);
+        assertThat(checkpoint(0).lastError()).contains("skip limit");
+        assertThat(copied()).hasSize(9);
+    }
+
+    @Test
+    void rescansAFailedChunkItemByItem() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10).withSkipLimit(5);
+
+        BatchJobRunner.Result result = runner.run(job(settings, key -> key == 5 || key == 14));
+
+        assertThat(result.status()).isEqualTo(Status.COMPLETED);
+        assertThat(result.skipped()).isEqualTo(2);
+        assertThat(result.written()).isEqualTo(23);
+        assertThat(copied()).doesNotContain(5L, 14L).hasSize(23);
+        assertThat(checkpoints.findSkippedKeys(JOB, 10)).containsExactlyInAnyOrder(5L, 14L);
+        Checkpoint checkpoint = checkpoint(0);
+        assertThat(checkpoint.read()).isEqualTo(25);
+        assertThat(checkpoint.written()).isEqualTo(23);
+        assertThat(checkpoint.skipped()).isEqualTo(2);
+    }
+
+    @Test
+    void rescanStoppedPartWayResumesWithoutWritingItemsTwice() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(10).withSkipLimit(5);
+
+        // Item 5 is bad; the process dies while writing item 8 on its own
+        AtomicInteger writesOfEight = new AtomicInteger();
+        BatchJob<Long, Long> crashing = new BatchJob<>(JOB, this::read, Long::longValue, item -> item, items -> {
+            if (items.size() == 1 && items.get(0) == 8 && writesOfEight.incrementAndGet() == 1) {
+                throw new Crash();
+            }
+            insertRejecting(items, key -> key == 5);
+        }, settings);
+        assertThatThrownBy(() -> runner.run(crashing)).isInstanceOf(Crash.class);
+        assertThat(checkpoint(0).lastKey()).isEqualTo(7L);
+        assertThat(checkpoint(0).status()).isEqualTo(Status.RUNNING);
+
+        BatchJobRunner.Result resumed = runner.run(job(settings, key -> key == 5));
+
+        // A second write of 1..7 would have hit the primary key and been skipped
+        assertThat(resumed.status()).isEqualTo(Status.COMPLETED);
+        assertThat(resumed.skipped()).isZero();
+        assertThat(copied()).doesNotContain(5L).hasSize(24);
+        assertThat(checkpoints.findSkippedKeys(JOB, 10)).containsExactly(5L);
+        assertThat(checkpoint(0).read()).isEqualTo(25);
+    }
+
+    @Test
+    void changingThePartitionCountStartsOver() {
+        BatchJob.Settings settings = BatchJob.Settings.DEFAULTS.withCommitInterval(5).withMaxChunks(1);
+        BatchJob<Long, Long> idempotent = new BatchJob<>(JOB, this::read, Long::longValue, item -> item,
+            this::merge, settings);
+
+        assertThat(runner.run(idempotent).status()).isEqualTo(Status.STOPPED);
+        assertThat(checkpoint(0).lastKey()).isEqualTo(5L);
+
+        environment.setProperty("app.batch.jobs." + JOB + ".partitions", "2");
+        environment.setProperty("app.batch.jobs." + JOB + ".max-chunks", "0");
+        BatchJobRunner.Result result = runner.run(idempotent);
+
+        assertThat(result.status()).isEqualTo(Status.COMPLETED);
+        // Both partitions read from the start, including the keys the first run wrote
+        assertThat(result.read()).isEqualTo(25);
+        List<Checkpoint> saved = checkpoints.findByJob(JOB);
+        assertThat(saved).extracting(Checkpoint::partitionCount).containsExactly(2, 2);
+        assertThat(saved).extracting(Checkpoint::read).containsExactly(12L, 13L);
+        assertThat(copied()).containsExactlyElementsOf(SOURCE);
+    }
+
+    private BatchJob<Long, Long> job(BatchJob.Settings settings, LongPredicate rejected) {
+        return BatchJob.of(JOB, this::read, Long::longValue, items -> insertRejecting(items, rejected), settings);
+    }
+
+    private List<Long> read(JobShard partition, Long afterKey, int limit) {
+        return SOURCE.stream()
+            .filter(key -> key % partition.count() == partition.index())
+            .filter(key -> afterKey == null || key > afterKey)
+            .limit(limit)
+            .toList();
+    }
+
+    private void insert(List<Long> items) {
+        insertRejecting(items, key -> false);
+    }
+
+    // A plain insert: writing an item twice fails on the primary key
+    private void insertRejecting(List<Long> items, LongPredicate rejected) {
+        for (long item : items) {
+            if (rejected.test(item)) {
+                throw new IllegalArgumentException("Rejected item " + item);
+            }
+            jdbcTemplate.update("INSERT INTO copied (id) VALUES (?)", item);
+        }
+    }
+
+    private void merge(List<Long> items) {
+        for (long item : items) {
+            jdbcTemplate.update("MERGE INTO copied (id) KEY (id) VALUES (?)", item);
+        }
+    }
+
+    private List<Long> copied() {
+        return jdbcTemplate.queryForList("SELECT id FROM copied ORDER BY id", Long.class);
+    }
+
+    private Checkpoint checkpoint(int partition) {
+        return checkpoints.findByJob(JOB).get(partition);
+    }
+
+    // Stands in for the process dying: not an Exception, so nothing in the runner handles it
+    private static final class Crash extends Error {
+    }
+}
@@ -0,0 +1,150 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.BulkRefundItem;
+import com.henuka.imitations.model.BulkRefundJob;
+import com.henuka.imitations.repository.BulkRefundItemRepository;
+import com.henuka.imitations.repository.BulkRefundJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Resuming bulk refund jobs: only a job whose heartbeat has gone stale may be taken over, and of
+ * several nodes racing to take it over exactly one starts a runner. The jobs refund orders that
+ * have no payment, so their items fail without reaching the gateway.
+ */
+@SpringBootTest(properties = "app.payment.bulk-refund.resume-scan-ms=3600000")
+class BulkRefundResumeTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private BulkRefundService bulkRefundService;
+
+    @Autowired
+    private BulkRefundJobRepository jobRepository;
+
+    @Autowired
+    private BulkRefundItemRepository itemRepository;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void resumeLeavesARunningJobAlone() {
+        LocalDateTime heartbeat = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.SECONDS);
+        BulkRefundJob job = runningJob(heartbeat);
+
+        assertThat(bulkRefundService.resume(job.getId())).isFalse();
+
+        BulkRefundJob unchanged = bulkRefundService.getJob(job.getId());
+        assertThat(unchanged.getStatus()).isEqualTo(BulkRefundJob.Status.RUNNING);
+        assertThat(unchanged.getHeartbeatAt()).isEqualTo(heartbeat);
+        assertThat(items(job)).allMatch(item -> item.getStatus() == BulkRefundItem.Status.PENDING);
+    }
+
+    @Test
+    void resumeRunsAStaleJobToTheEnd() throws Exception {
+        BulkRefundJob job = runningJob(LocalDateTime.now().minusMinutes(10));
+
+        assertThat(bulkRefundService.resume(job.getId())).isTrue();
+
+        BulkRefundJob finished = awaitCompleted(job);
+        assertThat(finished.getFailed()).isEqualTo(2);
+        assertThat(items(job)).allMatch(item -> item.getStatus() == BulkRefundItem.Status.FAILED);
+        assertThat(bulkRefundService.resume(job.getId())).isFalse();
+    }
+
+    @Test
+    void racingResumesStartOneRunner() throws Exception {
+        BulkRefundJob job = runningJob(LocalDateTime.now().minusMinutes(10));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> resumes = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            resumes.add(executor.submit(() -> {
+                start.await();
+                return bulkRefundService.resume(job.getId());
+            }));
+        }
+        start.countDown();
+
+        int claimed = 0;
+        for (Future<Boolean> resume : resumes) {
+            if (resume.get()) {
+                claimed++;
+            }
+        }
+        assertThat(claimed).isEqualTo(1);
+        assertThat(awaitCompleted(job).getFailed()).isEqualTo(2);
+    }
+
+    @Test
+    void scanResumesOnlyStaleJobs() throws Exception {
+        LocalDateTime recent = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.SECONDS);
+        BulkRefundJob running = runningJob(recent);
+        BulkRefundJob stalled = runningJob(LocalDateTime.now().minusMinutes(10));
+
+        assertThat(bulkRefundService.resumeStalled()).isGreaterThanOrEqualTo(1);
+
+        awaitCompleted(stalled);
+        BulkRefundJob untouched = bulkRefundService.getJob(running.getId());
+        assertThat(untouched.getStatus()).isEqualTo(BulkRefundJob.Status.RUNNING);
+        assertThat(untouched.getHeartbeatAt()).isEqualTo(recent);
+    }
+
+    // A job left RUNNING by a runner that last reported at the given time
+    private BulkRefundJob runningJob(LocalDateTime heartbeatAt) {
+        BulkRefundJob job = new BulkRefundJob();
+        job.setReason("test");
+        job.setTotal(2);
+        job.setStatus(BulkRefundJob.Status.RUNNING);
+        job.setStartedAt(heartbeatAt);
+        job.setHeartbeatAt(heartbeatAt);
+        BulkRefundJob saved = jobRepository.save(job);
+
+        for (String orderNumber : List.of("ORD-NO-PAYMENT-1", "ORD-NO-PAYMENT-2")) {
+            BulkRefundItem item = new BulkRefundItem();
+            item.setJobId(saved.getId());
+            item.setOrderNumber(orderNumber);
+            itemRepository.save(item);
+        }
+        return saved;
+    }
+
+    private List<BulkRefundItem> items(BulkRefundJob job) {
+        List<BulkRefundItem> items = new ArrayList<>();
+        for (BulkRefundItem.Status status : BulkRefundItem.Status.values()) {
+            items.addAll(itemRepository.findByJobIdAndStatusOrderById(job.getId(), status, PageRequest.of(0, 10)));
+        }
+        return items;
+    }
+
+    private BulkRefundJob awaitCompleted(BulkRefundJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        BulkRefundJob current = bulkRefundService.getJob(job.getId());
+        while (current.getStatus() != BulkRefundJob.Status.COMPLETED && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            current = bulkRefundService.getJob(job.getId());
+        }
+        assertThat(current.getStatus()).isEqualTo(BulkRefundJob.Status.COMPLETED);
+        return current;
+    }
+}
@@ -0,0 +1,385 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.config.WorkloadExecutors;
+import com.henuka.imitations.repository.EmailOutboxRepository;
+import com.henuka.imitations.repository.EmailOutboxRepository.OutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the dispatcher against a local SMTP stub and an in-memory outbox to exercise leasing,
+ * retry with backoff, temporary deferrals and rejected recipients end to end.
+ */
+class EmailOutboxDispatcherTest {
+
+    private static final long BACKOFF_MS = 200;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private EmailOutboxRepository outbox;
+    private SmtpStub smtp;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void start() throws IOException {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("db/migration/V12__create_email_outbox.sql")
+            .addScript("db/migration/V18__add_email_outbox_dedup_key.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        outbox = new EmailOutboxRepository(new NamedParameterJdbcTemplate(database));
+        smtp = new SmtpStub();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtp.port());
+        mailSender.getJavaMailProperties().put("mail.smtp.from", "shop@example.com");
+        mailSender.getJavaMailProperties().put("mail.smtp.localhost", "localhost");
+        mailSender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "2000");
+        mailSender.getJavaMailProperties().put("mail.smtp.timeout", "2000");
+
+        dispatcher = new EmailOutboxDispatcher(outbox, mailSender, new SimpleMeterRegistry(),
+            new WorkloadExecutors(new SimpleMeterRegistry(), new MockEnvironment()));
+        ReflectionTestUtils.setField(dispatcher, "senders", 1);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(dispatcher, "leaseSeconds", 300L);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(dispatcher, "retryBackoffMillis", BACKOFF_MS);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMillis", 60_000L);
+        ReflectionTestUtils.setField(dispatcher, "maxMessagesPerConnection", 100);
+        ReflectionTestUtils.setField(dispatcher, "connectionIdleSeconds", 60L);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        dispatcher.stop();
+        smtp.close();
+        database.shutdown();
+    }
+
+    @Test
+    void sendsABatchOverOneConnection() {
+        long first = enqueue("first@example.com");
+        long second = enqueue("second@example.com");
+        long third = enqueue("third@example.com");
+
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> smtp.delivered("third@example.com"), Duration.ofSeconds(5))).isTrue();
+        assertThat(await(() -> status(third).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        assertThat(List.of(status(first), status(second))).containsOnly("SENT");
+        assertThat(smtp.deliveries).hasSize(3);
+        assertThat(smtp.connections.get()).isEqualTo(1);
+    }
+
+    @Test
+    void resendsMessagesLeasedByASenderThatDied() throws Exception {
+        long id = enqueue("lease@example.com");
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseUntil = now.plus(Duration.ofMillis(800));
+        // Another sender leased the message and never came back
+        assertThat(outbox.claim(outbox.findDue(now, 10), leaseUntil)).extracting(OutboxMessage::id).containsExactly(id);
+
+        dispatcher.requestDispatch();
+        assertThat(await(() -> smtp.delivered("lease@example.com"), Duration.ofMillis(300))).isFalse();
+        assertThat(status(id)).isEqualTo("SENDING");
+
+        sleepUntil(leaseUntil);
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> status(id).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        assertThat(smtp.deliveries).hasSize(1);
+        // An expired lease is not a failed attempt
+        assertThat(row(id).get("attempts")).isEqualTo(0);
+    }
+
+    @Test
+    void retriesWithGrowingBackoffThenGivesUp() throws Exception {
+        smtp.available = false;
+        long id = enqueue("outage@example.com");
+
+        LocalDateTime previousFailure = LocalDateTime.now();
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            int expected = attempt;
+            dispatcher.requestDispatch();
+            assertThat(await(() -> attempts(id) == expected, Duration.ofSeconds(5))).isTrue();
+
+            Map<String, Object> row = row(id);
+            LocalDateTime nextAttemptAt = ((Timestamp) row.get("next_attempt_at")).toLocalDateTime();
+            assertThat(row.get("status")).isEqualTo("PENDING");
+            assertThat(row.get("last_error")).isNotNull();
+            assertThat(Duration.between(previousFailure, nextAttemptAt))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(BACKOFF_MS << (attempt - 1)));
+
+            // Not due yet: a wake-up before the backoff has passed leaves it alone
+            dispatcher.requestDispatch();
+            assertThat(await(() -> attempts(id) > expected, Duration.ofMillis(100))).isFalse();
+
+            sleepUntil(nextAttemptAt);
+            previousFailure = LocalDateTime.now();
+        }
+
+        dispatcher.requestDispatch();
+        assertThat(await(() -> status(id).equals("FAILED"), Duration.ofSeconds(5))).isTrue();
+        assertThat(attempts(id)).isEqualTo(MAX_ATTEMPTS);
+        assertThat(smtp.deliveries).isEmpty();
+    }
+
+    @Test
+    void sendsOnceTheServerIsBack() throws Exception {
+        smtp.available = false;
+        long id = enqueue("later@example.com");
+
+        dispatcher.requestDispatch();
+        assertThat(await(() -> attempts(id) == 1, Duration.ofSeconds(5))).isTrue();
+
+        smtp.available = true;
+        sleepUntil(((Timestamp) row(id).get("next_attempt_at")).toLocalDateTime());
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> status(id).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        assertThat(smtp.delivered("later@example.com")).isTrue();
+    }
+
+    @Test
+    void rejectedRecipientFailsAtOnceWithoutHoldingUpTheBatch() {
+        smtp.rejected.add("nobody@example.com");
+        long rejected = enqueue("nobody@example.com");
+        long accepted = enqueue("somebody@example.com");
+
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> status(accepted).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        Map<String, Object> row = row(rejected);
+        assertThat(row.get("status")).isEqualTo("FAILED");
+        assertThat(row.get("attempts")).isEqualTo(1);
+        assertThat((String) row.get("last_error")).isNotBlank();
+        assertThat(smtp.delivered("nobody@example.com")).isFalse();
+        // A rejection is the recipient's problem, not the connection's
+        assertThat(smtp.connections.get()).isEqualTo(1);
+    }
+
+    @Test
+    void greylistedRecipientIsRetriedRatherThanFailed() throws Exception {
+        smtp.greylisted.put("grey@example.com", new AtomicInteger(1));
+        long id = enqueue("grey@example.com");
+
+        dispatcher.requestDispatch();
+        assertThat(await(() -> attempts(id) == 1, Duration.ofSeconds(5))).isTrue();
+        assertThat(status(id)).isEqualTo("PENDING");
+        assertThat((String) row(id).get("last_error")).isNotBlank();
+
+        sleepUntil(((Timestamp) row(id).get("next_attempt_at")).toLocalDateTime());
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> status(id).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        assertThat(smtp.deliveries).hasSize(1);
+        assertThat(smtp.connections.get()).isEqualTo(1);
+    }
+
+    @Test
+    void messageDeferredAtDataIsRetried() throws Exception {
+        smtp.deferredData.set(1);
+        long id = enqueue("busy@example.com");
+
+        dispatcher.requestDispatch();
+        assertThat(await(() -> attempts(id) == 1, Duration.ofSeconds(5))).isTrue();
+        assertThat(status(id)).isEqualTo("PENDING");
+
+        sleepUntil(((Timestamp) row(id).get("next_attempt_at")).toLocalDateTime());
+        dispatcher.requestDispatch();
+
+        assertThat(await(() -> status(id).equals("SENT"), Duration.ofSeconds(5))).isTrue();
+        assertThat(smtp.deliveries).hasSize(1);
+    }
+
+    private long enqueue(String recipient) {
+        return outbox.enqueue(recipient, "Order update", "test", "<p>Hello</p>", null, null, null);
+    }
+
+    private Map<String, Object> row(long id) {
+        return jdbcTemplate.queryForMap(
+            "SELECT status, attempts, next_attempt_at, last_error FROM email_outbox WHERE id = ?", id);
+    }
+
+    private String status(long id) {
+        return (String) row(id).get("status");
+    }
+
+    private int attempts(long id) {
+        return (Integer) row(id).get("attempts");
+    }
+
+    private static boolean await(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void sleepUntil(LocalDateTime time) throws InterruptedException {
+        long millis = Duration.between(LocalDateTime.now(), time).toMillis();
+        Thread.sleep(Math.max(millis, 0) + 50);
+    }
+
+    /**
+     * Just enough SMTP for JavaMail: accepts every message unless the recipient is listed as
+     * rejected (550) or greylisted (450 until its count runs out), defers the next messages at
+     * the end of DATA with 452 while deferredData is positive, and turns every connection away
+     * with 421 while unavailable.
+     */
+    private static final class SmtpStub implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        final List<Delivery> deliveries = new CopyOnWriteArrayList<>();
+        final Set<String> rejected = ConcurrentHashMap.newKeySet();
+        final Map<String, AtomicInteger> greylisted = new ConcurrentHashMap<>();
+        final AtomicInteger deferredData = new AtomicInteger();
+        final AtomicInteger connections = new AtomicInteger();
+        volatile boolean available = true;
+
+        SmtpStub() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.execute(this::accept);
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        boolean delivered(String recipient) {
+            return deliveries.stream().anyMatch(delivery -> delivery.recipients().contains(recipient));
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket client = serverSocket.accept();
+                    executor.execute(() -> session(client));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void session(Socket client) {
+            try (client;
+                 BufferedReader in = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+                 Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII)) {
+                connections.incrementAndGet();
+                if (!available) {
+                    reply(out, "421 Service not available");
+                    return;
+                }
+                reply(out, "220 localhost ESMTP stub");
+
+                List<String> recipients = new ArrayList<>();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase(Locale.ROOT);
+                    if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                        reply(out, "250 localhost");
+                    } else if (command.startsWith("MAIL FROM")) {
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("RCPT TO")) {
+                        String address = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+                        AtomicInteger greylist = greylisted.get(address);
+                        if (rejected.contains(address)) {
+                            reply(out, "550 5.1.1 No such user");
+                        } else if (greylist != null && greylist.getAndDecrement() > 0) {
+                            reply(out, "450 4.7.1 Greylisted, try again later");
+                        } else {
+                            recipients.add(address);
+                            reply(out, "250 OK");
+                        }
+                    } else if (command.equals("DATA")) {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder data = new StringBuilder();
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            data.append(line).append('\n');
+                        }
+                        if (deferredData.getAndDecrement() > 0) {
+                            reply(out, "452 4.3.1 Insufficient system storage");
+                        } else {
+                            deliveries.add(new Delivery(List.copyOf(recipients), data.toString()));
+                            reply(out, "250 OK");
+                        }
+                    } else if (command.equals("QUIT")) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else {
+                        // RSET, NOOP
+                        reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException e) {
+                // Client went away
+            }
+        }
+
+        private static void reply(Writer out, String line) throws IOException {
+            out.write(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private record Delivery(List<String> recipients, String data) {
+    }
+}
@@ -0,0 +1,154 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.config.I18nConfig;
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * A message spliced into the cached layout shell must read the same as the template rendered
+ * whole through its {@code th:replace} of the layout. Whitespace around the content slot may
+ * differ between the two, so runs of whitespace are compared as one space. Splicing must also
+ * cost less than the full render it replaced, which here already has the template cache that
+ * the old engine lacked.
+ */
+class EmailTemplateRendererTest {
+
+    private static final List<String> TEMPLATES =
+        List.of("payment-confirmation", "payment-failed", "refund-confirmation", "daily-sales-report");
+    private static final List<Locale> LOCALES =
+        List.of(Locale.ENGLISH, Locale.forLanguageTag("en-IN"), Locale.forLanguageTag("hi-IN"), Locale.FRENCH);
+
+    private final EmailTemplateRenderer renderer =
+        new EmailTemplateRenderer(new I18nConfig().messageSource(), new SimpleMeterRegistry());
+
+    static Stream<Arguments> templatesAndLocales() {
+        return TEMPLATES.stream().flatMap(template -> LOCALES.stream().map(locale -> Arguments.of(template, locale)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("templatesAndLocales")
+    void splicedRenderMatchesFullRender(String template, Locale locale) {
+        // The second message reuses the shell cached by the first
+        for (String customer : List.of("Asha Perera", "Nimal <Silva> & Sons")) {
+            Map<String, Object> variables = variables(template, customer);
+
+            String spliced = renderer.render(template, locale, variables);
+            String full = fullRender(template, locale, variables);
+
+            assertThat(normalize(spliced)).isEqualTo(normalize(full));
+            assertThat(spliced).doesNotContain("<!--@email-content-->");
+        }
+    }
+
+    @Test
+    void splicedRenderCostsLessThanFullRender() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        Map<String, Object> variables = variables("payment-confirmation", "Asha Perera");
+
+        Cost full = cost(threads, () -> fullRender("payment-confirmation", Locale.ENGLISH, variables));
+        Cost spliced = cost(threads, () -> renderer.render("payment-confirmation", Locale.ENGLISH, variables));
+
+        assertThat(spliced.bytes()).as("bytes per spliced render, full render %s", full).isLessThan(full.bytes());
+        // Timing is noisier than allocation; the best of several rounds must at least not be slower
+        assertThat(spliced.nanos()).as("nanos per spliced render, full render %s", full)
+            .isLessThanOrEqualTo(full.nanos() * 11 / 10);
+    }
+
+    // Per render, once warmed up: the fastest of several rounds, and the bytes allocated on this thread
+    private static Cost cost(com.sun.management.ThreadMXBean threads, Supplier<String> render) {
+        int renders = 2_000;
+        int length = 0;
+        for (int i = 0; i < renders; i++) {
+            length += render.get().length();
+        }
+        long bestNanos = Long.MAX_VALUE;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < renders; i++) {
+                length += render.get().length();
+            }
+            bestNanos = Math.min(bestNanos, (System.nanoTime() - start) / renders);
+        }
+        long bytes = (threads.getThreadAllocatedBytes(threadId) - before) / (5L * renders);
+        assertThat(length).isPositive();
+        return new Cost(bestNanos, bytes);
+    }
+
+    private record Cost(long nanos, long bytes) {
+    }
+
+    private String fullRender(String template, Locale locale, Map<String, Object> variables) {
+        SpringTemplateEngine engine = (SpringTemplateEngine) ReflectionTestUtils.getField(renderer, "templateEngine");
+        return engine.process("emails/" + template, new Context(locale, variables));
+    }
+
+    private static String normalize(String html) {
+        return html.replaceAll("\\s+", " ").trim();
+    }
+
+    private static Map<String, Object> variables(String template, String customer) {
+        Map<String, Object> variables = new HashMap<>();
+        if (template.equals("daily-sales-report")) {
+            variables.put("reportDate", LocalDate.of(2024, 3, 14));
+            variables.put("orderCount", 12L);
+            variables.put("unitsSold", 30L);
+            variables.put("productCount", 2L);
+            variables.put("revenue", new BigDecimal("15400.50"));
+            variables.put("averageOrderValue", new BigDecimal("1283.38"));
+            variables.put("topSellers", List.of(
+                Map.of("name", customer + " Necklace", "category", "Necklaces", "units", 20, "revenue", new BigDecimal("10000.00")),
+                Map.of("name", "Ruby Earrings", "category", "Earrings", "units", 10, "revenue", new BigDecimal("5400.50"))));
+            variables.put("categories", List.of(
+                Map.of("category", "Necklaces", "units", 20, "revenue", new BigDecimal("10000.00")),
+                Map.of("category", "Earrings", "units", 10, "revenue", new BigDecimal("5400.50"))));
+            variables.put("generatedAt", LocalDateTime.of(2024, 3, 15, 6, 0));
+            return variables;
+        }
+
+        Product product = new Product();
+        product.setName("Pearl Necklace");
+        product.setPrice(new BigDecimal("1250.00"));
+
+        Order order = new Order();
+        order.setOrderNumber("ORD-1710400000000");
+        order.setCustomerName(customer);
+        order.addItem(product, 2);
+
+        PaymentOrder payment = new PaymentOrder();
+        payment.setPaymentId("pay_DGlNVn2yVUz2Ny");
+        payment.setRefundId("rfnd_FP8QHiV938haTz");
+        payment.setAmount(order.getTotalAmount());
+        payment.setErrorDescription("Payment was declined by the bank");
+        payment.setUpdatedAt(LocalDateTime.of(2024, 3, 14, 10, 30));
+
+        variables.put("order", order);
+        variables.put("payment", payment);
+        return variables;
+    }
+}
@@ -0,0 +1,34 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.Order.OrderStatus;
+import com.henuka.imitations.model.Order.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderStateMachineTest {
+
+    private final OrderStateMachine.Rule cancel = OrderStateMachine.rule(OrderStateMachine.Action.CANCEL);
+    private final OrderStateMachine.Rule refund = OrderStateMachine.rule(OrderStateMachine.Action.REFUND);
+
+    @Test
+    void unpaidOrdersCanBeCancelled() {
+        assertThat(cancel.allows(OrderStatus.PENDING, PaymentStatus.PENDING)).isTrue();
+        assertThat(cancel.allows(OrderStatus.PENDING, PaymentStatus.FAILED)).isTrue();
+        assertThat(cancel.allows(OrderStatus.CONFIRMED, PaymentStatus.PENDING)).isTrue();
+    }
+
+    @Test
+    void paidOrdersAreRefundedRatherThanCancelled() {
+        assertThat(cancel.allows(OrderStatus.CONFIRMED, PaymentStatus.PAID)).isFalse();
+        assertThat(refund.allows(OrderStatus.CONFIRMED, PaymentStatus.PAID)).isTrue();
+        assertThat(refund.targetStatus(OrderStatus.CONFIRMED)).isEqualTo(OrderStatus.CANCELLED);
+        assertThat(refund.targetPaymentStatus(PaymentStatus.PAID)).isEqualTo(PaymentStatus.REFUNDED);
+    }
+
+    @Test
+    void cancellingAndRefundingBothReturnStock() {
+        assertThat(cancel.sideEffects()).contains(OrderStateMachine.SideEffect.RESTORE_STOCK);
+        assertThat(refund.sideEffects()).contains(OrderStateMachine.SideEffect.RESTORE_STOCK);
+    }
+}
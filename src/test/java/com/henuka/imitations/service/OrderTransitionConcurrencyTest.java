@@ -0,0 +1,139 @@
+package com.henuka.imitations.service;
+
+import com.henuka.imitations.model.Order;
+import com.henuka.imitations.model.Product;
+import com.henuka.imitations.repository.OrderRepository;
+import com.henuka.imitations.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent transitions of one order: each runs its attempts in their own transactions, so the
+ * losers of a compare-and-set see the winner's commit and either find the work done or refuse.
+ */
+@SpringBootTest
+class OrderTransitionConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    private Product product;
+    private Order order;
+
+    @BeforeEach
+    void seedOrder() {
+        product = new Product();
+        product.setName("Concurrency Product");
+        product.setPrice(new BigDecimal("250.00"));
+        product.setStockQuantity(10);
+        product = productRepository.save(product);
+
+        order = new Order();
+        order.setCustomerName("Test Customer");
+        order.setEmail("customer@example.com");
+        order.setPhoneNumber("9999999999");
+        order.setShippingAddress("1 Test Street");
+        order.addItem(product, 2);
+        order = orderRepository.save(order);
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCancelsRestoreStockOnce() throws Exception {
+        List<Outcome> outcomes = race(() -> orderService.cancelOrder(order.getId()), THREADS);
+
+        assertThat(outcomes).allMatch(outcome -> outcome.error == null);
+        Order cancelled = orderRepository.findById(order.getId()).orElseThrow();
+        assertThat(cancelled.getStatus()).isEqualTo(Order.OrderStatus.CANCELLED);
+        assertThat(cancelled.getVersion()).isEqualTo(order.getVersion() + 1);
+        assertThat(productRepository.findById(product.getId()).orElseThrow().getStockQuantity()).isEqualTo(12);
+    }
+
+    @Test
+    void captureAndCancelRacingLeaveOneConsistentOutcome() throws Exception {
+        List<Callable<Order>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            tasks.add(i % 2 == 0
+                ? () -> orderService.confirmOrder(order.getOrderNumber())
+                : () -> orderService.cancelOrder(order.getId()));
+        }
+        List<Outcome> outcomes = race(tasks);
+
+        Order settled = orderRepository.findById(order.getId()).orElseThrow();
+        int stock = productRepository.findById(product.getId()).orElseThrow().getStockQuantity();
+        if (settled.getStatus() == Order.OrderStatus.CONFIRMED) {
+            assertThat(settled.getPaymentStatus()).isEqualTo(Order.PaymentStatus.PAID);
+            assertThat(stock).isEqualTo(10);
+        } else {
+            assertThat(settled.getStatus()).isEqualTo(Order.OrderStatus.CANCELLED);
+            assertThat(settled.getPaymentStatus()).isEqualTo(Order.PaymentStatus.PENDING);
+            assertThat(stock).isEqualTo(12);
+        }
+        assertThat(settled.getVersion()).isEqualTo(order.getVersion() + 1);
+        // Only the losing action is refused, and only because the order moved on
+        assertThat(outcomes).allMatch(outcome -> outcome.error == null || outcome.error instanceof IllegalStateException);
+    }
+
+    private List<Outcome> race(Callable<Order> task, int copies) throws InterruptedException {
+        List<Callable<Order>> tasks = new ArrayList<>();
+        for (int i = 0; i < copies; i++) {
+            tasks.add(task);
+        }
+        return race(tasks);
+    }
+
+    // Start all tasks together and collect each result or failure
+    private List<Outcome> race(List<Callable<Order>> tasks) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Order>> futures = new ArrayList<>();
+        for (Callable<Order> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+
+        List<Outcome> outcomes = new ArrayList<>();
+        for (Future<Order> future : futures) {
+            try {
+                outcomes.add(new Outcome(future.get(), null));
+            } catch (ExecutionException e) {
+                outcomes.add(new Outcome(null, e.getCause()));
+            }
+        }
+        return outcomes;
+    }
+
+    private record Outcome(Order order, Throwable error) {
+    }
+}
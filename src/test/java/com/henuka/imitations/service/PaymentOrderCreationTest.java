@@ -0,0 +1,177 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.exception.PaymentException;
+import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.repository.PaymentOrderRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Creating a payment order across nodes against a local stub of Razorpay's {@code POST /orders}.
+ * Each node is stood in for by a call past this node's in-flight join, so only the database
+ * settles who calls the gateway.
+ */
+@SpringBootTest
+class PaymentOrderCreationTest {
+
+    private static final int NODES = 6;
+    private static final BigDecimal AMOUNT = new BigDecimal("750.00");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static HttpServer server;
+    private static final ConcurrentMap<String, AtomicInteger> gatewayCalls = new ConcurrentHashMap<>();
+    private static final Set<String> failingReceipts = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private PaymentOrderRepository paymentOrderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(NODES);
+
+    @DynamicPropertySource
+    static void stubGateway(DynamicPropertyRegistry registry) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/orders", PaymentOrderCreationTest::createOrder);
+        server.start();
+        registry.add("app.payment.razorpay.base-url", () -> "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+    }
+
+    @AfterAll
+    static void stopGateway() {
+        server.stop(0);
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void racingNodesCreateOneGatewayOrder() throws Exception {
+        String orderId = "ORD-RACE-" + System.nanoTime();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<PaymentOrder>> calls = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            calls.add(executor.submit(() -> {
+                start.await();
+                return ReflectionTestUtils.<PaymentOrder>invokeMethod(paymentService, "findOrCreatePaymentOrder",
+                    orderId, AMOUNT);
+            }));
+        }
+        start.countDown();
+
+        List<String> paymentOrderIds = new ArrayList<>();
+        for (Future<PaymentOrder> call : calls) {
+            paymentOrderIds.add(call.get().getPaymentOrderId());
+        }
+        assertThat(gatewayCalls.get(orderId)).hasValue(1);
+        assertThat(paymentOrderIds).containsOnly("order_" + orderId + "_1");
+        assertThat(paymentOrderRepository.findByOrderId(orderId).orElseThrow().getPaymentOrderId())
+            .isEqualTo("order_" + orderId + "_1");
+    }
+
+    @Test
+    void abandonedReservationIsTakenOver() {
+        String orderId = "ORD-ABANDONED-" + System.nanoTime();
+        PaymentOrder reservation = new PaymentOrder();
+        reservation.setOrderId(orderId);
+        reservation.setAmount(AMOUNT);
+        reservation.setCurrency("INR");
+        paymentOrderRepository.save(reservation);
+        jdbcTemplate.update("UPDATE payment_orders SET updated_at = ? WHERE order_id = ?",
+            Timestamp.valueOf(LocalDateTime.now().minusMinutes(5)), orderId);
+
+        PaymentOrder created = paymentService.createPaymentOrder(orderId, AMOUNT);
+
+        assertThat(created.getId()).isEqualTo(reservation.getId());
+        assertThat(created.getPaymentOrderId()).isEqualTo("order_" + orderId + "_1");
+    }
+
+    @Test
+    void failedGatewayCallFreesTheOrderForTheNextAttempt() {
+        String orderId = "ORD-RETRY-" + System.nanoTime();
+        failingReceipts.add(orderId);
+
+        assertThatThrownBy(() -> paymentService.createPaymentOrder(orderId, AMOUNT))
+            .isInstanceOf(PaymentException.class);
+        assertThat(paymentOrderRepository.findByOrderId(orderId)).isEmpty();
+
+        failingReceipts.remove(orderId);
+        assertThat(paymentService.createPaymentOrder(orderId, AMOUNT).getPaymentOrderId())
+            .isEqualTo("order_" + orderId + "_2");
+    }
+
+    // POST /v1/orders: a slow create, so racing callers overlap it
+    private static void createOrder(HttpExchange exchange) throws IOException {
+        try {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String receipt = request.path("receipt").asText();
+            int call = gatewayCalls.computeIfAbsent(receipt, key -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failingReceipts.contains(receipt)) {
+                byte[] body = objectMapper.writeValueAsBytes(Map.of("error", Map.of("code", "SERVER_ERROR")));
+                exchange.sendResponseHeaders(500, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                "id", "order_" + receipt + "_" + call,
+                "entity", "order",
+                "status", "created",
+                "amount", request.path("amount").asLong()));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
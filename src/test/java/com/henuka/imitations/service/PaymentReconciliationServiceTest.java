@@ -0,0 +1,194 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.model.PaymentOrder;
+import com.henuka.imitations.model.PaymentReconciliationRun;
+import com.henuka.imitations.repository.PaymentOrderRepository;
+import com.henuka.imitations.repository.ReconciliationMismatchRepository.Mismatch;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Reconciles a window against a local stub of Razorpay's {@code GET /payments}, serving 950
+ * payments: two full waves of four 100-payment pages, then a wave whose second page is short.
+ */
+@SpringBootTest(properties = "app.payment.reconciliation.concurrency=4")
+class PaymentReconciliationServiceTest {
+
+    private static final int PAYMENTS = 950;
+    private static final long AMOUNT_PAISE = 50_000;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static HttpServer server;
+    private static volatile List<Map<String, Object>> gatewayPayments = List.of();
+    private static final Set<Integer> requestedSkips = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private PaymentReconciliationService reconciliationService;
+
+    @Autowired
+    private PaymentOrderRepository paymentOrderRepository;
+
+    @DynamicPropertySource
+    static void stubGateway(DynamicPropertyRegistry registry) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/payments", PaymentReconciliationServiceTest::listPayments);
+        server.start();
+        registry.add("app.payment.razorpay.base-url", () -> "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+    }
+
+    @AfterAll
+    static void stopGateway() {
+        server.stop(0);
+    }
+
+    @Test
+    void correctsMissedEventsAndRecordsEveryMismatch() {
+        String run = "r" + System.nanoTime();
+        PaymentOrder captured = paymentOrder(run + "-A", PaymentOrder.PaymentStatus.PENDING, null);
+        PaymentOrder refunded = paymentOrder(run + "-B", PaymentOrder.PaymentStatus.SUCCESS, "pay_" + run + "-B");
+        PaymentOrder failed = paymentOrder(run + "-C", PaymentOrder.PaymentStatus.PENDING, null);
+        PaymentOrder uncorrectable = paymentOrder(run + "-D", PaymentOrder.PaymentStatus.PENDING, null);
+        PaymentOrder paid = paymentOrder(run + "-E", PaymentOrder.PaymentStatus.SUCCESS, "pay_" + run + "-E");
+        PaymentOrder capturedLater = paymentOrder(run + "-F", PaymentOrder.PaymentStatus.PENDING, null);
+
+        List<Map<String, Object>> payments = new ArrayList<>(PAYMENTS);
+        for (int i = 0; i < PAYMENTS; i++) {
+            // Not settled and for no order: matched without a lookup hit
+            payments.add(payment("pay_" + run + "-" + i, null, "created", null));
+        }
+        payments.set(0, payment("pay_" + run + "-A", captured.getPaymentOrderId(), "captured", null));
+        payments.set(1, payment("pay_" + run + "-B", refunded.getPaymentOrderId(), "refunded", null));
+        payments.set(2, payment("pay_" + run + "-C", failed.getPaymentOrderId(), "failed", "Card declined"));
+        // Longer than error_description, so the batch holding it fails and its corrections go one by one
+        payments.set(3, payment("pay_" + run + "-D", uncorrectable.getPaymentOrderId(), "failed", "x".repeat(300)));
+        payments.set(4, payment("pay_" + run + "-E", paid.getPaymentOrderId(), "captured", null));
+        payments.set(5, payment("pay_" + run + "-U", "order_" + run + "-unknown", "captured", null));
+        // In the second wave
+        payments.set(520, payment("pay_" + run + "-F", capturedLater.getPaymentOrderId(), "captured", null));
+        gatewayPayments = payments;
+        requestedSkips.clear();
+
+        LocalDateTime end = LocalDateTime.now();
+        PaymentReconciliationRun result = reconciliationService.reconcile(end.minusHours(1), end);
+
+        assertThat(result.getStatus()).isEqualTo(PaymentReconciliationRun.Status.COMPLETED);
+        // Three waves; the short page at skip 900 ends the run
+        assertThat(requestedSkips).containsExactlyInAnyOrder(0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000, 1100);
+        assertThat(result.getGatewayPayments()).isEqualTo(PAYMENTS);
+        assertThat(result.getCorrected()).isEqualTo(4);
+        assertThat(result.getMismatches()).isEqualTo(6);
+        assertThat(result.getMatched()).isEqualTo(PAYMENTS - 6);
+
+        assertThat(reload(captured).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.SUCCESS);
+        assertThat(reload(captured).getPaymentId()).isEqualTo("pay_" + run + "-A");
+        assertThat(reload(refunded).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.REFUNDED);
+        assertThat(reload(failed).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.FAILED);
+        assertThat(reload(failed).getErrorDescription()).isEqualTo("Card declined");
+        assertThat(reload(uncorrectable).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.PENDING);
+        assertThat(reload(paid).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.SUCCESS);
+        assertThat(reload(capturedLater).getStatus()).isEqualTo(PaymentOrder.PaymentStatus.SUCCESS);
+
+        List<Mismatch> mismatches = reconciliationService.getMismatches(result.getId(), 100);
+        assertThat(mismatches)
+            .extracting(Mismatch::kind, Mismatch::paymentId, Mismatch::corrected)
+            .containsExactlyInAnyOrder(
+                tuple("MISSING_CAPTURE", "pay_" + run + "-A", true),
+                tuple("MISSING_REFUND", "pay_" + run + "-B", true),
+                tuple("MISSING_FAILURE", "pay_" + run + "-C", true),
+                tuple("MISSING_FAILURE", "pay_" + run + "-D", false),
+                tuple("UNKNOWN_ORDER", "pay_" + run + "-U", false),
+                tuple("MISSING_CAPTURE", "pay_" + run + "-F", true));
+        assertThat(mismatches)
+            .filteredOn(mismatch -> mismatch.paymentId().equals("pay_" + run + "-D"))
+            .singleElement()
+            .satisfies(mismatch -> {
+                assertThat(mismatch.detail()).startsWith("Correction failed");
+                assertThat(mismatch.orderId()).isEqualTo(uncorrectable.getOrderId());
+                assertThat(mismatch.localAmount()).isEqualTo(AMOUNT_PAISE);
+            });
+    }
+
+    private PaymentOrder paymentOrder(String orderId, PaymentOrder.PaymentStatus status, String paymentId) {
+        PaymentOrder paymentOrder = new PaymentOrder();
+        paymentOrder.setOrderId("ORD-" + orderId);
+        paymentOrder.setPaymentOrderId("order_" + orderId);
+        paymentOrder.setPaymentId(paymentId);
+        paymentOrder.setAmount(new BigDecimal("500.00"));
+        paymentOrder.setCurrency("INR");
+        paymentOrder.setStatus(status);
+        return paymentOrderRepository.save(paymentOrder);
+    }
+
+    private PaymentOrder reload(PaymentOrder paymentOrder) {
+        return paymentOrderRepository.findById(paymentOrder.getId()).orElseThrow();
+    }
+
+    private static Map<String, Object> payment(String id, String orderId, String status, String errorDescription) {
+        Map<String, Object> payment = new LinkedHashMap<>();
+        payment.put("id", id);
+        if (orderId != null) {
+            payment.put("order_id", orderId);
+        }
+        payment.put("status", status);
+        payment.put("amount", AMOUNT_PAISE);
+        payment.put("currency", "INR");
+        if (errorDescription != null) {
+            payment.put("error_code", "BAD_REQUEST_ERROR");
+            payment.put("error_description", errorDescription);
+        }
+        payment.put("created_at", System.currentTimeMillis() / 1000);
+        return payment;
+    }
+
+    // GET /v1/payments?from&to&skip&count over the current list
+    private static void listPayments(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, Integer> query = new LinkedHashMap<>();
+            for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                String[] pair = parameter.split("=", 2);
+                if (pair[0].equals("skip") || pair[0].equals("count")) {
+                    query.put(pair[0], Integer.parseInt(pair[1]));
+                }
+            }
+            int skip = query.get("skip");
+            requestedSkips.add(skip);
+            List<Map<String, Object>> payments = gatewayPayments;
+            List<Map<String, Object>> page = skip >= payments.size()
+                ? List.of()
+                : payments.subList(skip, Math.min(skip + query.get("count"), payments.size()));
+
+            byte[] body = objectMapper.writeValueAsBytes(Map.of("entity", "collection", "count", page.size(), "items", page));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.henuka.imitations.service;
+
+import com.razorpay.Utils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The verifier must accept exactly the signatures {@link Utils} accepts, while allocating a small
+ * fraction of what Utils does per verification.
+ */
+class PaymentSignatureVerifierTest {
+
+    private static final String KEY_SECRET = "key_secret";
+    private static final String PREVIOUS_KEY_SECRET = "old_key_secret";
+    private static final String WEBHOOK_SECRET = "webhook_secret";
+    private static final String PREVIOUS_WEBHOOK_SECRET = "old_webhook_secret";
+
+    private static final String ORDER_ID = "order_DBJOWzybf0sJbb";
+    private static final String PAYMENT_ID = "pay_DGlNVn2yVUz2Ny";
+    private static final String BODY = "{\"event\":\"payment.captured\",\"payload\":{\"payment\":{\"entity\":" +
+        "{\"id\":\"pay_DGlNVn2yVUz2Ny\",\"order_id\":\"order_DBJOWzybf0sJbb\"}}}}";
+
+    private final PaymentSignatureVerifier verifier =
+        new PaymentSignatureVerifier(KEY_SECRET, PREVIOUS_KEY_SECRET, WEBHOOK_SECRET, PREVIOUS_WEBHOOK_SECRET);
+
+    @Test
+    void acceptsValidPaymentSignature() throws Exception {
+        String signature = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, signature, KEY_SECRET, true);
+    }
+
+    @Test
+    void rejectsPaymentSignatureForOtherIds() throws Exception {
+        String signature = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+
+        assertPaymentParity(ORDER_ID, "pay_other", signature, KEY_SECRET, false);
+        assertPaymentParity("order_other", PAYMENT_ID, signature, KEY_SECRET, false);
+    }
+
+    @Test
+    void rejectsUppercaseHex() throws Exception {
+        String signature = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID).toUpperCase();
+
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, signature, KEY_SECRET, false);
+        assertWebhookParity(BODY, hmac(WEBHOOK_SECRET, BODY).toUpperCase(), WEBHOOK_SECRET, false);
+    }
+
+    @Test
+    void rejectsWrongLengthAndNonHexSignatures() throws Exception {
+        String signature = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, signature.substring(2), KEY_SECRET, false);
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, signature + "00", KEY_SECRET, false);
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, "", KEY_SECRET, false);
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, "zz" + signature.substring(2), KEY_SECRET, false);
+    }
+
+    @Test
+    void acceptsPreviousSecretDuringRotation() throws Exception {
+        String payment = hmac(PREVIOUS_KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+        String webhook = hmac(PREVIOUS_WEBHOOK_SECRET, BODY);
+
+        // Utils knows one secret at a time; the verifier must agree with it for the previous one
+        assertPaymentParity(ORDER_ID, PAYMENT_ID, payment, PREVIOUS_KEY_SECRET, true);
+        assertWebhookParity(BODY, webhook, PREVIOUS_WEBHOOK_SECRET, true);
+
+        PaymentSignatureVerifier rotated = new PaymentSignatureVerifier(KEY_SECRET, "", WEBHOOK_SECRET, "");
+        assertThat(rotated.verifyPayment(ORDER_ID, PAYMENT_ID, payment)).isFalse();
+        assertThat(rotated.verifyWebhook(BODY.getBytes(StandardCharsets.UTF_8), webhook)).isFalse();
+    }
+
+    @Test
+    void acceptsValidWebhookSignature() throws Exception {
+        assertWebhookParity(BODY, hmac(WEBHOOK_SECRET, BODY), WEBHOOK_SECRET, true);
+        assertWebhookParity(BODY + " ", hmac(WEBHOOK_SECRET, BODY), WEBHOOK_SECRET, false);
+        assertWebhookParity(BODY, hmac(KEY_SECRET, BODY), WEBHOOK_SECRET, false);
+    }
+
+    @Test
+    void hashesNonAsciiIdsAsUtf8() throws Exception {
+        String orderId = "order_ünïcødé_注文";
+        String paymentId = "pay_" + "é".repeat(300);
+        String signature = hmac(KEY_SECRET, orderId + "|" + paymentId);
+
+        assertThat(verifier.verifyPayment(orderId, paymentId, signature)).isTrue();
+        assertThat(verifier.verifyPayment(orderId, paymentId.substring(1), signature)).isFalse();
+
+        // Utils hashes with the platform charset, so only compare where that is UTF-8
+        assumeTrue(Charset.defaultCharset().equals(StandardCharsets.UTF_8));
+        assertPaymentParity(orderId, paymentId, signature, KEY_SECRET, true);
+    }
+
+    @Test
+    void rejectsMissingValues() {
+        String signature = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+
+        assertThat(verifier.verifyPayment(null, PAYMENT_ID, signature)).isFalse();
+        assertThat(verifier.verifyPayment(ORDER_ID, null, signature)).isFalse();
+        assertThat(verifier.verifyPayment(ORDER_ID, PAYMENT_ID, null)).isFalse();
+        assertThat(verifier.verifyWebhook(null, signature)).isFalse();
+    }
+
+    @Test
+    void reusesScratchStateAcrossCalls() {
+        String good = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+        String bad = hmac(KEY_SECRET, ORDER_ID + "|pay_other");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(verifier.verifyPayment(ORDER_ID, PAYMENT_ID, bad)).isFalse();
+            assertThat(verifier.verifyPayment(ORDER_ID, PAYMENT_ID, good)).isTrue();
+        }
+    }
+
+    @Test
+    void allocatesOnlyTheMacDigestsPerVerification() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        String payment = hmac(KEY_SECRET, ORDER_ID + "|" + PAYMENT_ID);
+        String webhook = hmac(WEBHOOK_SECRET, BODY);
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        JSONObject attributes = new JSONObject()
+            .put("razorpay_order_id", ORDER_ID)
+            .put("razorpay_payment_id", PAYMENT_ID)
+            .put("razorpay_signature", payment);
+
+        long verifierBytes = bytesPerCall(threads,
+            () -> verifier.verifyPayment(ORDER_ID, PAYMENT_ID, payment) && verifier.verifyWebhook(body, webhook));
+        long utilsBytes = bytesPerCall(threads,
+            () -> Utils.verifyPaymentSignature(attributes, KEY_SECRET) && Utils.verifyWebhookSignature(BODY, webhook, WEBHOOK_SECRET));
+
+        // Two Macs finished, each returning a 32-byte digest array from inside the JDK
+        assertThat(verifierBytes).isLessThanOrEqualTo(256);
+        assertThat(verifierBytes * 10).isLessThan(utilsBytes);
+    }
+
+    // Mean bytes allocated on this thread per call, once warmed up
+    private static long bytesPerCall(com.sun.management.ThreadMXBean threads, Callable<Boolean> call) throws Exception {
+        int calls = 50_000;
+        boolean verified = true;
+        for (int i = 0; i < calls; i++) {
+            verified &= call.call();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            verified &= call.call();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertThat(verified).isTrue();
+        return allocated / calls;
+    }
+
+    private void assertPaymentParity(String orderId, String paymentId, String signature, String secret,
+                                     boolean expected) throws Exception {
+        JSONObject attributes = new JSONObject()
+            .put("razorpay_order_id", orderId)
+            .put("razorpay_payment_id", paymentId)
+            .put("razorpay_signature", signature);
+
+        assertThat(Utils.verifyPaymentSignature(attributes, secret)).isEqualTo(expected);
+        assertThat(verifier.verifyPayment(orderId, paymentId, signature)).isEqualTo(expected);
+    }
+
+    private void assertWebhookParity(String body, String signature, String secret, boolean expected) throws Exception {
+        assertThat(Utils.verifyWebhookSignature(body, signature, secret)).isEqualTo(expected);
+        assertThat(verifier.verifyWebhook(body.getBytes(StandardCharsets.UTF_8), signature)).isEqualTo(expected);
+    }
+
+    private static String hmac(String secret, String message) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(message.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.henuka.imitations.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.henuka.imitations.exception.PaymentException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the client against a local stub of the Razorpay API to exercise the timeout, bulkhead
+ * and circuit breaker paths.
+ */
+class RazorpayGatewayClientTest {
+
+    private static final String REFUND_JSON = "{\"id\":\"rfnd_1\",\"status\":\"processed\"}";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService clientExecutor;
+    private SimpleMeterRegistry meterRegistry;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // Behaviour of the stub for the next requests
+    private volatile StubHandler handler = exchange -> respond(exchange, 200, REFUND_JSON);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        clientExecutor = Executors.newCachedThreadPool();
+        meterRegistry = new SimpleMeterRegistry();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1", exchange -> {
+            requests.incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        clientExecutor.shutdownNow();
+    }
+
+    @Test
+    void refundsThroughTheStub() {
+        RazorpayGatewayClient client = client(CircuitBreakerRegistry.ofDefaults(), 5, 1000);
+
+        RazorpayGatewayClient.GatewayRefund refund = client.refund("pay_1", 1000, Map.of());
+
+        assertThat(refund).isEqualTo(new RazorpayGatewayClient.GatewayRefund("rfnd_1", "processed"));
+        assertThat(outcomes("success")).isEqualTo(1);
+    }
+
+    @Test
+    void slowGatewayTimesOut() {
+        CountDownLatch release = new CountDownLatch(1);
+        handler = exchange -> {
+            release.await(5, TimeUnit.SECONDS);
+            respond(exchange, 200, REFUND_JSON);
+        };
+        RazorpayGatewayClient client = client(CircuitBreakerRegistry.ofDefaults(), 5, 200);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> client.refund("pay_1", 1000, Map.of()))
+            .isInstanceOf(PaymentException.class)
+            .hasMessageContaining("timed out");
+        release.countDown();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(outcomes("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void fullBulkheadRejectsWithoutCallingTheGateway() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        handler = exchange -> {
+            received.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            respond(exchange, 200, REFUND_JSON);
+        };
+        RazorpayGatewayClient client = client(CircuitBreakerRegistry.ofDefaults(), 1, 5000);
+
+        CompletableFuture<RazorpayGatewayClient.GatewayRefund> first =
+            CompletableFuture.supplyAsync(() -> client.refund("pay_1", 1000, Map.of()), clientExecutor);
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> client.refund("pay_2", 1000, Map.of()))
+            .isInstanceOf(PaymentException.class)
+            .hasMessageContaining("busy");
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(outcomes("bulkhead_full")).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).id()).isEqualTo("rfnd_1");
+    }
+
+    @Test
+    void failingGatewayOpensTheCircuit() {
+        handler = exchange -> respond(exchange, 503, "{}");
+        CircuitBreakerRegistry breakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+            .slidingWindowSize(2)
+            .minimumNumberOfCalls(2)
+            .failureRateThreshold(50)
+            .waitDurationInOpenState(Duration.ofMinutes(1))
+            .build());
+        RazorpayGatewayClient client = client(breakers, 5, 1000);
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> client.refund("pay_1", 1000, Map.of()))
+                .isInstanceOf(PaymentException.class)
+                .hasMessageContaining("503");
+        }
+        assertThat(client.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> client.refund("pay_1", 1000, Map.of()))
+            .isInstanceOf(PaymentException.class)
+            .hasMessageContaining("circuit open");
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(outcomes("circuit_open")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRequestsDoNotOpenTheCircuit() {
+        handler = exchange -> respond(exchange, 400,
+            "{\"error\":{\"description\":\"The amount must be at least INR 1.00\"}}");
+        CircuitBreakerRegistry breakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+            .slidingWindowSize(2)
+            .minimumNumberOfCalls(2)
+            .build());
+        RazorpayGatewayClient client = client(breakers, 5, 1000);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> client.refund("pay_1", 0, Map.of()))
+                .isInstanceOf(PaymentException.class)
+                .hasMessageContaining("at least INR 1.00");
+        }
+        assertThat(client.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(outcomes("rejected")).isEqualTo(3);
+    }
+
+    private RazorpayGatewayClient client(CircuitBreakerRegistry breakers, int maxConcurrentCalls, long requestTimeoutMs) {
+        return new RazorpayGatewayClient(
+            new ObjectMapper(),
+            meterRegistry,
+            breakers,
+            BulkheadRegistry.ofDefaults(),
+            clientExecutor,
+            "http://127.0.0.1:" + server.getAddress().getPort() + "/v1",
+            "rzp_test_key",
+            "secret",
+            500,
+            requestTimeoutMs,
+            maxConcurrentCalls);
+    }
+
+    private long outcomes(String outcome) {
+        return meterRegistry.find("payment.gateway.call").tag("outcome", outcome).timers().stream()
+            .mapToLong(timer -> timer.count())
+            .sum();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StubHandler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+}